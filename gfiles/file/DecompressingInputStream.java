@@ -0,0 +1,297 @@
+package gfiles.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * input stream that decompresses gzip or zlib input as it is read and passes
+ * anything else through unchanged, so compressed files can be read without
+ * decompressing them somewhere first. The format is worked out from the first
+ * bytes of the input when it is first read.
+ *
+ * Gzip input can be made of many members one after another, as written by
+ * tools like pigz or by appending gzip files together, and every member is
+ * checked against the crc and size in its trailer. Anything after the last
+ * member that isn't another member is ignored the same way
+ * {@link java.util.zip.GZIPInputStream} does.
+ *
+ * Zlib input is only recognized with one of the headers that zlib writes by
+ * default and if the start of it inflates without errors, since a text file
+ * can happen to start with a valid zlib header.
+ *
+ * @author Gavin
+ *
+ */
+public class DecompressingInputStream extends InputStream {
+
+	// formats of the input.
+	private static final int UNKNOWN = -1;
+	private static final int PLAIN = 0;
+	private static final int GZIP = 1;
+	private static final int ZLIB = 2;
+
+	// states of reading a gzip member.
+	private static final int HEADER = 0;
+	private static final int BODY = 1;
+	private static final int TRAILER = 2;
+	private static final int DONE = 3;
+
+	// most bytes of zlib input that are test inflated to make sure it isn't
+	// text.
+	private static final int ZLIB_CHECK = 512;
+
+	// size of the buffer of compressed bytes.
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// stream being decompressed.
+	private final InputStream in;
+
+	// bytes that have been read from the stream but not used, from position
+	// to limit.
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+
+	private int format = UNKNOWN;
+
+	// state of the current gzip member and the inflater for it.
+	private int state = HEADER;
+	private Inflater inflater;
+	private final CRC32 crc = new CRC32();
+	private long memberSize;
+
+	// stream that inflates zlib input.
+	private InputStream zlib;
+
+	/**
+	 * creates a stream that decompresses the given stream if it is
+	 * compressed.
+	 *
+	 * @param in
+	 *            stream to read from
+	 */
+	public DecompressingInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * tells whether the input turned out to be compressed, reading the start
+	 * of it if it hasn't been read yet.
+	 *
+	 * @return true if the input is gzip or zlib
+	 * @throws IOException
+	 *             if the input couldn't be read
+	 */
+	public boolean isCompressed() throws IOException {
+		detect();
+		return format != PLAIN;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] one = new byte[1];
+		int read;
+		while ((read = read(one, 0, 1)) == 0)
+			;
+		return read == -1 ? -1 : one[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return 0;
+
+		detect();
+		switch (format) {
+		case GZIP:
+			return readGzip(b, off, len);
+		case ZLIB:
+			return zlib.read(b, off, len);
+		default:
+			if (position < limit) {
+				int read = Math.min(len, limit - position);
+				System.arraycopy(buffer, position, b, off, read);
+				position += read;
+				return read;
+			}
+			return in.read(b, off, len);
+		}
+	}
+
+	/**
+	 * reads the next bytes out of the gzip members.
+	 */
+	private int readGzip(byte[] b, int off, int len) throws IOException {
+		while (true) {
+			if (state == DONE)
+				return -1;
+
+			if (state == HEADER) {
+				int header;
+				while ((header = GzipMembers.headerLength(buffer, position, limit)) < 0) {
+					if (!fill())
+						throw new EOFException("Unexpected end of gzip header");
+				}
+				position += header;
+				inflater.reset();
+				crc.reset();
+				memberSize = 0;
+				state = BODY;
+			}
+
+			if (state == BODY) {
+				if (inflater.needsInput()) {
+					if (position == limit && !fill())
+						throw new EOFException("Unexpected end of gzip stream");
+					inflater.setInput(buffer, position, limit - position);
+					position = limit;
+				}
+
+				int read;
+				try {
+					read = inflater.inflate(b, off, len);
+				} catch (DataFormatException e) {
+					throw new ZipException(e.getMessage());
+				}
+				if (inflater.needsDictionary())
+					throw new ZipException("Gzip members can't use a preset dictionary");
+				crc.update(b, off, read);
+				memberSize += read;
+
+				if (inflater.finished()) {
+					position = limit - inflater.getRemaining();
+					state = TRAILER;
+				}
+				if (read > 0)
+					return read;
+			}
+
+			if (state == TRAILER) {
+				while (limit - position < GzipMembers.TRAILER) {
+					if (!fill())
+						throw new EOFException("Unexpected end of gzip trailer");
+				}
+				if (crc.getValue() != GzipMembers.readInt(buffer, position)
+						|| (memberSize & 0xFFFFFFFFL) != GzipMembers.readInt(buffer, position + 4))
+					throw new ZipException("Corrupt gzip member, it doesn't match the crc and size in its trailer");
+				position += GzipMembers.TRAILER;
+
+				// carry on if there's another member.
+				while (limit - position < 2 && fill())
+					;
+				state = limit - position >= 2 && (buffer[position] & 0xFF) == GzipMembers.MAGIC_1
+						&& (buffer[position + 1] & 0xFF) == GzipMembers.MAGIC_2 ? HEADER : DONE;
+			}
+		}
+	}
+
+	/**
+	 * works out the format from the first bytes of the input.
+	 */
+	private void detect() throws IOException {
+		if (format != UNKNOWN)
+			return;
+
+		while (limit < 2 && fill())
+			;
+		if (limit >= 2 && (buffer[0] & 0xFF) == GzipMembers.MAGIC_1 && (buffer[1] & 0xFF) == GzipMembers.MAGIC_2) {
+			format = GZIP;
+			inflater = new Inflater(true);
+		} else if (limit >= 2 && isZlibHeader(buffer[0] & 0xFF, buffer[1] & 0xFF) && inflatesAsZlib()) {
+			format = ZLIB;
+			InputStream rest = new SequenceInputStream(new ByteArrayInputStream(buffer, position, limit - position), in);
+			zlib = new InflaterInputStream(rest, new Inflater(), BUFFER_SIZE);
+		} else {
+			format = PLAIN;
+		}
+	}
+
+	/**
+	 * checks for the headers zlib writes for each compression level.
+	 */
+	private static boolean isZlibHeader(int cmf, int flg) {
+		return cmf == 0x78 && (flg == 0x01 || flg == 0x5E || flg == 0x9C || flg == 0xDA);
+	}
+
+	/**
+	 * test inflates the start of the input, which either has to finish or be
+	 * a full check's worth of input without any errors.
+	 */
+	private boolean inflatesAsZlib() throws IOException {
+		boolean more = true;
+		while (limit < ZLIB_CHECK && more)
+			more = fill();
+
+		Inflater test = new Inflater();
+		try {
+			test.setInput(buffer, 0, limit);
+			byte[] scratch = new byte[4096];
+			while (!test.finished() && !test.needsInput()) {
+				if (test.inflate(scratch) == 0 && test.needsDictionary())
+					return false;
+			}
+			return test.finished() || (more && test.getBytesWritten() > 0);
+		} catch (DataFormatException e) {
+			return false;
+		} finally {
+			test.end();
+		}
+	}
+
+	/**
+	 * moves the unused bytes to the start of the buffer and reads more after
+	 * them.
+	 *
+	 * @return false if the end of the input has been reached
+	 */
+	private boolean fill() throws IOException {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length)
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+		int read = in.read(buffer, limit, buffer.length - limit);
+		if (read == -1)
+			return false;
+		limit += read;
+		return true;
+	}
+
+	@Override
+	public int available() throws IOException {
+		switch (format) {
+		case UNKNOWN:
+			return in.available();
+		case GZIP:
+			return state == DONE ? 0 : 1;
+		case ZLIB:
+			return zlib.available();
+		default:
+			return limit - position + in.available();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (inflater != null)
+			inflater.end();
+		if (zlib != null)
+			zlib.close();
+		in.close();
+	}
+
+}
@@ -0,0 +1,339 @@
+package gfiles.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * reads the headers of gzip members and decompresses a gzip file made of many
+ * members in parallel. Files written by tools like pigz and bgzip, or by
+ * appending gzip files together, have a member for every block of the input
+ * and each member can be inflated on its own.
+ *
+ * The start of each member is found by looking for the gzip magic number, and
+ * the size of each member's output is read from the trailer just before the
+ * next one, so the output array is made once and every member is inflated
+ * straight into its place. The magic number can also turn up inside of the
+ * compressed data, so every member has to end exactly where the next one was
+ * found and match the crc and size in its trailer. A member that doesn't was
+ * cut short by a false match, so it is joined with the member after it and
+ * inflated again on its own until it checks out, while the rest of the
+ * members keep what they inflated in parallel.
+ *
+ * @author Gavin
+ *
+ */
+final class GzipMembers {
+
+	// the first bytes of every gzip member, the last is the deflate method.
+	static final int MAGIC_1 = 0x1F;
+	static final int MAGIC_2 = 0x8B;
+	static final int DEFLATE = 8;
+
+	// header flags.
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	private static final int RESERVED = 0xE0;
+
+	// length of the fixed part of the header and of the trailer.
+	private static final int FIXED_HEADER = 10;
+	static final int TRAILER = 8;
+
+	// how many groups of members to make per thread so uneven groups balance
+	// out.
+	private static final int GROUPS_PER_THREAD = 4;
+
+	// largest file that can be held, the same as a virtual file.
+	private static final long MAX_SIZE = Integer.MAX_VALUE - 8;
+
+	// deflate can't make more than about this many bytes from each
+	// compressed byte, a trailer that says otherwise isn't really a trailer.
+	private static final int MAX_RATIO = 1032;
+
+	private GzipMembers() {}
+
+	/**
+	 * gets the length of the gzip header at the offset.
+	 *
+	 * @param data
+	 *            bytes holding the header
+	 * @param offset
+	 *            start of the header
+	 * @param end
+	 *            end of the bytes that have been read
+	 * @return length of the header, or -1 if more bytes are needed to tell
+	 * @throws ZipException
+	 *             if it isn't a gzip header
+	 */
+	static int headerLength(byte[] data, int offset, int end) throws ZipException {
+		if (end - offset < FIXED_HEADER)
+			return -1;
+		if ((data[offset] & 0xFF) != MAGIC_1 || (data[offset + 1] & 0xFF) != MAGIC_2)
+			throw new ZipException("Not in gzip format");
+		if (data[offset + 2] != DEFLATE)
+			throw new ZipException("Unsupported gzip compression method " + data[offset + 2]);
+		int flags = data[offset + 3] & 0xFF;
+		if ((flags & RESERVED) != 0)
+			throw new ZipException("Reserved gzip header flags are set");
+
+		int i = offset + FIXED_HEADER;
+		if ((flags & FEXTRA) != 0) {
+			if (end - i < 2)
+				return -1;
+			i += 2 + ((data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8);
+		}
+		if ((flags & FNAME) != 0) {
+			i = skipString(data, i, end);
+			if (i < 0)
+				return -1;
+		}
+		if ((flags & FCOMMENT) != 0) {
+			i = skipString(data, i, end);
+			if (i < 0)
+				return -1;
+		}
+		if ((flags & FHCRC) != 0)
+			i += 2;
+		return i > end ? -1 : i - offset;
+	}
+
+	/**
+	 * skips over a zero terminated string, -1 if it runs past the end.
+	 */
+	private static int skipString(byte[] data, int i, int end) {
+		while (i < end && data[i] != 0)
+			i++;
+		return i < end ? i + 1 : -1;
+	}
+
+	/**
+	 * reads a little endian int.
+	 */
+	static long readInt(byte[] data, int i) {
+		return (data[i] & 0xFFL) | (data[i + 1] & 0xFFL) << 8 | (data[i + 2] & 0xFFL) << 16
+				| (data[i + 3] & 0xFFL) << 24;
+	}
+
+	/**
+	 * decompresses a whole gzip file that has been read into memory,
+	 * inflating its members in parallel when there is more than one.
+	 *
+	 * @param data
+	 *            compressed bytes
+	 * @param length
+	 *            number of compressed bytes
+	 * @return the decompressed file
+	 * @throws IOException
+	 *             if the file isn't valid gzip
+	 */
+	static VirtualFile load(byte[] data, int length) throws IOException {
+		int[] starts = candidates(data, length);
+		if (starts.length > 1 && starts[0] == 0) {
+			VirtualFile vf = loadParallel(data, length, starts);
+			if (vf != null)
+				return vf;
+		}
+		return new VirtualFile(new DecompressingInputStream(new ByteArrayInputStream(data, 0, length)));
+	}
+
+	/**
+	 * finds everywhere a member could start, which is anywhere with the magic
+	 * number followed by a valid header.
+	 */
+	private static int[] candidates(byte[] data, int length) {
+		int[] starts = new int[16];
+		int count = 0;
+		for (int i = 0; i <= length - FIXED_HEADER; i++) {
+			if ((data[i] & 0xFF) != MAGIC_1 || (data[i + 1] & 0xFF) != MAGIC_2 || data[i + 2] != DEFLATE
+					|| (data[i + 3] & RESERVED) != 0)
+				continue;
+			if (i != 0 && i < TRAILER + FIXED_HEADER)
+				continue;
+			try {
+				if (headerLength(data, i, length) < 0)
+					continue;
+			} catch (ZipException e) {
+				continue;
+			}
+			if (count == starts.length)
+				starts = Arrays.copyOf(starts, count * 2);
+			starts[count++] = i;
+		}
+		return Arrays.copyOf(starts, count);
+	}
+
+	/**
+	 * inflates the members straight into their places in the output, joining
+	 * up the ones that were split at false matches, giving back null if the
+	 * members still don't check out.
+	 */
+	private static VirtualFile loadParallel(byte[] data, int length, int[] starts) throws IOException {
+		// the size of each member is in the trailer just before the next, a
+		// size that can't be right is left out and the member is joined up
+		// later.
+		int members = starts.length;
+		long[] offsets = new long[members + 1];
+		boolean[] plausible = new boolean[members];
+		for (int k = 0; k < members; k++) {
+			int end = end(starts, k, length);
+			long size = readInt(data, end - 4);
+			plausible[k] = end - starts[k] >= FIXED_HEADER + TRAILER && size <= (long) (end - starts[k]) * MAX_RATIO;
+			offsets[k + 1] = offsets[k] + (plausible[k] ? size : 0);
+		}
+
+		// let reading one member at a time find out if it is really too big.
+		if (offsets[members] > MAX_SIZE)
+			return null;
+
+		// leave room for the next byte like the virtual file does.
+		byte[] output = new byte[(int) offsets[members] + 1];
+
+		// each member is checked on its own, so a false match only costs the
+		// members around it.
+		boolean[] valid = new boolean[members];
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int groups = Math.min(members, pool.getParallelism() * GROUPS_PER_THREAD);
+		List<Callable<Void>> tasks = new ArrayList<>(groups);
+		for (int g = 0; g < groups; g++) {
+			int first = (int) ((long) members * g / groups);
+			int last = (int) ((long) members * (g + 1) / groups);
+			tasks.add(() -> {
+				Inflater inflater = new Inflater(true);
+				try {
+					for (int k = first; k < last; k++)
+						valid[k] = plausible[k] && inflate(inflater, data, starts[k], end(starts, k, length), output,
+								(int) offsets[k], (int) offsets[k + 1]);
+					return null;
+				} finally {
+					inflater.end();
+				}
+			});
+		}
+
+		try {
+			for (Future<Void> result : pool.invokeAll(tasks))
+				result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while decompressing gzip members");
+		} catch (ExecutionException e) {
+			return null;
+		}
+
+		// the output of each member, either where it was inflated in the
+		// output or in its own array if it had to be joined up.
+		List<byte[]> sources = new ArrayList<>(members);
+		List<int[]> ranges = new ArrayList<>(members);
+		boolean joined = false;
+		Inflater inflater = new Inflater(true);
+		try {
+			for (int k = 0; k < members; k++) {
+				if (valid[k]) {
+					sources.add(output);
+					ranges.add(new int[] { (int) offsets[k], (int) (offsets[k + 1] - offsets[k]) });
+					continue;
+				}
+
+				// the member was cut off at a false match, so join it with the
+				// next one until the trailer at the end matches.
+				joined = true;
+				int start = starts[k];
+				byte[] member = null;
+				while (member == null) {
+					if (++k == members)
+						return null;
+					int end = end(starts, k, length);
+					long size = readInt(data, end - 4);
+					if (size > MAX_SIZE || size > (long) (end - start) * MAX_RATIO)
+						continue;
+					member = new byte[(int) size];
+					if (!inflate(inflater, data, start, end, member, 0, member.length))
+						member = null;
+				}
+				sources.add(member);
+				ranges.add(new int[] { 0, member.length });
+			}
+		} finally {
+			inflater.end();
+		}
+
+		if (!joined)
+			return VirtualFile.wrap(output, (int) offsets[members]);
+
+		// put the members together in order now their real sizes are known.
+		long total = 0;
+		for (int[] range : ranges)
+			total += range[1];
+		if (total > MAX_SIZE)
+			return null;
+		byte[] joinedOutput = new byte[(int) total + 1];
+		int position = 0;
+		for (int i = 0; i < sources.size(); i++) {
+			int[] range = ranges.get(i);
+			System.arraycopy(sources.get(i), range[0], joinedOutput, position, range[1]);
+			position += range[1];
+		}
+		return VirtualFile.wrap(joinedOutput, position);
+	}
+
+	/**
+	 * gets the end of member k, which is the start of the next one or the
+	 * end of the file.
+	 */
+	private static int end(int[] starts, int k, int length) {
+		return k + 1 < starts.length ? starts[k + 1] : length;
+	}
+
+	/**
+	 * inflates one member into its place in the output, checking that it
+	 * ends right at the end given and matches its trailer.
+	 */
+	private static boolean inflate(Inflater inflater, byte[] data, int start, int end, byte[] output, int from,
+			int to) {
+		try {
+			if (end - start < FIXED_HEADER + TRAILER)
+				return false;
+			int header = headerLength(data, start, end);
+			int body = start + header;
+			if (header < 0 || end - TRAILER < body)
+				return false;
+
+			inflater.reset();
+			inflater.setInput(data, body, end - TRAILER - body);
+			int position = from;
+			byte[] extra = new byte[1];
+			while (!inflater.finished()) {
+				// once the member's place is full it can only finish, a member
+				// that makes more than its trailer says is wrong.
+				int made = position < to ? inflater.inflate(output, position, to - position) : inflater.inflate(extra);
+				if (position == to && made > 0)
+					return false;
+				position += made;
+				if (made == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+			}
+			if (!inflater.finished() || inflater.getRemaining() != 0 || position != to)
+				return false;
+
+			CRC32 crc = new CRC32();
+			crc.update(output, from, to - from);
+			return crc.getValue() == readInt(data, end - TRAILER);
+		} catch (ZipException | DataFormatException e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,216 @@
+package gfiles.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * input stream that reads from another stream or a channel on a background
+ * thread into a fixed size ring buffer. Reading from this stream takes bytes
+ * out of the ring as soon as they have arrived, so whatever is using the bytes
+ * can work while the next ones are being read, and the background thread waits
+ * when the ring is full so no more than the ring's size is ever held.
+ *
+ * @author Gavin
+ *
+ */
+public class ReadAheadInputStream extends InputStream {
+
+	// size of the ring if one isn't given.
+	private static final int DEFAULT_CAPACITY = 1 << 20;
+
+	// most bytes read from the source at once, so the bytes are handed over
+	// in pieces instead of only once a big read finishes.
+	private static final int MAX_READ = 1 << 16;
+
+	// where the bytes come from.
+	private final Source source;
+	private final Closeable closeable;
+
+	// bytes that have been read but not taken, count bytes starting at head
+	// and wrapping around the end.
+	private final byte[] ring;
+	private int head = 0;
+	private int count = 0;
+
+	// state shared with the background thread, guarded by the lock.
+	private final Object lock = new Object();
+	private boolean endOfInput = false;
+	private boolean closed = false;
+	private IOException error;
+
+	/**
+	 * creates a stream that reads ahead from the input stream with a 1 MB
+	 * ring.
+	 *
+	 * @param in
+	 *            stream to read from
+	 */
+	public ReadAheadInputStream(InputStream in) {
+		this(in, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * creates a stream that reads ahead from the input stream.
+	 *
+	 * @param in
+	 *            stream to read from
+	 * @param capacity
+	 *            size of the ring in bytes
+	 */
+	public ReadAheadInputStream(InputStream in, int capacity) {
+		this(in::read, in, capacity);
+	}
+
+	/**
+	 * creates a stream that reads ahead from a blocking channel with a 1 MB
+	 * ring.
+	 *
+	 * @param channel
+	 *            channel to read from
+	 */
+	public ReadAheadInputStream(ReadableByteChannel channel) {
+		this(channel, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * creates a stream that reads ahead from a blocking channel.
+	 *
+	 * @param channel
+	 *            channel to read from
+	 * @param capacity
+	 *            size of the ring in bytes
+	 */
+	public ReadAheadInputStream(ReadableByteChannel channel, int capacity) {
+		this((b, off, len) -> channel.read(ByteBuffer.wrap(b, off, len)), channel, capacity);
+	}
+
+	private ReadAheadInputStream(Source source, Closeable closeable, int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("The capacity has to be positive");
+		this.source = source;
+		this.closeable = closeable;
+		this.ring = new byte[capacity];
+
+		Thread thread = new Thread(this::fill, "gfiles-read-ahead");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * reads from the source into the free part of the ring until the source
+	 * runs out, fails or the stream is closed. The free part isn't touched by
+	 * the reader so it is filled without holding the lock.
+	 */
+	private void fill() {
+		try {
+			while (true) {
+				int position;
+				int length;
+				synchronized (lock) {
+					while (count == ring.length && !closed)
+						lock.wait();
+					if (closed)
+						return;
+					position = (head + count) % ring.length;
+					length = Math.min(MAX_READ, Math.min(ring.length - count, ring.length - position));
+				}
+
+				int read = source.read(ring, position, length);
+				synchronized (lock) {
+					if (read == -1)
+						endOfInput = true;
+					else
+						count += read;
+					lock.notifyAll();
+					if (endOfInput)
+						return;
+				}
+			}
+		} catch (IOException e) {
+			synchronized (lock) {
+				error = e;
+				endOfInput = true;
+				lock.notifyAll();
+			}
+		} catch (InterruptedException e) {
+			synchronized (lock) {
+				error = new InterruptedIOException("Reading ahead was interrupted");
+				endOfInput = true;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if ((off | len | (off + len) | (b.length - (off + len))) < 0)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return 0;
+
+		synchronized (lock) {
+			try {
+				while (count == 0 && !endOfInput && !closed)
+					lock.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for data");
+			}
+			if (closed)
+				throw new IOException("Stream closed");
+			if (count == 0) {
+				if (error != null)
+					throw error;
+				return -1;
+			}
+
+			// take as much as is there up to the end of the ring.
+			int taken = Math.min(len, Math.min(count, ring.length - head));
+			System.arraycopy(ring, head, b, off, taken);
+			head = (head + taken) % ring.length;
+			count -= taken;
+			lock.notifyAll();
+			return taken;
+		}
+	}
+
+	@Override
+	public int available() {
+		synchronized (lock) {
+			return count;
+		}
+	}
+
+	/**
+	 * stops reading ahead and closes the source.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed)
+				return;
+			closed = true;
+			lock.notifyAll();
+		}
+		closeable.close();
+	}
+
+	/**
+	 * reads bytes from a stream or a channel.
+	 */
+	@FunctionalInterface
+	private interface Source {
+		int read(byte[] b, int off, int len) throws IOException;
+	}
+
+}
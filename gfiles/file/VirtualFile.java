@@ -1,13 +1,13 @@
 package gfiles.file;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.Arrays;
 
 /**
@@ -71,19 +71,20 @@ public class VirtualFile {
 	 *            input stream to read from.
 	 */
 	public VirtualFile(InputStream in) throws IOException {
-		// get the output stream to a byte array to receive the data.
-		ByteArrayOutputStream bOut = new ByteArrayOutputStream();
-
-		// transfer between the two streams.
+		// read straight into the file's array, starting with what the stream
+		// says is available and growing it when it fills up.
+		data = new byte[Math.max(defaultFileSize, in.available() + 1)];
 		int amt;
-		byte[] buffer = new byte[8128];
-		while ((amt = in.read(buffer, 0, buffer.length)) != -1) {
-			bOut.write(buffer, 0, amt);
+		while ((amt = in.read(data, pointer, data.length - pointer)) != -1) {
+			pointer += amt;
+
+			// always keep room for the next byte like the write methods do.
+			if (pointer == data.length) {
+				if (data.length >= Integer.MAX_VALUE - 8)
+					throw new VirtualFileException("Stream is too large to load in the virtual file data type, max size is 2 GB");
+				data = Arrays.copyOf(data, (int) Math.min(Integer.MAX_VALUE - 8, 2L * data.length));
+			}
 		}
-
-		// save the data into the internal buffer.
-		data = bOut.toByteArray();
-		pointer = bOut.size();
 	}
 
 	/**
@@ -100,6 +101,17 @@ public class VirtualFile {
 		pointer = vf.pointer;
 	}
 
+	/**
+	 * makes a virtual file that uses the array as its data without copying
+	 * it, the array needs room after the data for the next byte.
+	 */
+	static VirtualFile wrap(byte[] data, int length) {
+		VirtualFile vf = new VirtualFile(0);
+		vf.data = data;
+		vf.pointer = length;
+		return vf;
+	}
+
 	/**
 	 * writes the given integer ignoring the leading bytes and only writing the
 	 * last byte to the virtual file
@@ -119,6 +131,30 @@ public class VirtualFile {
 		}
 	}
 
+	/**
+	 * writes a range of bytes to the virtual file, growing it once if the bytes
+	 * don't fit rather than once per byte.
+	 * 
+	 * @param info
+	 *            array holding the data to be written
+	 * @param offset
+	 *            index of the first byte to write
+	 * @param length
+	 *            number of bytes to write
+	 */
+	protected synchronized void write(byte[] info, int offset, int length) {
+		// leave room after the data the same way single byte writes do.
+		long needed = (long) pointer + length + 1;
+		if (needed > data.length) {
+			if (needed > Integer.MAX_VALUE - 8)
+				throw new IllegalStateException("virtual files can't be bigger than 2 GB");
+			data = Arrays.copyOf(data, (int) Math.min(Integer.MAX_VALUE - 8,
+					Math.max(needed, 3L * (data.length / 2) + 2)));
+		}
+		System.arraycopy(info, offset, data, pointer, length);
+		pointer += length;
+	}
+
 	/**
 	 * deletes all of the data from the file.
 	 */
@@ -126,6 +162,54 @@ public class VirtualFile {
 		pointer = 0;
 	}
 
+	/**
+	 * replaces the contents of the file with a range of bytes, so one file
+	 * object can be reused for many inputs. The bytes are copied into the
+	 * array the file already has and it is only replaced if the new contents
+	 * don't fit, so reusing a file for inputs of similar sizes doesn't
+	 * allocate anything. Subclasses that read the file start again from the
+	 * beginning.
+	 * 
+	 * @param data
+	 *            array holding the new contents
+	 * @param offset
+	 *            index of the first byte of the contents
+	 * @param length
+	 *            number of bytes in the contents
+	 */
+	public synchronized void reset(byte[] data, int offset, int length) {
+		if (offset < 0 || length < 0 || offset > data.length - length)
+			throw new IndexOutOfBoundsException("Range " + offset + " + " + length + " is outside of the array");
+		clear();
+		write(data, offset, length);
+	}
+
+	/**
+	 * replaces the contents of the file with the given bytes, see
+	 * {@link #reset(byte[], int, int)}.
+	 * 
+	 * @param data
+	 *            new contents of the file
+	 */
+	public void reset(byte[] data) {
+		reset(data, 0, data.length);
+	}
+
+	/**
+	 * replaces the contents of the file with the contents of another virtual
+	 * file, see {@link #reset(byte[], int, int)}.
+	 * 
+	 * @param vf
+	 *            virtual file to copy the contents of
+	 */
+	public void reset(VirtualFile vf) {
+		if (vf == this) {
+			reset(Arrays.copyOf(data, pointer));
+			return;
+		}
+		reset(vf.data, 0, vf.pointer);
+	}
+
 	/**
 	 * reads the byte at the given index, if the index is out of range of the
 	 * file a -1 is returned.
@@ -140,6 +224,18 @@ public class VirtualFile {
 		return data[index] & 0xFF;
 	}
 
+	/**
+	 * gives direct access to the array backing the virtual file. Only the
+	 * first {@link #getBytes() getBytes} bytes are part of the file and the
+	 * array is replaced when the file needs to grow, so it shouldn't be held
+	 * onto across writes.
+	 * 
+	 * @return backing array of the file.
+	 */
+	protected byte[] getData() {
+		return data;
+	}
+
 	/**
 	 * gets the input stream for the virtual file, this will have all of the
 	 * data so far but won't reflect changes in the file.
@@ -242,4 +338,46 @@ public class VirtualFile {
 		return vf;
 	}
 
+	/**
+	 * loads in a virtual file from the file provided, decompressing it if it
+	 * is gzip or zlib and loading it as it is otherwise. Gzip files made of
+	 * more than one member have their members decompressed in parallel. Use
+	 * {@link #load(File)} to load the bytes of a file exactly as they are.
+	 * 
+	 * @param f
+	 *            file to load
+	 * @return the decompressed file
+	 * @throws IOException
+	 *             if file doesn't exist, isn't valid gzip or zlib, or is too
+	 *             big for the virtual file class.
+	 */
+	public static VirtualFile loadDecompressed(File f) throws IOException {
+		if (!f.isFile()) {
+			throw new VirtualFileException("To load a file it needs to be a file, not a directory!!!");
+		}
+
+		// gzip files are read in whole so their members can be found and
+		// decompressed in parallel.
+		if (isGzip(f)) {
+			if (f.length() > Integer.MAX_VALUE) {
+				throw new VirtualFileException("File is too large to load in the virtual file data type, max size is 2 GB");
+			}
+			byte[] compressed = Files.readAllBytes(f.toPath());
+			return GzipMembers.load(compressed, compressed.length);
+		}
+
+		try (InputStream in = new DecompressingInputStream(new FileInputStream(f))) {
+			return new VirtualFile(in);
+		}
+	}
+
+	/**
+	 * checks if the file starts with the gzip magic number.
+	 */
+	private static boolean isGzip(File f) throws IOException {
+		try (InputStream in = new FileInputStream(f)) {
+			return in.read() == GzipMembers.MAGIC_1 && in.read() == GzipMembers.MAGIC_2;
+		}
+	}
+
 }
@@ -30,4 +30,13 @@ public class VirtualFileOutputStream extends OutputStream {
 		file.write(data); 
 	}
 
+	@Override
+	public void write(byte[] data, int offset, int length) {
+		// checks the range like the other output streams then copies it all at
+		// once.
+		if ((offset | length | (offset + length) | (data.length - (offset + length))) < 0)
+			throw new IndexOutOfBoundsException();
+		file.write(data, offset, length);
+	}
+
 }
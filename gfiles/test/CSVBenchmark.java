@@ -0,0 +1,87 @@
+package gfiles.test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import gfiles.text.AsciiTextFile;
+import gfiles.text.AsciiTextFileReader;
+import gfiles.text.CSVCursor;
+import gfiles.text.CSVFile;
+
+/**
+ * compares the speed of parsing a csv file with the old readLine and split
+ * method against the byte level cursor, with and without quoting.
+ */
+public class CSVBenchmark {
+
+	public static void main(String[] args) {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+		byte[] data = generate(rows);
+		double megabytes = data.length / (1024.0 * 1024.0);
+		System.out.printf("%d rows, %.1f MB%n", rows, megabytes);
+
+		for (int round = 0; round < 5; round++) {
+			long start = System.nanoTime();
+			long fields = split(new AsciiTextFile(data));
+			report("split", fields, megabytes, start);
+
+			CSVFile csv = new CSVFile(data);
+			start = System.nanoTime();
+			fields = cursor(csv);
+			report("cursor", fields, megabytes, start);
+
+			csv.setQuoting(true);
+			start = System.nanoTime();
+			fields = cursor(csv);
+			report("quoted cursor", fields, megabytes, start);
+		}
+	}
+
+	/**
+	 * the way the csv file used to split its lines.
+	 */
+	private static long split(AsciiTextFile file) {
+		AsciiTextFileReader reader = new AsciiTextFileReader(file);
+		long fields = 0;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String[] values = line.split(Pattern.quote(","));
+			for (int i = 0; i < values.length; i++)
+				values[i] = values[i].trim();
+			fields += values.length;
+		}
+		return fields;
+	}
+
+	private static long cursor(CSVFile file) {
+		CSVCursor cursor = file.cursor();
+		long fields = 0;
+		while (cursor.next())
+			fields += cursor.fieldCount();
+		return fields;
+	}
+
+	private static void report(String name, long fields, double megabytes, long start) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-14s %10d fields %8.1f MB/s%n", name, fields, megabytes / seconds);
+	}
+
+	/**
+	 * makes simple csv data with no quotes in it.
+	 */
+	private static byte[] generate(int rows) {
+		Random random = new Random(42);
+		StringBuilder builder = new StringBuilder();
+		builder.append("id,name,price,quantity,country\n");
+		String[] countries = { "US", "CA", "GB", "DE", "FR", "JP" };
+		for (int i = 0; i < rows; i++) {
+			builder.append(i).append(',');
+			builder.append("item").append(random.nextInt(100000)).append(',');
+			builder.append(random.nextInt(100000) / 100.0).append(',');
+			builder.append(random.nextInt(1000)).append(',');
+			builder.append(countries[random.nextInt(countries.length)]).append('\n');
+		}
+		return builder.toString().getBytes();
+	}
+
+}
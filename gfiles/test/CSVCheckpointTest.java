@@ -0,0 +1,48 @@
+package gfiles.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gfiles.text.CSVCheckpoint;
+import gfiles.text.CSVFile;
+
+/**
+ * checks that resuming from a checkpoint taken between lines gives the same
+ * lines as reading straight through, including trimming the first line after
+ * the checkpoint.
+ */
+public class CSVCheckpointTest {
+
+	public static void main(String[] args) {
+		byte[] data = "id , name\n 1 , alice\n 2 ,  bob \n 3 , carol\n".getBytes();
+
+		CSVFile straight = new CSVFile(data);
+		straight.ignoreSpacesNearDelimiter(true);
+		List<String> expected = new ArrayList<>();
+		String[] line;
+		while ((line = straight.nextLine()) != null)
+			expected.add(Arrays.toString(line));
+
+		// take a checkpoint from the listener after the first two lines.
+		CSVFile first = new CSVFile(data);
+		first.ignoreSpacesNearDelimiter(true);
+		CSVCheckpoint[] checkpoint = new CSVCheckpoint[1];
+		first.setCheckpointListener(2, c -> checkpoint[0] = c);
+		first.nextLine();
+		first.nextLine();
+		first.nextLine();
+
+		CSVFile resumed = new CSVFile(data);
+		resumed.ignoreSpacesNearDelimiter(true);
+		resumed.resume(checkpoint[0]);
+		List<String> actual = new ArrayList<>(expected.subList(0, 2));
+		while ((line = resumed.nextLine()) != null)
+			actual.add(Arrays.toString(line));
+
+		if (!actual.equals(expected))
+			throw new AssertionError("Resumed " + actual + " but expected " + expected);
+		System.out.println("resume at line boundary: " + actual);
+	}
+
+}
@@ -0,0 +1,56 @@
+package gfiles.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import gfiles.text.CSVWriter;
+
+/**
+ * checks that numbers written with a fixed number of decimal places are
+ * rounded the same way whether they are written from a long or, when they are
+ * too big for that, from a BigDecimal.
+ */
+public class CSVWriterTest {
+
+	public static void main(String[] args) throws IOException {
+		// halfway values that aren't exact doubles, written from a long.
+		check(2.675, 2);
+		check(-2.675, 2);
+		check(1.005, 2);
+		check(0.125, 2);
+		check(0.375, 2);
+		check(2.5, 0);
+		check(3.5, 0);
+
+		// either side of the point where the scaled value is too big for the
+		// long path.
+		check(9.99999999999995e12, 2);
+		check(1.0000000000000005e13, 2);
+		check(4503599627370497.5, 0);
+		check(2.675, 15);
+		check(2.675, 16);
+
+		Random random = new Random(42);
+		for (int i = 0; i < 1_000_000; i++) {
+			int decimals = random.nextInt(18);
+			double value = (random.nextInt(2_000_000) - 1_000_000) / 1000.0 + 0.0005 * random.nextInt(3);
+			check(value * Math.pow(10, random.nextInt(10)), decimals);
+		}
+		System.out.println("fixed decimals: ok");
+	}
+
+	private static void check(double value, int decimals) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CSVWriter writer = new CSVWriter(out);
+		writer.write(value, decimals).flush();
+		String actual = out.toString("US-ASCII");
+		String expected = new BigDecimal(value).setScale(decimals, RoundingMode.HALF_EVEN).toPlainString();
+		if (!actual.equals(expected))
+			throw new AssertionError(value + " to " + decimals + " decimals was written as " + actual
+					+ " but should be " + expected);
+	}
+
+}
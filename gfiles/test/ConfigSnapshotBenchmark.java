@@ -0,0 +1,174 @@
+package gfiles.test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import gfiles.text.ConfigFile;
+import gfiles.text.ConfigReference;
+import gfiles.text.ConfigRegistry;
+import gfiles.text.ConfigSnapshot;
+
+/**
+ * compares the cost of reading config values on many threads while another
+ * thread keeps reloading the config, between plain registry fields, registry
+ * fields read under a lock and an immutable config published through a
+ * {@link ConfigReference}. Every config sets a and b to the same number, so a
+ * read that sees them differ has seen a reload part way through.
+ */
+public class ConfigSnapshotBenchmark {
+
+	// values that were read end up here so the reads can't be left out.
+	private static volatile long sink;
+
+	public static void main(String[] args) throws InterruptedException {
+		long reads = args.length > 0 ? Long.parseLong(args[0]) : 50_000_000L;
+		int threads = args.length > 1 ? Integer.parseInt(args[1])
+				: Math.max(2, Runtime.getRuntime().availableProcessors());
+		byte[][] configs = new byte[64][];
+		for (int i = 0; i < configs.length; i++)
+			configs[i] = generateConfig(i);
+		System.out.printf("%d reads per thread on %d threads%n", reads, threads);
+
+		for (int round = 0; round < 5; round++) {
+			PairRegistry plain = new PairRegistry();
+			run("registry fields", reads, threads, configs, file -> file.loadConfig(plain), () -> {
+				int a = plain.a;
+				return a == plain.b ? a : -1;
+			});
+
+			PairRegistry locked = new PairRegistry();
+			run("registry locked", reads, threads, configs, file -> {
+				synchronized (locked) {
+					file.loadConfig(locked);
+				}
+			}, () -> {
+				synchronized (locked) {
+					return locked.a == locked.b ? locked.a : -1;
+				}
+			});
+
+			ConfigReference<Pair> reference = new ConfigReference<>(Pair::new);
+			run("snapshot", reads, threads, configs, reference::load, () -> {
+				Pair pair = reference.get();
+				return pair.a == pair.b ? pair.a : -1;
+			});
+			run("snapshot no reloads", reads, threads, null, null, () -> {
+				Pair pair = reference.get();
+				return pair.a == pair.b ? pair.a : -1;
+			});
+			System.out.println();
+		}
+	}
+
+	private interface Loader {
+		void load(ConfigFile file);
+	}
+
+	private interface Reader {
+		// gives back the value that was read, or -1 if the read was torn.
+		int read();
+	}
+
+	/**
+	 * reads the config on each thread while one more thread reloads it until
+	 * they are done, then reports the time per read, the reloads and the torn
+	 * reads.
+	 */
+	private static void run(String name, long reads, int threads, byte[][] configs, Loader loader, Reader reader)
+			throws InterruptedException {
+		AtomicBoolean done = new AtomicBoolean();
+		long[] reloads = new long[1];
+		Thread reloader = new Thread(() -> {
+			ConfigFile file = new ConfigFile();
+			for (int i = 0; !done.get(); i++) {
+				file.reset(configs[i % configs.length]);
+				loader.load(file);
+				reloads[0]++;
+			}
+		});
+
+		long[] torn = new long[threads];
+		long[] sums = new long[threads];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			int thread = t;
+			workers[t] = new Thread(() -> {
+				long sum = 0;
+				long tears = 0;
+				for (long i = 0; i < reads; i++) {
+					int value = reader.read();
+					if (value == -1)
+						tears++;
+					else
+						sum += value;
+				}
+				sums[thread] = sum;
+				torn[thread] = tears;
+			});
+		}
+
+		long start = System.nanoTime();
+		if (loader != null)
+			reloader.start();
+		for (Thread worker : workers)
+			worker.start();
+		for (Thread worker : workers)
+			worker.join();
+		long time = System.nanoTime() - start;
+		done.set(true);
+		if (loader != null)
+			reloader.join();
+
+		long tears = 0;
+		long sum = 0;
+		for (int t = 0; t < threads; t++) {
+			tears += torn[t];
+			sum += sums[t];
+		}
+		sink += sum;
+		System.out.printf("%-20s %7.2f ns/read %8d reloads %8d torn reads%n", name, (double) time / reads,
+				reloads[0], tears);
+	}
+
+	/**
+	 * makes a config that sets a and b to the number, along with some other
+	 * options.
+	 */
+	private static byte[] generateConfig(int number) {
+		StringBuilder builder = new StringBuilder("# generated config\n");
+		builder.append("a = ").append(number).append('\n');
+		for (int i = 0; i < 20; i++)
+			builder.append("option").append(i).append(" = value ").append(number).append('\n');
+		builder.append("b = ").append(number).append('\n');
+		return builder.toString().getBytes();
+	}
+
+	/**
+	 * registry that sets plain fields like {@link TestConfigRegistry}.
+	 */
+	private static class PairRegistry extends ConfigRegistry {
+		private int a;
+		private int b;
+
+		@Override
+		protected void initConfigMap() {
+			addConfigElement("a", value -> a = Integer.parseInt(value));
+			addConfigElement("b", value -> b = Integer.parseInt(value));
+			for (int i = 0; i < 20; i++)
+				addConfigElement("option" + i, value -> {});
+		}
+	}
+
+	/**
+	 * immutable config with the same values.
+	 */
+	private static final class Pair {
+		private final int a;
+		private final int b;
+
+		Pair(ConfigSnapshot config) {
+			a = config.getInt("a", 0);
+			b = config.getInt("b", 0);
+		}
+	}
+
+}
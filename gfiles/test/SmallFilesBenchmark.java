@@ -0,0 +1,194 @@
+package gfiles.test;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import gfiles.text.CSVCursor;
+import gfiles.text.CSVFile;
+import gfiles.text.ConfigFile;
+import gfiles.text.xml.XMLFile;
+
+/**
+ * compares the throughput of parsing many small csv, config and xml files
+ * when a new parser is made for every file against reusing one parser per
+ * thread with reset, along with how much garbage collection each one causes.
+ */
+public class SmallFilesBenchmark {
+
+	// parsers kept for each thread and reset for every file.
+	private static final ThreadLocal<CSVFile> CSV = ThreadLocal.withInitial(CSVFile::new);
+	private static final ThreadLocal<ConfigFile> CONFIG = ThreadLocal.withInitial(ConfigFile::new);
+	private static final ThreadLocal<XMLFile> XML = ThreadLocal.withInitial(XMLFile::new);
+
+	public static void main(String[] args) throws InterruptedException {
+		int files = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		byte[][] csv = new byte[64][];
+		byte[][] config = new byte[64][];
+		byte[][] xml = new byte[64][];
+		Random random = new Random(42);
+		for (int i = 0; i < csv.length; i++) {
+			csv[i] = generateCSV(random);
+			config[i] = generateConfig(random);
+			xml[i] = generateXML(random);
+		}
+		System.out.printf("%d files per run on %d threads%n", files, threads);
+
+		for (int round = 0; round < 5; round++) {
+			run("csv new", files, threads, i -> {
+				CSVFile file = new CSVFile(csv[i % csv.length]);
+				return parse(file);
+			});
+			run("csv reset", files, threads, i -> {
+				CSVFile file = CSV.get();
+				file.reset(csv[i % csv.length]);
+				return parse(file);
+			});
+			run("config new", files, threads, i -> {
+				ConfigFile file = new ConfigFile(config[i % config.length]);
+				return parse(file);
+			});
+			run("config reset", files, threads, i -> {
+				ConfigFile file = CONFIG.get();
+				file.reset(config[i % config.length]);
+				return parse(file);
+			});
+			run("xml new", files, threads, i -> {
+				XMLFile file = new XMLFile(xml[i % xml.length]);
+				return parse(file);
+			});
+			run("xml reset", files, threads, i -> {
+				XMLFile file = XML.get();
+				file.reset(xml[i % xml.length]);
+				return parse(file);
+			});
+			System.out.println();
+		}
+	}
+
+	private interface Task {
+		long parse(int file);
+	}
+
+	/**
+	 * parses the files split between the threads and reports the files per
+	 * second and the collections that happened.
+	 */
+	private static void run(String name, int files, int threads, Task task) throws InterruptedException {
+		long[] results = new long[threads];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			int id = t;
+			workers[t] = new Thread(() -> {
+				long total = 0;
+				for (int i = id; i < files; i += threads)
+					total += task.parse(i);
+				results[id] = total;
+			});
+		}
+
+		long collections = collections();
+		long start = System.nanoTime();
+		for (Thread worker : workers)
+			worker.start();
+		for (Thread worker : workers)
+			worker.join();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		collections = collections() - collections;
+
+		long total = 0;
+		for (long result : results)
+			total += result;
+		System.out.printf("%-13s %10.0f files/s %6d gcs %10d items%n", name, files / seconds, collections, total);
+	}
+
+	private static long collections() {
+		long count = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(0, bean.getCollectionCount());
+		return count;
+	}
+
+	private static long parse(CSVFile file) {
+		CSVCursor cursor = file.cursor();
+		long fields = 0;
+		while (cursor.next())
+			fields += cursor.fieldCount();
+		return fields;
+	}
+
+	private static long parse(ConfigFile file) {
+		CountingRegistry registry = new CountingRegistry();
+		file.loadConfig(registry);
+		return registry.count;
+	}
+
+	private static long parse(XMLFile file) {
+		long tags = 0;
+		file.nextTag();
+		while (!file.endOfFile()) {
+			tags++;
+			file.nextTag();
+		}
+		return tags;
+	}
+
+	/**
+	 * makes a csv file of a few dozen rows.
+	 */
+	private static byte[] generateCSV(Random random) {
+		StringBuilder builder = new StringBuilder("id,name,price,quantity\n");
+		int rows = 10 + random.nextInt(40);
+		for (int i = 0; i < rows; i++) {
+			builder.append(i).append(',');
+			builder.append("item").append(random.nextInt(100000)).append(',');
+			builder.append(random.nextInt(100000) / 100.0).append(',');
+			builder.append(random.nextInt(50)).append('\n');
+		}
+		return builder.toString().getBytes();
+	}
+
+	/**
+	 * makes a config file using the options of the test registry.
+	 */
+	private static byte[] generateConfig(Random random) {
+		StringBuilder builder = new StringBuilder("# generated config\n");
+		for (int i = 0; i < 10; i++) {
+			builder.append("x = ").append(random.nextInt()).append('\n');
+			builder.append("y=value ").append(random.nextInt(1000)).append(" # comment\n");
+			builder.append("  z = ").append(random.nextInt(1000)).append("\n\n");
+		}
+		return builder.toString().getBytes();
+	}
+
+	/**
+	 * makes an xml file of a few dozen elements.
+	 */
+	private static byte[] generateXML(Random random) {
+		StringBuilder builder = new StringBuilder("<?xml version=\"1.0\"?>\n<items>\n");
+		int items = 5 + random.nextInt(20);
+		for (int i = 0; i < items; i++) {
+			builder.append("  <item id=\"").append(i).append("\">\n");
+			builder.append("    <name>item").append(random.nextInt(100000)).append("</name>\n");
+			builder.append("    <price>").append(random.nextInt(100000) / 100.0).append("</price>\n");
+			builder.append("  </item>\n");
+		}
+		builder.append("</items>\n");
+		return builder.toString().getBytes();
+	}
+
+	/**
+	 * registry that counts the options it is given.
+	 */
+	private static class CountingRegistry extends TestConfigRegistry {
+		private long count;
+
+		@Override
+		public boolean applyConfigOption(String variable, String value) {
+			count++;
+			return super.applyConfigOption(variable, value);
+		}
+	}
+
+}
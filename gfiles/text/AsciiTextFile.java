@@ -3,7 +3,10 @@ package gfiles.text;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
 
+import gfiles.file.DecompressingInputStream;
 import gfiles.file.VirtualFile;
 
 /**
@@ -18,6 +21,13 @@ public class AsciiTextFile extends VirtualFile {
 	// default constructor.
 	private static final int defaultFileSize = 1024;
 
+	// decoder for when the file holds utf-8 instead of plain ascii, null if
+	// each byte is its own character.
+	private Utf8Index utf8 = null;
+
+	// high surrogate waiting for its low surrogate when writing utf-8.
+	private char pendingSurrogate = 0;
+
 	/**
 	 * default constructor just makes a new blank text file with nothing in it.
 	 */
@@ -50,17 +60,21 @@ public class AsciiTextFile extends VirtualFile {
 		// construct the underlying virtual file using the copy constructor.
 		super(vf);
 
+		// keep reading the text the same way as the file that was copied.
+		if (vf instanceof AsciiTextFile && ((AsciiTextFile) vf).isUtf8())
+			setUtf8(true);
 	}
 
 	/**
-	 * creates an ascii text file from an input stream.
+	 * creates an ascii text file from an input stream. Gzip and zlib input is
+	 * decompressed as it is read, see {@link DecompressingInputStream}.
 	 * 
 	 * @param in
 	 *            input stream to read from until finish.
 	 * @throws IOException
 	 */
 	public AsciiTextFile(InputStream in) throws IOException {
-		super(in);
+		super(new DecompressingInputStream(in));
 	}
 
 	/**
@@ -70,13 +84,240 @@ public class AsciiTextFile extends VirtualFile {
 	 *            character to write.
 	 */
 	public void writeChar(char c) {
-		// write the data to the underlying virtual file.
-		write(c);
+		// ascii files just write the data to the underlying virtual file.
+		if (utf8 == null) {
+			write(c);
+			return;
+		}
+
+		if (Character.isLowSurrogate(c) && pendingSurrogate != 0) {
+			char high = pendingSurrogate;
+			pendingSurrogate = 0;
+			writeCodePoint(Character.toCodePoint(high, c));
+			return;
+		}
+
+		// a high surrogate that isn't followed by a low one can't be encoded,
+		// the same as a lone low surrogate.
+		if (pendingSurrogate != 0) {
+			pendingSurrogate = 0;
+			writeCodePoint(0xFFFD);
+		}
+
+		// hold onto high surrogates until the rest of the code point is given.
+		if (Character.isHighSurrogate(c)) {
+			pendingSurrogate = c;
+			return;
+		}
+		writeCodePoint(Character.isSurrogate(c) ? 0xFFFD : c);
+	}
+
+	/**
+	 * writes the utf-8 bytes of the code point.
+	 */
+	private void writeCodePoint(int codePoint) {
+		if (codePoint < 0x80) {
+			write(codePoint);
+		} else if (codePoint < 0x800) {
+			write(0xC0 | (codePoint >> 6));
+			write(0x80 | (codePoint & 0x3F));
+		} else if (codePoint < 0x10000) {
+			write(0xE0 | (codePoint >> 12));
+			write(0x80 | ((codePoint >> 6) & 0x3F));
+			write(0x80 | (codePoint & 0x3F));
+		} else {
+			write(0xF0 | (codePoint >> 18));
+			write(0x80 | ((codePoint >> 12) & 0x3F));
+			write(0x80 | ((codePoint >> 6) & 0x3F));
+			write(0x80 | (codePoint & 0x3F));
+		}
 	}
 
+	/**
+	 * reads the character at the given index. For an ascii file this is the
+	 * byte at that index, for a utf-8 file it is the character at that index
+	 * after decoding.
+	 * 
+	 * @param i
+	 *            index of the character
+	 * @return the character or (char) 65535 if past the end of the file
+	 */
 	public char readCharAt(int i) {
+		if (utf8 != null)
+			return utf8.charAt(i);
 		return (char) readAt(i);
 	}
+
+	/**
+	 * sets whether the bytes of the file should be decoded as utf-8 instead of
+	 * treating each byte as a character. This is what lets the csv, config
+	 * and xml files read utf-8 text, see {@link Utf8TextFile}.
+	 * 
+	 * @param utf8
+	 *            true to decode the file as utf-8
+	 */
+	public void setUtf8(boolean utf8) {
+		if (utf8 == isUtf8())
+			return;
+		this.utf8 = utf8 ? new Utf8Index(this) : null;
+	}
+
+	/**
+	 * tells whether the file is being decoded as utf-8.
+	 * 
+	 * @return true if the file is utf-8
+	 */
+	public boolean isUtf8() {
+		return utf8 != null;
+	}
+
+	/**
+	 * gets the number of characters in the file, for an ascii file this is the
+	 * same as the number of bytes.
+	 * 
+	 * @return number of characters in the file
+	 */
+	public int length() {
+		if (utf8 != null)
+			return utf8.length();
+		return getBytes();
+	}
+
+	@Override
+	public synchronized void clear() {
+		super.clear();
+
+		// anything decoded so far is no longer valid.
+		if (utf8 != null)
+			utf8.reset();
+	}
+
+	/**
+	 * throws away anything decoded from the file, for when its bytes have
+	 * been changed in place instead of written.
+	 */
+	void bytesChanged() {
+		if (utf8 != null)
+			utf8.reset();
+	}
+
+	/**
+	 * finds the first line whose timestamp is at or after the given time by
+	 * binary searching the bytes of the file, which needs the lines of the
+	 * file to be sorted by their timestamps. After each probe the search moves
+	 * forward to the start of the next line that has a timestamp, so lines
+	 * without one (like the rest of a stack trace) are skipped over.
+	 * 
+	 * @param time
+	 *            time to look for
+	 * @param extractor
+	 *            pulls the timestamp out of a line
+	 * @return byte offset of the start of the line, or the size of the file if
+	 *         every line is before the time
+	 */
+	public int findLineAtTime(long time, TimestampExtractor extractor) {
+		byte[] data = bytes();
+		int end = getBytes();
+
+		// reused to view each probed line without copying it.
+		ByteSequence view = new ByteSequence();
+
+		// every line with a timestamp that starts before low is before the
+		// time, and no line with a timestamp starts between high and result.
+		int low = 0;
+		int high = end;
+		int result = end;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			// resynchronize to the first line with a timestamp after the probe.
+			int line = ByteSearch.lineStart(data, mid, end);
+			long timestamp = TimestampExtractor.NO_TIMESTAMP;
+			while (line < high) {
+				timestamp = extractor.extract(line(data, line, end, view));
+				if (timestamp != TimestampExtractor.NO_TIMESTAMP)
+					break;
+				line = ByteSearch.nextLine(data, line, end);
+			}
+
+			if (line >= high) {
+				// nothing in the upper half to look at.
+				high = mid;
+			} else if (timestamp < time) {
+				low = ByteSearch.nextLine(data, line, end);
+			} else {
+				result = line;
+				high = mid;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * passes each line from the first with a timestamp at or after from up to
+	 * the first with a timestamp at or after to to the given action. Both ends
+	 * are found with {@link #findLineAtTime(long, TimestampExtractor)
+	 * findLineAtTime} so only the lines in the range are read, and lines
+	 * without a timestamp inside of the range are passed along as well.
+	 * 
+	 * @param from
+	 *            start of the time range, inclusive
+	 * @param to
+	 *            end of the time range, exclusive
+	 * @param extractor
+	 *            pulls the timestamp out of a line
+	 * @param action
+	 *            action to take with each line in the range
+	 */
+	public void forEachLineBetween(long from, long to, TimestampExtractor extractor, Consumer<String> action) {
+		int start = findLineAtTime(from, extractor);
+		int stop = findLineAtTime(to, extractor);
+
+		byte[] data = bytes();
+		int end = getBytes();
+		for (int line = start; line < stop; line = ByteSearch.nextLine(data, line, end)) {
+			action.accept(decode(data, line, ByteSearch.lineEnd(data, line, end)));
+		}
+	}
+
+	/**
+	 * views the line starting at the given byte, without its line break.
+	 */
+	private CharSequence line(byte[] data, int start, int end, ByteSequence view) {
+		int lineEnd = ByteSearch.lineEnd(data, start, end);
+
+		// utf-8 lines need to be decoded, ascii can be viewed directly.
+		if (utf8 != null)
+			return decode(data, start, lineEnd);
+		return view.set(data, start, lineEnd);
+	}
+
+	/**
+	 * turns a range of the file's bytes into a string using the encoding of
+	 * the file.
+	 * 
+	 * @param data
+	 *            bytes of the file
+	 * @param start
+	 *            first byte of the string
+	 * @param end
+	 *            index after the last byte of the string
+	 * @return the decoded string
+	 */
+	String decode(byte[] data, int start, int end) {
+		return new String(data, start, end - start, utf8 != null ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * gives the classes reading the file access to the raw bytes, see
+	 * {@link VirtualFile#getData()}.
+	 * 
+	 * @return backing array of the file
+	 */
+	byte[] bytes() {
+		return getData();
+	}
 	
 	/**
 	 * used to get the string representation of the ascii text file
@@ -84,19 +325,19 @@ public class AsciiTextFile extends VirtualFile {
 	 * @since Apr 11, 2017
 	 */
 	public CharSequence getCharacterSequence(){
-		return new AsciiTextFileSequence(0, this.getBytes(), this);
+		return new AsciiTextFileSequence(0, length(), this);
 	}
 
 	/**
 	 * loads a text file using the ascii formatting and returns a new ascii text
-	 * file containing its contents.
+	 * file containing its contents, decompressing it if it is gzip or zlib.
 	 * 
 	 * @param f
 	 *            file to read
 	 * @return file loaded into an ascii text file
 	 */
 	public static AsciiTextFile load(File f) throws IOException {
-		VirtualFile vf = VirtualFile.load(f);
+		VirtualFile vf = VirtualFile.loadDecompressed(f);
 		return new AsciiTextFile(vf);
 	}
 }
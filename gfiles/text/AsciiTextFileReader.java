@@ -43,6 +43,15 @@ public class AsciiTextFileReader {
 		this.pointer = pos;
 	}
 
+	/**
+	 * gets the position of the next character that will be read.
+	 * 
+	 * @return index of the next character
+	 */
+	public int getPointer() {
+		return pointer;
+	}
+
 	/**
 	 * moves the pointer back one position, if the pointer is already at the
 	 * beginning it has no effect.
@@ -0,0 +1,257 @@
+package gfiles.text;
+
+/**
+ * helper methods for scanning through the raw bytes of a text file a word (8
+ * bytes) at a time instead of a byte at a time.
+ *
+ * @author Gavin
+ *
+ */
+final class ByteSearch {
+
+	// mask with the high bit of every byte in a word set.
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	// mask with the low bit of every byte in a word set.
+	private static final long LOW_BITS = 0x0101010101010101L;
+
+	// mask with all but the high bit of every byte in a word set.
+	private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+	private ByteSearch() {}
+
+	/**
+	 * reads the 8 bytes at the index as a word, little endian so the lowest
+	 * byte of the word is the first byte in the array. The bytes are put
+	 * together by hand so a search doesn't have to wrap the array in a new
+	 * buffer every time.
+	 *
+	 * @param data
+	 *            array to read from
+	 * @param index
+	 *            index of the first byte of the word
+	 * @return the word
+	 */
+	static long word(byte[] data, int index) {
+		return (data[index] & 0xFFL) | (data[index + 1] & 0xFFL) << 8 | (data[index + 2] & 0xFFL) << 16
+				| (data[index + 3] & 0xFFL) << 24 | (data[index + 4] & 0xFFL) << 32 | (data[index + 5] & 0xFFL) << 40
+				| (data[index + 6] & 0xFFL) << 48 | (data[index + 7] & 0xFFL) << 56;
+	}
+
+	/**
+	 * finds the first byte in the range that isn't an ascii character, i.e.
+	 * has its high bit set.
+	 *
+	 * @param data
+	 *            bytes to search
+	 * @param from
+	 *            first index to look at
+	 * @param to
+	 *            index to stop before
+	 * @return index of the first non ascii byte or to if all are ascii
+	 */
+	static int firstNonAscii(byte[] data, int from, int to) {
+		int i = from;
+
+		// skip whole words while none of their bytes have the high bit set.
+		while (i <= to - 8 && (word(data, i) & HIGH_BITS) == 0)
+			i += 8;
+
+		// finish off byte by byte.
+		while (i < to && data[i] >= 0)
+			i++;
+
+		return i;
+	}
+
+	/**
+	 * finds the first index of either of the two bytes in the range.
+	 *
+	 * @param data
+	 *            bytes to search
+	 * @param from
+	 *            first index to look at
+	 * @param to
+	 *            index to stop before
+	 * @param a
+	 *            first byte to look for
+	 * @param b
+	 *            second byte to look for
+	 * @return index of the first match or to if neither was found
+	 */
+	static int indexOfEither(byte[] data, int from, int to, byte a, byte b) {
+		int i = from;
+
+		if (to - i >= 8) {
+			long patternA = broadcast(a);
+			long patternB = broadcast(b);
+			while (i <= to - 8) {
+				long word = word(data, i);
+				long found = matches(word, patternA) | matches(word, patternB);
+				if (found != 0)
+					return i + (Long.numberOfTrailingZeros(found) >>> 3);
+				i += 8;
+			}
+		}
+
+		for (; i < to; i++) {
+			if (data[i] == a || data[i] == b)
+				return i;
+		}
+		return to;
+	}
+
+	/**
+	 * finds the first index of any of the three bytes in the range.
+	 *
+	 * @param data
+	 *            bytes to search
+	 * @param from
+	 *            first index to look at
+	 * @param to
+	 *            index to stop before
+	 * @param a
+	 *            first byte to look for
+	 * @param b
+	 *            second byte to look for
+	 * @param c
+	 *            third byte to look for
+	 * @return index of the first match or to if none were found
+	 */
+	static int indexOfAny(byte[] data, int from, int to, byte a, byte b, byte c) {
+		int i = from;
+
+		if (to - i >= 8) {
+			long patternA = broadcast(a);
+			long patternB = broadcast(b);
+			long patternC = broadcast(c);
+			while (i <= to - 8) {
+				long word = word(data, i);
+				long found = matches(word, patternA) | matches(word, patternB) | matches(word, patternC);
+				if (found != 0)
+					return i + (Long.numberOfTrailingZeros(found) >>> 3);
+				i += 8;
+			}
+		}
+
+		for (; i < to; i++) {
+			byte x = data[i];
+			if (x == a || x == b || x == c)
+				return i;
+		}
+		return to;
+	}
+
+	/**
+	 * counts how many times the byte appears in the range.
+	 *
+	 * @param data
+	 *            bytes to search
+	 * @param from
+	 *            first index to look at
+	 * @param to
+	 *            index to stop before
+	 * @param b
+	 *            byte to count
+	 * @return number of times the byte was found
+	 */
+	static int count(byte[] data, int from, int to, byte b) {
+		int i = from;
+		int count = 0;
+
+		if (to - i >= 8) {
+			long pattern = broadcast(b);
+			while (i <= to - 8) {
+				count += Long.bitCount(matches(word(data, i), pattern));
+				i += 8;
+			}
+		}
+
+		for (; i < to; i++) {
+			if (data[i] == b)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * finds the start of the first line that begins at or after the given
+	 * index. A line starts after a \n, or after a \r that isn't followed by a
+	 * \n, the same as the {@link AsciiTextFileReader#readLine() readLine}
+	 * method.
+	 *
+	 * @param data
+	 *            bytes to search
+	 * @param index
+	 *            index to start looking at
+	 * @param end
+	 *            end of the data
+	 * @return the start of the line or end if there isn't another line
+	 */
+	static int lineStart(byte[] data, int index, int end) {
+		if (index <= 0)
+			return 0;
+		if (index >= end)
+			return end;
+
+		// check if the index is already at the start of a line.
+		byte previous = data[index - 1];
+		if (previous == '\n' || (previous == '\r' && data[index] != '\n'))
+			return index;
+
+		return nextLine(data, index, end);
+	}
+
+	/**
+	 * finds the start of the line after the one containing the given index.
+	 *
+	 * @param data
+	 *            bytes to search
+	 * @param index
+	 *            index inside of the current line
+	 * @param end
+	 *            end of the data
+	 * @return the start of the next line or end if there isn't one
+	 */
+	static int nextLine(byte[] data, int index, int end) {
+		int lineEnd = indexOfEither(data, index, end, (byte) '\n', (byte) '\r');
+		if (lineEnd == end)
+			return end;
+		if (data[lineEnd] == '\r' && lineEnd + 1 < end && data[lineEnd + 1] == '\n')
+			return lineEnd + 2;
+		return lineEnd + 1;
+	}
+
+	/**
+	 * finds the end of the line starting at the given index, i.e. the index of
+	 * its line break.
+	 *
+	 * @param data
+	 *            bytes to search
+	 * @param index
+	 *            start of the line
+	 * @param end
+	 *            end of the data
+	 * @return index of the line break or end if the line runs to the end
+	 */
+	static int lineEnd(byte[] data, int index, int end) {
+		return indexOfEither(data, index, end, (byte) '\n', (byte) '\r');
+	}
+
+	/**
+	 * copies the byte into every byte of a word.
+	 */
+	static long broadcast(byte b) {
+		return (b & 0xFFL) * LOW_BITS;
+	}
+
+	/**
+	 * gives a word with the high bit set in exactly the bytes of the word that
+	 * equal the corresponding byte of the pattern.
+	 */
+	static long matches(long word, long pattern) {
+		long x = word ^ pattern;
+		return ~(((x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | x | LOW_SEVEN_BITS);
+	}
+
+}
@@ -0,0 +1,77 @@
+package gfiles.text;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * character sequence that views a range of bytes as characters, each byte
+ * being a single character the same as in an ascii text file. The range can be
+ * moved so one sequence can be reused without copying any bytes.
+ *
+ * @author Gavin
+ *
+ */
+final class ByteSequence implements CharSequence {
+
+	private byte[] data;
+	private int start;
+	private int end;
+
+	/**
+	 * creates an empty sequence, call {@link #set(byte[], int, int) set} to
+	 * give it bytes to view.
+	 */
+	ByteSequence() {
+		this(new byte[0], 0, 0);
+	}
+
+	/**
+	 * creates a sequence viewing the given range of bytes.
+	 *
+	 * @param data
+	 *            bytes to view
+	 * @param start
+	 *            first byte of the sequence
+	 * @param end
+	 *            index after the last byte of the sequence
+	 */
+	ByteSequence(byte[] data, int start, int end) {
+		set(data, start, end);
+	}
+
+	/**
+	 * moves the sequence to view a different range of bytes.
+	 *
+	 * @return this sequence
+	 */
+	ByteSequence set(byte[] data, int start, int end) {
+		this.data = data;
+		this.start = start;
+		this.end = end;
+		return this;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length())
+			throw new IndexOutOfBoundsException();
+		return (char) (data[start + index] & 0xFF);
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length() || start > end)
+			throw new IndexOutOfBoundsException();
+		return new ByteSequence(data, this.start + start, this.start + end);
+	}
+
+	@Override
+	public String toString() {
+		return new String(data, start, length(), StandardCharsets.ISO_8859_1);
+	}
+
+}
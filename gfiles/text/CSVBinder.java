@@ -0,0 +1,569 @@
+package gfiles.text;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * turns the rows of a csv file into objects of a class. The titles of the file
+ * are matched to the fields of the class once, by name ignoring case and any
+ * underscores, dashes or spaces, and each matched column gets a setter made
+ * from a {@link MethodHandle} for the field. Numbers are parsed straight from
+ * the bytes of the row without making strings.
+ *
+ * The class needs a constructor without parameters, which can be private.
+ * Static, transient and final fields are never set. Fields can be primitives,
+ * their boxes, strings, {@link LocalDate}s, {@link BigDecimal}s or enums. An
+ * empty value leaves a primitive field at its default and sets any other field
+ * to null.
+ *
+ * Json lines files can be bound the same way, with the keys of their objects
+ * in place of the titles.
+ *
+ * To use, create a binder for the class and bind a file, e.g.
+ *
+ * <pre>
+ * List&lt;Trade&gt; trades = new CSVBinder&lt;&gt;(Trade.class).map("px", "price").bindAll(file);
+ * </pre>
+ *
+ * @author Gavin
+ *
+ * @param <T>
+ *            type of the objects
+ */
+public class CSVBinder<T> {
+
+	// class of the objects.
+	private final Class<T> type;
+
+	// makes a new object.
+	private final MethodHandle constructor;
+
+	// fields that can be set by their normalized name.
+	private final Map<String, Field> fields = new HashMap<>();
+
+	// titles that are mapped to a field with a different name.
+	private final Map<String, String> mappings = new HashMap<>();
+
+	// setter for each column of the titles given to setTitles, null if the
+	// column isn't bound to a field. Binding a whole file or stream works out
+	// its own setters so they can't get mixed up with each other.
+	private volatile Setter[] plan;
+
+	/**
+	 * creates a binder for the class.
+	 *
+	 * @param type
+	 *            class of the objects
+	 * @throws IllegalArgumentException
+	 *             if the class doesn't have a constructor without parameters
+	 */
+	public CSVBinder(Class<T> type) {
+		this.type = type;
+		try {
+			java.lang.reflect.Constructor<T> noArgs = type.getDeclaredConstructor();
+			noArgs.setAccessible(true);
+			constructor = MethodHandles.lookup().unreflectConstructor(noArgs)
+					.asType(MethodType.methodType(Object.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalArgumentException(type.getName() + " needs a constructor without parameters", e);
+		}
+
+		// fields of subclasses hide fields of superclasses with the same name.
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || Modifier.isFinal(modifiers)
+						|| field.isSynthetic())
+					continue;
+				fields.putIfAbsent(normalize(field.getName()), field);
+			}
+		}
+	}
+
+	/**
+	 * binds the column with the title to a field with a different name.
+	 *
+	 * @param title
+	 *            title of the column
+	 * @param field
+	 *            name of the field
+	 * @return this binder
+	 * @throws IllegalArgumentException
+	 *             if the class doesn't have a field with the name that can be
+	 *             set
+	 */
+	public CSVBinder<T> map(String title, String field) {
+		if (!fields.containsKey(normalize(field)))
+			throw new IllegalArgumentException(type.getName() + " doesn't have a field named " + field);
+		mappings.put(title, field);
+		plan = null;
+		return this;
+	}
+
+	/**
+	 * sets the titles of the columns of the rows that will be bound, working
+	 * out which field each column sets. Columns without a field are skipped.
+	 *
+	 * @param titles
+	 *            titles of the columns
+	 * @return this binder
+	 */
+	public CSVBinder<T> setTitles(String... titles) {
+		plan = plan(titles);
+		return this;
+	}
+
+	/**
+	 * works out the setter for each column of the titles.
+	 */
+	private Setter[] plan(String[] titles) {
+		Setter[] setters = new Setter[titles.length];
+		for (int i = 0; i < titles.length; i++) {
+			String name = mappings.getOrDefault(titles[i], titles[i]);
+			Field field = name == null ? null : fields.get(normalize(name));
+			if (field != null)
+				setters[i] = setter(field);
+		}
+		return setters;
+	}
+
+	/**
+	 * makes an object from a row using the current titles.
+	 *
+	 * @param row
+	 *            row to bind
+	 * @return the object
+	 * @throws IllegalStateException
+	 *             if the titles haven't been set
+	 * @throws IllegalArgumentException
+	 *             if a value can't be turned into its field's type
+	 */
+	public T bind(TextRow row) {
+		Setter[] setters = plan;
+		if (setters == null)
+			throw new IllegalStateException("The titles haven't been set");
+		return bind(setters, row);
+	}
+
+	/**
+	 * makes an object from a row with the given setter for each column.
+	 */
+	private T bind(Setter[] setters, TextRow row) {
+		Object target;
+		try {
+			target = constructor.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException("Couldn't create a " + type.getName(), e);
+		}
+
+		int count = Math.min(setters.length, row.fieldCount());
+		for (int i = 0; i < count; i++) {
+			if (setters[i] == null || row.isEmpty(i))
+				continue;
+			try {
+				setters[i].set(target, row, i);
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Couldn't bind \"" + row.getString(i) + "\" to "
+						+ setters[i].name + ": " + e.getMessage(), e);
+			} catch (Throwable e) {
+				throw new IllegalStateException("Couldn't set " + setters[i].name, e);
+			}
+		}
+		return type.cast(target);
+	}
+
+	/**
+	 * binds every row of a file that has titles on its first line.
+	 *
+	 * @param file
+	 *            file to bind
+	 * @return an object for each row after the titles, in order
+	 */
+	public List<T> bindAll(CSVFile file) {
+		return bindAll(file, false);
+	}
+
+	/**
+	 * binds every row of a file that has titles on its first line, optionally
+	 * binding chunks of the file on multiple threads with a
+	 * {@link ParallelCSVParser}.
+	 *
+	 * @param file
+	 *            file to bind
+	 * @param parallel
+	 *            whether to bind chunks in parallel
+	 * @return an object for each row after the titles, in order
+	 */
+	public List<T> bindAll(CSVFile file, boolean parallel) {
+		Setter[] setters = readTitles(file);
+		if (setters == null)
+			return new ArrayList<>();
+		if (!parallel) {
+			List<T> objects = new ArrayList<>();
+			stream(file).forEach(objects::add);
+			return objects;
+		}
+
+		List<List<T>> chunks = new ParallelCSVParser(file).parseChunks(
+				(start, stop) -> file.valueCursor(start, stop), (CSVCursor cursor) -> {
+					List<T> objects = new ArrayList<>();
+					boolean first = cursor.start() == 0;
+					while (cursor.next()) {
+						if (first) {
+							first = false;
+							continue;
+						}
+						objects.add(bind(setters, trim(file, cursor)));
+					}
+					return objects;
+				});
+		List<T> objects = new ArrayList<>();
+		for (List<T> chunk : chunks)
+			objects.addAll(chunk);
+		return objects;
+	}
+
+	/**
+	 * binds the rows of a file that has titles on its first line as they are
+	 * read from the stream.
+	 *
+	 * @param file
+	 *            file to bind
+	 * @return stream of an object for each row after the titles
+	 */
+	public Stream<T> stream(CSVFile file) {
+		Setter[] setters = readTitles(file);
+		if (setters == null)
+			return Stream.empty();
+		CSVCursor cursor = file.valueCursor(0, Integer.MAX_VALUE);
+		cursor.next();
+		return stream(() -> cursor.next() ? trim(file, cursor) : null, row -> bind(setters, row));
+	}
+
+	/**
+	 * binds the rows of a stream of csv whose first row is titles.
+	 *
+	 * @param reader
+	 *            reader for the rows
+	 * @return an object for each row after the titles, in order
+	 * @throws IOException
+	 *             if the rows couldn't be read
+	 */
+	public List<T> bindAll(CSVStreamReader reader) throws IOException {
+		List<T> objects = new ArrayList<>();
+		try {
+			stream(reader).forEach(objects::add);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return objects;
+	}
+
+	/**
+	 * binds the rows of a stream of csv whose first row is titles as they are
+	 * read. Read errors are thrown as {@link UncheckedIOException}s.
+	 *
+	 * @param reader
+	 *            reader for the rows
+	 * @return stream of an object for each row after the titles
+	 */
+	public Stream<T> stream(CSVStreamReader reader) {
+		// the titles are read with the first row, which always comes before
+		// binding it.
+		Setter[][] setters = new Setter[1][];
+		return stream(() -> {
+			try {
+				if (setters[0] == null) {
+					String[] titles = reader.nextLine();
+					if (titles == null)
+						return null;
+					setters[0] = plan(titles);
+				}
+				return reader.next();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, row -> bind(setters[0], row));
+	}
+
+	/**
+	 * binds every line of a json lines file, using the top level keys of its
+	 * first line as the titles. Keys that are missing from a line or null are
+	 * treated the same as empty values.
+	 *
+	 * @param file
+	 *            file to bind
+	 * @param parallel
+	 *            whether to bind chunks in parallel
+	 * @return an object for each line, in order
+	 */
+	public List<T> bindAll(JsonLinesFile file, boolean parallel) {
+		if (!parallel) {
+			List<T> objects = new ArrayList<>();
+			stream(file).forEach(objects::add);
+			return objects;
+		}
+
+		String[] keys = file.getKeys();
+		Setter[] setters = plan(keys);
+		List<List<T>> chunks = file.parseChunks(cursor -> {
+			List<T> objects = new ArrayList<>();
+			while (cursor.next())
+				objects.add(bind(setters, cursor));
+			return objects;
+		}, keys);
+		List<T> objects = new ArrayList<>();
+		for (List<T> chunk : chunks)
+			objects.addAll(chunk);
+		return objects;
+	}
+
+	/**
+	 * binds the lines of a json lines file as they are read, using the top
+	 * level keys of its first line as the titles.
+	 *
+	 * @param file
+	 *            file to bind
+	 * @return stream of an object for each line
+	 */
+	public Stream<T> stream(JsonLinesFile file) {
+		String[] keys = file.getKeys();
+		Setter[] setters = plan(keys);
+		JsonCursor cursor = file.cursor(keys);
+		return stream(() -> cursor.next() ? cursor : null, row -> bind(setters, row));
+	}
+
+	/**
+	 * works out the setters from the titles on the first line of the file.
+	 *
+	 * @return the setters, or null if the file is empty
+	 */
+	private Setter[] readTitles(CSVFile file) {
+		CSVCursor titles = file.valueCursor(0, Integer.MAX_VALUE);
+		if (!titles.next())
+			return null;
+		return plan(file.values(titles));
+	}
+
+	/**
+	 * trims the fields of the row if the file ignores spaces, which the
+	 * cursor only does by itself for quoted files.
+	 */
+	private static TextRow trim(CSVFile file, CSVCursor cursor) {
+		if (file.trimsValues())
+			cursor.trim();
+		return cursor;
+	}
+
+	private Stream<T> stream(RowSource rows, Function<TextRow, T> binder) {
+		Iterator<T> iterator = new Iterator<T>() {
+			private TextRow next;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null)
+					next = rows.next();
+				return next != null;
+			}
+
+			@Override
+			public T next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				TextRow row = next;
+				next = null;
+				return binder.apply(row);
+			}
+		};
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * makes a name lower case without underscores, dashes or spaces.
+	 */
+	private static String normalize(String name) {
+		StringBuilder normal = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c != '_' && c != '-' && c != ' ')
+				normal.append(c);
+		}
+		return normal.toString().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * makes the setter for a field, which parses the value for the field's
+	 * type and calls a method handle that sets it.
+	 */
+	private static Setter setter(Field field) {
+		MethodHandle handle;
+		try {
+			field.setAccessible(true);
+			handle = MethodHandles.lookup().unreflectSetter(field);
+		} catch (IllegalAccessException | RuntimeException e) {
+			throw new IllegalArgumentException("Can't set field " + field.getName(), e);
+		}
+
+		Class<?> fieldType = field.getType();
+		String name = field.getDeclaringClass().getSimpleName() + "." + field.getName();
+		if (fieldType.isPrimitive()) {
+			MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, fieldType));
+			if (fieldType == int.class)
+				return new Setter(name, (target, row, i) -> {
+					set.invokeExact(target, row.parseInt(i));
+				});
+			if (fieldType == long.class)
+				return new Setter(name, (target, row, i) -> {
+					set.invokeExact(target, row.parseLong(i));
+				});
+			if (fieldType == double.class)
+				return new Setter(name, (target, row, i) -> {
+					set.invokeExact(target, row.parseDouble(i));
+				});
+			if (fieldType == float.class)
+				return new Setter(name, (target, row, i) -> {
+					set.invokeExact(target, (float) row.parseDouble(i));
+				});
+			if (fieldType == short.class)
+				return new Setter(name, (target, row, i) -> {
+					set.invokeExact(target, (short) parseInt(row, i, Short.MIN_VALUE, Short.MAX_VALUE));
+				});
+			if (fieldType == byte.class)
+				return new Setter(name, (target, row, i) -> {
+					set.invokeExact(target, (byte) parseInt(row, i, Byte.MIN_VALUE, Byte.MAX_VALUE));
+				});
+			if (fieldType == boolean.class)
+				return new Setter(name, (target, row, i) -> {
+					set.invokeExact(target, parseBoolean(row, i));
+				});
+			return new Setter(name, (target, row, i) -> {
+				set.invokeExact(target, parseChar(row, i));
+			});
+		}
+
+		// the method handle is called as a statement so its type is exactly
+		// (Object, Object)void.
+		MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+		Parser parser = parser(fieldType);
+		if (parser == null)
+			throw new IllegalArgumentException("Can't bind values to field " + name + " of type " + fieldType.getName());
+		return new Setter(name, (target, row, i) -> {
+			set.invokeExact(target, parser.parse(row, i));
+		});
+	}
+
+	/**
+	 * gets the parser for a type of object field, or null if the type isn't
+	 * supported.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Parser parser(Class<?> fieldType) {
+		if (fieldType == String.class || fieldType == CharSequence.class || fieldType == Object.class)
+			return (row, i) -> row.getString(i);
+		if (fieldType == Integer.class)
+			return (row, i) -> row.parseInt(i);
+		if (fieldType == Long.class)
+			return (row, i) -> row.parseLong(i);
+		if (fieldType == Double.class)
+			return (row, i) -> row.parseDouble(i);
+		if (fieldType == Float.class)
+			return (row, i) -> (float) row.parseDouble(i);
+		if (fieldType == Short.class)
+			return (row, i) -> (short) parseInt(row, i, Short.MIN_VALUE, Short.MAX_VALUE);
+		if (fieldType == Byte.class)
+			return (row, i) -> (byte) parseInt(row, i, Byte.MIN_VALUE, Byte.MAX_VALUE);
+		if (fieldType == Boolean.class)
+			return (row, i) -> parseBoolean(row, i);
+		if (fieldType == Character.class)
+			return (row, i) -> parseChar(row, i);
+		if (fieldType == LocalDate.class)
+			return (row, i) -> LocalDate.parse(row.getString(i));
+		if (fieldType == BigDecimal.class)
+			return (row, i) -> new BigDecimal(row.getString(i));
+		if (fieldType.isEnum()) {
+			Class<? extends Enum> enumType = (Class<? extends Enum>) fieldType;
+			return (row, i) -> Enum.valueOf(enumType, row.getString(i));
+		}
+		return null;
+	}
+
+	private static int parseInt(TextRow row, int field, int min, int max) {
+		int value = row.parseInt(field);
+		if (value < min || value > max)
+			throw new NumberFormatException("Value out of range");
+		return value;
+	}
+
+	private static boolean parseBoolean(TextRow row, int field) {
+		if (row.fieldEquals(field, "true"))
+			return true;
+		if (row.fieldEquals(field, "false"))
+			return false;
+		String value = row.getString(field);
+		if (value.equalsIgnoreCase("true"))
+			return true;
+		if (value.equalsIgnoreCase("false"))
+			return false;
+		throw new IllegalArgumentException("Not true or false");
+	}
+
+	private static char parseChar(TextRow row, int field) {
+		String value = row.getString(field);
+		if (value.length() != 1)
+			throw new IllegalArgumentException("Not a single character");
+		return value.charAt(0);
+	}
+
+	/**
+	 * sets a field of an object from a field of a row.
+	 */
+	private static class Setter {
+		private final String name;
+		private final Assignment assignment;
+
+		private Setter(String name, Assignment assignment) {
+			this.name = name;
+			this.assignment = assignment;
+		}
+
+		private void set(Object target, TextRow row, int field) throws Throwable {
+			assignment.set(target, row, field);
+		}
+	}
+
+	@FunctionalInterface
+	private interface Assignment {
+		void set(Object target, TextRow row, int field) throws Throwable;
+	}
+
+	@FunctionalInterface
+	private interface Parser {
+		Object parse(TextRow row, int field);
+	}
+
+	@FunctionalInterface
+	private interface RowSource {
+		TextRow next();
+	}
+
+}
@@ -0,0 +1,885 @@
+package gfiles.text;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import gfiles.text.CSVTable.BooleanColumn;
+import gfiles.text.CSVTable.Column;
+import gfiles.text.CSVTable.DateColumn;
+import gfiles.text.CSVTable.DictionaryColumn;
+import gfiles.text.CSVTable.DoubleColumn;
+import gfiles.text.CSVTable.IntColumn;
+import gfiles.text.CSVTable.LongColumn;
+import gfiles.text.CSVTable.StringColumn;
+
+/**
+ * a binary copy of a {@link CSVTable} kept in a file so that a csv file
+ * doesn't have to be parsed again every time it is loaded. The values of each
+ * column are stored in chunks of {@link #CHUNK_ROWS} rows in the same form as
+ * the table's arrays, so loading is mostly copying memory mapped chunks into
+ * arrays. String columns with few distinct values are stored as codes into a
+ * dictionary of the values, and are loaded back as dictionary columns.
+ *
+ * The file starts with a header, then for each column its null bitmap, its
+ * dictionary if it has one and its chunks, then the widths of the rows if some
+ * are short. A footer at the end says where everything is along with the
+ * count, min and max of each chunk, and the size, modified time and checksums
+ * of the csv file it was made from so a stale cache can be found.
+ *
+ * {@link CSVFileReader} can keep a cache for a file, or to use directly:
+ *
+ * <pre>
+ * CSVCache cache = CSVCache.open(cacheFile);
+ * CSVTable table = cache.isValid(csv, source, true) ? cache.load(false) : null;
+ * </pre>
+ *
+ * @author Gavin
+ *
+ */
+public class CSVCache {
+
+	/**
+	 * number of rows in each chunk of a column, the last chunk can have
+	 * fewer.
+	 */
+	public static final int CHUNK_ROWS = 1 << 16;
+
+	// "GCSV", at the start and end of the file.
+	private static final int MAGIC = 0x47435356;
+
+	// version of the layout, files with other versions can't be read.
+	private static final int VERSION = 2;
+
+	// size of the header and the trailer that points to the footer.
+	private static final int HEADER_SIZE = 8;
+	private static final int TRAILER_SIZE = 12;
+
+	// how string chunks are stored.
+	private static final int PLAIN = 0;
+	private static final int DICTIONARY = 1;
+
+	// size of the buffer for writing.
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// number and size of the blocks of the csv file that are checksummed to
+	// check a cache without reading the whole file.
+	private static final int SAMPLES = 16;
+	private static final int SAMPLE_SIZE = 4096;
+
+	// file the cache is in.
+	private final File file;
+
+	// the csv file the cache was made from.
+	private final long sourceSize;
+	private final long sourceModified;
+	private final long sourceChecksum;
+	private final long sourceSample;
+
+	// format the csv file was read with.
+	private final String delimiter;
+	private final boolean quoting;
+	private final boolean ignoreSpaces;
+	private final boolean utf8;
+	private final boolean titles;
+
+	// shape of the table.
+	private final int rows;
+	private final String[] titleNames;
+	private final long widthsOffset;
+	private final ColumnInfo[] columns;
+
+	private CSVCache(File file, ByteBuffer footer) {
+		this.file = file;
+		sourceSize = footer.getLong();
+		sourceModified = footer.getLong();
+		sourceChecksum = footer.getLong();
+		sourceSample = footer.getLong();
+		delimiter = readString(footer);
+		quoting = footer.get() != 0;
+		ignoreSpaces = footer.get() != 0;
+		utf8 = footer.get() != 0;
+		titles = footer.get() != 0;
+		rows = footer.getInt();
+		int titleCount = footer.getInt();
+		titleNames = titleCount < 0 ? null : new String[titleCount];
+		for (int i = 0; i < titleCount; i++)
+			titleNames[i] = readString(footer);
+		widthsOffset = footer.getLong();
+
+		columns = new ColumnInfo[footer.getInt()];
+		for (int c = 0; c < columns.length; c++) {
+			ColumnInfo info = new ColumnInfo(footer.getInt(), footer.getInt());
+			info.decimals = footer.getInt();
+			info.nullsOffset = footer.getLong();
+			info.encoding = footer.getInt();
+			info.codeSize = footer.getInt();
+			info.dictionaryOffset = footer.getLong();
+			info.dictionaryLength = footer.getLong();
+			for (int k = 0; k < info.offsets.length; k++) {
+				info.offsets[k] = footer.getLong();
+				info.lengths[k] = footer.getLong();
+				info.counts[k] = footer.getInt();
+				info.mins[k] = footer.getLong();
+				info.maxes[k] = footer.getLong();
+			}
+			columns[c] = info;
+		}
+	}
+
+	/**
+	 * opens a cache file, reading only its footer.
+	 *
+	 * @param cache
+	 *            file the cache is in
+	 * @return the cache
+	 * @throws IOException
+	 *             if the file couldn't be read or isn't a cache file
+	 */
+	public static CSVCache open(File cache) throws IOException {
+		try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_SIZE + TRAILER_SIZE)
+				throw new IOException("Not a csv cache file: " + cache);
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_SIZE, TRAILER_SIZE);
+			long footerOffset = trailer.getLong();
+			if (header.getInt() != MAGIC || trailer.getInt() != MAGIC || footerOffset < HEADER_SIZE
+					|| footerOffset > size - TRAILER_SIZE)
+				throw new IOException("Not a csv cache file: " + cache);
+			if (header.getInt() != VERSION)
+				throw new IOException("Unsupported csv cache version in " + cache);
+			ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset,
+					size - TRAILER_SIZE - footerOffset);
+			try {
+				return new CSVCache(cache, footer);
+			} catch (RuntimeException e) {
+				throw new IOException("Corrupt csv cache file: " + cache, e);
+			}
+		}
+	}
+
+	/**
+	 * writes the table to a cache file. The cache is written to a temporary
+	 * file first and then moved over the cache file, so a cache that is being
+	 * read is never half written.
+	 *
+	 * @param table
+	 *            table loaded from the csv file
+	 * @param csv
+	 *            csv file the table was loaded from
+	 * @param source
+	 *            file the csv file was read from, or null if it didn't come
+	 *            from a file
+	 * @param titles
+	 *            whether the table was loaded with titles
+	 * @param cache
+	 *            file to write the cache to
+	 * @throws IOException
+	 *             if the cache couldn't be written
+	 */
+	public static void write(CSVTable table, CSVFile csv, File source, boolean titles, File cache)
+			throws IOException {
+		File temp = File.createTempFile("csvcache", ".tmp", cache.getAbsoluteFile().getParentFile());
+		try {
+			try (Output out = new Output(new FileOutputStream(temp))) {
+				writeTable(table, csv, source, titles, out);
+			}
+			try {
+				Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	private static void writeTable(CSVTable table, CSVFile csv, File source, boolean titles, Output out)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(CHUNK_ROWS * 8);
+		buffer.putInt(MAGIC).putInt(VERSION);
+		out.write(buffer);
+
+		int rows = table.rows();
+		ColumnInfo[] infos = new ColumnInfo[table.columns()];
+		for (int c = 0; c < infos.length; c++)
+			infos[c] = writeColumn(table.columns[c], rows, buffer, out);
+
+		long widthsOffset = -1;
+		int[] widths = table.widths();
+		if (widths != null) {
+			widthsOffset = out.position;
+			writeInts(widths, 0, rows, buffer, out);
+		}
+
+		// the footer says where everything is.
+		long footerOffset = out.position;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream footer = new DataOutputStream(bytes);
+		footer.writeLong(csv.getBytes());
+		footer.writeLong(source == null ? -1 : source.lastModified());
+		footer.writeLong(checksum(csv));
+		footer.writeLong(sample(csv));
+		writeString(footer, csv.getDelimiter());
+		footer.writeBoolean(csv.isQuoting());
+		footer.writeBoolean(csv.isIgnoringSpaces());
+		footer.writeBoolean(csv.isUtf8());
+		footer.writeBoolean(titles);
+		footer.writeInt(rows);
+		String[] names = table.getTitles();
+		footer.writeInt(names == null ? -1 : names.length);
+		for (int i = 0; names != null && i < names.length; i++)
+			writeString(footer, names[i]);
+		footer.writeLong(widthsOffset);
+
+		footer.writeInt(infos.length);
+		for (ColumnInfo info : infos) {
+			footer.writeInt(info.type);
+			footer.writeInt(info.offsets.length);
+			footer.writeInt(info.decimals);
+			footer.writeLong(info.nullsOffset);
+			footer.writeInt(info.encoding);
+			footer.writeInt(info.codeSize);
+			footer.writeLong(info.dictionaryOffset);
+			footer.writeLong(info.dictionaryLength);
+			for (int k = 0; k < info.offsets.length; k++) {
+				footer.writeLong(info.offsets[k]);
+				footer.writeLong(info.lengths[k]);
+				footer.writeInt(info.counts[k]);
+				footer.writeLong(info.mins[k]);
+				footer.writeLong(info.maxes[k]);
+			}
+		}
+		footer.flush();
+		bytes.writeTo(out);
+
+		buffer.clear();
+		buffer.putLong(footerOffset).putInt(MAGIC);
+		out.write(buffer);
+	}
+
+	/**
+	 * writes the null bitmap, dictionary and chunks of a column.
+	 */
+	private static ColumnInfo writeColumn(Column column, int rows, ByteBuffer buffer, Output out)
+			throws IOException {
+		int chunks = (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+		ColumnInfo info = new ColumnInfo(column.type(), chunks);
+		if (column instanceof DoubleColumn)
+			info.decimals = ((DoubleColumn) column).decimals;
+
+		info.nullsOffset = out.position;
+		writeLongs(column.nulls, 0, column.nulls.length, buffer, out);
+
+		// dictionary columns keep their codes, plain string columns get a
+		// dictionary if they have few enough values.
+		Map<String, Integer> codes = null;
+		String[] values = null;
+		if (column instanceof DictionaryColumn) {
+			values = ((DictionaryColumn) column).dictionary;
+		} else if (column instanceof StringColumn) {
+			codes = dictionary(((StringColumn) column).values, column.nulls, rows);
+			if (codes != null)
+				values = codes.keySet().toArray(new String[codes.size()]);
+		}
+		if (values != null) {
+			info.encoding = DICTIONARY;
+			info.codeSize = values.length <= 1 << 8 ? 1 : values.length <= 1 << 16 ? 2 : 4;
+			info.dictionaryOffset = out.position;
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream dictionary = new DataOutputStream(bytes);
+			dictionary.writeInt(values.length);
+			for (String value : values)
+				writeString(dictionary, value);
+			dictionary.flush();
+			bytes.writeTo(out);
+			info.dictionaryLength = out.position - info.dictionaryOffset;
+		}
+
+		for (int k = 0; k < chunks; k++) {
+			int from = k * CHUNK_ROWS;
+			int to = Math.min(rows, from + CHUNK_ROWS);
+			info.offsets[k] = out.position;
+			writeChunk(column, info, codes, from, to, buffer, out);
+			info.lengths[k] = out.position - info.offsets[k];
+			stats(column, info, k, from, to);
+		}
+		return info;
+	}
+
+	/**
+	 * gives each distinct value of a string column a code in the order they
+	 * are first seen, or returns null if there are too many distinct values
+	 * for a dictionary to be smaller.
+	 */
+	private static Map<String, Integer> dictionary(String[] values, long[] nulls, int rows) {
+		int limit = Math.min(CSVTable.MAX_DICTIONARY, rows / 4);
+		Map<String, Integer> codes = new LinkedHashMap<>();
+		for (int row = 0; row < rows; row++) {
+			if (isNull(nulls, row))
+				continue;
+			if (codes.putIfAbsent(values[row], codes.size()) == null && codes.size() > limit)
+				return null;
+		}
+		return codes;
+	}
+
+	/**
+	 * writes the values of the rows in the range.
+	 */
+	private static void writeChunk(Column column, ColumnInfo info, Map<String, Integer> codes, int from, int to,
+			ByteBuffer buffer, Output out) throws IOException {
+		buffer.clear();
+		switch (info.type) {
+		case CSVTable.TYPE_INT:
+			writeInts(((IntColumn) column).values, from, to, buffer, out);
+			break;
+		case CSVTable.TYPE_DATE:
+			writeInts(((DateColumn) column).values, from, to, buffer, out);
+			break;
+		case CSVTable.TYPE_LONG:
+			writeLongs(((LongColumn) column).values, from, to, buffer, out);
+			break;
+		case CSVTable.TYPE_DOUBLE:
+			buffer.asDoubleBuffer().put(((DoubleColumn) column).values, from, to - from);
+			buffer.position((to - from) * 8);
+			out.write(buffer);
+			break;
+		case CSVTable.TYPE_BOOLEAN:
+			boolean[] booleans = ((BooleanColumn) column).values;
+			for (int row = from; row < to; row++)
+				buffer.put((byte) (booleans[row] ? 1 : 0));
+			out.write(buffer);
+			break;
+		default:
+			if (column instanceof DictionaryColumn) {
+				int[] rowCodes = ((DictionaryColumn) column).codes;
+				for (int row = from; row < to; row++)
+					putCode(buffer, info.codeSize, isNull(column.nulls, row) ? 0 : rowCodes[row]);
+				out.write(buffer);
+				break;
+			}
+			String[] strings = ((StringColumn) column).values;
+			if (codes != null) {
+				for (int row = from; row < to; row++)
+					putCode(buffer, info.codeSize, isNull(column.nulls, row) ? 0 : codes.get(strings[row]));
+				out.write(buffer);
+			} else {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream data = new DataOutputStream(bytes);
+				for (int row = from; row < to; row++) {
+					if (isNull(column.nulls, row) || strings[row] == null)
+						data.writeInt(-1);
+					else
+						writeString(data, strings[row]);
+				}
+				data.flush();
+				bytes.writeTo(out);
+			}
+		}
+	}
+
+	private static void putCode(ByteBuffer buffer, int codeSize, int code) {
+		if (codeSize == 1)
+			buffer.put((byte) code);
+		else if (codeSize == 2)
+			buffer.putShort((short) code);
+		else
+			buffer.putInt(code);
+	}
+
+	/**
+	 * works out the count, min and max of the values of a chunk. Mins and
+	 * maxes are stored as longs, with doubles stored as their bits.
+	 */
+	private static void stats(Column column, ColumnInfo info, int chunk, int from, int to) {
+		int count = 0;
+		long min = 0;
+		long max = 0;
+		for (int row = from; row < to; row++) {
+			if (isNull(column.nulls, row))
+				continue;
+			long value;
+			switch (info.type) {
+			case CSVTable.TYPE_INT:
+			case CSVTable.TYPE_LONG:
+			case CSVTable.TYPE_DATE:
+				value = info.type == CSVTable.TYPE_DATE ? column.getEpochDay(row) : column.getLong(row);
+				if (count == 0 || value < min)
+					min = value;
+				if (count == 0 || value > max)
+					max = value;
+				break;
+			case CSVTable.TYPE_DOUBLE:
+				double number = column.getDouble(row);
+				if (count == 0 || number < Double.longBitsToDouble(min))
+					min = Double.doubleToLongBits(number);
+				if (count == 0 || number > Double.longBitsToDouble(max))
+					max = Double.doubleToLongBits(number);
+				break;
+			case CSVTable.TYPE_BOOLEAN:
+				value = column.getBoolean(row) ? 1 : 0;
+				if (count == 0 || value < min)
+					min = value;
+				if (count == 0 || value > max)
+					max = value;
+				break;
+			default:
+				break;
+			}
+			count++;
+		}
+		info.counts[chunk] = count;
+		info.mins[chunk] = min;
+		info.maxes[chunk] = max;
+	}
+
+	/**
+	 * checks if the cache was made from the csv file read with the same
+	 * format. When there is a source file whose size and modified time match
+	 * only a sample of the csv file's bytes is checksummed, otherwise all of
+	 * them are, see {@link #isValid(CSVFile, File, boolean, boolean)}.
+	 *
+	 * @param csv
+	 *            csv file to check
+	 * @param source
+	 *            file the csv file was read from, or null to only check the
+	 *            bytes
+	 * @param titles
+	 *            whether the table should have titles
+	 * @return true if the cache has the csv file's values
+	 */
+	public boolean isValid(CSVFile csv, File source, boolean titles) {
+		return isValid(csv, source, titles, source == null);
+	}
+
+	/**
+	 * checks if the cache was made from the csv file read with the same
+	 * format. The size and modified time of the source file are checked
+	 * first, then a checksum of evenly spaced blocks of the csv file's bytes,
+	 * and then if asked for a checksum of all of them.
+	 *
+	 * @param csv
+	 *            csv file to check
+	 * @param source
+	 *            file the csv file was read from, or null to only check the
+	 *            bytes
+	 * @param titles
+	 *            whether the table should have titles
+	 * @param full
+	 *            true to checksum every byte of the csv file
+	 * @return true if the cache has the csv file's values
+	 */
+	public boolean isValid(CSVFile csv, File source, boolean titles, boolean full) {
+		if (source != null && (source.length() != sourceSize || source.lastModified() != sourceModified))
+			return false;
+		if (csv.getBytes() != sourceSize || titles != this.titles || !csv.getDelimiter().equals(delimiter)
+				|| csv.isQuoting() != quoting || csv.isIgnoringSpaces() != ignoreSpaces || csv.isUtf8() != utf8)
+			return false;
+		if (sample(csv) != sourceSample)
+			return false;
+		return !full || checksum(csv) == sourceChecksum;
+	}
+
+	/**
+	 * loads the table from the cache, optionally reading the chunks on
+	 * multiple threads.
+	 *
+	 * @param parallel
+	 *            whether to read chunks in parallel
+	 * @return the table
+	 * @throws IOException
+	 *             if the cache couldn't be read
+	 */
+	public CSVTable load(boolean parallel) throws IOException {
+		Column[] loaded = new Column[columns.length];
+		int[] widths = null;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			for (int c = 0; c < columns.length; c++) {
+				ColumnInfo info = columns[c];
+				loaded[c] = createColumn(info);
+				if (info.encoding == DICTIONARY)
+					((DictionaryColumn) loaded[c]).dictionary = readDictionary(
+							map(channel, info.dictionaryOffset, info.dictionaryLength));
+				long[] nulls = loaded[c].nulls;
+				map(channel, info.nullsOffset, nulls.length * 8L).asLongBuffer().get(nulls);
+			}
+			if (widthsOffset >= 0) {
+				widths = new int[rows];
+				map(channel, widthsOffset, rows * 4L).asIntBuffer().get(widths);
+			}
+
+			// every chunk of every column can be read on its own.
+			int chunks = (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+			IntStream tasks = IntStream.range(0, columns.length * chunks);
+			if (parallel)
+				tasks = tasks.parallel();
+			tasks.forEach(task -> {
+				int c = task / chunks;
+				int k = task % chunks;
+				try {
+					readChunk(channel, columns[c], loaded[c], k);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt csv cache file: " + file, e);
+		}
+		return new CSVTable(titleNames == null ? null : titleNames.clone(), rows, loaded, widths);
+	}
+
+	private Column createColumn(ColumnInfo info) throws IOException {
+		switch (info.type) {
+		case CSVTable.TYPE_INT:
+			return new IntColumn(rows);
+		case CSVTable.TYPE_LONG:
+			return new LongColumn(rows);
+		case CSVTable.TYPE_DOUBLE:
+			return new DoubleColumn(rows, info.decimals);
+		case CSVTable.TYPE_BOOLEAN:
+			return new BooleanColumn(rows);
+		case CSVTable.TYPE_DATE:
+			return new DateColumn(rows);
+		case CSVTable.TYPE_STRING:
+			return info.encoding == DICTIONARY ? new DictionaryColumn(rows) : new StringColumn(rows);
+		default:
+			throw new IOException("Unknown column type " + info.type + " in " + file);
+		}
+	}
+
+	/**
+	 * copies a chunk of a column from the file into the column's array.
+	 */
+	private void readChunk(FileChannel channel, ColumnInfo info, Column column, int chunk) throws IOException {
+		int from = chunk * CHUNK_ROWS;
+		int count = Math.min(rows, from + CHUNK_ROWS) - from;
+		ByteBuffer data = map(channel, info.offsets[chunk], info.lengths[chunk]);
+		switch (info.type) {
+		case CSVTable.TYPE_INT:
+			data.asIntBuffer().get(((IntColumn) column).values, from, count);
+			break;
+		case CSVTable.TYPE_DATE:
+			data.asIntBuffer().get(((DateColumn) column).values, from, count);
+			break;
+		case CSVTable.TYPE_LONG:
+			data.asLongBuffer().get(((LongColumn) column).values, from, count);
+			break;
+		case CSVTable.TYPE_DOUBLE:
+			data.asDoubleBuffer().get(((DoubleColumn) column).values, from, count);
+			break;
+		case CSVTable.TYPE_BOOLEAN:
+			boolean[] booleans = ((BooleanColumn) column).values;
+			for (int i = 0; i < count; i++)
+				booleans[from + i] = data.get() != 0;
+			break;
+		default:
+			if (column instanceof DictionaryColumn) {
+				int[] codes = ((DictionaryColumn) column).codes;
+				for (int row = from; row < from + count; row++) {
+					if (info.codeSize == 1)
+						codes[row] = data.get() & 0xFF;
+					else if (info.codeSize == 2)
+						codes[row] = data.getShort() & 0xFFFF;
+					else
+						codes[row] = data.getInt();
+				}
+			} else {
+				String[] strings = ((StringColumn) column).values;
+				// copy the chunk out of the mapping once instead of once per
+				// value.
+				byte[] bytes = new byte[data.remaining()];
+				data.get(bytes);
+				ByteBuffer values = ByteBuffer.wrap(bytes);
+				for (int row = from; row < from + count; row++) {
+					int length = values.getInt();
+					if (length >= 0) {
+						strings[row] = new String(bytes, values.position(), length, StandardCharsets.UTF_8);
+						values.position(values.position() + length);
+					}
+				}
+			}
+		}
+	}
+
+	private static String[] readDictionary(ByteBuffer data) {
+		String[] values = new String[data.getInt()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = readString(data);
+		return values;
+	}
+
+	private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+	}
+
+	/**
+	 * gets the number of rows in the table, not counting the titles.
+	 *
+	 * @return number of rows
+	 */
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * gets the number of columns in the table.
+	 *
+	 * @return number of columns
+	 */
+	public int columns() {
+		return columns.length;
+	}
+
+	/**
+	 * gets the number of chunks each column is split into.
+	 *
+	 * @return number of chunks
+	 */
+	public int chunks() {
+		return (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+	}
+
+	/**
+	 * gets the titles of the table.
+	 *
+	 * @return the titles, or null if the table doesn't have any
+	 */
+	public String[] getTitles() {
+		return titleNames == null ? null : titleNames.clone();
+	}
+
+	/**
+	 * gets the type of a column, one of the type constants of
+	 * {@link CSVTable}.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @return type of the column
+	 */
+	public int getColumnType(int column) {
+		return columns[column].type;
+	}
+
+	/**
+	 * checks if a string column is stored as codes into a dictionary.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @return true if the column has a dictionary
+	 */
+	public boolean isDictionary(int column) {
+		return columns[column].encoding == DICTIONARY;
+	}
+
+	/**
+	 * gets the number of values in a chunk that aren't null.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param chunk
+	 *            index of the chunk
+	 * @return number of values
+	 */
+	public int getValueCount(int column, int chunk) {
+		return columns[column].counts[chunk];
+	}
+
+	/**
+	 * gets the smallest value in a chunk, which lets chunks that can't match
+	 * a filter be skipped.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param chunk
+	 *            index of the chunk
+	 * @return a Long for int and long columns, a Double, a Boolean or a
+	 *         LocalDate, or null for string columns and chunks without values
+	 */
+	public Object getMin(int column, int chunk) {
+		ColumnInfo info = columns[column];
+		return stat(info, chunk, info.mins[chunk]);
+	}
+
+	/**
+	 * gets the largest value in a chunk.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param chunk
+	 *            index of the chunk
+	 * @return a Long for int and long columns, a Double, a Boolean or a
+	 *         LocalDate, or null for string columns and chunks without values
+	 */
+	public Object getMax(int column, int chunk) {
+		ColumnInfo info = columns[column];
+		return stat(info, chunk, info.maxes[chunk]);
+	}
+
+	private static Object stat(ColumnInfo info, int chunk, long value) {
+		if (info.counts[chunk] == 0)
+			return null;
+		switch (info.type) {
+		case CSVTable.TYPE_INT:
+		case CSVTable.TYPE_LONG:
+			return value;
+		case CSVTable.TYPE_DOUBLE:
+			return Double.longBitsToDouble(value);
+		case CSVTable.TYPE_BOOLEAN:
+			return value != 0;
+		case CSVTable.TYPE_DATE:
+			return LocalDate.ofEpochDay(value);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * works out the checksum of the bytes of the csv file.
+	 */
+	private static long checksum(CSVFile csv) {
+		CRC32 crc = new CRC32();
+		crc.update(csv.bytes(), 0, csv.getBytes());
+		return crc.getValue();
+	}
+
+	/**
+	 * works out the checksum of evenly spaced blocks of the csv file,
+	 * including its first and last bytes. Small files are checksummed whole.
+	 */
+	private static long sample(CSVFile csv) {
+		byte[] data = csv.bytes();
+		long length = csv.getBytes();
+		if (length <= (long) SAMPLES * SAMPLE_SIZE)
+			return checksum(csv);
+
+		CRC32 crc = new CRC32();
+		for (int i = 0; i < SAMPLES; i++) {
+			long start = (length - SAMPLE_SIZE) * i / (SAMPLES - 1);
+			crc.update(data, (int) start, SAMPLE_SIZE);
+		}
+		return crc.getValue();
+	}
+
+	private static boolean isNull(long[] nulls, int row) {
+		return (nulls[row >>> 6] & 1L << row) != 0;
+	}
+
+	private static void writeInts(int[] values, int from, int to, ByteBuffer buffer, Output out)
+			throws IOException {
+		int step = buffer.capacity() / 4;
+		for (int i = from; i < to; i += step) {
+			int count = Math.min(step, to - i);
+			buffer.clear();
+			buffer.asIntBuffer().put(values, i, count);
+			buffer.position(count * 4);
+			out.write(buffer);
+		}
+	}
+
+	private static void writeLongs(long[] values, int from, int to, ByteBuffer buffer, Output out)
+			throws IOException {
+		int step = buffer.capacity() / 8;
+		for (int i = from; i < to; i += step) {
+			int count = Math.min(step, to - i);
+			buffer.clear();
+			buffer.asLongBuffer().put(values, i, count);
+			buffer.position(count * 8);
+			out.write(buffer);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer data) {
+		byte[] bytes = new byte[data.getInt()];
+		data.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * where a column's values are in the file.
+	 */
+	private static class ColumnInfo {
+		private final int type;
+		private int decimals = -1;
+		private long nullsOffset;
+		private int encoding = PLAIN;
+		private int codeSize;
+		private long dictionaryOffset = -1;
+		private long dictionaryLength;
+
+		// offset, length, value count, min and max of each chunk.
+		private final long[] offsets;
+		private final long[] lengths;
+		private final int[] counts;
+		private final long[] mins;
+		private final long[] maxes;
+
+		private ColumnInfo(int type, int chunks) {
+			this.type = type;
+			offsets = new long[chunks];
+			lengths = new long[chunks];
+			counts = new int[chunks];
+			mins = new long[chunks];
+			maxes = new long[chunks];
+		}
+	}
+
+	/**
+	 * buffered stream that keeps track of how many bytes have been written.
+	 */
+	private static class Output extends FilterOutputStream {
+		private long position = 0;
+
+		private Output(OutputStream out) {
+			super(new BufferedOutputStream(out, BUFFER_SIZE));
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			position++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			position += len;
+		}
+
+		/**
+		 * writes the buffer up to its position.
+		 */
+		private void write(ByteBuffer buffer) throws IOException {
+			write(buffer.array(), 0, buffer.position());
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package gfiles.text;
+
+import java.io.Serializable;
+
+/**
+ * the place a {@link CSVFile} had read up to, which can be saved and used to
+ * carry on reading the same file from that place later with
+ * {@link CSVFile#resume(CSVCheckpoint)} instead of reading it again from the
+ * start. It only holds where the next line starts, how many of its values had
+ * been read and a checksum of the bytes just before it to make sure it is
+ * used with the same file.
+ *
+ * @author Gavin
+ *
+ */
+public class CSVCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	// byte offset of the first line that hadn't been read completely.
+	private final int offset;
+
+	// number of values of that line that had been read.
+	private final int values;
+
+	// number of lines completely read before the offset.
+	private final long line;
+
+	// checksum of the bytes before the offset.
+	private final long checksum;
+
+	CSVCheckpoint(int offset, int values, long line, long checksum) {
+		this.offset = offset;
+		this.values = values;
+		this.line = line;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * gets the byte offset reading carries on from.
+	 *
+	 * @return offset into the file
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * gets the number of lines that had been read, counting the titles.
+	 *
+	 * @return number of lines read
+	 */
+	public long getLine() {
+		return line;
+	}
+
+	int values() {
+		return values;
+	}
+
+	long checksum() {
+		return checksum;
+	}
+
+	@Override
+	public String toString() {
+		return "CSVCheckpoint[line " + line + ", offset " + offset + (values > 0 ? ", value " + values : "") + "]";
+	}
+
+}
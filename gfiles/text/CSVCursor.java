@@ -0,0 +1,242 @@
+package gfiles.text;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * cursor that walks through the lines of a csv file splitting each one into
+ * fields directly from the bytes of the file. Unlike the string methods of
+ * {@link CSVFile} nothing is allocated per line or per field, the fields are
+ * exposed through the methods of {@link TextRow} and only become strings when
+ * asked for.
+ *
+ * To use, get a cursor from {@link CSVFile#cursor()} and call
+ * {@link #next()} until it returns false, reading the fields of each line in
+ * between.
+ *
+ * @author Gavin
+ *
+ */
+public class CSVCursor extends TextRow {
+
+	// file being read.
+	private final CSVFile file;
+
+	// delimiter that separates the fields.
+	private String delimiter;
+
+	// whether to handle quoted fields and whether to trim white space around
+	// the fields.
+	private boolean quoting;
+	private boolean trim;
+
+	// parser for the lines, along with whether it was made for a utf-8 file
+	// since the delimiter is encoded the same as the file.
+	private CSVParser parser;
+	private boolean parserUtf8;
+
+	// most fields to split each line into.
+	private int fieldLimit = Integer.MAX_VALUE;
+
+	// where the cursor starts, the offset of the next line to read, and the
+	// offset that lines have to start before to be read.
+	private final int start;
+	private int position;
+	private final int stop;
+
+	/**
+	 * creates a cursor over the csv file, the cursor starts before the first
+	 * line.
+	 *
+	 * @param file
+	 *            file to read
+	 * @param delimiter
+	 *            delimiter between the fields
+	 * @param quoting
+	 *            whether to handle quoted fields
+	 * @param trim
+	 *            whether to trim the white space around each field
+	 */
+	CSVCursor(CSVFile file, String delimiter, boolean quoting, boolean trim) {
+		this(file, delimiter, quoting, trim, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * creates a cursor over the lines of the csv file that start in the given
+	 * range, the cursor starts before the first of them. The start of the
+	 * range should be the start of a line, and the last line read can run
+	 * past the end of the range.
+	 *
+	 * @param file
+	 *            file to read
+	 * @param delimiter
+	 *            delimiter between the fields
+	 * @param quoting
+	 *            whether to handle quoted fields
+	 * @param trim
+	 *            whether to trim the white space around each field
+	 * @param start
+	 *            offset of the first line to read
+	 * @param stop
+	 *            offset that lines need to start before
+	 */
+	CSVCursor(CSVFile file, String delimiter, boolean quoting, boolean trim, int start, int stop) {
+		this.file = file;
+		this.quoting = quoting;
+		this.trim = trim;
+		this.start = start;
+		this.position = start;
+		this.stop = stop;
+		setDelimiter(delimiter);
+	}
+
+	/**
+	 * changes the delimiter used for the lines after the current one.
+	 *
+	 * @param delimiter
+	 *            delimiter between the fields
+	 */
+	void setDelimiter(String delimiter) {
+		this.delimiter = delimiter;
+		createParser();
+	}
+
+	/**
+	 * changes whether quoted fields are handled for the lines after the
+	 * current one.
+	 *
+	 * @param quoting
+	 *            whether to handle quoted fields
+	 */
+	void setQuoting(boolean quoting) {
+		this.quoting = quoting;
+		createParser();
+	}
+
+	/**
+	 * changes whether fields are trimmed for the lines after the current one.
+	 *
+	 * @param trim
+	 *            whether to trim the white space around each field
+	 */
+	void setTrim(boolean trim) {
+		this.trim = trim;
+		createParser();
+	}
+
+	/**
+	 * only splits the first few fields of each line, the rest of the line is
+	 * skipped over.
+	 *
+	 * @param fieldLimit
+	 *            most fields to split each line into
+	 */
+	void setFieldLimit(int fieldLimit) {
+		this.fieldLimit = Math.max(1, fieldLimit);
+	}
+
+	/**
+	 * creates the parser, encoding the delimiter the same way as the file.
+	 */
+	private void createParser() {
+		parserUtf8 = file.isUtf8();
+		byte[] encoded = delimiter.getBytes(parserUtf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+		parser = new CSVParser(encoded, quoting, trim);
+	}
+
+	/**
+	 * moves the cursor back to before the first line.
+	 */
+	public void reset() {
+		position = start;
+		rowStart = 0;
+		rowEnd = 0;
+		clear(file.bytes());
+	}
+
+	/**
+	 * moves the cursor to the next line of the file and splits it into its
+	 * fields. When quoting is on a line is a whole record, which can go over
+	 * several lines of the file if a quoted field has line breaks in it.
+	 *
+	 * @return true if there was another line, false if the end of the file
+	 *         has been reached
+	 */
+	public boolean next() {
+		utf8 = file.isUtf8();
+
+		// the file's encoding may have changed since the parser was made.
+		if (utf8 != parserUtf8)
+			createParser();
+
+		if (position >= stop) {
+			clear(file.bytes());
+			return false;
+		}
+
+		int next = parser.parse(file.bytes(), position, file.getBytes(), true, this, fieldLimit);
+		if (next == -1)
+			return false;
+
+		position = next;
+		return true;
+	}
+
+	/**
+	 * gets the offset that the cursor started from.
+	 *
+	 * @return offset of the first line of the cursor
+	 */
+	public int start() {
+		return start;
+	}
+
+	/**
+	 * gets the offset that lines have to start before to be read.
+	 *
+	 * @return end of the cursor's range
+	 */
+	public int stop() {
+		return stop;
+	}
+
+	/**
+	 * moves the cursor so the next line it reads starts at the given offset,
+	 * which should be the start of a line.
+	 *
+	 * @param position
+	 *            offset of the next line to read
+	 */
+	void seek(int position) {
+		this.position = position;
+	}
+
+	/**
+	 * gets the offset of the line after the current one, i.e. where the cursor
+	 * will read from next.
+	 *
+	 * @return offset of the next line
+	 */
+	public int position() {
+		return position;
+	}
+
+	/**
+	 * gets the offset of the first byte of the current line.
+	 *
+	 * @return start of the current line
+	 */
+	public int lineStart() {
+		return rowStart;
+	}
+
+	/**
+	 * gets the offset of the end of the current line, not including its line
+	 * break.
+	 *
+	 * @return end of the current line
+	 */
+	public int lineEnd() {
+		return rowEnd;
+	}
+
+}
@@ -0,0 +1,540 @@
+package gfiles.text;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import gfiles.file.VirtualFile;
+
+/**
+ * a set of csv files under one directory that are read as if they were one
+ * file, e.g. the output of a job that writes part files into a directory for
+ * each partition:
+ *
+ * <pre>
+ * sales/date=2020-01-01/region=us/part-00000.csv
+ * sales/date=2020-01-01/region=eu/part-00000.csv
+ * sales/date=2020-01-02/region=us/part-00000.csv
+ * </pre>
+ *
+ * Every file named part-*.csv is found, and the key=value directories above it
+ * give its partition values, which are added as extra columns after the
+ * columns of the file. Tests on a partition column are run on the directory
+ * names so whole files are skipped without being read, tests on the other
+ * columns are run on the bytes of each row like {@link CSVQuery}.
+ *
+ * The files that are left are loaded and parsed on a fixed number of threads,
+ * since reading many small files is mostly waiting on the disk, and their
+ * rows come back in order of the files' paths as one stream. Every file has to
+ * have the same columns, in any order, or reading it fails.
+ *
+ * <pre>
+ * new CSVDataset(new File("sales")).where("date", FieldPredicate.equalTo("2020-01-01"))
+ * 		.where("price", FieldPredicate.greaterThan(100)).rows().forEach(this::process);
+ * </pre>
+ *
+ * @author Gavin
+ *
+ */
+public class CSVDataset {
+
+	// what the names of the files in the dataset start and end with.
+	private static final String PART_PREFIX = "part-";
+	private static final String PART_SUFFIX = ".csv";
+
+	// number of threads reading files if it isn't set.
+	private static final int DEFAULT_THREADS = 8;
+
+	// files loaded ahead of the one being read, for each thread.
+	private static final int FILES_AHEAD = 2;
+
+	// number for naming the threads of each scan.
+	private static final AtomicInteger SCANS = new AtomicInteger();
+
+	// directory the dataset is in.
+	private final File root;
+
+	// every part file with its partition values, in order of their paths.
+	private final List<Part> parts = new ArrayList<>();
+
+	// names of the partition columns from the outermost directory in.
+	private String[] partitionKeys;
+
+	// format of the files.
+	private String delimiter = ",";
+	private boolean quoting = false;
+	private boolean ignoreSpaces = true;
+	private boolean utf8 = false;
+
+	// names of the columns if the files don't have titles, otherwise null.
+	private String[] columns;
+
+	// columns of the files, from the first file's titles or the set columns.
+	private String[] titles;
+
+	// number of threads that read files.
+	private int threads = DEFAULT_THREADS;
+
+	// tests on the columns of the files, by index into the titles.
+	private final List<Integer> whereColumns = new ArrayList<>();
+	private final List<FieldPredicate> wherePredicates = new ArrayList<>();
+
+	// tests on the partition columns, by index into the partition keys.
+	private final List<Integer> pruneColumns = new ArrayList<>();
+	private final List<FieldPredicate> prunePredicates = new ArrayList<>();
+
+	/**
+	 * finds the part files under the directory.
+	 *
+	 * @param root
+	 *            directory the dataset is in
+	 * @throws IOException
+	 *             if the directory couldn't be listed
+	 * @throws IllegalStateException
+	 *             if the files are in different partition columns
+	 */
+	public CSVDataset(File root) throws IOException {
+		this.root = root;
+		if (!root.isDirectory())
+			throw new IOException(root + " isn't a directory");
+		find(root, new ArrayList<>(), new ArrayList<>());
+		if (partitionKeys == null)
+			partitionKeys = new String[0];
+	}
+
+	/**
+	 * looks for part files in the directory and the directories under it.
+	 */
+	private void find(File directory, List<String> keys, List<String> values) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null)
+			throw new IOException("Couldn't list " + directory);
+		Arrays.sort(files);
+
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				int equals = name.indexOf('=');
+				if (equals <= 0) {
+					find(file, keys, values);
+					continue;
+				}
+				keys.add(unescape(name.substring(0, equals)));
+				values.add(unescape(name.substring(equals + 1)));
+				find(file, keys, values);
+				keys.remove(keys.size() - 1);
+				values.remove(values.size() - 1);
+			} else if (name.startsWith(PART_PREFIX) && name.endsWith(PART_SUFFIX)) {
+				String[] fileKeys = keys.toArray(new String[keys.size()]);
+				if (partitionKeys == null)
+					partitionKeys = fileKeys;
+				else if (!Arrays.equals(partitionKeys, fileKeys))
+					throw new IllegalStateException(file + " is partitioned by " + Arrays.toString(fileKeys)
+							+ " instead of " + Arrays.toString(partitionKeys));
+				parts.add(new Part(file, values.toArray(new String[values.size()])));
+			}
+		}
+	}
+
+	/**
+	 * undoes the %XX escaping that partition directory names use for
+	 * characters like / and =.
+	 */
+	private static String unescape(String name) {
+		if (name.indexOf('%') < 0)
+			return name;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '%' && i + 2 < name.length() && Character.digit(name.charAt(i + 1), 16) >= 0
+					&& Character.digit(name.charAt(i + 2), 16) >= 0) {
+				bytes.write(Integer.parseInt(name.substring(i + 1, i + 3), 16));
+				i += 2;
+			} else {
+				byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+				bytes.write(encoded, 0, encoded.length);
+			}
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * sets the text between values, a comma by default.
+	 *
+	 * @param delimiter
+	 *            text between values
+	 * @return this dataset
+	 */
+	public CSVDataset setDelimiter(String delimiter) {
+		this.delimiter = delimiter;
+		return this;
+	}
+
+	/**
+	 * sets whether values can be quoted, off by default.
+	 *
+	 * @param quoting
+	 *            true to handle quoted values
+	 * @return this dataset
+	 */
+	public CSVDataset setQuoting(boolean quoting) {
+		this.quoting = quoting;
+		return this;
+	}
+
+	/**
+	 * sets whether spaces around values are removed, on by default.
+	 *
+	 * @param ignoreSpaces
+	 *            true to trim values
+	 * @return this dataset
+	 */
+	public CSVDataset ignoreSpacesNearDelimiter(boolean ignoreSpaces) {
+		this.ignoreSpaces = ignoreSpaces;
+		return this;
+	}
+
+	/**
+	 * sets whether the files are utf-8 instead of one byte per character.
+	 *
+	 * @param utf8
+	 *            true to decode values as utf-8
+	 * @return this dataset
+	 */
+	public CSVDataset setUtf8(boolean utf8) {
+		this.utf8 = utf8;
+		return this;
+	}
+
+	/**
+	 * names the columns of files that don't have titles on their first line.
+	 * By default the first line of every file is its titles.
+	 *
+	 * @param columns
+	 *            names of the columns in order
+	 * @return this dataset
+	 */
+	public CSVDataset setColumns(String... columns) {
+		if (!whereColumns.isEmpty())
+			throw new IllegalStateException("The columns have to be set before any tests are added");
+		this.columns = columns.clone();
+		this.titles = this.columns;
+		return this;
+	}
+
+	/**
+	 * sets how many files are read at once, 8 by default.
+	 *
+	 * @param threads
+	 *            number of threads
+	 * @return this dataset
+	 */
+	public CSVDataset setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("There has to be at least one thread");
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * only keeps rows whose value in the column passes the test. A test on a
+	 * partition column skips every file in partitions that don't pass without
+	 * reading them. Every test has to pass for a row to be kept, a row that is
+	 * too short to have the column is tested as if the value was empty.
+	 *
+	 * @param column
+	 *            title of the column to test
+	 * @param predicate
+	 *            the test
+	 * @return this dataset
+	 * @throws UncheckedIOException
+	 *             if the titles of the first file couldn't be read
+	 */
+	public CSVDataset where(String column, FieldPredicate predicate) {
+		int key = Arrays.asList(partitionKeys).indexOf(column);
+		if (key >= 0) {
+			pruneColumns.add(key);
+			prunePredicates.add(predicate);
+			return this;
+		}
+
+		int index = Arrays.asList(titles()).indexOf(column);
+		if (index < 0)
+			throw new IllegalArgumentException("No column titled " + column);
+		whereColumns.add(index);
+		wherePredicates.add(predicate);
+		return this;
+	}
+
+	/**
+	 * gets the names of the partition columns, from the outermost directory
+	 * in.
+	 *
+	 * @return the partition columns
+	 */
+	public String[] getPartitionKeys() {
+		return partitionKeys.clone();
+	}
+
+	/**
+	 * gets the titles of the rows, which are the columns of the files followed
+	 * by the partition columns.
+	 *
+	 * @return the titles
+	 * @throws UncheckedIOException
+	 *             if the titles of the first file couldn't be read
+	 */
+	public String[] getTitles() {
+		String[] fileTitles = titles();
+		String[] all = Arrays.copyOf(fileTitles, fileTitles.length + partitionKeys.length);
+		System.arraycopy(partitionKeys, 0, all, fileTitles.length, partitionKeys.length);
+		return all;
+	}
+
+	/**
+	 * gets the part files whose partitions pass the tests, in the order their
+	 * rows are given back.
+	 *
+	 * @return the files that will be read
+	 */
+	public List<File> files() {
+		List<File> files = new ArrayList<>();
+		for (Part part : pruned())
+			files.add(part.file);
+		return Collections.unmodifiableList(files);
+	}
+
+	/**
+	 * gets the columns of the files, reading the first line of the first
+	 * file if they haven't been set.
+	 */
+	private String[] titles() {
+		if (titles == null) {
+			if (parts.isEmpty())
+				return new String[0];
+			try (CSVStreamReader reader = new CSVStreamReader(new FileInputStream(parts.get(0).file), 1 << 16)) {
+				reader.setDelimiter(delimiter).setQuoting(quoting).ignoreSpacesNearDelimiter(ignoreSpaces)
+						.setUtf8(utf8);
+				String[] first = reader.nextLine();
+				titles = first == null ? new String[0] : first;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return titles;
+	}
+
+	/**
+	 * finds the parts whose partition values pass every partition test.
+	 */
+	private List<Part> pruned() {
+		if (pruneColumns.isEmpty())
+			return parts;
+		List<Part> kept = new ArrayList<>();
+		TextRow value = new TextRow();
+		for (Part part : parts) {
+			boolean passed = true;
+			for (int i = 0; i < pruneColumns.size() && passed; i++) {
+				byte[] bytes = part.values[pruneColumns.get(i)]
+						.getBytes(utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+				value.clear(bytes);
+				value.add(0, bytes.length);
+				value.utf8 = utf8;
+				passed = prunePredicates.get(i).test(value, 0);
+			}
+			if (passed)
+				kept.add(part);
+		}
+		return kept;
+	}
+
+	/**
+	 * reads the rows of every file that isn't pruned as one stream. Each row
+	 * has the values of the file's columns in the order of
+	 * {@link #getTitles()}, with empty strings for values missing from short
+	 * rows, followed by the partition values.
+	 *
+	 * Files are read on a pool of threads that is shut down when the last
+	 * row has been read or the stream is closed. Read errors are thrown as
+	 * {@link UncheckedIOException}s, and files with different columns as
+	 * {@link IllegalStateException}s.
+	 *
+	 * @return stream of the values of each row
+	 */
+	public Stream<String[]> rows() {
+		List<Part> scanned = pruned();
+		String[] fileTitles = titles();
+		int[] where = new int[whereColumns.size()];
+		for (int i = 0; i < where.length; i++)
+			where[i] = whereColumns.get(i);
+		FieldPredicate[] predicates = wherePredicates.toArray(new FieldPredicate[wherePredicates.size()]);
+		if (scanned.isEmpty())
+			return Stream.empty();
+
+		int scan = SCANS.incrementAndGet();
+		AtomicInteger count = new AtomicInteger();
+		int size = Math.min(threads, scanned.size());
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				task -> {
+					Thread thread = new Thread(task, "gfiles-dataset-" + scan + "-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		// the threads go away if the stream is dropped without being closed.
+		pool.allowCoreThreadTimeOut(true);
+
+		Iterator<String[]> iterator = new Iterator<String[]>() {
+			// files being read in order, no more than a few for each thread.
+			private final ArrayDeque<Future<List<String[]>>> pending = new ArrayDeque<>();
+			private int submitted = 0;
+			private Iterator<String[]> current = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!current.hasNext()) {
+					while (submitted < scanned.size() && pending.size() < threads * FILES_AHEAD) {
+						Part part = scanned.get(submitted++);
+						pending.add(pool.submit(() -> scan(part, fileTitles, where, predicates)));
+					}
+					if (pending.isEmpty()) {
+						pool.shutdown();
+						return false;
+					}
+					current = take(pending.remove()).iterator();
+				}
+				return true;
+			}
+
+			@Override
+			public String[] next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return current.next();
+			}
+
+			private List<String[]> take(Future<List<String[]>> future) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					pool.shutdownNow();
+					Thread.currentThread().interrupt();
+					throw new UncheckedIOException(new InterruptedIOException("Interrupted while reading files"));
+				} catch (ExecutionException e) {
+					pool.shutdownNow();
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException)
+						throw new UncheckedIOException((IOException) cause);
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					throw new IllegalStateException(cause);
+				}
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+				Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(pool::shutdownNow);
+	}
+
+	/**
+	 * reads the rows of one file that pass the tests, lining its columns up
+	 * with the dataset's columns.
+	 */
+	private List<String[]> scan(Part part, String[] fileTitles, int[] where, FieldPredicate[] predicates)
+			throws IOException {
+		CSVFile file = new CSVFile(VirtualFile.loadDecompressed(part.file));
+		file.setDelimiter(delimiter);
+		file.setQuoting(quoting);
+		file.ignoreSpacesNearDelimiter(ignoreSpaces);
+		file.setUtf8(utf8);
+		CSVCursor cursor = file.valueCursor(0, Integer.MAX_VALUE);
+		List<String[]> rows = new ArrayList<>();
+
+		// which field of this file each column is in.
+		int[] fields = new int[fileTitles.length];
+		for (int i = 0; i < fields.length; i++)
+			fields[i] = i;
+		if (columns == null) {
+			if (!cursor.next())
+				return rows;
+			String[] own = file.values(cursor);
+			List<String> ownList = Arrays.asList(own);
+			for (int i = 0; i < fields.length; i++)
+				fields[i] = ownList.indexOf(fileTitles[i]);
+			if (own.length != fileTitles.length || Arrays.stream(fields).anyMatch(field -> field < 0))
+				throw new IllegalStateException(part.file + " has the columns " + Arrays.toString(own)
+						+ " instead of " + Arrays.toString(fileTitles));
+		}
+
+		// stands in for fields past the end of a short row.
+		TextRow empty = new TextRow();
+		empty.add(0, 0);
+
+		int width = fileTitles.length + part.values.length;
+		while (cursor.next()) {
+			int count = CSVFile.valueCount(cursor);
+			if (count > fileTitles.length)
+				throw new IllegalStateException("A row of " + part.file + " has " + count + " values but there are "
+						+ fileTitles.length + " columns");
+			if (ignoreSpaces && !quoting)
+				cursor.trim();
+
+			boolean passed = true;
+			for (int i = 0; i < where.length && passed; i++) {
+				int field = fields[where[i]];
+				passed = field < count ? predicates[i].test(cursor, field) : predicates[i].test(empty, 0);
+			}
+			if (!passed)
+				continue;
+
+			String[] values = new String[width];
+			for (int i = 0; i < fields.length; i++)
+				values[i] = fields[i] < count ? cursor.getString(fields[i]) : "";
+			System.arraycopy(part.values, 0, values, fileTitles.length, part.values.length);
+			rows.add(values);
+		}
+		return rows;
+	}
+
+	/**
+	 * gets the directory the dataset is in.
+	 *
+	 * @return the directory
+	 */
+	public File getRoot() {
+		return root;
+	}
+
+	/**
+	 * a part file and the values of its partition columns.
+	 */
+	private static class Part {
+		private final File file;
+		private final String[] values;
+
+		private Part(File file, String[] values) {
+			this.file = file;
+			this.values = values;
+		}
+	}
+
+}
@@ -3,7 +3,8 @@ package gfiles.text;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 import gfiles.file.VirtualFile;
 
@@ -22,13 +23,32 @@ public class CSVFile extends AsciiTextFile {
 	// boolean for if the file should ignore spaces next to the delimiter.
 	private boolean ignoreSpaces = true;
 
+	// boolean for if quoted values should be handled.
+	private boolean quoting = false;
+
 	// currently read line of the csv file and pointer for the element in the
 	// file.
 	private String[] currentLine = new String[0];
 	private int pointer = 0;
 
-	// reader to read from the underlying ascii file
-	private final AsciiTextFileReader reader = new AsciiTextFileReader(this);
+	// cursor that splits the lines for the string methods, it doesn't trim
+	// unquoted values so they can be split the same way as string's split
+	// method.
+	private final CSVCursor lines = new CSVCursor(this, delimiter, quoting, false);
+
+	// number of lines taken from the cursor and where the current line
+	// starts, for checkpoints.
+	private long linesRead = 0;
+	private int lineOffset = 0;
+
+	// told where reading is up to every so many lines, and the line that was
+	// last told.
+	private Consumer<CSVCheckpoint> checkpointListener;
+	private int checkpointInterval;
+	private long lastCheckpoint = 0;
+
+	// number of bytes before a checkpoint that are checked when resuming.
+	private static final int CHECKSUM_BYTES = 1024;
 
 	/**
 	 * generic constructor for creating an empty csv file.
@@ -70,7 +90,8 @@ public class CSVFile extends AsciiTextFile {
 		super(csvf);
 
 		// set the csv specific variables.
-		this.delimiter = csvf.delimiter;
+		setDelimiter(csvf.delimiter);
+		setQuoting(csvf.quoting);
 		this.ignoreSpaces = csvf.ignoreSpaces;
 	}
 
@@ -86,6 +107,7 @@ public class CSVFile extends AsciiTextFile {
 	 */
 	public void setDelimiter(String delimiter) {
 		this.delimiter = delimiter;
+		lines.setDelimiter(delimiter);
 	}
 
 	/**
@@ -99,6 +121,26 @@ public class CSVFile extends AsciiTextFile {
 	 */
 	public void ignoreSpacesNearDelimiter(boolean ignore) {
 		ignoreSpaces = ignore;
+		lines.setTrim(quoting && ignore);
+	}
+
+	/**
+	 * tells the csv whether to handle quoted values the way rfc 4180 describes,
+	 * default value is false. When set a value surrounded in double quotes can
+	 * hold the delimiter and line breaks, and two double quotes in a row inside
+	 * of it stand for one. Like the delimiter this should be set before the file
+	 * is read.
+	 * 
+	 * @param quoting
+	 *            whether or not to handle quoted values.
+	 */
+	public void setQuoting(boolean quoting) {
+		this.quoting = quoting;
+		lines.setQuoting(quoting);
+
+		// spaces outside of the quotes need to be trimmed before the quotes
+		// can be found.
+		lines.setTrim(quoting && ignoreSpaces);
 	}
 
 	/**
@@ -123,19 +165,28 @@ public class CSVFile extends AsciiTextFile {
 	 * @return array of values for next line and null for end of file
 	 */
 	public String[] nextLine() {
+		// every line given out before this one has been dealt with, so this
+		// is where reading would carry on from.
+		if (checkpointListener != null) {
+			long line = linesDone();
+			if (line != lastCheckpoint && line % checkpointInterval == 0) {
+				lastCheckpoint = line;
+				checkpointListener.accept(checkpoint());
+			}
+		}
+
 		// stores the results of the method.
 		String[] results;
 
 		// if the end of the line has alread been hit the results are the next
 		// line. Otherwise return the rest of the current line.
 		if (pointer == currentLine.length) {
-			String line = reader.readLine();
-
 			// check for end of line
-			if (line == null)
+			if (!lines.next())
 				return null;
+			linesRead++;
 
-			results = line.split(Pattern.quote(delimiter));
+			results = splitValues(lines);
 		} else
 			results = Arrays.copyOfRange(currentLine, pointer, currentLine.length);
 
@@ -150,16 +201,17 @@ public class CSVFile extends AsciiTextFile {
 	 * advances the file to the next line of the csv file.
 	 */
 	public void advanceLine() {
-		String line = reader.readLine();
-		
 		// set the current line to the next line of values.
-		if (line == null)
+		if (!lines.next()) {
 			currentLine = new String[0];
-		else
-			currentLine = line.split(Pattern.quote(delimiter));
+		} else {
+			linesRead++;
+			lineOffset = lines.lineStart();
+			currentLine = splitValues(lines);
+		}
 
 		// if ignore spaces is set trim the current line
-		if (ignoreSpaces)
+		if (trimsValues())
 			trimArray(currentLine);
 
 		// resset the pointer to the beginning.
@@ -170,13 +222,239 @@ public class CSVFile extends AsciiTextFile {
 	 * resets the csv file back to the first line.
 	 */
 	public void resetLine() {
-		// reset the underlying reader.
-		reader.resetRead();
+		// reset the underlying cursor.
+		lines.reset();
+		linesRead = 0;
+		lastCheckpoint = 0;
 
 		// set the current line to the next line.
 		advanceLine();
 	}
 
+	/**
+	 * replaces the contents of the file and goes back to before the first
+	 * line, keeping the delimiter and other settings. The file's array and
+	 * line splitter are reused, so one csv file per thread can parse any
+	 * number of inputs without setting up a new one each time, e.g.
+	 * 
+	 * <pre>
+	 * private static final ThreadLocal&lt;CSVFile&gt; CSV = ThreadLocal.withInitial(CSVFile::new);
+	 * 
+	 * CSVFile csv = CSV.get();
+	 * csv.reset(bytes);
+	 * </pre>
+	 * 
+	 * The array only grows, so it stays as big as the largest input given to
+	 * it.
+	 */
+	@Override
+	public synchronized void reset(byte[] data, int offset, int length) {
+		super.reset(data, offset, length);
+		lines.reset();
+		currentLine = new String[0];
+		pointer = 0;
+		linesRead = 0;
+		lineOffset = 0;
+		lastCheckpoint = 0;
+	}
+
+	/**
+	 * gets the place that reading is up to, which can be saved and passed to
+	 * {@link #resume(CSVCheckpoint)} to carry on from here later, e.g. after
+	 * the program is restarted.
+	 * 
+	 * @return checkpoint of the current place in the file
+	 */
+	public CSVCheckpoint checkpoint() {
+		if (pointer < currentLine.length)
+			return new CSVCheckpoint(lineOffset, pointer, linesRead - 1, checksum(lineOffset));
+		return new CSVCheckpoint(lines.position(), 0, linesRead, checksum(lines.position()));
+	}
+
+	/**
+	 * carries on reading from a checkpoint taken from this file, or a copy
+	 * of it, without reading the lines before it again.
+	 * 
+	 * @param checkpoint
+	 *            place to carry on reading from
+	 * @throws IllegalArgumentException
+	 *             if the checkpoint doesn't match the bytes of this file
+	 */
+	public void resume(CSVCheckpoint checkpoint) {
+		int offset = checkpoint.getOffset();
+		if (offset > getBytes() || checksum(offset) != checkpoint.checksum())
+			throw new IllegalArgumentException("The checkpoint wasn't taken from this file");
+
+		lines.seek(offset);
+		linesRead = checkpoint.getLine();
+		lastCheckpoint = linesRead;
+
+		// load the line the same way as reading up to it would have, so it is
+		// trimmed like any other line.
+		advanceLine();
+		pointer = Math.min(checkpoint.values(), currentLine.length);
+	}
+
+	/**
+	 * sets a listener that is given a checkpoint every time another interval
+	 * of lines has been read with {@link #nextLine()}. The checkpoint is taken
+	 * when the next line is asked for, so every line before it has been dealt
+	 * with and resuming from it won't skip any.
+	 * 
+	 * @param interval
+	 *            number of lines between checkpoints
+	 * @param listener
+	 *            listener to give the checkpoints to, or null to stop
+	 */
+	public void setCheckpointListener(int interval, Consumer<CSVCheckpoint> listener) {
+		if (interval < 1 && listener != null)
+			throw new IllegalArgumentException("The checkpoint interval has to be at least one line");
+		checkpointInterval = interval;
+		checkpointListener = listener;
+		lastCheckpoint = linesDone();
+	}
+
+	/**
+	 * gets the number of lines that have been completely read.
+	 */
+	private long linesDone() {
+		return pointer < currentLine.length ? linesRead - 1 : linesRead;
+	}
+
+	/**
+	 * checksums the bytes just before the offset, so a checkpoint can't be
+	 * used with a different file without reading the whole file.
+	 */
+	private long checksum(int offset) {
+		CRC32 crc = new CRC32();
+		int from = Math.max(0, offset - CHECKSUM_BYTES);
+		crc.update(bytes(), from, offset - from);
+		return crc.getValue();
+	}
+
+	/**
+	 * gets a cursor for reading through the lines of the csv file without
+	 * creating strings for every value. The cursor uses the current delimiter
+	 * and trims the values if spaces near the delimiter are ignored. See
+	 * {@link CSVCursor} for more details.
+	 * 
+	 * @return cursor positioned before the first line
+	 */
+	public CSVCursor cursor() {
+		return new CSVCursor(this, delimiter, quoting, ignoreSpaces);
+	}
+
+	/**
+	 * gets a cursor for reading the lines of the csv file that start in the
+	 * given range of bytes. The start of the range needs to be the start of a
+	 * line, see {@link ParallelCSVParser#boundaries(int)} for splitting a file
+	 * into ranges.
+	 * 
+	 * @param start
+	 *            offset of the first line to read
+	 * @param stop
+	 *            offset that lines need to start before to be read
+	 * @return cursor positioned before the first line of the range
+	 */
+	public CSVCursor cursor(int start, int stop) {
+		return new CSVCursor(this, delimiter, quoting, ignoreSpaces, start, stop);
+	}
+
+	/**
+	 * gets a cursor that splits lines the same way as the string methods, so
+	 * its rows can be turned into values with {@link #values(TextRow) values}.
+	 */
+	CSVCursor valueCursor(int start, int stop) {
+		return new CSVCursor(this, delimiter, quoting, quoting && ignoreSpaces, start, stop);
+	}
+
+	/**
+	 * turns a row from a {@link #valueCursor(int, int) valueCursor} into the
+	 * same values that {@link #nextLine()} gives.
+	 */
+	String[] values(TextRow row) {
+		String[] values = splitValues(row);
+		if (trimsValues())
+			trimArray(values);
+		return values;
+	}
+
+	/**
+	 * tells whether the values of a split line still need to be trimmed. With
+	 * quoting on the line is trimmed outside of the quotes while it is split,
+	 * so spaces inside of a quoted value are kept.
+	 * 
+	 * @return true if values are trimmed after splitting
+	 */
+	boolean trimsValues() {
+		return ignoreSpaces && !quoting;
+	}
+
+	/**
+	 * gets the delimiter of the csv file.
+	 * 
+	 * @return delimiter between values
+	 */
+	public String getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * tells whether spaces near the delimiter are ignored.
+	 * 
+	 * @return true if values are trimmed
+	 */
+	public boolean isIgnoringSpaces() {
+		return ignoreSpaces;
+	}
+
+	/**
+	 * tells whether quoted values are handled.
+	 * 
+	 * @return true if quoting is on
+	 */
+	public boolean isQuoting() {
+		return quoting;
+	}
+
+	/**
+	 * turns the fields of the cursor's line into strings the same way that
+	 * string's split method would, so trailing empty values are dropped unless
+	 * the whole line is empty.
+	 * 
+	 * @param row
+	 *            line to get the values of
+	 * @return values of the line
+	 */
+	private static String[] splitValues(TextRow row) {
+		int count = valueCount(row);
+		String[] values = new String[count];
+		for (int i = 0; i < count; i++)
+			values[i] = row.getString(i);
+		return values;
+	}
+
+	/**
+	 * counts how many values string's split method would have given for the
+	 * row, i.e. the number of fields without any trailing empty ones unless
+	 * the whole line is empty.
+	 * 
+	 * @param row
+	 *            row from a {@link #valueCursor(int, int) valueCursor}
+	 * @return number of values in the row
+	 */
+	static int valueCount(TextRow row) {
+		int count = row.fieldCount();
+
+		// an empty line is a single empty value.
+		if (count == 1 && row.isEmpty(0))
+			return 1;
+
+		while (count > 0 && row.isEmpty(count - 1))
+			count--;
+		return count;
+	}
+
 	/**
 	 * trims all of the strings in the string array. Will change the array
 	 * given.
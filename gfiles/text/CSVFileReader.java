@@ -1,5 +1,15 @@
 package gfiles.text;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * helper class for reading values from a normally formatted csv file.
  * 
@@ -8,19 +18,71 @@ package gfiles.text;
  */
 public class CSVFileReader {
 
+	/**
+	 * flag for parsing the file on multiple threads when loading it, see
+	 * {@link ParallelCSVParser}.
+	 */
+	public static final int PARALLEL = 1;
+
+	/**
+	 * flag for keeping the values in a typed {@link CSVTable} instead of as
+	 * strings, which uses less memory and lets numeric columns be read without
+	 * parsing.
+	 */
+	public static final int COLUMNAR = 2;
+
+	/**
+	 * flag for gathering a {@link CSVProfile} of the columns while the file
+	 * is loaded, see {@link #getProfile()}.
+	 */
+	public static final int PROFILE = 4;
+
 	// file to read from
 	private final CSVFile file;
 
-	// stores how many lines the csv file has. -1 is default so the program
-	// knows to compute if it hasn't already.
-	private int lines = -1;
+	// flags for how to load the file.
+	private final int flags;
+
+	// file the csv file was read from and the binary copy of its table, or
+	// null if the table isn't cached.
+	private final File source;
+	private final File cacheFile;
+
+	// stores how many lines the csv file has.
+	private int lines = 0;
+
+	// offset of the start of each line in the file. The lines are found in a
+	// single pass when loading and only split into values when they are used.
+	private long[] offsets = new long[0];
+
+	// cursor for splitting a line into values when it is used, the line it
+	// was last moved to and the number of values on that line, so the values
+	// of one line can be got one at a time without splitting it again.
+	private CSVCursor cursor;
+	private int parsedLine = -1;
+	private int parsedWidth = 0;
+
+	// values of the first line, kept once they have been split.
+	private String[] firstLine;
 
-	// string array for holding each of the values of the file.
-	private String[][] data;
+	// most recently used lines, or null if lines aren't cached.
+	private Map<Integer, String[]> cache;
+
+	// the values stored by column when loaded with the columnar flag.
+	private CSVTable table;
+
+	// profile of the columns if loaded with the profile flag.
+	private CSVProfile profile;
 
 	// boolean for whether the file has titles on the top row or not.
 	private boolean hasTitles = true;
 
+	// column of each title, made the first time a title is looked up.
+	private Map<String, Integer> titleColumns;
+
+	// hash indexes on key columns, by the titles of the key columns.
+	private Map<List<String>, CSVIndex> indexes = new HashMap<>();
+
 	/**
 	 * basic constructor that takes in the file to read from
 	 * 
@@ -28,66 +90,318 @@ public class CSVFileReader {
 	 *            file to read from
 	 */
 	public CSVFileReader(CSVFile file) {
+		this(file, 0);
+	}
+
+	/**
+	 * constructor that takes in the file to read from along with flags for how
+	 * to load it, e.g. {@link #PARALLEL}, {@link #COLUMNAR} or {@link #PROFILE}. Flags can be combined with |.
+	 * 
+	 * @param file
+	 *            file to read from
+	 * @param flags
+	 *            flags for loading the file
+	 */
+	public CSVFileReader(CSVFile file, int flags) {
 		this.file = file;
+		this.flags = flags;
+		this.source = null;
+		this.cacheFile = null;
 
-		// initialize the data string array.
+		// find where the lines of the file start.
 		init();
 	}
 
 	/**
-	 * initializes the csv file reader to have an array of the values for faster
-	 * look up than using the file.
+	 * constructor for a columnar reader that keeps a binary copy of the table
+	 * in a cache file, see {@link CSVCache}. If the cache was made from the
+	 * same source file and bytes it is loaded instead of parsing the file,
+	 * otherwise the file is parsed and the cache is written again.
+	 * 
+	 * @param file
+	 *            file to read from
+	 * @param flags
+	 *            flags for loading the file, {@link #COLUMNAR} is always set
+	 * @param source
+	 *            file the csv file was read from, its size and modified time
+	 *            are checked before the bytes, or null to only check the bytes
+	 * @param cache
+	 *            file to keep the cache in
+	 * @throws IOException
+	 *             if the cache couldn't be written
+	 */
+	public CSVFileReader(CSVFile file, int flags, File source, File cache) throws IOException {
+		this.file = file;
+		this.flags = flags | COLUMNAR;
+		this.source = source;
+		this.cacheFile = cache;
+
+		try {
+			init();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * initializes the csv file reader to know where each of the lines of the
+	 * file start for faster look up than reading through the file.
 	 */
 	private void init() {
-		// initialize the data to an array of length the number of lines in the
-		// csv file
-		data = new String[lines()][];
+		boolean parallel = (flags & PARALLEL) != 0;
+		profile = (flags & PROFILE) != 0 ? new CSVProfile() : null;
+
+		// load the values into typed columns if asked to.
+		if ((flags & COLUMNAR) != 0) {
+			table = cacheFile == null ? CSVTable.load(file, hasTitles, parallel, profile) : loadCached();
+			lines = table.rows() + (table.getTitles() == null ? 0 : 1);
+			return;
+		}
 
-		// loop through and set all of the data points in the array.
-		for (int i = 0; i < lines(); i++) {
-			data[i] = file.nextLine();
+		cursor = file.valueCursor(0, Integer.MAX_VALUE);
+		parsedLine = -1;
+		firstLine = null;
+		if (cache != null)
+			cache.clear();
+
+		// find the lines of the chunks of the file on separate threads if
+		// asked to.
+		if (parallel) {
+			boolean titles = hasTitles;
+			List<Lines> chunks = new ParallelCSVParser(file).parseChunks(
+					(start, stop) -> file.valueCursor(start, stop), (CSVCursor chunk) -> {
+						CSVProfile chunkProfile = profile == null ? null : new CSVProfile();
+						return new Lines(findLines(file, chunk, titles, chunkProfile), chunkProfile);
+					});
+			int total = 0;
+			for (Lines chunk : chunks)
+				total += chunk.offsets.length;
+			offsets = new long[total];
+			int i = 0;
+			for (Lines chunk : chunks) {
+				System.arraycopy(chunk.offsets, 0, offsets, i, chunk.offsets.length);
+				i += chunk.offsets.length;
+				if (profile != null)
+					profile.merge(chunk.profile);
+			}
+		} else {
+			offsets = findLines(file, cursor, hasTitles, profile);
 		}
+		lines = offsets.length;
 	}
 
 	/**
-	 * refreshes the internal data on the csv file
+	 * loads the table from the cache file if it is still valid, otherwise
+	 * parses the file and writes the cache again.
 	 */
-	public void refreshData() {
-		// reset the number of lines so it can be recalculated.
-		lines = -1;
+	private CSVTable loadCached() {
+		boolean parallel = (flags & PARALLEL) != 0;
+		try {
+			CSVCache cached = CSVCache.open(cacheFile);
+			if (cached.isValid(file, source, hasTitles)) {
+				// the file isn't parsed so it needs its own pass to be
+				// profiled.
+				if (profile != null)
+					profile = CSVProfile.profile(file, hasTitles, parallel);
+				return cached.load(parallel);
+			}
+		} catch (IOException e) {
+			// a missing or broken cache is just made again.
+		}
 
-		// re-initialize the data array
-		init();
+		CSVTable loaded = CSVTable.load(file, hasTitles, parallel, profile);
+		try {
+			CSVCache.write(loaded, file, source, hasTitles, cacheFile);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return loaded;
 	}
 
 	/**
-	 * gets the number of lines that are in the csv file.
+	 * finds the offset of each line that starts in the cursor's range. Without
+	 * quoting a line can't go past a line break so only the line breaks need
+	 * to be searched for, otherwise the lines are parsed to skip over quoted
+	 * line breaks. The lines are also parsed if they are being profiled.
 	 * 
-	 * @return number of lines in the csv file.
+	 * @param file
+	 *            file being read
+	 * @param cursor
+	 *            cursor over the range, left after the last line
+	 * @param titles
+	 *            whether the first line of the file is titles
+	 * @param profile
+	 *            profile to add the values of the lines to, or null
+	 * @return the offsets of the lines
 	 */
-	public int lines() {
-		if (lines == -1) {
+	private static long[] findLines(CSVFile file, CSVCursor cursor, boolean titles, CSVProfile profile) {
+		long[] starts = new long[64];
+		int count = 0;
+		if (file.isQuoting() || profile != null) {
+			boolean first = titles && cursor.start() == 0;
+			while (cursor.next()) {
+				if (count == starts.length)
+					starts = Arrays.copyOf(starts, count * 2);
+				starts[count++] = cursor.lineStart();
+				if (profile == null)
+					continue;
+
+				int width = CSVFile.valueCount(cursor);
+				if (file.trimsValues())
+					cursor.trim();
+				if (first) {
+					profile.setTitles(Arrays.copyOf(cursor.toArray(), width));
+					first = false;
+				} else {
+					profile.add(cursor);
+				}
+			}
+		} else {
+			byte[] data = file.bytes();
+			int end = file.getBytes();
+			int stop = Math.min(cursor.stop(), end);
+			int i = cursor.start();
+			while (i < stop) {
+				if (count == starts.length)
+					starts = Arrays.copyOf(starts, count * 2);
+				starts[count++] = i;
+
+				// a line ends at a \n, a \r\n or a lone \r.
+				int lineBreak = ByteSearch.indexOfEither(data, i, end, (byte) '\n', (byte) '\r');
+				if (lineBreak >= end)
+					i = end;
+				else if (data[lineBreak] == '\r' && lineBreak + 1 < end && data[lineBreak + 1] == '\n')
+					i = lineBreak + 2;
+				else
+					i = lineBreak + 1;
+			}
+			cursor.seek(i);
+		}
+		return Arrays.copyOf(starts, count);
+	}
 
-			// reset the lines counter to 0
-			lines = 0;
+	/**
+	 * splits the line into its values, using the cache if there is one.
+	 */
+	private synchronized String[] getLine(int line) {
+		if (line == 0 && firstLine != null)
+			return firstLine;
+
+		String[] values = cache == null ? null : cache.get(line);
+		if (values == null) {
+			parse(line);
+			values = file.values(cursor);
+			if (cache != null)
+				cache.put(line, values);
+		}
 
-			// loop through and increment for each line.
-			String[] line = file.nextLine();
+		if (line == 0)
+			firstLine = values;
+		return values;
+	}
 
-			// check to make sure the line isn't the end of file
-			while (line != null) {
+	/**
+	 * gets one value of the line, only making a string out of that value
+	 * unless lines are being cached.
+	 */
+	private synchronized String getValue(int x, int line) {
+		if (cache != null || line == 0) {
+			String[] values = getLine(line);
+			return x < values.length ? values[x] : null;
+		}
 
-				// increment the line counter
-				lines++;
+		parse(line);
+		if (x >= parsedWidth)
+			return null;
+		String value = cursor.getString(x);
+		return file.trimsValues() ? value.trim() : value;
+	}
 
-				// get the next line
-				line = file.nextLine();
-			}
+	/**
+	 * moves the cursor to the line and splits it, unless it is already on it.
+	 */
+	private void parse(int line) {
+		if (line == parsedLine)
+			return;
+		cursor.seek((int) offsets[line]);
+		cursor.next();
+		parsedLine = line;
+		parsedWidth = CSVFile.valueCount(cursor);
+	}
 
-			// reset the file back to the beginning.
-			file.resetLine();
+	/**
+	 * keeps the values of up to the given number of the most recently used
+	 * lines so they don't have to be split again. Without a cache only the
+	 * value asked for is made into a string.
+	 * 
+	 * @param maxLines
+	 *            most lines to keep, or 0 to not cache lines
+	 */
+	public synchronized void setLineCache(int maxLines) {
+		if (maxLines <= 0) {
+			cache = null;
+			return;
 		}
+		cache = new LinkedHashMap<Integer, String[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+				return size() > maxLines;
+			}
+		};
+	}
+
+	/**
+	 * refreshes the internal data on the csv file
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the reader has a cache file that couldn't be written
+	 */
+	public void refreshData() {
+		// find the lines of the file again.
+		init();
+
+		// the titles and rows may have changed.
+		rebuildIndexes();
+	}
 
+	/**
+	 * forgets the title positions and builds the indexes again over the
+	 * current data, dropping any whose titles are gone.
+	 */
+	private void rebuildIndexes() {
+		titleColumns = null;
+		Map<List<String>, CSVIndex> old = indexes;
+		indexes = new HashMap<>();
+		for (List<String> titles : old.keySet())
+			getIndex(titles.toArray(new String[titles.size()]));
+	}
+
+	/**
+	 * gets the file being read.
+	 */
+	CSVFile file() {
+		return file;
+	}
+
+	/**
+	 * gets the number of data rows, not counting the titles.
+	 * 
+	 * @return number of rows
+	 */
+	int rows() {
+		if (table != null)
+			return table.rows();
+		return Math.max(0, lines() - (hasTitles ? 1 : 0));
+	}
+
+	/**
+	 * gets the number of lines that are in the csv file.
+	 * 
+	 * @return number of lines in the csv file.
+	 */
+	public int lines() {
 		// return the number of lines in the file
 		return lines;
 	}
@@ -100,7 +414,17 @@ public class CSVFileReader {
 	 *            if there are titles or not.
 	 */
 	public void setTitles(boolean titles) {
+		boolean changed = hasTitles != titles;
 		hasTitles = titles;
+
+		// the columns are typed and profiled without the titles so they need
+		// to be loaded again.
+		if (changed && (table != null || profile != null))
+			init();
+
+		// rows are numbered from after the titles so the indexes change.
+		if (changed)
+			rebuildIndexes();
 	}
 
 	/**
@@ -115,7 +439,9 @@ public class CSVFileReader {
 			return null;
 
 		// otherwise return the first row.
-		return data[0];
+		if (table != null)
+			return table.getTitles();
+		return lines == 0 ? null : getLine(0);
 	}
 
 	/**
@@ -130,21 +456,42 @@ public class CSVFileReader {
 	 * @return the entry at that position.
 	 */
 	public String getEntry(int x, int y) {
-		// if there are titles increment y by 1
-		if (hasTitles) {
-			// make sure the element is in bounds
-			if (y + 1 >= data.length || x >= data[y + 1].length) {
-				return null;
-			}
-			return data[y + 1][x];
-		}
+		if (table != null)
+			return table.getString(x, y);
 
-		// otherwise just return the position
+		// if there are titles increment y by 1
+		int line = hasTitles ? y + 1 : y;
 
 		// make sure the element is in bounds
-		if (y >= data.length || x >= data[y].length)
+		if (line < 0 || line >= lines || x < 0)
 			return null;
-		return data[y][x];
+		return getValue(x, line);
+	}
+
+	/**
+	 * gets the column that has the title. The positions of the titles are
+	 * worked out once and then looked up in a map. If a title is on more than
+	 * one column the first one is used.
+	 * 
+	 * @param title
+	 *            title of the column
+	 * @return position of the column, or -1 if there aren't titles or none
+	 *         of them match
+	 */
+	public int getColumn(String title) {
+		// if there aren't titles there aren't any columns to find.
+		if (!hasTitles)
+			return -1;
+
+		if (titleColumns == null) {
+			String[] titles = getTitles();
+			titleColumns = new HashMap<>();
+			for (int i = 0; titles != null && i < titles.length; i++)
+				titleColumns.putIfAbsent(titles[i], i);
+		}
+
+		Integer column = titleColumns.get(title);
+		return column == null ? -1 : column;
 	}
 
 	/**
@@ -159,83 +506,278 @@ public class CSVFileReader {
 	 * @return the entry at that position.
 	 */
 	public String getEntry(String title, int row) {
-		// if there aren't titles return null.
-		if (!hasTitles)
-			return null;
+		int position = getColumn(title);
 
-		// look through the titles and find the column that the title is located
-		// at, if not found return null.
-		int position = 0;
-		String[] titles = getTitles();
-		for (String currentTitle : titles) {
-			// if the index we are at is the correct one break out of loop.
-			if (currentTitle.equals(title)) {
-				break;
-			}
-
-			// if the index we are at isn't go to the next.
-			position++;
-		}
-
-		// if we looped through and didn't find it return null.
-		if (position == titles.length)
+		// if the title wasn't found return null.
+		if (position == -1)
 			return null;
 
 		// otherwise return the element at position, row
 		return getEntry(position, row);
-
 	}
 
+	/**
+	 * returns the entry in the title's column on the first row whose value in
+	 * the index header's column is the index. The rows are found with a hash
+	 * index on the index header's column that is built on the first call.
+	 * 
+	 * @param title
+	 *            title of the column to get the entry from
+	 * @param indexHeader
+	 *            title of the column to search
+	 * @param index
+	 *            value to search for
+	 * @return the entry, or null if a title or the index wasn't found
+	 */
 	public String getEntry(String title, String indexHeader, String index) {
-		// if there aren't titles return null.
-		if (!hasTitles)
+		return getEntry(title, new String[] { indexHeader }, index);
+	}
+
+	/**
+	 * returns the entry in the title's column on the first row whose values in
+	 * the index headers' columns are the index, i.e. a lookup on a composite
+	 * key.
+	 * 
+	 * @param title
+	 *            title of the column to get the entry from
+	 * @param indexHeaders
+	 *            titles of the key columns
+	 * @param index
+	 *            value to search for in each of the key columns
+	 * @return the entry, or null if a title or the index wasn't found
+	 */
+	public String getEntry(String title, String[] indexHeaders, String... index) {
+		int titlePosition = getColumn(title);
+		if (titlePosition == -1)
 			return null;
 
-		// search through titles and find the column that the title is located
-		// at.
-		int titlePosition = 0;
-		String[] titles = getTitles();
-		for (String currentTitle : titles) {
-			// if the index we are at is the correct one break out of loop.
-			if (currentTitle.equals(title)) {
-				break;
-			}
+		CSVIndex found = getIndex(indexHeaders);
+		if (found == null)
+			return null;
 
-			// if the index we are at isn't go to the next.
-			titlePosition++;
-		}
-		if (titlePosition == titles.length)
+		int y = found.getRow(index);
+		if (y == -1)
 			return null;
 
-		// search through titles and find the column that the index is located
-		// at.
-		int indexPosition = 0;
-		for (String currentTitle : titles) {
-			// if the index we are at is the correct one break out of loop.
-			if (currentTitle.equals(indexHeader)) {
-				break;
-			}
+		// return the found element
+		return getEntry(titlePosition, y);
+	}
 
-			// if the index we are at isn't go to the next.
-			indexPosition++;
-		}
-		if (indexPosition == titles.length)
+	/**
+	 * returns the entries in the title's column on every row whose value in
+	 * the index header's column is the index, for keys that aren't unique.
+	 * 
+	 * @param title
+	 *            title of the column to get the entries from
+	 * @param indexHeader
+	 *            title of the column to search
+	 * @param index
+	 *            value to search for
+	 * @return the entries in row order, or null if a title wasn't found
+	 */
+	public String[] getEntries(String title, String indexHeader, String index) {
+		int titlePosition = getColumn(title);
+		CSVIndex found = getIndex(indexHeader);
+		if (titlePosition == -1 || found == null)
 			return null;
 
-		// search through the column marked by the index in search for the index
-		int y = 0;
-		for (; y < data[0].length; y++) {
-			String test = getEntry(indexPosition, y);
-			if (test == null)
+		int[] rows = found.getRows(index);
+		String[] entries = new String[rows.length];
+		for (int i = 0; i < rows.length; i++)
+			entries[i] = getEntry(titlePosition, rows[i]);
+		return entries;
+	}
+
+	/**
+	 * creates a hash index on the columns with the titles now instead of on
+	 * the first lookup. More than one title makes a composite key.
+	 * 
+	 * @param titles
+	 *            titles of the key columns
+	 * @return the index
+	 * @throws IllegalArgumentException
+	 *             if one of the titles doesn't exist
+	 */
+	public CSVIndex createIndex(String... titles) {
+		CSVIndex index = getIndex(titles);
+		if (index == null)
+			throw new IllegalArgumentException("No column titled one of " + Arrays.toString(titles));
+		return index;
+	}
+
+	/**
+	 * gets the hash index on the columns with the titles, building it if it
+	 * hasn't been used before. The index is kept and built again whenever the
+	 * data is refreshed.
+	 * 
+	 * @param titles
+	 *            titles of the key columns
+	 * @return the index, or null if one of the titles doesn't exist
+	 */
+	public CSVIndex getIndex(String... titles) {
+		List<String> key = Arrays.asList(titles.clone());
+		CSVIndex index = indexes.get(key);
+		if (index != null)
+			return index;
+
+		int[] columns = new int[titles.length];
+		for (int i = 0; i < titles.length; i++) {
+			columns[i] = getColumn(titles[i]);
+			if (columns[i] == -1)
 				return null;
-			if (test.equals(index))
-				break;
 		}
-		if (y == data[0].length)
-			return null;
 
-		// return the found element
-		return getEntry(titlePosition, y);
+		index = new CSVIndex(this, titles, columns);
+		indexes.put(key, index);
+		return index;
+	}
+
+	/**
+	 * gets the profile of the columns if the file was loaded with the
+	 * {@link #PROFILE} flag. It is gathered again when the data is refreshed.
+	 * 
+	 * @return the profile
+	 * @throws IllegalStateException
+	 *             if the file wasn't loaded with the profile flag
+	 */
+	public CSVProfile getProfile() {
+		if (profile == null)
+			throw new IllegalStateException("The file wasn't loaded with the PROFILE flag");
+		return profile;
+	}
+
+	/**
+	 * gets the typed table of the values if the file was loaded with the
+	 * {@link #COLUMNAR} flag.
+	 * 
+	 * @return the table, or null if the values are stored as strings
+	 */
+	public CSVTable getTable() {
+		return table;
+	}
+
+	/**
+	 * gets what type the values of the xth column are stored as, see
+	 * {@link CSVTable#getColumnType(int)}. Without the columnar flag every
+	 * column is a string column.
+	 * 
+	 * @param x
+	 *            column to look at
+	 * @return type of the column
+	 */
+	public int getColumnType(int x) {
+		if (table != null)
+			return table.getColumnType(x);
+		return CSVTable.TYPE_STRING;
+	}
+
+	/**
+	 * checks if the entry at the xth column and yth row is empty or missing.
+	 * 
+	 * @param x
+	 *            x location to look
+	 * @param y
+	 *            y location to look
+	 * @return true if there isn't a value there
+	 */
+	public boolean isNull(int x, int y) {
+		if (table != null)
+			return y < 0 || y >= table.rows() || x < 0 || x >= table.columns() || table.isNull(x, y);
+		String entry = getEntry(x, y);
+		return entry == null || entry.isEmpty();
+	}
+
+	/**
+	 * gets the entry at the xth column and yth row as an int. Empty entries
+	 * are 0.
+	 * 
+	 * @param x
+	 *            x location to look
+	 * @param y
+	 *            y location to look
+	 * @return the entry as an int
+	 */
+	public int getInt(int x, int y) {
+		if (table != null)
+			return table.getInt(x, y);
+		return isNull(x, y) ? 0 : Integer.parseInt(getEntry(x, y));
+	}
+
+	/**
+	 * gets the entry at the xth column and yth row as a long. Empty entries
+	 * are 0.
+	 * 
+	 * @param x
+	 *            x location to look
+	 * @param y
+	 *            y location to look
+	 * @return the entry as a long
+	 */
+	public long getLong(int x, int y) {
+		if (table != null)
+			return table.getLong(x, y);
+		return isNull(x, y) ? 0 : Long.parseLong(getEntry(x, y));
+	}
+
+	/**
+	 * gets the entry at the xth column and yth row as a double. Empty entries
+	 * are 0.
+	 * 
+	 * @param x
+	 *            x location to look
+	 * @param y
+	 *            y location to look
+	 * @return the entry as a double
+	 */
+	public double getDouble(int x, int y) {
+		if (table != null)
+			return table.getDouble(x, y);
+		return isNull(x, y) ? 0 : Double.parseDouble(getEntry(x, y));
+	}
+
+	/**
+	 * gets the entry at the xth column and yth row as a boolean. Empty entries
+	 * are false.
+	 * 
+	 * @param x
+	 *            x location to look
+	 * @param y
+	 *            y location to look
+	 * @return the entry as a boolean
+	 */
+	public boolean getBoolean(int x, int y) {
+		if (table != null)
+			return table.getBoolean(x, y);
+		return !isNull(x, y) && Boolean.parseBoolean(getEntry(x, y));
+	}
+
+	/**
+	 * gets the entry at the xth column and yth row as an iso date. Empty
+	 * entries are null.
+	 * 
+	 * @param x
+	 *            x location to look
+	 * @param y
+	 *            y location to look
+	 * @return the entry as a date
+	 */
+	public LocalDate getDate(int x, int y) {
+		if (table != null)
+			return table.getDate(x, y);
+		return isNull(x, y) ? null : LocalDate.parse(getEntry(x, y));
+	}
+
+	/**
+	 * the offsets of the lines of a chunk and the chunk's profile.
+	 */
+	private static class Lines {
+		private final long[] offsets;
+		private final CSVProfile profile;
+
+		private Lines(long[] offsets, CSVProfile profile) {
+			this.offsets = offsets;
+			this.profile = profile;
+		}
 	}
 
 }
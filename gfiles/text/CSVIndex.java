@@ -0,0 +1,215 @@
+package gfiles.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * hash index from the values of one or more key columns of a
+ * {@link CSVFileReader} to the rows that have those values. Keys don't have
+ * to be unique, every row with a key can be looked up. Rows that are missing
+ * any of the key columns aren't indexed.
+ *
+ * Indexes are made by {@link CSVFileReader#createIndex(String...)} or
+ * {@link CSVFileReader#getIndex(String...)}, and are built again by the reader
+ * when its data is refreshed.
+ *
+ * @author Gavin
+ *
+ */
+public class CSVIndex {
+
+	// no rows for a key that isn't in the index.
+	private static final int[] NO_ROWS = new int[0];
+
+	// titles and positions of the key columns.
+	private final String[] titles;
+	private final int[] columns;
+
+	// rows for each key. Keys of a single column are the value itself, keys of
+	// several columns are a list of the values.
+	private final Map<Object, int[]> rows = new HashMap<>();
+
+	/**
+	 * creates the index over the reader's current data.
+	 *
+	 * @param reader
+	 *            reader to index
+	 * @param titles
+	 *            titles of the key columns
+	 * @param columns
+	 *            positions of the key columns
+	 */
+	CSVIndex(CSVFileReader reader, String[] titles, int[] columns) {
+		this.titles = titles.clone();
+		this.columns = columns.clone();
+
+		CSVTable table = reader.getTable();
+		if (table != null && columns.length == 1 && columns[0] < table.columns() && table.isDictionary(columns[0])) {
+			indexCodes(table, columns[0]);
+			return;
+		}
+
+		// collect the rows of every key, growing the arrays as needed and
+		// keeping the count of rows in the first element.
+		Map<Object, int[]> found = new HashMap<>();
+		String[] values = new String[columns.length];
+		int count = reader.rows();
+		for (int y = 0; y < count; y++) {
+			if (!getValues(reader, y, values))
+				continue;
+			Object key = key(values);
+			int[] list = found.get(key);
+			if (list == null) {
+				list = new int[2];
+				found.put(key, list);
+			} else if (list[0] + 1 == list.length) {
+				list = Arrays.copyOf(list, list.length * 2);
+				found.put(key, list);
+			}
+			list[++list[0]] = y;
+		}
+
+		// trim the lists down to just the rows.
+		for (Map.Entry<Object, int[]> entry : found.entrySet()) {
+			int[] list = entry.getValue();
+			rows.put(entry.getKey(), Arrays.copyOfRange(list, 1, list[0] + 1));
+		}
+	}
+
+	/**
+	 * indexes a dictionary column by counting the rows of each code and then
+	 * putting each row in its code's array, without looking at any strings.
+	 * Empty values aren't in the dictionary so they are collected separately.
+	 */
+	private void indexCodes(CSVTable table, int column) {
+		int count = table.rows();
+		String[] dictionary = table.getDictionary(column);
+		int[] sizes = new int[dictionary.length + 2];
+		for (int y = 0; y < count; y++)
+			sizes[code(table, column, y, dictionary.length) + 1]++;
+
+		int[][] lists = new int[sizes.length][];
+		for (int i = 1; i < sizes.length; i++)
+			lists[i] = new int[sizes[i]];
+		Arrays.fill(sizes, 0);
+		for (int y = 0; y < count; y++) {
+			int slot = code(table, column, y, dictionary.length) + 1;
+			if (slot > 0)
+				lists[slot][sizes[slot]++] = y;
+		}
+
+		for (int i = 0; i < dictionary.length; i++) {
+			if (lists[i + 1].length > 0)
+				rows.put(dictionary[i], lists[i + 1]);
+		}
+		if (lists[dictionary.length + 1].length > 0)
+			rows.put("", lists[dictionary.length + 1]);
+	}
+
+	/**
+	 * gets the code of the row, the dictionary's size for an empty value or
+	 * -1 if the row is too short to have the column.
+	 */
+	private static int code(CSVTable table, int column, int y, int empty) {
+		int code = table.getCode(column, y);
+		if (code != -1)
+			return code;
+		return table.getString(column, y) == null ? -1 : empty;
+	}
+
+	/**
+	 * gets the values of the key columns on the row.
+	 *
+	 * @return false if the row is missing one of the columns
+	 */
+	private boolean getValues(CSVFileReader reader, int y, String[] values) {
+		for (int i = 0; i < columns.length; i++) {
+			values[i] = reader.getEntry(columns[i], y);
+			if (values[i] == null)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * makes the hash key for the values of the key columns.
+	 */
+	private static Object key(String[] values) {
+		if (values.length == 1)
+			return values[0];
+		return new ArrayList<>(Arrays.asList(values));
+	}
+
+	/**
+	 * gets the titles of the key columns.
+	 *
+	 * @return titles of the key columns
+	 */
+	public String[] getTitles() {
+		return titles.clone();
+	}
+
+	/**
+	 * gets the positions of the key columns.
+	 *
+	 * @return positions of the key columns
+	 */
+	public int[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * gets how many different keys are in the index.
+	 *
+	 * @return number of keys
+	 */
+	public int size() {
+		return rows.size();
+	}
+
+	/**
+	 * gets every row that has the key, in order.
+	 *
+	 * @param key
+	 *            value of each key column
+	 * @return rows with the key, empty if there aren't any
+	 */
+	public int[] getRows(String... key) {
+		int[] found = find(key);
+		return found == NO_ROWS ? found : found.clone();
+	}
+
+	/**
+	 * gets the first row that has the key.
+	 *
+	 * @param key
+	 *            value of each key column
+	 * @return first row with the key, or -1 if there isn't one
+	 */
+	public int getRow(String... key) {
+		int[] found = find(key);
+		return found.length == 0 ? -1 : found[0];
+	}
+
+	/**
+	 * checks if any row has the key.
+	 *
+	 * @param key
+	 *            value of each key column
+	 * @return true if the key is in the index
+	 */
+	public boolean contains(String... key) {
+		return find(key).length != 0;
+	}
+
+	private int[] find(String[] key) {
+		if (key.length != columns.length)
+			throw new IllegalArgumentException("Index has " + columns.length + " key columns, not " + key.length);
+		int[] found = rows.get(key.length == 1 ? key[0] : Arrays.asList(key));
+		return found == null ? NO_ROWS : found;
+	}
+
+}
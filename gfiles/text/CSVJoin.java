@@ -0,0 +1,629 @@
+package gfiles.text;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gfiles.file.VirtualFile;
+
+/**
+ * joins the rows of two csv files with titles on the values of key columns.
+ * Each output row has every column of the left file followed by the columns
+ * of the right file other than its keys. An inner join only keeps left rows
+ * that have a match, a left join keeps every left row and leaves the right
+ * columns empty when there isn't a match. Rows with an empty or missing key
+ * never match.
+ *
+ * A hash join puts the keys of one file in a hash table and looks up the rows
+ * of the other file in it. If the table wouldn't fit in the memory budget both
+ * files are split into partitions on disk by the hash of their keys and each
+ * pair of partitions is joined on its own, which changes the order of the
+ * output rows. A merge join instead walks through two files that are already
+ * sorted by their keys, see {@link CSVSorter}, and keeps the order of the
+ * left file.
+ *
+ * To use, create a join for the two files, give it the key columns and then
+ * call one of the join methods, e.g.
+ *
+ * <pre>
+ * CSVFile enriched = new CSVJoin(orders, customers).on("customer", "id").setType(CSVJoin.LEFT).hashJoin();
+ * </pre>
+ *
+ * @author Gavin
+ *
+ */
+public class CSVJoin {
+
+	/**
+	 * join type that only keeps left rows with a matching right row.
+	 */
+	public static final int INNER = 0;
+
+	/**
+	 * join type that keeps every left row.
+	 */
+	public static final int LEFT = 1;
+
+	// the hash table takes up about this many times the size of the file it
+	// is built from.
+	private static final int TABLE_OVERHEAD = 2;
+
+	// most partitions to split the files into when spilling.
+	private static final int MAX_PARTITIONS = 1024;
+
+	// size of the buffer for reading and writing partitions.
+	private static final int BUFFER_SIZE = 1 << 13;
+
+	// files to join.
+	private final CSVFile left;
+	private final CSVFile right;
+
+	// titles of the files.
+	private final String[] leftTitles;
+	private final String[] rightTitles;
+
+	// positions of the key columns in each file.
+	private int[] leftKeys;
+	private int[] rightKeys;
+
+	// type of join.
+	private int type = INNER;
+
+	// how keys are compared by the merge join, see CSVTable's types.
+	private int keyType = CSVTable.TYPE_STRING;
+
+	// how much memory the hash table can take up.
+	private long memoryBudget = 64L << 20;
+
+	// where partitions are written, null for the system's temporary directory.
+	private File tempDirectory = null;
+
+	/**
+	 * creates a join between the two files, both of which have titles on
+	 * their first lines.
+	 *
+	 * @param left
+	 *            file whose rows are enriched
+	 * @param right
+	 *            file to look up matching rows in
+	 */
+	public CSVJoin(CSVFile left, CSVFile right) {
+		this.left = left;
+		this.right = right;
+		this.leftTitles = readTitles(left);
+		this.rightTitles = readTitles(right);
+	}
+
+	/**
+	 * creates a join between the files of two readers.
+	 *
+	 * @param left
+	 *            reader whose rows are enriched
+	 * @param right
+	 *            reader to look up matching rows in
+	 */
+	public CSVJoin(CSVFileReader left, CSVFileReader right) {
+		this(left.file(), right.file());
+	}
+
+	private static String[] readTitles(CSVFile file) {
+		CSVCursor cursor = file.valueCursor(0, Integer.MAX_VALUE);
+		return cursor.next() ? file.values(cursor) : new String[0];
+	}
+
+	/**
+	 * joins on a single key column in each file.
+	 *
+	 * @param leftKey
+	 *            title of the key column in the left file
+	 * @param rightKey
+	 *            title of the key column in the right file
+	 * @return this join
+	 */
+	public CSVJoin on(String leftKey, String rightKey) {
+		return on(new String[] { leftKey }, new String[] { rightKey });
+	}
+
+	/**
+	 * joins on several key columns in each file, i.e. a composite key.
+	 *
+	 * @param leftKeys
+	 *            titles of the key columns in the left file
+	 * @param rightKeys
+	 *            titles of the key columns in the right file, in the same
+	 *            order
+	 * @return this join
+	 */
+	public CSVJoin on(String[] leftKeys, String[] rightKeys) {
+		if (leftKeys.length != rightKeys.length || leftKeys.length == 0)
+			throw new IllegalArgumentException("Both files need the same number of key columns");
+		this.leftKeys = columns(leftTitles, leftKeys);
+		this.rightKeys = columns(rightTitles, rightKeys);
+		return this;
+	}
+
+	private static int[] columns(String[] titles, String[] keys) {
+		int[] columns = new int[keys.length];
+		for (int k = 0; k < keys.length; k++) {
+			columns[k] = Arrays.asList(titles).indexOf(keys[k]);
+			if (columns[k] == -1)
+				throw new IllegalArgumentException("No column titled " + keys[k]);
+		}
+		return columns;
+	}
+
+	/**
+	 * sets the type of join, {@link #INNER} or {@link #LEFT}. Default is
+	 * inner.
+	 *
+	 * @param type
+	 *            type of join
+	 * @return this join
+	 */
+	public CSVJoin setType(int type) {
+		this.type = type;
+		return this;
+	}
+
+	/**
+	 * sets how the merge join compares keys, {@link CSVTable#TYPE_LONG} or
+	 * {@link CSVTable#TYPE_DOUBLE} for numbers and anything else for text. It
+	 * has to match how the files were sorted. Default is text.
+	 *
+	 * @param keyType
+	 *            type of the keys
+	 * @return this join
+	 */
+	public CSVJoin setKeyType(int keyType) {
+		this.keyType = keyType;
+		return this;
+	}
+
+	/**
+	 * sets roughly how much memory the hash join's table can take up before
+	 * the files are partitioned on disk. Default is 64 MB.
+	 *
+	 * @param bytes
+	 *            memory budget in bytes
+	 * @return this join
+	 */
+	public CSVJoin setMemoryBudget(long bytes) {
+		this.memoryBudget = bytes;
+		return this;
+	}
+
+	/**
+	 * sets the directory partitions are written to, default is the system's
+	 * temporary directory.
+	 *
+	 * @param directory
+	 *            directory for the partitions
+	 * @return this join
+	 */
+	public CSVJoin setTempDirectory(File directory) {
+		this.tempDirectory = directory;
+		return this;
+	}
+
+	/**
+	 * hash joins the files into a new csv file.
+	 *
+	 * @return the joined file
+	 * @throws IOException
+	 *             if partitions couldn't be written or read
+	 */
+	public CSVFile hashJoin() throws IOException {
+		CSVFile joined = output();
+		CSVWriter writer = new CSVWriter(joined);
+		hashJoin(writer);
+		writer.flush();
+		return joined;
+	}
+
+	/**
+	 * hash joins the files into the output stream, which isn't closed. The
+	 * table is built from the right file for a left join and from the smaller
+	 * file for an inner join.
+	 *
+	 * @param out
+	 *            stream to write the joined rows to
+	 * @throws IOException
+	 *             if the stream or the partitions couldn't be written or read
+	 */
+	public void hashJoin(OutputStream out) throws IOException {
+		CSVWriter writer = writer(out);
+		hashJoin(writer);
+		writer.flush();
+	}
+
+	private void hashJoin(CSVWriter output) throws IOException {
+		checkKeys();
+		boolean buildLeft = type == INNER && left.getBytes() < right.getBytes();
+		CSVFile build = buildLeft ? left : right;
+		CSVFile probe = buildLeft ? right : left;
+		int[] buildKeys = buildLeft ? leftKeys : rightKeys;
+		int[] probeKeys = buildLeft ? rightKeys : leftKeys;
+
+		writeTitles(output);
+
+		long needed = (long) build.getBytes() * TABLE_OVERHEAD;
+		if (needed <= memoryBudget) {
+			CSVCursor titles = build.cursor();
+			titles.next();
+			CSVCursor rows = probe.cursor();
+			rows.next();
+			probe(build, titles.position(), buildKeys, () -> rows.next() ? rows : null, probeKeys, buildLeft,
+					output);
+		} else {
+			int partitions = (int) Math.min(MAX_PARTITIONS, needed / Math.max(1, memoryBudget) + 2);
+			graceJoin(build, buildKeys, probe, probeKeys, buildLeft, partitions, output);
+		}
+	}
+
+	/**
+	 * builds a hash table of the build file's keys starting at the offset and
+	 * looks up each of the probe rows in it.
+	 */
+	private void probe(CSVFile build, int start, int[] buildKeys, RowSource probeRows, int[] probeKeys,
+			boolean buildLeft, CSVWriter out) throws IOException {
+		Map<List<String>, int[]> table = new HashMap<>();
+		CSVCursor cursor = build.cursor(start, Integer.MAX_VALUE);
+		while (cursor.next()) {
+			List<String> key = key(cursor, buildKeys);
+			if (key == null)
+				continue;
+			int[] offsets = table.get(key);
+			if (offsets == null) {
+				offsets = new int[2];
+				table.put(key, offsets);
+			} else if (offsets[0] + 1 == offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				table.put(key, offsets);
+			}
+			offsets[++offsets[0]] = cursor.lineStart();
+		}
+
+		CSVCursor match = build.cursor(start, Integer.MAX_VALUE);
+		TextRow row;
+		while ((row = probeRows.next()) != null) {
+			List<String> key = key(row, probeKeys);
+			int[] offsets = key == null ? null : table.get(key);
+			if (offsets == null) {
+				if (type == LEFT)
+					writeRow(out, row, null);
+				continue;
+			}
+			for (int i = 1; i <= offsets[0]; i++) {
+				match.seek(offsets[i]);
+				match.next();
+				if (buildLeft)
+					writeRow(out, match, row);
+				else
+					writeRow(out, row, match);
+			}
+		}
+	}
+
+	/**
+	 * splits both files into partitions on disk by the hash of their keys and
+	 * hash joins each pair of partitions.
+	 */
+	private void graceJoin(CSVFile build, int[] buildKeys, CSVFile probe, int[] probeKeys, boolean buildLeft,
+			int partitions, CSVWriter out) throws IOException {
+		File[] buildParts = new File[partitions];
+		File[] probeParts = new File[partitions];
+		try {
+			partition(build, buildKeys, buildParts, false);
+			partition(probe, probeKeys, probeParts, type == LEFT);
+
+			for (int p = 0; p < partitions; p++) {
+				CSVFile part = new CSVFile(VirtualFile.load(buildParts[p]));
+				copySettings(build, part);
+				try (InputStream in = new FileInputStream(probeParts[p])) {
+					RecordStream records = new RecordStream(in, new CSVParser(encode(probe, probe.getDelimiter()),
+							probe.isQuoting(), probe.isIgnoringSpaces()), BUFFER_SIZE);
+					TextRow row = new TextRow();
+					probe(part, 0, buildKeys, () -> records.next(row) ? row : null, probeKeys, buildLeft, out);
+				}
+			}
+		} finally {
+			for (int p = 0; p < partitions; p++) {
+				if (buildParts[p] != null)
+					buildParts[p].delete();
+				if (probeParts[p] != null)
+					probeParts[p].delete();
+			}
+		}
+	}
+
+	/**
+	 * copies the records of the file after its titles into partition files by
+	 * the hash of their keys. Records without keys are dropped unless they
+	 * need to be kept for a left join.
+	 */
+	private void partition(CSVFile file, int[] keys, File[] parts, boolean keepMissing) throws IOException {
+		OutputStream[] outs = new OutputStream[parts.length];
+		try {
+			for (int p = 0; p < parts.length; p++) {
+				parts[p] = File.createTempFile("csvjoin", ".part", tempDirectory);
+				parts[p].deleteOnExit();
+				outs[p] = new BufferedOutputStream(new FileOutputStream(parts[p]), BUFFER_SIZE);
+			}
+
+			byte[] data = file.bytes();
+			CSVCursor cursor = file.cursor();
+			cursor.next();
+			while (cursor.next()) {
+				List<String> key = key(cursor, keys);
+				if (key == null && !keepMissing)
+					continue;
+				int p = key == null ? 0 : Math.floorMod(key.hashCode() * 0x9E3779B9, parts.length);
+				outs[p].write(data, cursor.lineStart(), cursor.lineEnd() - cursor.lineStart());
+				outs[p].write('\n');
+			}
+		} finally {
+			for (OutputStream out : outs) {
+				if (out != null)
+					out.close();
+			}
+		}
+	}
+
+	/**
+	 * merge joins the files into a new csv file. Both files have to be sorted
+	 * from smallest to largest by their keys.
+	 *
+	 * @return the joined file
+	 * @throws IllegalStateException
+	 *             if one of the files isn't sorted
+	 */
+	public CSVFile mergeJoin() {
+		CSVFile joined = output();
+		try {
+			CSVWriter writer = new CSVWriter(joined);
+			mergeJoin(writer);
+			writer.flush();
+		} catch (IOException e) {
+			// can't happen writing to memory.
+			throw new IllegalStateException(e);
+		}
+		return joined;
+	}
+
+	/**
+	 * merge joins the files into the output stream, which isn't closed. Both
+	 * files have to be sorted from smallest to largest by their keys, rows
+	 * with empty keys can be anywhere.
+	 *
+	 * @param out
+	 *            stream to write the joined rows to
+	 * @throws IOException
+	 *             if the stream couldn't be written
+	 * @throws IllegalStateException
+	 *             if one of the files isn't sorted
+	 */
+	public void mergeJoin(OutputStream out) throws IOException {
+		CSVWriter writer = writer(out);
+		mergeJoin(writer);
+		writer.flush();
+	}
+
+	private void mergeJoin(CSVWriter output) throws IOException {
+		checkKeys();
+		writeTitles(output);
+
+		CSVCursor leftRows = left.cursor();
+		CSVCursor rightRows = right.cursor();
+		CSVCursor match = right.cursor();
+		leftRows.next();
+		rightRows.next();
+
+		// the right rows with the same key as the last left row.
+		Comparable<?>[] groupKey = null;
+		int[] group = new int[16];
+		int groupSize = 0;
+
+		Comparable<?>[] rightKey = nextSortedKey(rightRows, null);
+		Comparable<?>[] previousLeft = null;
+		while (leftRows.next()) {
+			Comparable<?>[] leftKey = sortKey(leftRows, leftKeys);
+			if (leftKey == null) {
+				if (type == LEFT)
+					writeRow(output, leftRows, null);
+				continue;
+			}
+			checkOrder(previousLeft, leftKey, "left");
+			previousLeft = leftKey;
+
+			// collect the right rows with the key unless they already are.
+			if (groupKey == null || compare(groupKey, leftKey) != 0) {
+				while (rightKey != null && compare(rightKey, leftKey) < 0)
+					rightKey = nextSortedKey(rightRows, rightKey);
+				groupSize = 0;
+				groupKey = leftKey;
+				while (rightKey != null && compare(rightKey, leftKey) == 0) {
+					if (groupSize == group.length)
+						group = Arrays.copyOf(group, groupSize * 2);
+					group[groupSize++] = rightRows.lineStart();
+					rightKey = nextSortedKey(rightRows, rightKey);
+				}
+			}
+
+			if (groupSize == 0 && type == LEFT)
+				writeRow(output, leftRows, null);
+			for (int i = 0; i < groupSize; i++) {
+				match.seek(group[i]);
+				match.next();
+				writeRow(output, leftRows, match);
+			}
+		}
+	}
+
+	/**
+	 * moves the right cursor to the next row with a key, making sure the keys
+	 * are in order.
+	 *
+	 * @return the key, or null at the end of the file
+	 */
+	private Comparable<?>[] nextSortedKey(CSVCursor rows, Comparable<?>[] previous) {
+		while (rows.next()) {
+			Comparable<?>[] key = sortKey(rows, rightKeys);
+			if (key != null) {
+				checkOrder(previous, key, "right");
+				return key;
+			}
+		}
+		return null;
+	}
+
+	private void checkOrder(Comparable<?>[] previous, Comparable<?>[] key, String side) {
+		if (previous != null && compare(previous, key) > 0)
+			throw new IllegalStateException("The " + side + " file isn't sorted by its join keys");
+	}
+
+	/**
+	 * gets the key of the row for the merge join, parsed as the key type.
+	 */
+	private Comparable<?>[] sortKey(TextRow row, int[] keys) {
+		Comparable<?>[] key = new Comparable<?>[keys.length];
+		for (int k = 0; k < keys.length; k++) {
+			int field = keys[k];
+			if (field >= row.fieldCount() || row.isEmpty(field))
+				return null;
+			if (keyType == CSVTable.TYPE_INT || keyType == CSVTable.TYPE_LONG)
+				key[k] = row.parseLong(field);
+			else if (keyType == CSVTable.TYPE_DOUBLE)
+				key[k] = row.parseDouble(field);
+			else
+				key[k] = row.getString(field);
+		}
+		return key;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compare(Comparable<?>[] a, Comparable<?>[] b) {
+		for (int k = 0; k < a.length; k++) {
+			int compare = ((Comparable) a[k]).compareTo(b[k]);
+			if (compare != 0)
+				return compare;
+		}
+		return 0;
+	}
+
+	/**
+	 * gets the key of the row for the hash join.
+	 *
+	 * @return values of the key columns, or null if one of them is empty
+	 */
+	private static List<String> key(TextRow row, int[] keys) {
+		String[] values = new String[keys.length];
+		for (int k = 0; k < keys.length; k++) {
+			int field = keys[k];
+			if (field >= row.fieldCount() || row.isEmpty(field))
+				return null;
+			values[k] = row.getString(field);
+		}
+		return Arrays.asList(values);
+	}
+
+	private void checkKeys() {
+		if (leftKeys == null)
+			throw new IllegalStateException("The key columns haven't been set");
+	}
+
+	/**
+	 * writes the titles of the output.
+	 */
+	private void writeTitles(CSVWriter out) throws IOException {
+		for (String title : leftTitles)
+			out.write(title);
+		for (int i = 0; i < rightTitles.length; i++) {
+			if (!isRightKey(i))
+				out.write(rightTitles[i]);
+		}
+		out.endRow();
+	}
+
+	private boolean isRightKey(int column) {
+		for (int key : rightKeys) {
+			if (key == column)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * writes a joined row, either row can be missing to leave its columns
+	 * empty.
+	 */
+	private void writeRow(CSVWriter out, TextRow leftRow, TextRow rightRow) throws IOException {
+		for (int i = 0; i < leftTitles.length; i++)
+			writeField(out, leftRow, i);
+		for (int i = 0; i < rightTitles.length; i++) {
+			if (!isRightKey(i))
+				writeField(out, rightRow, i);
+		}
+		out.endRow();
+	}
+
+	/**
+	 * writes a field of the row, fields past the end of the row are left
+	 * empty.
+	 */
+	private static void writeField(CSVWriter out, TextRow row, int field) throws IOException {
+		if (row == null || field >= row.fieldCount())
+			out.writeNull();
+		else
+			out.write(row, field);
+	}
+
+	private static byte[] encode(CSVFile file, String text) {
+		return text.getBytes(file.isUtf8() ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * creates the file for the output with the left file's settings, which
+	 * quotes if either file does.
+	 */
+	private CSVFile output() {
+		CSVFile joined = new CSVFile();
+		copySettings(left, joined);
+		joined.setQuoting(left.isQuoting() || right.isQuoting());
+		return joined;
+	}
+
+	/**
+	 * creates a writer for the output stream that writes the same way as the
+	 * output file would.
+	 */
+	private CSVWriter writer(OutputStream out) {
+		return new CSVWriter(out).setUtf8(left.isUtf8()).setDelimiter(left.getDelimiter())
+				.setQuoting(left.isQuoting() || right.isQuoting());
+	}
+
+	private static void copySettings(CSVFile from, CSVFile to) {
+		to.setUtf8(from.isUtf8());
+		to.setDelimiter(from.getDelimiter());
+		to.setQuoting(from.isQuoting());
+		to.ignoreSpacesNearDelimiter(from.isIgnoringSpaces());
+	}
+
+	/**
+	 * gives the rows to probe one at a time.
+	 */
+	@FunctionalInterface
+	private interface RowSource {
+		TextRow next() throws IOException;
+	}
+
+}
@@ -0,0 +1,334 @@
+package gfiles.text;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * state machine that splits csv records into fields following rfc 4180. With
+ * quoting turned on a field starting with a double quote runs until the
+ * closing quote, so it can hold delimiters and line breaks, and two quotes in
+ * a row inside of it stand for a single quote. With quoting off every
+ * delimiter and line break splits, the same as the original csv file.
+ *
+ * Unquoted fields are found by scanning a word at a time for the delimiter or
+ * a line break and are never copied. Quoted fields are only copied into the
+ * row's buffer when they have escaped quotes that need to be removed.
+ *
+ * @author Gavin
+ *
+ */
+public class CSVParser {
+
+	// the quote character of rfc 4180.
+	private static final byte QUOTE = '"';
+
+	// delimiter between the fields.
+	private final byte[] delimiter;
+
+	// first byte of the delimiter, what the fast path scans for. An empty
+	// delimiter never splits so a line break is used instead.
+	private final byte first;
+
+	// whether quoted fields are recognized.
+	private final boolean quoting;
+
+	// whether white space around the fields is trimmed.
+	private final boolean trim;
+
+	/**
+	 * creates a parser for comma separated records with quoting turned on and
+	 * no trimming.
+	 */
+	public CSVParser() {
+		this(",".getBytes(StandardCharsets.US_ASCII), true, false);
+	}
+
+	/**
+	 * creates a parser with the given settings.
+	 *
+	 * @param delimiter
+	 *            encoded delimiter between the fields
+	 * @param quoting
+	 *            whether quoted fields are recognized
+	 * @param trim
+	 *            whether the white space around each field is trimmed, the
+	 *            inside of a quoted field is never trimmed
+	 */
+	public CSVParser(byte[] delimiter, boolean quoting, boolean trim) {
+		this.delimiter = delimiter.clone();
+		this.first = delimiter.length == 0 ? (byte) '\n' : delimiter[0];
+		this.quoting = quoting;
+		this.trim = trim;
+	}
+
+	/**
+	 * parses the record starting at the given position into the row. The
+	 * record ends at the first line break that isn't inside of a quoted field,
+	 * where a line break is a \n, a \r\n or a lone \r.
+	 *
+	 * If the end of the input hasn't been reached yet, i.e. more bytes will be
+	 * added after the limit, a record that runs up to the limit is incomplete
+	 * and nothing is parsed so the caller can read more and try again.
+	 *
+	 * @param data
+	 *            bytes to parse
+	 * @param position
+	 *            start of the record
+	 * @param limit
+	 *            end of the available bytes
+	 * @param endOfInput
+	 *            true if there are no bytes after the limit
+	 * @param row
+	 *            row to put the fields in
+	 * @return position of the next record, or -1 if there isn't a complete
+	 *         record
+	 */
+	public int parse(byte[] data, int position, int limit, boolean endOfInput, TextRow row) {
+		return parse(data, position, limit, endOfInput, row, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * parses the record starting at the given position into the row, only
+	 * keeping its first few fields. Without quoting the rest of the record is
+	 * skipped by scanning straight to the line break, so fields that aren't
+	 * needed aren't split up at all.
+	 *
+	 * @param data
+	 *            bytes to parse
+	 * @param position
+	 *            start of the record
+	 * @param limit
+	 *            end of the available bytes
+	 * @param endOfInput
+	 *            true if there are no bytes after the limit
+	 * @param row
+	 *            row to put the fields in
+	 * @param maxFields
+	 *            most fields to put in the row
+	 * @return position of the next record, or -1 if there isn't a complete
+	 *         record
+	 */
+	public int parse(byte[] data, int position, int limit, boolean endOfInput, TextRow row, int maxFields) {
+		int next = parseRecord(data, position, limit, endOfInput, row, maxFields);
+		if (row.count > maxFields)
+			row.count = maxFields;
+		return next;
+	}
+
+	/**
+	 * parses the record, skipping over the fields after the most wanted when
+	 * it can.
+	 */
+	private int parseRecord(byte[] data, int position, int limit, boolean endOfInput, TextRow row, int maxFields) {
+		row.clear(data);
+		if (position >= limit)
+			return -1;
+
+		int i = position;
+		row.rowStart = position;
+		while (true) {
+			int fieldStart = i;
+
+			// check for an opening quote, looking past leading white space if
+			// the field is being trimmed.
+			int quote = -1;
+			if (quoting) {
+				int q = i;
+				if (trim) {
+					while (q < limit && (data[q] == ' ' || data[q] == '\t'))
+						q++;
+				}
+				if (q < limit && data[q] == QUOTE)
+					quote = q;
+			}
+
+			if (quote != -1) {
+				// slow path for the inside of the quotes.
+				i = parseQuoted(data, quote, limit, endOfInput, row);
+				if (i == -1) {
+					row.count = 0;
+					return -1;
+				}
+			} else {
+				// fast path, scan for the end of the field a word at a time.
+				i = ByteSearch.indexOfAny(data, i, limit, first, (byte) '\n', (byte) '\r');
+				while (i < limit && data[i] == first && !matchesDelimiter(data, i, limit))
+					i = ByteSearch.indexOfAny(data, i + 1, limit, first, (byte) '\n', (byte) '\r');
+				addField(data, fieldStart, i, row);
+			}
+
+			// skip the fields that aren't wanted, which can't hold a line
+			// break without quoting. With quoting they are parsed and then
+			// dropped at the end.
+			if (!quoting && row.count >= maxFields && i < limit && data[i] != '\n' && data[i] != '\r')
+				i = ByteSearch.indexOfEither(data, i, limit, (byte) '\n', (byte) '\r');
+
+			// work out what ended the field.
+			if (i >= limit) {
+				if (!endOfInput) {
+					row.count = 0;
+					return -1;
+				}
+				row.rowEnd = limit;
+				return limit;
+			}
+
+			byte b = data[i];
+			if (b == '\n') {
+				row.rowEnd = i;
+				return i + 1;
+			}
+			if (b == '\r') {
+				row.rowEnd = i;
+				if (i + 1 < limit)
+					return data[i + 1] == '\n' ? i + 2 : i + 1;
+
+				// can't tell if the \r is part of a \r\n yet.
+				if (!endOfInput) {
+					row.count = 0;
+					return -1;
+				}
+				return i + 1;
+			}
+
+			// otherwise it was a delimiter so move on to the next field.
+			i += delimiter.length;
+		}
+	}
+
+	/**
+	 * parses a quoted field starting at its opening quote.
+	 *
+	 * @return index of what ended the field, i.e. a delimiter, line break or
+	 *         the limit, or -1 if more input is needed
+	 */
+	private int parseQuoted(byte[] data, int quote, int limit, boolean endOfInput, TextRow row) {
+		int contentStart = quote + 1;
+		int i = contentStart;
+
+		// start of the field in the scratch buffer if it had to be copied.
+		int copyStart = -1;
+
+		while (true) {
+			int close = ByteSearch.indexOfEither(data, i, limit, QUOTE, QUOTE);
+
+			if (close >= limit) {
+				if (!endOfInput)
+					return -1;
+
+				// an unterminated quote runs to the end of the input.
+				if (copyStart == -1) {
+					row.add(contentStart, limit);
+				} else {
+					row.copy(data, i, limit);
+					row.addCopied(copyStart, row.scratchLength);
+				}
+				return limit;
+			}
+
+			if (close + 1 >= limit && !endOfInput)
+				return -1;
+
+			if (close + 1 < limit && data[close + 1] == QUOTE) {
+				// an escaped quote, copy up to and including one of the quotes.
+				if (copyStart == -1) {
+					copyStart = row.scratchLength;
+					row.copy(data, contentStart, close + 1);
+				} else {
+					row.copy(data, i, close + 1);
+				}
+				i = close + 2;
+				continue;
+			}
+
+			// the closing quote, find the end of the field after it.
+			int end = ByteSearch.indexOfAny(data, close + 1, limit, first, (byte) '\n', (byte) '\r');
+			while (end < limit && data[end] == first && !matchesDelimiter(data, end, limit))
+				end = ByteSearch.indexOfAny(data, end + 1, limit, first, (byte) '\n', (byte) '\r');
+			if (end >= limit && !endOfInput)
+				return -1;
+
+			// anything other than white space between the closing quote and
+			// the end of the field is kept as part of the field.
+			int extra = end;
+			if (trim) {
+				while (extra > close + 1 && isSpace(data[extra - 1]))
+					extra--;
+			}
+
+			if (copyStart == -1 && extra == close + 1) {
+				row.add(contentStart, close);
+			} else {
+				if (copyStart == -1) {
+					copyStart = row.scratchLength;
+					row.copy(data, contentStart, close);
+				} else {
+					row.copy(data, i, close);
+				}
+				row.copy(data, close + 1, extra);
+				row.addCopied(copyStart, row.scratchLength);
+			}
+			return end;
+		}
+	}
+
+	/**
+	 * checks if the full delimiter starts at the given index.
+	 */
+	private boolean matchesDelimiter(byte[] data, int index, int limit) {
+		if (index + delimiter.length > limit)
+			return false;
+		for (int j = 1; j < delimiter.length; j++) {
+			if (data[index + j] != delimiter[j])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * adds an unquoted field to the row, trimming it first if needed.
+	 */
+	private void addField(byte[] data, int start, int end, TextRow row) {
+		if (trim) {
+			while (start < end && isSpace(data[start]))
+				start++;
+			while (end > start && isSpace(data[end - 1]))
+				end--;
+		}
+		row.add(start, end);
+	}
+
+	/**
+	 * same as string's trim, anything at or below a space is white space.
+	 */
+	private static boolean isSpace(byte b) {
+		return (b & 0xFF) <= ' ';
+	}
+
+	/**
+	 * gets the encoded delimiter of the parser.
+	 *
+	 * @return copy of the delimiter
+	 */
+	public byte[] getDelimiter() {
+		return delimiter.clone();
+	}
+
+	/**
+	 * tells whether quoted fields are recognized.
+	 *
+	 * @return true if quoting is on
+	 */
+	public boolean isQuoting() {
+		return quoting;
+	}
+
+	/**
+	 * tells whether white space around the fields is trimmed.
+	 *
+	 * @return true if fields are trimmed
+	 */
+	public boolean isTrimming() {
+		return trim;
+	}
+
+}
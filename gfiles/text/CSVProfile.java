@@ -0,0 +1,928 @@
+package gfiles.text;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a profile of the values in each column of a csv file that is built up one
+ * row at a time, so it can be gathered in the same pass that parses the file.
+ * Each column keeps a count of its empty values, its smallest and biggest
+ * values, and sketches that use a fixed amount of memory however many rows
+ * there are: a HyperLogLog for the number of different values, a Space-Saving
+ * summary for the most common values and a KLL sketch for the quantiles of
+ * its numbers.
+ *
+ * Profiles of different parts of a file can be merged, so chunks of a file can
+ * be profiled on separate threads and then combined, e.g.
+ *
+ * <pre>
+ * CSVProfile profile = CSVProfile.profile(file, true, true);
+ * long distinct = profile.getColumn("customer").getDistinctCount();
+ * </pre>
+ *
+ * or a {@link CSVFileReader} can gather one while it loads the file with the
+ * {@link CSVFileReader#PROFILE} flag.
+ *
+ * @author Gavin
+ *
+ */
+public class CSVProfile {
+
+	/**
+	 * number of values each column keeps counts for to find its most common
+	 * values. Values that are more common than one in this many are always
+	 * found.
+	 */
+	public static final int TOP_CAPACITY = 256;
+
+	// bits for the types that a value could be, see CSVTable.classify.
+	private static final int INT_BIT = 1 << CSVTable.TYPE_INT;
+	private static final int LONG_BIT = 1 << CSVTable.TYPE_LONG;
+	private static final int DOUBLE_BIT = 1 << CSVTable.TYPE_DOUBLE;
+	private static final int BOOLEAN_BIT = 1 << CSVTable.TYPE_BOOLEAN;
+	private static final int DATE_BIT = 1 << CSVTable.TYPE_DATE;
+	private static final int NUMBER_BITS = INT_BIT | LONG_BIT | DOUBLE_BIT;
+
+	// titles of the columns, or null if they aren't known.
+	private String[] titles;
+
+	// number of rows that have been added.
+	private long rows = 0;
+
+	// profile of each column, as wide as the widest row.
+	private ColumnProfile[] columns = new ColumnProfile[0];
+
+	// true if the values are utf-8 instead of one byte per character.
+	private boolean utf8 = false;
+
+	/**
+	 * creates an empty profile, rows are added to it with
+	 * {@link #add(TextRow)}.
+	 */
+	public CSVProfile() {}
+
+	/**
+	 * profiles every row of a csv file, optionally profiling chunks of the
+	 * file on multiple threads with a {@link ParallelCSVParser} and merging
+	 * them.
+	 *
+	 * @param file
+	 *            file to profile
+	 * @param titles
+	 *            whether the first line of the file is titles, which aren't
+	 *            profiled
+	 * @param parallel
+	 *            whether to profile chunks in parallel
+	 * @return the profile of the file
+	 */
+	public static CSVProfile profile(CSVFile file, boolean titles, boolean parallel) {
+		if (!parallel)
+			return profile(file, file.valueCursor(0, Integer.MAX_VALUE), titles);
+		List<CSVProfile> chunks = new ParallelCSVParser(file).parseChunks(
+				(start, stop) -> file.valueCursor(start, stop), (CSVCursor cursor) -> profile(file, cursor, titles));
+		CSVProfile profile = new CSVProfile();
+		for (CSVProfile chunk : chunks)
+			profile.merge(chunk);
+		return profile;
+	}
+
+	/**
+	 * profiles the rows of a cursor, taking the titles from its first row if
+	 * it starts at the start of a file with titles.
+	 */
+	private static CSVProfile profile(CSVFile file, CSVCursor cursor, boolean titles) {
+		CSVProfile profile = new CSVProfile();
+		boolean first = titles && cursor.start() == 0;
+		while (cursor.next()) {
+			int width = CSVFile.valueCount(cursor);
+			if (file.trimsValues())
+				cursor.trim();
+			if (first) {
+				profile.setTitles(Arrays.copyOf(cursor.toArray(), width));
+				first = false;
+			} else {
+				profile.add(cursor);
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * sets the titles of the columns.
+	 *
+	 * @param titles
+	 *            titles of the columns, or null if there aren't any
+	 */
+	public void setTitles(String[] titles) {
+		this.titles = titles;
+	}
+
+	/**
+	 * adds the values of a row to the profile. Empty values and values past
+	 * the end of a short row are counted as nulls.
+	 *
+	 * @param row
+	 *            row to add
+	 */
+	public void add(TextRow row) {
+		rows++;
+		utf8 |= row.utf8;
+		int count = row.fieldCount();
+		grow(count);
+		for (int c = 0; c < count; c++) {
+			if (!row.isEmpty(c))
+				columns[c].add(row, c);
+		}
+	}
+
+	/**
+	 * adds the rows of another profile to this one, e.g. the profile of the
+	 * next chunk of the same file. The counts and sketches of the combined
+	 * profile are the same, or as accurate, as if all of the rows had been
+	 * added to one profile.
+	 *
+	 * @param other
+	 *            profile to add
+	 */
+	public void merge(CSVProfile other) {
+		if (titles == null)
+			titles = other.titles;
+		rows += other.rows;
+		utf8 |= other.utf8;
+		grow(other.columns.length);
+		for (int c = 0; c < other.columns.length; c++)
+			columns[c].merge(other.columns[c]);
+	}
+
+	private void grow(int width) {
+		int old = columns.length;
+		if (width <= old)
+			return;
+		columns = Arrays.copyOf(columns, width);
+		for (int c = old; c < width; c++)
+			columns[c] = new ColumnProfile(this);
+	}
+
+	/**
+	 * gets the number of rows that have been profiled, not counting the
+	 * titles.
+	 *
+	 * @return number of rows
+	 */
+	public long rows() {
+		return rows;
+	}
+
+	/**
+	 * gets the number of columns, which is the number of values on the widest
+	 * row or the number of titles if there are more of them.
+	 *
+	 * @return number of columns
+	 */
+	public int columns() {
+		return Math.max(columns.length, titles == null ? 0 : titles.length);
+	}
+
+	/**
+	 * gets the titles of the columns.
+	 *
+	 * @return the titles, or null if there aren't any
+	 */
+	public String[] getTitles() {
+		return titles;
+	}
+
+	/**
+	 * gets the profile of a column.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @return profile of the column
+	 */
+	public ColumnProfile getColumn(int column) {
+		if (column < 0 || column >= columns())
+			throw new IndexOutOfBoundsException("Column " + column + " doesn't exist in a profile of " + columns()
+					+ " columns");
+		grow(column + 1);
+		return columns[column];
+	}
+
+	/**
+	 * gets the profile of the column with the title.
+	 *
+	 * @param title
+	 *            title of the column
+	 * @return profile of the column
+	 * @throws IllegalArgumentException
+	 *             if there isn't a column with the title
+	 */
+	public ColumnProfile getColumn(String title) {
+		if (titles != null) {
+			for (int c = 0; c < titles.length; c++) {
+				if (titles[c].equals(title))
+					return getColumn(c);
+			}
+		}
+		throw new IllegalArgumentException("No column named " + title);
+	}
+
+	/**
+	 * turns bytes of a value back into a string.
+	 */
+	private String decode(byte[] bytes, int length) {
+		return new String(bytes, 0, length, utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * hashes the bytes of a value into 64 well mixed bits, using fnv-1a and
+	 * then murmur3's finalizer.
+	 */
+	private static long hash(byte[] data, int start, int end) {
+		long hash = 0xcbf29ce484222325L ^ (end - start);
+		for (int i = start; i < end; i++)
+			hash = (hash ^ (data[i] & 0xFF)) * 0x100000001b3L;
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * compares bytes as unsigned values, which orders utf-8 text the same as
+	 * its code points.
+	 */
+	private static int compare(byte[] a, int aStart, int aEnd, byte[] b, int bStart, int bEnd) {
+		int length = Math.min(aEnd - aStart, bEnd - bStart);
+		for (int i = 0; i < length; i++) {
+			int difference = (a[aStart + i] & 0xFF) - (b[bStart + i] & 0xFF);
+			if (difference != 0)
+				return difference;
+		}
+		return (aEnd - aStart) - (bEnd - bStart);
+	}
+
+	/**
+	 * the profile of the values of one column.
+	 */
+	public static class ColumnProfile {
+		private final CSVProfile profile;
+
+		// number of values that weren't empty.
+		private long count = 0;
+
+		// types that every value could be.
+		private int possible = NUMBER_BITS | BOOLEAN_BIT | DATE_BIT;
+
+		// smallest and biggest values by their bytes.
+		private byte[] min;
+		private int minLength;
+		private byte[] max;
+		private int maxLength;
+
+		// the values that were numbers.
+		private long numbers = 0;
+		private double numericMin = Double.POSITIVE_INFINITY;
+		private double numericMax = Double.NEGATIVE_INFINITY;
+		private double sum = 0;
+
+		// sketches of the values.
+		private final HyperLogLog distinct = new HyperLogLog();
+		private final SpaceSaving top = new SpaceSaving(TOP_CAPACITY);
+		private final KLLSketch quantiles = new KLLSketch();
+
+		private ColumnProfile(CSVProfile profile) {
+			this.profile = profile;
+		}
+
+		private void add(TextRow row, int field) {
+			byte[] data = row.source(field);
+			int start = row.starts[field];
+			int end = row.ends[field];
+			count++;
+			int bits = CSVTable.classify(data, start, end);
+			possible &= bits;
+			if ((bits & NUMBER_BITS) != 0) {
+				double value = row.parseDouble(field);
+				numbers++;
+				sum += value;
+				if (value < numericMin)
+					numericMin = value;
+				if (value > numericMax)
+					numericMax = value;
+				quantiles.add(value);
+			}
+
+			if (min == null || compare(data, start, end, min, 0, minLength) < 0) {
+				min = copy(min, data, start, end);
+				minLength = end - start;
+			}
+			if (max == null || compare(data, start, end, max, 0, maxLength) > 0) {
+				max = copy(max, data, start, end);
+				maxLength = end - start;
+			}
+
+			long hash = hash(data, start, end);
+			distinct.add(hash);
+			top.add(data, start, end, hash);
+		}
+
+		private void merge(ColumnProfile other) {
+			count += other.count;
+			possible &= other.possible;
+			if (other.min != null && (min == null || compare(other.min, 0, other.minLength, min, 0, minLength) < 0)) {
+				min = copy(min, other.min, 0, other.minLength);
+				minLength = other.minLength;
+			}
+			if (other.max != null && (max == null || compare(other.max, 0, other.maxLength, max, 0, maxLength) > 0)) {
+				max = copy(max, other.max, 0, other.maxLength);
+				maxLength = other.maxLength;
+			}
+			numbers += other.numbers;
+			sum += other.sum;
+			numericMin = Math.min(numericMin, other.numericMin);
+			numericMax = Math.max(numericMax, other.numericMax);
+			distinct.merge(other.distinct);
+			top.merge(other.top);
+			quantiles.merge(other.quantiles);
+		}
+
+		private static byte[] copy(byte[] into, byte[] data, int start, int end) {
+			int length = end - start;
+			if (into == null || into.length < length)
+				into = new byte[Math.max(length, 16)];
+			System.arraycopy(data, start, into, 0, length);
+			return into;
+		}
+
+		/**
+		 * gets the number of values that weren't empty.
+		 *
+		 * @return number of values
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * gets the number of rows where the column was empty or missing.
+		 *
+		 * @return number of nulls
+		 */
+		public long getNullCount() {
+			return profile.rows - count;
+		}
+
+		/**
+		 * gets the narrowest type that every value in the column fits in,
+		 * e.g. {@link CSVTable#TYPE_INT}. A column without any values is a
+		 * string column.
+		 *
+		 * @return type of the column
+		 */
+		public int getType() {
+			if (count == 0)
+				return CSVTable.TYPE_STRING;
+			if ((possible & INT_BIT) != 0)
+				return CSVTable.TYPE_INT;
+			if ((possible & LONG_BIT) != 0)
+				return CSVTable.TYPE_LONG;
+			if ((possible & DOUBLE_BIT) != 0)
+				return CSVTable.TYPE_DOUBLE;
+			if ((possible & BOOLEAN_BIT) != 0)
+				return CSVTable.TYPE_BOOLEAN;
+			if ((possible & DATE_BIT) != 0)
+				return CSVTable.TYPE_DATE;
+			return CSVTable.TYPE_STRING;
+		}
+
+		/**
+		 * gets the smallest value comparing them as text, which also orders
+		 * iso dates.
+		 *
+		 * @return the smallest value, or null if there weren't any
+		 */
+		public String getMin() {
+			return min == null ? null : profile.decode(min, minLength);
+		}
+
+		/**
+		 * gets the biggest value comparing them as text, which also orders
+		 * iso dates.
+		 *
+		 * @return the biggest value, or null if there weren't any
+		 */
+		public String getMax() {
+			return max == null ? null : profile.decode(max, maxLength);
+		}
+
+		/**
+		 * gets the number of values that were numbers.
+		 *
+		 * @return number of numeric values
+		 */
+		public long getNumericCount() {
+			return numbers;
+		}
+
+		/**
+		 * gets the smallest of the values that were numbers.
+		 *
+		 * @return the smallest number, or NaN if there weren't any
+		 */
+		public double getNumericMin() {
+			return numbers == 0 ? Double.NaN : numericMin;
+		}
+
+		/**
+		 * gets the biggest of the values that were numbers.
+		 *
+		 * @return the biggest number, or NaN if there weren't any
+		 */
+		public double getNumericMax() {
+			return numbers == 0 ? Double.NaN : numericMax;
+		}
+
+		/**
+		 * gets the mean of the values that were numbers.
+		 *
+		 * @return the mean, or NaN if there weren't any
+		 */
+		public double getMean() {
+			return numbers == 0 ? Double.NaN : sum / numbers;
+		}
+
+		/**
+		 * gets an estimate of how many different values the column has, which
+		 * is usually within 2% of the real number.
+		 *
+		 * @return estimated number of different values
+		 */
+		public long getDistinctCount() {
+			return Math.min(distinct.estimate(), count);
+		}
+
+		/**
+		 * gets the most common values and an upper bound on how many times
+		 * each of them appeared. Any value that makes up more than
+		 * 1/{@link #TOP_CAPACITY} of the column is always included.
+		 *
+		 * @param k
+		 *            most values to get, no more than {@link #TOP_CAPACITY}
+		 * @return the values and their counts, most common first
+		 */
+		public Map<String, Long> getTopValues(int k) {
+			return top.top(k, profile);
+		}
+
+		/**
+		 * gets an estimate of the value that the fraction of the numbers are
+		 * below, e.g. 0.5 for the median. The rank of the value is usually
+		 * within 1% of the fraction.
+		 *
+		 * @param fraction
+		 *            fraction between 0 and 1
+		 * @return the quantile, or NaN if there weren't any numbers
+		 */
+		public double getQuantile(double fraction) {
+			return getQuantiles(fraction)[0];
+		}
+
+		/**
+		 * gets estimates of several quantiles at once, see
+		 * {@link #getQuantile(double)}.
+		 *
+		 * @param fractions
+		 *            fractions between 0 and 1
+		 * @return the quantile for each fraction
+		 */
+		public double[] getQuantiles(double... fractions) {
+			for (double fraction : fractions) {
+				if (!(fraction >= 0 && fraction <= 1))
+					throw new IllegalArgumentException("Quantile fraction has to be between 0 and 1: " + fraction);
+			}
+			return quantiles.quantiles(fractions);
+		}
+	}
+
+	/**
+	 * HyperLogLog estimate of the number of different hashes, using 2^14 one
+	 * byte registers.
+	 */
+	private static class HyperLogLog {
+		private static final int PRECISION = 14;
+		private static final int REGISTERS = 1 << PRECISION;
+
+		// made when the first hash is added.
+		private byte[] registers;
+
+		private void add(long hash) {
+			if (registers == null)
+				registers = new byte[REGISTERS];
+			int index = (int) (hash >>> (64 - PRECISION));
+			// the position of the first set bit in the rest of the hash,
+			// capped so that it fits when the rest is all zeros.
+			int rank = Long.numberOfLeadingZeros(hash << PRECISION | 1L << (PRECISION - 1)) + 1;
+			if (rank > registers[index])
+				registers[index] = (byte) rank;
+		}
+
+		private void merge(HyperLogLog other) {
+			if (other.registers == null)
+				return;
+			if (registers == null)
+				registers = new byte[REGISTERS];
+			for (int i = 0; i < REGISTERS; i++) {
+				if (other.registers[i] > registers[i])
+					registers[i] = other.registers[i];
+			}
+		}
+
+		private long estimate() {
+			if (registers == null)
+				return 0;
+			double sum = 0;
+			int zeros = 0;
+			for (byte register : registers) {
+				sum += Double.longBitsToDouble((1023L - register) << 52);
+				if (register == 0)
+					zeros++;
+			}
+			double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+			double estimate = alpha * REGISTERS * REGISTERS / sum;
+
+			// small counts are more accurate from the empty registers.
+			if (estimate <= 2.5 * REGISTERS && zeros > 0)
+				estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+			return Math.round(estimate);
+		}
+	}
+
+	/**
+	 * Filtered Space-Saving summary of the most common values. A fixed number
+	 * of values are counted, and values that aren't are counted together by
+	 * hash in a filter like one row of a Count-Min sketch. A value only takes
+	 * over the counter with the lowest count once its bucket of the filter
+	 * reaches that count, which stops every rare value from replacing a
+	 * counter, and the replaced value's count goes into its own bucket. Every
+	 * count is an upper bound.
+	 *
+	 * The counters are kept in a heap by count and found by hash in an open
+	 * addressing table, so adding a value doesn't allocate once its counter's
+	 * key is big enough.
+	 */
+	private static class SpaceSaving {
+		// buckets in the filter for each counter.
+		private static final int FILTER_RATIO = 16;
+
+		private final int capacity;
+
+		// counts of the values that aren't counted by hash.
+		private final long[] filter;
+
+		// key, hash and count of each counter.
+		private final byte[][] keys;
+		private final int[] lengths;
+		private final long[] hashes;
+		private final long[] counts;
+		private int size = 0;
+
+		// counters as a heap with the lowest count first, and where each
+		// counter is in the heap.
+		private final int[] heap;
+		private final int[] positions;
+
+		// counter + 1 in each slot, 0 for an empty slot.
+		private final int[] table;
+		private final int mask;
+
+		private SpaceSaving(int capacity) {
+			this.capacity = capacity;
+			keys = new byte[capacity][];
+			lengths = new int[capacity];
+			hashes = new long[capacity];
+			counts = new long[capacity];
+			heap = new int[capacity];
+			positions = new int[capacity];
+			table = new int[Integer.highestOneBit(capacity) * 4];
+			mask = table.length - 1;
+			filter = new long[Integer.highestOneBit(capacity) * FILTER_RATIO];
+		}
+
+		private void add(byte[] data, int start, int end, long hash) {
+			int counter = find(data, start, end, hash);
+			if (counter >= 0) {
+				counts[counter]++;
+				down(positions[counter]);
+				return;
+			}
+
+			int bucket = bucket(hash);
+			long count = filter[bucket] + 1;
+			if (size < capacity) {
+				counter = size++;
+				heap[counter] = counter;
+				positions[counter] = counter;
+				set(counter, data, start, end, hash, count);
+				up(counter);
+				return;
+			}
+
+			// the value's bucket isn't up to the least common value yet.
+			counter = heap[0];
+			if (count <= counts[counter]) {
+				filter[bucket] = count;
+				return;
+			}
+
+			// replace the least common value, which moves into its bucket.
+			remove(counter);
+			int replaced = bucket(hashes[counter]);
+			filter[replaced] = Math.max(filter[replaced], counts[counter]);
+			set(counter, data, start, end, hash, count);
+			down(0);
+		}
+
+		private int bucket(long hash) {
+			return (int) (hash >>> 24) & (filter.length - 1);
+		}
+
+		private void set(int counter, byte[] data, int start, int end, long hash, long count) {
+			int length = end - start;
+			if (keys[counter] == null || keys[counter].length < length)
+				keys[counter] = new byte[Math.max(length, 16)];
+			System.arraycopy(data, start, keys[counter], 0, length);
+			lengths[counter] = length;
+			hashes[counter] = hash;
+			counts[counter] = count;
+			int slot = slot(hash);
+			while (table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = counter + 1;
+		}
+
+		private int slot(long hash) {
+			return (int) (hash ^ hash >>> 32) & mask;
+		}
+
+		private int find(byte[] data, int start, int end, long hash) {
+			for (int slot = slot(hash); table[slot] != 0; slot = (slot + 1) & mask) {
+				int counter = table[slot] - 1;
+				if (hashes[counter] == hash
+						&& compare(keys[counter], 0, lengths[counter], data, start, end) == 0)
+					return counter;
+			}
+			return -1;
+		}
+
+		/**
+		 * takes the counter out of the table, moving back any entries after
+		 * it that were pushed past their slot so they can still be found.
+		 */
+		private void remove(int counter) {
+			int hole = slot(hashes[counter]);
+			while (table[hole] != counter + 1)
+				hole = (hole + 1) & mask;
+			for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+				int home = slot(hashes[table[next] - 1]);
+				boolean between = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+				if (!between) {
+					table[hole] = table[next];
+					hole = next;
+				}
+			}
+			table[hole] = 0;
+		}
+
+		private void up(int position) {
+			int counter = heap[position];
+			while (position > 0) {
+				int parent = (position - 1) >>> 1;
+				if (counts[heap[parent]] <= counts[counter])
+					break;
+				heap[position] = heap[parent];
+				positions[heap[position]] = position;
+				position = parent;
+			}
+			heap[position] = counter;
+			positions[counter] = position;
+		}
+
+		private void down(int position) {
+			int counter = heap[position];
+			while (true) {
+				int child = position * 2 + 1;
+				if (child >= size)
+					break;
+				if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]])
+					child++;
+				if (counts[heap[child]] >= counts[counter])
+					break;
+				heap[position] = heap[child];
+				positions[heap[position]] = position;
+				position = child;
+			}
+			heap[position] = counter;
+			positions[counter] = position;
+		}
+
+		/**
+		 * gets the lowest count a value that isn't counted could have had.
+		 */
+		private long floor() {
+			return size < capacity ? 0 : counts[heap[0]];
+		}
+
+		/**
+		 * combines the counts of both summaries, a value only counted by one
+		 * of them gets the other's floor added, and keeps the most common.
+		 */
+		private void merge(SpaceSaving other) {
+			for (int i = 0; i < filter.length; i++)
+				filter[i] += other.filter[i];
+			if (other.size == 0)
+				return;
+			Map<String, long[]> combined = new HashMap<>();
+			long floor = floor();
+			long otherFloor = other.floor();
+			for (int c = 0; c < size; c++)
+				combined.put(key(c), new long[] { counts[c] + otherFloor });
+			for (int c = 0; c < other.size; c++) {
+				long[] count = combined.get(other.key(c));
+				if (count == null)
+					combined.put(other.key(c), new long[] { other.counts[c] + floor });
+				else
+					count[0] += other.counts[c] - otherFloor;
+			}
+
+			List<Map.Entry<String, long[]>> entries = new ArrayList<>(combined.entrySet());
+			entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+			Arrays.fill(table, 0);
+			size = Math.min(capacity, entries.size());
+			for (int c = 0; c < size; c++) {
+				byte[] key = entries.get(c).getKey().getBytes(StandardCharsets.ISO_8859_1);
+				set(c, key, 0, key.length, hash(key, 0, key.length), entries.get(c).getValue()[0]);
+				heap[c] = c;
+				positions[c] = c;
+			}
+			for (int c = size / 2 - 1; c >= 0; c--)
+				down(c);
+		}
+
+		/**
+		 * gets the counter's key with one char per byte, for merging.
+		 */
+		private String key(int counter) {
+			return new String(keys[counter], 0, lengths[counter], StandardCharsets.ISO_8859_1);
+		}
+
+		private Map<String, Long> top(int k, CSVProfile profile) {
+			Integer[] order = new Integer[size];
+			for (int c = 0; c < size; c++)
+				order[c] = c;
+			Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+			Map<String, Long> top = new LinkedHashMap<>();
+			for (int i = 0; i < Math.min(k, size); i++)
+				top.put(profile.decode(keys[order[i]], lengths[order[i]]), counts[order[i]]);
+			return Collections.unmodifiableMap(top);
+		}
+	}
+
+	/**
+	 * KLL sketch of the quantiles of a stream of numbers. Numbers are added to
+	 * the bottom level, and when a level fills up it is sorted and every other
+	 * number is moved up a level, starting from a random one, so each number
+	 * on level h stands for 2^h numbers. Lower levels get geometrically
+	 * smaller capacities, which keeps the rank error around 1% with k = 200.
+	 */
+	private static class KLLSketch {
+		private static final int K = 200;
+		private static final double SHRINK = 2.0 / 3.0;
+
+		// numbers on each level and how many there are.
+		private double[][] levels = new double[1][];
+		private int[] sizes = new int[1];
+		private int size = 0;
+		private int maxSize = capacity(0, 1);
+
+		// state of the random bits for picking which numbers move up.
+		private long random = 0x9E3779B97F4A7C15L;
+
+		private static int capacity(int level, int height) {
+			return (int) Math.ceil(K * Math.pow(SHRINK, height - level - 1)) + 1;
+		}
+
+		private void add(double value) {
+			append(0, value);
+			size++;
+			if (size >= maxSize)
+				compress();
+		}
+
+		private void append(int level, double value) {
+			double[] numbers = levels[level];
+			if (numbers == null)
+				levels[level] = numbers = new double[capacity(level, levels.length) + 1];
+			else if (sizes[level] == numbers.length)
+				levels[level] = numbers = Arrays.copyOf(numbers, numbers.length * 2);
+			numbers[sizes[level]++] = value;
+		}
+
+		private void grow() {
+			levels = Arrays.copyOf(levels, levels.length + 1);
+			sizes = Arrays.copyOf(sizes, sizes.length + 1);
+			maxSize = 0;
+			for (int h = 0; h < levels.length; h++)
+				maxSize += capacity(h, levels.length);
+		}
+
+		/**
+		 * compacts the lowest full level, carrying on up while the sketch is
+		 * still too big.
+		 */
+		private void compress() {
+			for (int h = 0; h < levels.length; h++) {
+				if (sizes[h] < capacity(h, levels.length))
+					continue;
+				if (h + 1 >= levels.length)
+					grow();
+
+				double[] numbers = levels[h];
+				int count = sizes[h];
+				Arrays.sort(numbers, 0, count);
+				// an odd number out stays on the level.
+				int pairs = count & ~1;
+				random ^= random << 13;
+				random ^= random >>> 7;
+				random ^= random << 17;
+				for (int i = (int) (random & 1); i < pairs; i += 2)
+					append(h + 1, numbers[i]);
+				if ((count & 1) != 0)
+					numbers[0] = numbers[count - 1];
+				sizes[h] = count & 1;
+
+				size = 0;
+				for (int level = 0; level < levels.length; level++)
+					size += sizes[level];
+				if (size < maxSize)
+					return;
+			}
+		}
+
+		private void merge(KLLSketch other) {
+			while (levels.length < other.levels.length)
+				grow();
+			for (int h = 0; h < other.levels.length; h++) {
+				for (int i = 0; i < other.sizes[h]; i++)
+					append(h, other.levels[h][i]);
+			}
+			size += other.size;
+			while (size >= maxSize)
+				compress();
+		}
+
+		private double[] quantiles(double[] fractions) {
+			double[] quantiles = new double[fractions.length];
+			if (size == 0) {
+				Arrays.fill(quantiles, Double.NaN);
+				return quantiles;
+			}
+
+			// sort every number with its weight and add up the weights.
+			double[] values = new double[size];
+			long[] weights = new long[size];
+			int n = 0;
+			for (int h = 0; h < levels.length; h++) {
+				for (int i = 0; i < sizes[h]; i++) {
+					values[n] = levels[h][i];
+					weights[n++] = 1L << h;
+				}
+			}
+			Integer[] order = new Integer[n];
+			for (int i = 0; i < n; i++)
+				order[i] = i;
+			Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+			long[] cumulative = new long[n];
+			long total = 0;
+			for (int i = 0; i < n; i++)
+				cumulative[i] = total += weights[order[i]];
+
+			for (int q = 0; q < fractions.length; q++) {
+				double target = fractions[q] * total;
+				int i = 0;
+				while (i < n - 1 && cumulative[i] < target)
+					i++;
+				quantiles[q] = values[order[i]];
+			}
+			return quantiles;
+		}
+	}
+
+}
@@ -0,0 +1,785 @@
+package gfiles.text;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * small query over the rows of a csv file that works on the bytes of the file
+ * while it is parsed. The where tests run on the fields before anything is
+ * turned into a string, only the fields up to the last one the query uses
+ * are split up, and only the selected values of rows that pass are copied
+ * out. Groups are found by hashing the bytes of their fields.
+ *
+ * The file is split into chunks that are parsed on multiple threads, see
+ * {@link ParallelCSVParser}. Each chunk keeps its own partial aggregates
+ * which are merged once every chunk is done.
+ *
+ * To use, make a query on the file, describe it with the methods that return
+ * the query and then call {@link #run()}, e.g.
+ *
+ * <pre>
+ * new CSVQuery(file).where("country", FieldPredicate.equalTo("US")).groupBy("region").count().sum("price")
+ * 		.orderBy("sum(price)", false).limit(10).run();
+ * </pre>
+ *
+ * A json lines file can be queried the same way, with the keys of its objects
+ * as the columns, see {@link JsonLinesFile#query(String...)}.
+ *
+ * @author Gavin
+ *
+ */
+public class CSVQuery {
+
+	// aggregate functions.
+	private static final int COUNT = 0;
+	private static final int SUM = 1;
+	private static final int MIN = 2;
+	private static final int MAX = 3;
+	private static final int AVG = 4;
+	private static final String[] FUNCTION_NAMES = { "count", "sum", "min", "max", "avg" };
+
+	// file to query, only one of them is set.
+	private final CSVFile file;
+	private final JsonLinesFile json;
+
+	// names of the columns and whether they came from the first line.
+	private final String[] titles;
+	private final boolean titleLine;
+
+	// columns to select, or none to select every column.
+	private final List<Integer> select = new ArrayList<>();
+
+	// columns to test and their tests.
+	private final List<Integer> whereColumns = new ArrayList<>();
+	private final List<FieldPredicate> wherePredicates = new ArrayList<>();
+
+	// columns to group by.
+	private final List<Integer> groupBy = new ArrayList<>();
+
+	// aggregate functions and the columns they are over, -1 for count.
+	private final List<Integer> functions = new ArrayList<>();
+	private final List<Integer> functionColumns = new ArrayList<>();
+
+	// names of the result columns to sort by and which way.
+	private final List<String> orderBy = new ArrayList<>();
+	private final List<Boolean> ascending = new ArrayList<>();
+
+	// most rows to give back, or -1 for all of them.
+	private int limit = -1;
+
+	// whether to parse the file on multiple threads.
+	private boolean parallel = true;
+
+	/**
+	 * creates a query over a file whose first line has the titles of the
+	 * columns.
+	 *
+	 * @param file
+	 *            file to query
+	 */
+	public CSVQuery(CSVFile file) {
+		this.file = file;
+		this.json = null;
+		this.titleLine = true;
+		CSVCursor cursor = file.valueCursor(0, Integer.MAX_VALUE);
+		this.titles = cursor.next() ? file.values(cursor) : new String[0];
+	}
+
+	/**
+	 * creates a query over a file without titles, naming its columns.
+	 *
+	 * @param file
+	 *            file to query
+	 * @param titles
+	 *            names of the columns in order
+	 */
+	public CSVQuery(CSVFile file, String... titles) {
+		this.file = file;
+		this.json = null;
+		this.titleLine = false;
+		this.titles = titles.clone();
+	}
+
+	/**
+	 * creates a query over the values of the given keys of a json lines file.
+	 *
+	 * @param json
+	 *            file to query
+	 * @param keys
+	 *            top level keys of the columns in order
+	 */
+	CSVQuery(JsonLinesFile json, String[] keys) {
+		this.file = null;
+		this.json = json;
+		this.titleLine = false;
+		this.titles = keys.clone();
+	}
+
+	/**
+	 * gets the position of the column with the title.
+	 */
+	private int column(String title) {
+		for (int i = 0; i < titles.length; i++) {
+			if (titles[i].equals(title))
+				return i;
+		}
+		throw new IllegalArgumentException("No column titled " + title);
+	}
+
+	/**
+	 * picks the columns to give back for a query without aggregates. If none
+	 * are picked every column is given back.
+	 *
+	 * @param columns
+	 *            titles of the columns
+	 * @return this query
+	 */
+	public CSVQuery select(String... columns) {
+		for (String title : columns)
+			select.add(column(title));
+		return this;
+	}
+
+	/**
+	 * only keeps rows whose value in the column passes the test. Every test
+	 * has to pass for a row to be kept, a row that is too short to have the
+	 * column is tested as if the value was empty.
+	 *
+	 * @param column
+	 *            title of the column to test
+	 * @param predicate
+	 *            the test
+	 * @return this query
+	 */
+	public CSVQuery where(String column, FieldPredicate predicate) {
+		whereColumns.add(column(column));
+		wherePredicates.add(predicate);
+		return this;
+	}
+
+	/**
+	 * groups the rows by their values in the columns, giving one row back for
+	 * each group with the group's values followed by its aggregates.
+	 *
+	 * @param columns
+	 *            titles of the columns
+	 * @return this query
+	 */
+	public CSVQuery groupBy(String... columns) {
+		for (String title : columns)
+			groupBy.add(column(title));
+		return this;
+	}
+
+	/**
+	 * adds the number of rows in each group to the result as count.
+	 *
+	 * @return this query
+	 */
+	public CSVQuery count() {
+		return aggregate(COUNT, -1);
+	}
+
+	/**
+	 * adds the sum of the column in each group to the result as sum(column).
+	 * Empty values are skipped and every other value has to be a number.
+	 *
+	 * @param column
+	 *            title of the column
+	 * @return this query
+	 */
+	public CSVQuery sum(String column) {
+		return aggregate(SUM, column(column));
+	}
+
+	/**
+	 * adds the smallest value of the column in each group to the result as
+	 * min(column).
+	 *
+	 * @param column
+	 *            title of the column
+	 * @return this query
+	 */
+	public CSVQuery min(String column) {
+		return aggregate(MIN, column(column));
+	}
+
+	/**
+	 * adds the largest value of the column in each group to the result as
+	 * max(column).
+	 *
+	 * @param column
+	 *            title of the column
+	 * @return this query
+	 */
+	public CSVQuery max(String column) {
+		return aggregate(MAX, column(column));
+	}
+
+	/**
+	 * adds the average value of the column in each group to the result as
+	 * avg(column).
+	 *
+	 * @param column
+	 *            title of the column
+	 * @return this query
+	 */
+	public CSVQuery avg(String column) {
+		return aggregate(AVG, column(column));
+	}
+
+	private CSVQuery aggregate(int function, int column) {
+		functions.add(function);
+		functionColumns.add(column);
+		return this;
+	}
+
+	/**
+	 * sorts the result by one of its columns from smallest to largest. Later
+	 * calls break ties in earlier ones.
+	 *
+	 * @param column
+	 *            title of the result column
+	 * @return this query
+	 */
+	public CSVQuery orderBy(String column) {
+		return orderBy(column, true);
+	}
+
+	/**
+	 * sorts the result by one of its columns. Columns where every value is a
+	 * number are sorted as numbers, otherwise they are sorted as text, and
+	 * missing values come first.
+	 *
+	 * @param column
+	 *            title of the result column
+	 * @param ascending
+	 *            true to sort from smallest to largest
+	 * @return this query
+	 */
+	public CSVQuery orderBy(String column, boolean ascending) {
+		orderBy.add(column);
+		this.ascending.add(ascending);
+		return this;
+	}
+
+	/**
+	 * gives back at most the given number of rows.
+	 *
+	 * @param rows
+	 *            most rows to give back
+	 * @return this query
+	 */
+	public CSVQuery limit(int rows) {
+		limit = rows;
+		return this;
+	}
+
+	/**
+	 * sets whether the file is parsed on multiple threads, which it is by
+	 * default.
+	 *
+	 * @param parallel
+	 *            whether to parse in parallel
+	 * @return this query
+	 */
+	public CSVQuery setParallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
+	/**
+	 * runs the query over the file.
+	 *
+	 * @return the rows of the result
+	 */
+	public CSVResult run() {
+		boolean aggregating = !functions.isEmpty() || !groupBy.isEmpty();
+		String[] resultTitles = resultTitles(aggregating);
+
+		// only split each line up to the last field the query needs.
+		int fieldLimit = Integer.MAX_VALUE;
+		if (aggregating || !select.isEmpty()) {
+			fieldLimit = 1;
+			for (List<Integer> columns : Arrays.asList(select, whereColumns, groupBy, functionColumns)) {
+				for (int column : columns)
+					fieldLimit = Math.max(fieldLimit, column + 1);
+			}
+		}
+		int fields = fieldLimit;
+
+		// a limit without sorting lets a scan stop early. No chunk needs more
+		// rows than the limit, and in parallel a chunk can also stop once the
+		// chunks before it have found enough rows between them.
+		int stopAfter = !aggregating && orderBy.isEmpty() ? limit : -1;
+		Progress progress = parallel && stopAfter >= 0 ? new Progress(stopAfter) : null;
+
+		List<Chunk> chunks;
+		if (json != null) {
+			// json lines only have the keys that were asked for, so they are
+			// already as short as they can be.
+			if (parallel)
+				chunks = json.parseChunks(cursor -> scan(cursor, cursor::next, false, false, aggregating, stopAfter,
+						progress, cursor.start()), titles);
+			else {
+				JsonCursor cursor = json.cursor(titles);
+				chunks = Collections.singletonList(scan(cursor, cursor::next, false, false, aggregating, stopAfter,
+						null, 0));
+			}
+		} else {
+			ParallelCSVParser.CursorFactory cursors = (start, stop) -> {
+				CSVCursor cursor = file.valueCursor(start, stop);
+				cursor.setFieldLimit(fields);
+				return cursor;
+			};
+			boolean trim = file.trimsValues();
+			if (parallel)
+				chunks = new ParallelCSVParser(file).parseChunks(cursors, cursor -> scan(cursor, cursor::next,
+						titleLine && cursor.start() == 0, trim, aggregating, stopAfter, progress, cursor.start()));
+			else {
+				CSVCursor cursor = cursors.create(0, Integer.MAX_VALUE);
+				chunks = Collections.singletonList(scan(cursor, cursor::next, titleLine, trim, aggregating,
+						stopAfter, null, 0));
+			}
+		}
+
+		List<Object[]> rows = aggregating ? aggregate(chunks) : concatenate(chunks);
+		sort(resultTitles, rows);
+		if (limit >= 0 && rows.size() > limit)
+			rows = new ArrayList<>(rows.subList(0, limit));
+		return new CSVResult(resultTitles, rows);
+	}
+
+	/**
+	 * works out the names of the columns of the result.
+	 */
+	private String[] resultTitles(boolean aggregating) {
+		if (!aggregating && select.isEmpty())
+			return titles.clone();
+
+		List<String> names = new ArrayList<>();
+		for (int column : aggregating ? groupBy : select)
+			names.add(titles[column]);
+		for (int i = 0; i < functions.size(); i++) {
+			int function = functions.get(i);
+			if (function == COUNT)
+				names.add(FUNCTION_NAMES[function]);
+			else
+				names.add(FUNCTION_NAMES[function] + "(" + titles[functionColumns.get(i)] + ")");
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * runs the where tests and either copies out the selected values or adds
+	 * the row to its group's partial aggregates. The row is moved to each of
+	 * the rows of the chunk by next. With progress the chunk that starts at
+	 * the offset shares how many rows it found with the other chunks.
+	 */
+	private Chunk scan(TextRow cursor, BooleanSupplier next, boolean skipTitles, boolean trim, boolean aggregating,
+			int stopAfter, Progress progress, int start) {
+		Chunk chunk = new Chunk();
+		int[] where = toArray(whereColumns);
+		FieldPredicate[] predicates = wherePredicates.toArray(new FieldPredicate[wherePredicates.size()]);
+		int[] selected = toArray(select);
+		int[] groups = toArray(groupBy);
+		int[] aggregates = toArray(functionColumns);
+
+		// stands in for fields past the end of a short row.
+		TextRow empty = new TextRow();
+		empty.add(0, 0);
+
+		GroupKey probe = new GroupKey();
+		AtomicInteger found = progress == null ? null : progress.chunk(start);
+		int lines = 0;
+		while (next.getAsBoolean()) {
+			if (found != null && (++lines & Progress.CHECK_MASK) == 0 && progress.enough(start))
+				break;
+			if (skipTitles) {
+				skipTitles = false;
+				continue;
+			}
+			if (trim)
+				cursor.trim();
+
+			if (!matches(cursor, where, predicates, empty))
+				continue;
+
+			if (aggregating) {
+				probe.set(cursor, groups);
+				Partial partial = chunk.groups.get(probe);
+				if (partial == null) {
+					partial = new Partial(aggregates.length);
+					chunk.groups.put(probe.copy(), partial);
+				}
+				partial.add(cursor, aggregates, titles);
+			} else {
+				chunk.rows.add(selected.length == 0 ? cursor.toArray() : project(cursor, selected));
+				if (found != null)
+					found.incrementAndGet();
+				if (chunk.rows.size() == stopAfter)
+					break;
+			}
+		}
+		return chunk;
+	}
+
+	private static boolean matches(TextRow row, int[] where, FieldPredicate[] predicates, TextRow empty) {
+		for (int i = 0; i < where.length; i++) {
+			boolean passed = where[i] < row.fieldCount() ? predicates[i].test(row, where[i])
+					: predicates[i].test(empty, 0);
+			if (!passed)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * copies the selected values out of the row.
+	 */
+	private static Object[] project(TextRow row, int[] selected) {
+		Object[] values = new Object[selected.length];
+		for (int i = 0; i < selected.length; i++) {
+			if (selected[i] < row.fieldCount())
+				values[i] = row.getString(selected[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * puts the rows of every chunk together in order.
+	 */
+	private static List<Object[]> concatenate(List<Chunk> chunks) {
+		List<Object[]> rows = new ArrayList<>();
+		for (Chunk chunk : chunks)
+			rows.addAll(chunk.rows);
+		return rows;
+	}
+
+	/**
+	 * merges the partial aggregates of the chunks and makes a row for each
+	 * group, in the order the groups first appear in the file.
+	 */
+	private List<Object[]> aggregate(List<Chunk> chunks) {
+		Map<GroupKey, Partial> merged = new LinkedHashMap<>();
+		for (Chunk chunk : chunks) {
+			for (Map.Entry<GroupKey, Partial> entry : chunk.groups.entrySet()) {
+				Partial partial = merged.get(entry.getKey());
+				if (partial == null)
+					merged.put(entry.getKey(), entry.getValue());
+				else
+					partial.merge(entry.getValue());
+			}
+		}
+
+		// aggregates without any groups still give back one row.
+		if (merged.isEmpty() && groupBy.isEmpty())
+			merged.put(new GroupKey(), new Partial(functions.size()));
+
+		boolean utf8 = json != null ? json.isUtf8() : file.isUtf8();
+		Charset charset = utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+		List<Object[]> rows = new ArrayList<>(merged.size());
+		for (Map.Entry<GroupKey, Partial> entry : merged.entrySet()) {
+			Object[] row = new Object[groupBy.size() + functions.size()];
+			entry.getKey().decode(row, charset);
+			Partial partial = entry.getValue();
+			for (int i = 0; i < functions.size(); i++)
+				row[groupBy.size() + i] = partial.result(functions.get(i), i);
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	/**
+	 * sorts the rows by the order by columns.
+	 */
+	private void sort(String[] resultTitles, List<Object[]> rows) {
+		if (orderBy.isEmpty())
+			return;
+
+		Comparator<Object[]> order = null;
+		for (int i = 0; i < orderBy.size(); i++) {
+			int column = -1;
+			for (int j = 0; j < resultTitles.length && column == -1; j++) {
+				if (resultTitles[j].equals(orderBy.get(i)))
+					column = j;
+			}
+			if (column == -1)
+				throw new IllegalArgumentException("No result column titled " + orderBy.get(i));
+
+			Comparator<Object[]> next = comparator(rows, column);
+			if (!ascending.get(i))
+				next = next.reversed();
+			order = order == null ? next : order.thenComparing(next);
+		}
+		rows.sort(order);
+	}
+
+	/**
+	 * compares rows by a column, as numbers if every value is one. Missing
+	 * values come before everything else.
+	 */
+	private static Comparator<Object[]> comparator(List<Object[]> rows, int column) {
+		boolean numeric = true;
+		for (Object[] row : rows) {
+			Object value = row[column];
+			if (value != null && !(value instanceof Number) && !isNumber((String) value)) {
+				numeric = false;
+				break;
+			}
+		}
+
+		Function<Object[], Comparable<?>> key;
+		if (numeric)
+			key = row -> row[column] == null ? null : toDouble(row[column]);
+		else
+			key = row -> row[column] == null ? null : CSVResult.format(row[column]);
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Comparator<Object[]> comparator = Comparator.comparing((Function) key,
+				Comparator.nullsFirst(Comparator.naturalOrder()));
+		return comparator;
+	}
+
+	private static double toDouble(Object value) {
+		return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble((String) value);
+	}
+
+	private static boolean isNumber(String value) {
+		try {
+			Double.parseDouble(value);
+			return !value.isEmpty();
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = list.get(i);
+		return array;
+	}
+
+	/**
+	 * what a chunk of the file gave back, rows if there are no aggregates and
+	 * groups otherwise.
+	 */
+	private static class Chunk {
+		private final List<Object[]> rows = new ArrayList<>();
+		private final Map<GroupKey, Partial> groups = new LinkedHashMap<>();
+	}
+
+	/**
+	 * the bytes of the group by fields of a row, each one after its length, so
+	 * groups can be hashed without making strings.
+	 */
+	private static class GroupKey {
+		private byte[] bytes = new byte[32];
+		private int length;
+		private int hash;
+
+		/**
+		 * sets the key to the fields of the row, short rows are missing fields
+		 * which are grouped the same as empty ones.
+		 */
+		private void set(TextRow row, int[] fields) {
+			length = 0;
+			for (int field : fields) {
+				if (field >= row.fieldCount()) {
+					append(0);
+					continue;
+				}
+				byte[] data = row.source(field);
+				int start = row.starts[field];
+				int end = row.ends[field];
+				append(end - start);
+				ensure(end - start);
+				System.arraycopy(data, start, bytes, length, end - start);
+				length += end - start;
+			}
+			int h = 1;
+			for (int i = 0; i < length; i++)
+				h = 31 * h + bytes[i];
+			hash = h;
+		}
+
+		private void append(int fieldLength) {
+			ensure(4);
+			bytes[length++] = (byte) (fieldLength >>> 24);
+			bytes[length++] = (byte) (fieldLength >>> 16);
+			bytes[length++] = (byte) (fieldLength >>> 8);
+			bytes[length++] = (byte) fieldLength;
+		}
+
+		private void ensure(int more) {
+			if (length + more > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + more));
+		}
+
+		/**
+		 * copies the key so the probe can be reused.
+		 */
+		private GroupKey copy() {
+			GroupKey copy = new GroupKey();
+			copy.bytes = Arrays.copyOf(bytes, length);
+			copy.length = length;
+			copy.hash = hash;
+			return copy;
+		}
+
+		/**
+		 * turns the fields back into strings at the start of the row.
+		 */
+		private void decode(Object[] row, Charset charset) {
+			int i = 0;
+			int field = 0;
+			while (i < length) {
+				int fieldLength = (bytes[i] & 0xFF) << 24 | (bytes[i + 1] & 0xFF) << 16 | (bytes[i + 2] & 0xFF) << 8
+						| bytes[i + 3] & 0xFF;
+				i += 4;
+				row[field++] = new String(bytes, i, fieldLength, charset);
+				i += fieldLength;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof GroupKey))
+				return false;
+			GroupKey key = (GroupKey) other;
+			if (key.length != length || key.hash != hash)
+				return false;
+			for (int i = 0; i < length; i++) {
+				if (key.bytes[i] != bytes[i])
+					return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * how many rows each chunk of a parallel scan with a limit has found so
+	 * far, by the offset the chunk starts at. The rows found before a chunk
+	 * only ever go up, so once they reach the limit none of the chunk's rows
+	 * can be in the result.
+	 */
+	private static class Progress {
+		// a chunk checks the chunks before it once every 1024 lines.
+		private static final int CHECK_MASK = 1023;
+
+		private final ConcurrentSkipListMap<Integer, AtomicInteger> found = new ConcurrentSkipListMap<>();
+		private final int limit;
+
+		private Progress(int limit) {
+			this.limit = limit;
+		}
+
+		private AtomicInteger chunk(int start) {
+			AtomicInteger count = new AtomicInteger();
+			found.put(start, count);
+			return count;
+		}
+
+		private boolean enough(int start) {
+			long before = 0;
+			for (AtomicInteger count : found.headMap(start).values())
+				before += count.get();
+			return before >= limit;
+		}
+	}
+
+	/**
+	 * running totals for the aggregates of a group.
+	 */
+	private static class Partial {
+		private long rows;
+		private final long[] counts;
+		private final double[] sums;
+		private final double[] mins;
+		private final double[] maxes;
+
+		private Partial(int aggregates) {
+			counts = new long[aggregates];
+			sums = new double[aggregates];
+			mins = new double[aggregates];
+			maxes = new double[aggregates];
+			Arrays.fill(mins, Double.POSITIVE_INFINITY);
+			Arrays.fill(maxes, Double.NEGATIVE_INFINITY);
+		}
+
+		/**
+		 * adds the values of the row to the totals.
+		 *
+		 * @throws IllegalArgumentException
+		 *             if a value that isn't empty isn't a number
+		 */
+		private void add(TextRow row, int[] columns, String[] titles) {
+			rows++;
+			for (int i = 0; i < columns.length; i++) {
+				int field = columns[i];
+				if (field < 0 || field >= row.fieldCount() || row.isEmpty(field))
+					continue;
+				double value;
+				try {
+					value = row.parseDouble(field);
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("The value \"" + row.getString(field) + "\" of column "
+							+ titles[field] + " in the row at byte " + row.rowStart + " isn't a number", e);
+				}
+				counts[i]++;
+				sums[i] += value;
+				mins[i] = Math.min(mins[i], value);
+				maxes[i] = Math.max(maxes[i], value);
+			}
+		}
+
+		private void merge(Partial other) {
+			rows += other.rows;
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] += other.counts[i];
+				sums[i] += other.sums[i];
+				mins[i] = Math.min(mins[i], other.mins[i]);
+				maxes[i] = Math.max(maxes[i], other.maxes[i]);
+			}
+		}
+
+		/**
+		 * gets the final value of an aggregate, null if the group had no
+		 * values for it.
+		 */
+		private Object result(int function, int i) {
+			if (function == COUNT)
+				return rows;
+			if (counts[i] == 0)
+				return null;
+			switch (function) {
+			case SUM:
+				return sums[i];
+			case MIN:
+				return mins[i];
+			case MAX:
+				return maxes[i];
+			default:
+				return sums[i] / counts[i];
+			}
+		}
+	}
+
+}
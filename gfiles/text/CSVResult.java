@@ -0,0 +1,168 @@
+package gfiles.text;
+
+import java.util.List;
+
+/**
+ * rows that came out of a {@link CSVQuery}. Values are strings for columns
+ * that were selected or grouped by, and numbers for aggregates. Missing values
+ * are null.
+ *
+ * @author Gavin
+ *
+ */
+public class CSVResult {
+
+	// names of the columns.
+	private final String[] titles;
+
+	// values of each row.
+	private final List<Object[]> rows;
+
+	/**
+	 * creates a result with the given rows.
+	 *
+	 * @param titles
+	 *            names of the columns
+	 * @param rows
+	 *            values of each row
+	 */
+	CSVResult(String[] titles, List<Object[]> rows) {
+		this.titles = titles;
+		this.rows = rows;
+	}
+
+	/**
+	 * gets the names of the columns, aggregates are named after their function
+	 * and column such as sum(price).
+	 *
+	 * @return names of the columns
+	 */
+	public String[] getTitles() {
+		return titles.clone();
+	}
+
+	/**
+	 * gets the column with the title.
+	 *
+	 * @param title
+	 *            name of the column
+	 * @return position of the column, or -1 if there isn't one
+	 */
+	public int getColumn(String title) {
+		for (int i = 0; i < titles.length; i++) {
+			if (titles[i].equals(title))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * gets the number of rows in the result.
+	 *
+	 * @return number of rows
+	 */
+	public int rows() {
+		return rows.size();
+	}
+
+	/**
+	 * gets the number of columns in the result.
+	 *
+	 * @return number of columns
+	 */
+	public int columns() {
+		return titles.length;
+	}
+
+	/**
+	 * gets a value of the result, which is a string, a long for counts or a
+	 * double for other aggregates.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return the value, or null if it is missing
+	 */
+	public Object getValue(int column, int row) {
+		return rows.get(row)[column];
+	}
+
+	/**
+	 * gets a value of the result as text. Whole numbers are written without a
+	 * decimal point.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return the value, or null if it is missing
+	 */
+	public String getString(int column, int row) {
+		return format(getValue(column, row));
+	}
+
+	/**
+	 * gets a value of the result as a number, strings are parsed.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return the value, or 0 if it is missing
+	 */
+	public double getDouble(int column, int row) {
+		Object value = getValue(column, row);
+		if (value == null)
+			return 0;
+		if (value instanceof Number)
+			return ((Number) value).doubleValue();
+		return Double.parseDouble((String) value);
+	}
+
+	/**
+	 * gets a value of the result as a whole number, strings are parsed.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return the value, or 0 if it is missing
+	 */
+	public long getLong(int column, int row) {
+		Object value = getValue(column, row);
+		if (value == null)
+			return 0;
+		if (value instanceof Number)
+			return ((Number) value).longValue();
+		return Long.parseLong((String) value);
+	}
+
+	/**
+	 * turns a value into text.
+	 */
+	static String format(Object value) {
+		if (value instanceof Double) {
+			double number = (Double) value;
+			if (number == Math.rint(number) && Math.abs(number) < 1e15)
+				return Long.toString((long) number);
+		}
+		return value == null ? null : value.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(String.join(",", titles));
+		for (Object[] row : rows) {
+			builder.append('\n');
+			for (int i = 0; i < row.length; i++) {
+				if (i > 0)
+					builder.append(',');
+				if (row[i] != null)
+					builder.append(format(row[i]));
+			}
+		}
+		return builder.toString();
+	}
+
+}
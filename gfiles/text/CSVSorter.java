@@ -0,0 +1,602 @@
+package gfiles.text;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * sorts csv data that can be bigger than memory with an external merge sort.
+ * Records are read from a stream into runs that fit in a share of the memory
+ * budget, each run is sorted on a fork join pool while the next is read and
+ * then written to a temporary file, and finally the runs are merged back
+ * together through a heap. Data that fits in one run is sorted in memory
+ * without any temporary files.
+ *
+ * Records are copied exactly as they were read, only their order changes and
+ * every record ends with a \n. The sort is stable, records with equal keys
+ * stay in the same order as the input.
+ *
+ * To use, create a sorter, set the format and the keys to sort by and then
+ * call one of the sort methods, e.g.
+ *
+ * <pre>
+ * new CSVSorter().orderBy("price", CSVTable.TYPE_DOUBLE, false).sort(in, out);
+ * </pre>
+ *
+ * @author Gavin
+ *
+ */
+public class CSVSorter {
+
+	// most runs that are merged at once, more runs than this are merged in
+	// several passes.
+	private static final int MAX_MERGE = 128;
+
+	// size of the buffer for reading each file.
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// memory the records of a run take up besides their bytes and keys.
+	private static final int RECORD_OVERHEAD = 64;
+
+	// format of the records.
+	private String delimiter = ",";
+	private boolean utf8 = false;
+	private boolean quoting = false;
+	private boolean ignoreSpaces = true;
+	private boolean titles = true;
+
+	// how much memory the records being sorted can take up.
+	private long memoryBudget = 64L << 20;
+
+	// where the runs are written, null for the system's temporary directory.
+	private File tempDirectory = null;
+
+	// pool the runs are sorted on.
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	// the keys to sort by, columns are given either by position or by title.
+	private final List<Integer> keyColumns = new ArrayList<>();
+	private final List<String> keyTitles = new ArrayList<>();
+	private final List<Integer> keyTypes = new ArrayList<>();
+	private final List<Boolean> keyAscending = new ArrayList<>();
+
+	/**
+	 * sorts by the column at the position. Int and long columns are compared
+	 * as whole numbers and double columns as decimal numbers, every other type
+	 * is compared by its bytes. Empty and missing values come first.
+	 *
+	 * @param column
+	 *            position of the column
+	 * @param type
+	 *            type of the column, e.g. {@link CSVTable#TYPE_LONG}
+	 * @param ascending
+	 *            true to sort from smallest to largest
+	 * @return this sorter
+	 */
+	public CSVSorter orderBy(int column, int type, boolean ascending) {
+		return addKey(column, null, type, ascending);
+	}
+
+	/**
+	 * sorts by the column with the title, see
+	 * {@link #orderBy(int, int, boolean)}. The data has to have titles.
+	 *
+	 * @param title
+	 *            title of the column
+	 * @param type
+	 *            type of the column, e.g. {@link CSVTable#TYPE_LONG}
+	 * @param ascending
+	 *            true to sort from smallest to largest
+	 * @return this sorter
+	 */
+	public CSVSorter orderBy(String title, int type, boolean ascending) {
+		return addKey(-1, title, type, ascending);
+	}
+
+	private CSVSorter addKey(int column, String title, int type, boolean ascending) {
+		keyColumns.add(column);
+		keyTitles.add(title);
+		keyTypes.add(type);
+		keyAscending.add(ascending);
+		return this;
+	}
+
+	/**
+	 * sets the delimiter between the fields, default is a comma.
+	 *
+	 * @param delimiter
+	 *            delimiter between the fields
+	 * @return this sorter
+	 */
+	public CSVSorter setDelimiter(String delimiter) {
+		this.delimiter = delimiter;
+		return this;
+	}
+
+	/**
+	 * sets whether the delimiter is encoded as utf-8 instead of one byte per
+	 * character, default is false. The records themselves are sorted as
+	 * bytes either way.
+	 *
+	 * @param utf8
+	 *            true if the data is utf-8
+	 * @return this sorter
+	 */
+	public CSVSorter setUtf8(boolean utf8) {
+		this.utf8 = utf8;
+		return this;
+	}
+
+	/**
+	 * sets whether quoted fields are handled, default is false.
+	 *
+	 * @param quoting
+	 *            whether to handle quoted fields
+	 * @return this sorter
+	 */
+	public CSVSorter setQuoting(boolean quoting) {
+		this.quoting = quoting;
+		return this;
+	}
+
+	/**
+	 * sets whether spaces around the keys are ignored, default is true.
+	 *
+	 * @param ignore
+	 *            whether to ignore the spaces
+	 * @return this sorter
+	 */
+	public CSVSorter ignoreSpacesNearDelimiter(boolean ignore) {
+		this.ignoreSpaces = ignore;
+		return this;
+	}
+
+	/**
+	 * sets whether the first record is titles, which stay at the top of the
+	 * output. Default is true.
+	 *
+	 * @param titles
+	 *            whether there are titles
+	 * @return this sorter
+	 */
+	public CSVSorter setTitles(boolean titles) {
+		this.titles = titles;
+		return this;
+	}
+
+	/**
+	 * sets roughly how much memory the records being sorted can take up, the
+	 * runs are made small enough that every thread can sort one while the
+	 * next is read. Default is 64 MB.
+	 *
+	 * @param bytes
+	 *            memory budget in bytes
+	 * @return this sorter
+	 */
+	public CSVSorter setMemoryBudget(long bytes) {
+		this.memoryBudget = bytes;
+		return this;
+	}
+
+	/**
+	 * sets the directory the runs are written to, default is the system's
+	 * temporary directory.
+	 *
+	 * @param directory
+	 *            directory for the runs
+	 * @return this sorter
+	 */
+	public CSVSorter setTempDirectory(File directory) {
+		this.tempDirectory = directory;
+		return this;
+	}
+
+	/**
+	 * sets the pool the runs are sorted on, default is the common pool.
+	 *
+	 * @param pool
+	 *            pool to sort on
+	 * @return this sorter
+	 */
+	public CSVSorter setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+
+	/**
+	 * sorts the csv file into a new csv file with the same settings. The
+	 * format of the file is used instead of the sorter's for this sort only.
+	 *
+	 * @param file
+	 *            file to sort
+	 * @return the sorted file
+	 * @throws IOException
+	 *             if the runs couldn't be written or read
+	 */
+	public CSVFile sort(CSVFile file) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(file.getBytes() + 1);
+		sort(new ByteArrayInputStream(file.bytes(), 0, file.getBytes()), out,
+				parsers(file.getDelimiter(), file.isUtf8(), file.isQuoting(), file.isIgnoringSpaces()));
+
+		CSVFile sorted = new CSVFile(out.toByteArray());
+		sorted.setUtf8(file.isUtf8());
+		sorted.setDelimiter(file.getDelimiter());
+		sorted.setQuoting(file.isQuoting());
+		sorted.ignoreSpacesNearDelimiter(file.isIgnoringSpaces());
+		return sorted;
+	}
+
+	/**
+	 * sorts a file on disk into another file.
+	 *
+	 * @param input
+	 *            file to sort
+	 * @param output
+	 *            file to write the sorted records to
+	 * @throws IOException
+	 *             if the files couldn't be read or written
+	 */
+	public void sort(File input, File output) throws IOException {
+		try (InputStream in = new FileInputStream(input); OutputStream out = new FileOutputStream(output)) {
+			sort(in, out);
+		}
+	}
+
+	/**
+	 * sorts the records of the input stream into the output stream. Neither
+	 * stream is closed.
+	 *
+	 * @param in
+	 *            stream to sort
+	 * @param out
+	 *            stream to write the sorted records to
+	 * @throws IOException
+	 *             if the streams or the runs couldn't be read or written
+	 */
+	public void sort(InputStream in, OutputStream out) throws IOException {
+		sort(in, out, parsers(delimiter, utf8, quoting, ignoreSpaces));
+	}
+
+	/**
+	 * sorts the records of the input stream into the output stream, reading
+	 * the input and the runs with parsers from the given supplier.
+	 */
+	private void sort(InputStream in, OutputStream out, Supplier<CSVParser> parsers) throws IOException {
+		RecordStream records = new RecordStream(in, parsers.get(), BUFFER_SIZE);
+		OutputStream output = new BufferedOutputStream(out, BUFFER_SIZE);
+		TextRow row = new TextRow();
+
+		// copy the titles to the top and find the columns of the keys.
+		int[] columns = new int[keyColumns.size()];
+		for (int k = 0; k < columns.length; k++)
+			columns[k] = keyColumns.get(k);
+		if (titles && records.next(row)) {
+			writeRecord(output, row.data, row.rowStart, row.rowEnd);
+			for (int k = 0; k < columns.length; k++) {
+				if (keyTitles.get(k) != null)
+					columns[k] = findTitle(row, keyTitles.get(k));
+			}
+		}
+		for (int k = 0; k < columns.length; k++) {
+			if (columns[k] == -1)
+				throw new IllegalStateException("Can't sort by title " + keyTitles.get(k) + " without titles");
+		}
+		Keys keys = new Keys(columns, keyTypes, keyAscending);
+
+		List<Future<File>> spilled = new ArrayList<>();
+		List<File> runs = new ArrayList<>();
+		try {
+			// leave room for the run being read as well as one being sorted
+			// on every thread.
+			long runBudget = Math.max(1, memoryBudget / (pool.getParallelism() + 1));
+			List<Record> run = new ArrayList<>();
+			long used = 0;
+			while (records.next(row)) {
+				Record record = keys.record(row);
+				run.add(record);
+				used += record.size();
+				if (used >= runBudget) {
+					// wait for a thread to free up before reading more.
+					if (spilled.size() - runs.size() >= pool.getParallelism())
+						runs.add(get(spilled.get(runs.size())));
+					spilled.add(spill(run, keys));
+					run = new ArrayList<>();
+					used = 0;
+				}
+			}
+
+			// everything fit in memory so there is nothing to merge.
+			if (spilled.isEmpty()) {
+				Record[] sorted = run.toArray(new Record[run.size()]);
+				Arrays.parallelSort(sorted, keys);
+				for (Record record : sorted)
+					writeRecord(output, record.bytes, 0, record.bytes.length);
+				output.flush();
+				return;
+			}
+
+			if (!run.isEmpty())
+				spilled.add(spill(run, keys));
+			while (runs.size() < spilled.size())
+				runs.add(get(spilled.get(runs.size())));
+
+			// merge in passes until there are few enough runs to merge into
+			// the output.
+			while (runs.size() > MAX_MERGE) {
+				List<File> merged = new ArrayList<>();
+				for (int i = 0; i < runs.size(); i += MAX_MERGE) {
+					List<File> group = runs.subList(i, Math.min(runs.size(), i + MAX_MERGE));
+					File file = createRunFile();
+					merged.add(file);
+					try (OutputStream runOut = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)) {
+						merge(group, keys, runOut, parsers);
+					}
+					for (File done : group)
+						done.delete();
+				}
+				runs = merged;
+			}
+			merge(runs, keys, output, parsers);
+			output.flush();
+		} finally {
+			// once interrupted only the runs that are already written are
+			// deleted, and the thread is left interrupted.
+			boolean interrupted = false;
+			for (Future<File> future : spilled) {
+				try {
+					if (!interrupted || future.isDone())
+						future.get().delete();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					// the run failed so there's nothing to delete.
+				}
+			}
+			for (File file : runs)
+				file.delete();
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * makes a supplier of parsers for the format.
+	 */
+	private static Supplier<CSVParser> parsers(String delimiter, boolean utf8, boolean quoting,
+			boolean ignoreSpaces) {
+		byte[] encoded = delimiter.getBytes(utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+		return () -> new CSVParser(encoded, quoting, ignoreSpaces);
+	}
+
+	/**
+	 * finds the column with the title in the title record.
+	 */
+	private static int findTitle(TextRow row, String title) {
+		for (int i = 0; i < row.fieldCount(); i++) {
+			if (row.getString(i).equals(title))
+				return i;
+		}
+		throw new IllegalArgumentException("No column titled " + title);
+	}
+
+	/**
+	 * sorts the run and writes it to a temporary file on the pool.
+	 */
+	private Future<File> spill(List<Record> run, Keys keys) {
+		return pool.submit(() -> {
+			Record[] sorted = run.toArray(new Record[run.size()]);
+			Arrays.sort(sorted, keys);
+			File file = createRunFile();
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)) {
+				for (Record record : sorted)
+					writeRecord(out, record.bytes, 0, record.bytes.length);
+			} catch (IOException e) {
+				file.delete();
+				throw e;
+			}
+			return file;
+		});
+	}
+
+	private File createRunFile() throws IOException {
+		File file = File.createTempFile("csvsort", ".run", tempDirectory);
+		file.deleteOnExit();
+		return file;
+	}
+
+	/**
+	 * merges the sorted runs into the output with a heap holding the next
+	 * record of each run. Ties go to the earlier run to keep the sort stable.
+	 */
+	private void merge(List<File> runs, Keys keys, OutputStream out, Supplier<CSVParser> parsers)
+			throws IOException {
+		PriorityQueue<Head> heap = new PriorityQueue<>(runs.size(), (a, b) -> {
+			int compare = keys.compare(a.record, b.record);
+			return compare != 0 ? compare : Integer.compare(a.run, b.run);
+		});
+		List<RecordStream> streams = new ArrayList<>();
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				RecordStream stream = new RecordStream(new BufferedInputStream(new FileInputStream(runs.get(i))),
+						parsers.get(), BUFFER_SIZE);
+				streams.add(stream);
+				Head head = new Head(i, stream);
+				if (head.advance(keys))
+					heap.add(head);
+			}
+
+			while (!heap.isEmpty()) {
+				Head head = heap.poll();
+				writeRecord(out, head.record.bytes, 0, head.record.bytes.length);
+				if (head.advance(keys))
+					heap.add(head);
+			}
+		} finally {
+			for (RecordStream stream : streams)
+				stream.close();
+		}
+	}
+
+	private static void writeRecord(OutputStream out, byte[] data, int start, int end) throws IOException {
+		out.write(data, start, end - start);
+		out.write('\n');
+	}
+
+	/**
+	 * waits for a run to be written.
+	 */
+	private static File get(Future<File> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while sorting csv data", e);
+		} catch (ExecutionException e) {
+			Throwable cause = ParallelCSVParser.cause(e);
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException("Failed to sort csv data", cause);
+		}
+	}
+
+	/**
+	 * a record's bytes along with the values of its keys, which are longs,
+	 * doubles, or byte arrays, and null when they are empty.
+	 */
+	private static class Record {
+		private final byte[] bytes;
+		private final Object[] keys;
+
+		private Record(byte[] bytes, Object[] keys) {
+			this.bytes = bytes;
+			this.keys = keys;
+		}
+
+		/**
+		 * roughly how much memory the record takes up.
+		 */
+		private long size() {
+			long size = RECORD_OVERHEAD + bytes.length + 16L * keys.length;
+			for (Object key : keys) {
+				if (key instanceof byte[])
+					size += ((byte[]) key).length;
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * the keys to sort by, makes records and compares them.
+	 */
+	private static class Keys implements Comparator<Record> {
+		private final int[] columns;
+		private final int[] types;
+		private final boolean[] ascending;
+
+		private Keys(int[] columns, List<Integer> types, List<Boolean> ascending) {
+			this.columns = columns;
+			this.types = new int[columns.length];
+			this.ascending = new boolean[columns.length];
+			for (int k = 0; k < columns.length; k++) {
+				this.types[k] = types.get(k);
+				this.ascending[k] = ascending.get(k);
+			}
+		}
+
+		/**
+		 * copies the record out of the row and parses its keys.
+		 */
+		private Record record(TextRow row) {
+			Object[] keys = new Object[columns.length];
+			for (int k = 0; k < columns.length; k++) {
+				int field = columns[k];
+				if (field >= row.fieldCount() || row.isEmpty(field))
+					continue;
+				switch (types[k]) {
+				case CSVTable.TYPE_INT:
+				case CSVTable.TYPE_LONG:
+					keys[k] = row.parseLong(field);
+					break;
+				case CSVTable.TYPE_DOUBLE:
+					keys[k] = row.parseDouble(field);
+					break;
+				default:
+					keys[k] = Arrays.copyOfRange(row.source(field), row.starts[field], row.ends[field]);
+				}
+			}
+			return new Record(Arrays.copyOfRange(row.data, row.rowStart, row.rowEnd), keys);
+		}
+
+		@Override
+		public int compare(Record a, Record b) {
+			for (int k = 0; k < columns.length; k++) {
+				Object x = a.keys[k];
+				Object y = b.keys[k];
+				int compare;
+				if (x == null || y == null)
+					compare = x == null ? (y == null ? 0 : -1) : 1;
+				else if (x instanceof Long)
+					compare = Long.compare((Long) x, (Long) y);
+				else if (x instanceof Double)
+					compare = Double.compare((Double) x, (Double) y);
+				else
+					compare = compareBytes((byte[]) x, (byte[]) y);
+				if (compare != 0)
+					return ascending[k] ? compare : -compare;
+			}
+			return 0;
+		}
+
+		private static int compareBytes(byte[] x, byte[] y) {
+			int length = Math.min(x.length, y.length);
+			for (int i = 0; i < length; i++) {
+				int compare = (x[i] & 0xFF) - (y[i] & 0xFF);
+				if (compare != 0)
+					return compare;
+			}
+			return x.length - y.length;
+		}
+	}
+
+	/**
+	 * the next record of a run being merged.
+	 */
+	private static class Head {
+		private final int run;
+		private final RecordStream stream;
+		private final TextRow row = new TextRow();
+		private Record record;
+
+		private Head(int run, RecordStream stream) {
+			this.run = run;
+			this.stream = stream;
+		}
+
+		private boolean advance(Keys keys) throws IOException {
+			if (!stream.next(row))
+				return false;
+			record = keys.record(row);
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+package gfiles.text;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import gfiles.file.DecompressingInputStream;
+import gfiles.file.ReadAheadInputStream;
+
+/**
+ * reads csv rows from a stream or channel as they arrive instead of loading
+ * the whole input into a {@link CSVFile} first. A background thread reads the
+ * input into a ring buffer of a fixed size while rows are parsed out of it, so
+ * only the ring and the longest row are ever held in memory and the rows can
+ * be processed while the rest of the input is still being read. Gzip and zlib
+ * input is decompressed by the background thread as it is read, see
+ * {@link DecompressingInputStream}.
+ *
+ * Rows are split the same way as a csv file with the same settings, e.g.
+ *
+ * <pre>
+ * try (CSVStreamReader reader = new CSVStreamReader(socket.getInputStream()).setQuoting(true)) {
+ * 	String[] values;
+ * 	while ((values = reader.nextLine()) != null)
+ * 		process(values);
+ * }
+ * </pre>
+ *
+ * @author Gavin
+ *
+ */
+public class CSVStreamReader implements Closeable {
+
+	// size the buffer that rows are parsed from starts at.
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// size of the ring buffer if one isn't given.
+	private static final int RING_SIZE = 1 << 20;
+
+	// stream being read ahead.
+	private final ReadAheadInputStream in;
+
+	// format of the rows.
+	private String delimiter = ",";
+	private boolean quoting = false;
+	private boolean ignoreSpaces = true;
+	private boolean utf8 = false;
+
+	// made when the first row is read so the format can be set first.
+	private RecordStream records;
+
+	// the current row and how many values string's split method would have
+	// given for it.
+	private final TextRow row = new TextRow();
+	private int width;
+
+	// number of rows that have been read.
+	private long rows = 0;
+
+	/**
+	 * creates a reader for the stream with a 1 MB ring buffer. Reading starts
+	 * straight away.
+	 *
+	 * @param in
+	 *            stream to read from
+	 */
+	public CSVStreamReader(InputStream in) {
+		this(in, RING_SIZE);
+	}
+
+	/**
+	 * creates a reader for the stream. Reading starts straight away.
+	 *
+	 * @param in
+	 *            stream to read from
+	 * @param bufferSize
+	 *            size of the ring buffer in bytes
+	 */
+	public CSVStreamReader(InputStream in, int bufferSize) {
+		this.in = new ReadAheadInputStream(new DecompressingInputStream(in), bufferSize);
+	}
+
+	/**
+	 * creates a reader for a blocking channel with a 1 MB ring buffer.
+	 * Reading starts straight away.
+	 *
+	 * @param channel
+	 *            channel to read from
+	 */
+	public CSVStreamReader(ReadableByteChannel channel) {
+		this(channel, RING_SIZE);
+	}
+
+	/**
+	 * creates a reader for a blocking channel. Reading starts straight away.
+	 *
+	 * @param channel
+	 *            channel to read from
+	 * @param bufferSize
+	 *            size of the ring buffer in bytes
+	 */
+	public CSVStreamReader(ReadableByteChannel channel, int bufferSize) {
+		this.in = new ReadAheadInputStream(new DecompressingInputStream(Channels.newInputStream(channel)), bufferSize);
+	}
+
+	/**
+	 * sets the text between values, a comma by default.
+	 *
+	 * @param delimiter
+	 *            text between values
+	 * @return this reader
+	 */
+	public CSVStreamReader setDelimiter(String delimiter) {
+		checkNotStarted();
+		this.delimiter = delimiter;
+		return this;
+	}
+
+	/**
+	 * sets whether values can be quoted, off by default.
+	 *
+	 * @param quoting
+	 *            true to handle quoted values
+	 * @return this reader
+	 */
+	public CSVStreamReader setQuoting(boolean quoting) {
+		checkNotStarted();
+		this.quoting = quoting;
+		return this;
+	}
+
+	/**
+	 * sets whether spaces around values are removed, on by default.
+	 *
+	 * @param ignoreSpaces
+	 *            true to trim values
+	 * @return this reader
+	 */
+	public CSVStreamReader ignoreSpacesNearDelimiter(boolean ignoreSpaces) {
+		checkNotStarted();
+		this.ignoreSpaces = ignoreSpaces;
+		return this;
+	}
+
+	/**
+	 * sets whether the input is utf-8 instead of one byte per character.
+	 *
+	 * @param utf8
+	 *            true to decode values as utf-8
+	 * @return this reader
+	 */
+	public CSVStreamReader setUtf8(boolean utf8) {
+		checkNotStarted();
+		this.utf8 = utf8;
+		return this;
+	}
+
+	private void checkNotStarted() {
+		if (records != null)
+			throw new IllegalStateException("The format can't be changed once rows have been read");
+	}
+
+	/**
+	 * reads the next row. The row is reused and points into the reader's
+	 * buffer, so it is only valid until the next row is read.
+	 *
+	 * @return the row, or null at the end of the input
+	 * @throws IOException
+	 *             if the input couldn't be read
+	 */
+	public TextRow next() throws IOException {
+		if (records == null) {
+			byte[] encoded = delimiter.getBytes(utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+			// spaces outside of quotes have to be trimmed by the parser to
+			// find the quotes, the same as a csv file does.
+			records = new RecordStream(in, new CSVParser(encoded, quoting, quoting && ignoreSpaces), BUFFER_SIZE);
+		}
+
+		if (!records.next(row))
+			return null;
+		row.utf8 = utf8;
+		width = CSVFile.valueCount(row);
+		if (ignoreSpaces && !quoting)
+			row.trim();
+		rows++;
+		return row;
+	}
+
+	/**
+	 * reads the values of the next row, which are the same values that
+	 * {@link CSVFile#nextLine()} would give for the row.
+	 *
+	 * @return the values, or null at the end of the input
+	 * @throws IOException
+	 *             if the input couldn't be read
+	 */
+	public String[] nextLine() throws IOException {
+		if (next() == null)
+			return null;
+		String[] values = new String[width];
+		for (int i = 0; i < width; i++)
+			values[i] = row.getString(i);
+		return values;
+	}
+
+	/**
+	 * gets the values of the rest of the rows as a stream. Read errors are
+	 * thrown as {@link UncheckedIOException}s.
+	 *
+	 * @return stream of the values of each row
+	 */
+	public Stream<String[]> lines() {
+		Iterator<String[]> iterator = new Iterator<String[]>() {
+			private String[] next;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null) {
+					try {
+						next = nextLine();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public String[] next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				String[] values = next;
+				next = null;
+				return values;
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+				Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * gets the number of rows that have been read.
+	 *
+	 * @return number of rows
+	 */
+	public long rowNumber() {
+		return rows;
+	}
+
+	/**
+	 * stops reading and closes the input.
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
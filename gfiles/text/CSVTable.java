@@ -0,0 +1,1313 @@
+package gfiles.text;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * an in memory copy of a csv file stored by column instead of by row. The type
+ * of each column is worked out from its values when the file is loaded and the
+ * values are kept in a primitive array of that type, along with a bitmap of
+ * which values are empty. Scanning a numeric column is then a loop over an
+ * array instead of parsing strings.
+ *
+ * A column is only given a type if every value in it can be turned back into
+ * exactly the same text, so {@link #getString(int, int) getString} always
+ * gives the same values that {@link CSVFile#nextLine()} would have. For
+ * example a column of zip codes with leading zeros stays a string column.
+ *
+ * @author Gavin
+ *
+ */
+public class CSVTable {
+
+	/**
+	 * column type for whole numbers that fit in an int.
+	 */
+	public static final int TYPE_INT = 0;
+
+	/**
+	 * column type for whole numbers that fit in a long.
+	 */
+	public static final int TYPE_LONG = 1;
+
+	/**
+	 * column type for decimal numbers.
+	 */
+	public static final int TYPE_DOUBLE = 2;
+
+	/**
+	 * column type for true and false values.
+	 */
+	public static final int TYPE_BOOLEAN = 3;
+
+	/**
+	 * column type for iso dates, i.e. yyyy-mm-dd.
+	 */
+	public static final int TYPE_DATE = 4;
+
+	/**
+	 * column type for anything else.
+	 */
+	public static final int TYPE_STRING = 5;
+
+	// bits for the types that a value could be.
+	private static final int INT_BIT = 1 << TYPE_INT;
+	private static final int LONG_BIT = 1 << TYPE_LONG;
+	private static final int DOUBLE_BIT = 1 << TYPE_DOUBLE;
+	private static final int BOOLEAN_BIT = 1 << TYPE_BOOLEAN;
+	private static final int DATE_BIT = 1 << TYPE_DATE;
+	private static final int ALL_BITS = INT_BIT | LONG_BIT | DOUBLE_BIT | BOOLEAN_BIT | DATE_BIT;
+
+	// bit for a decimal number ending in a zero, with the number of decimal
+	// places stored in the bits above it.
+	private static final int TRAILING_ZERO_BIT = 1 << 7;
+	private static final int DECIMALS_SHIFT = 8;
+
+	// doubles can hold this many significant digits and still give back the
+	// same digits.
+	private static final int DOUBLE_DIGITS = 15;
+
+	// most different values a string column can have and still be stored as
+	// codes into a dictionary.
+	static final int MAX_DICTIONARY = 1 << 16;
+
+	// titles from the first line, or null if there aren't any.
+	private final String[] titles;
+
+	// number of rows, not counting the titles.
+	private final int rows;
+
+	// the values of each column.
+	final Column[] columns;
+
+	// number of values on each row, or null if every row has a value for
+	// every column.
+	private final int[] widths;
+
+	CSVTable(String[] titles, int rows, Column[] columns, int[] widths) {
+		this.titles = titles;
+		this.rows = rows;
+		this.columns = columns;
+		this.widths = widths;
+	}
+
+	/**
+	 * loads the csv file into a table.
+	 *
+	 * @param file
+	 *            file to load
+	 * @param titles
+	 *            whether the first line of the file is titles
+	 * @return the table of the file's values
+	 */
+	public static CSVTable load(CSVFile file, boolean titles) {
+		return load(file, titles, false);
+	}
+
+	/**
+	 * loads the csv file into a table, optionally parsing chunks of the file
+	 * on multiple threads with a {@link ParallelCSVParser}.
+	 *
+	 * @param file
+	 *            file to load
+	 * @param titles
+	 *            whether the first line of the file is titles
+	 * @param parallel
+	 *            whether to parse the file in parallel
+	 * @return the table of the file's values
+	 */
+	public static CSVTable load(CSVFile file, boolean titles, boolean parallel) {
+		return load(file, titles, parallel, null);
+	}
+
+	/**
+	 * loads the csv file into a table, adding the values to a profile in the
+	 * first pass over the file.
+	 *
+	 * @param profile
+	 *            profile to add the rows to, or null to not profile them
+	 */
+	static CSVTable load(CSVFile file, boolean titles, boolean parallel, CSVProfile profile) {
+		ParallelCSVParser parser = parallel ? new ParallelCSVParser(file) : null;
+
+		// the first pass works out the size and type of every column without
+		// keeping any values.
+		List<Scan> scans = chunks(file, parser, cursor -> scan(file, cursor, titles, profile != null));
+		Scan total = new Scan();
+		Map<Integer, Integer> bases = new HashMap<>();
+		for (Scan scan : scans) {
+			bases.put(scan.start, total.rows);
+			total.merge(scan);
+			if (profile != null)
+				profile.merge(scan.profile);
+		}
+		if (profile != null)
+			profile.setTitles(total.titles);
+
+		int width = total.titles == null ? total.maxWidth : Math.max(total.maxWidth, total.titles.length);
+		total.grow(width);
+		Column[] columns = new Column[width];
+		for (int c = 0; c < width; c++)
+			columns[c] = createColumn(total, c);
+
+		// only keep the width of every row if some rows are short.
+		int[] widths = total.rows > 0 && total.minWidth != width ? new int[total.rows] : null;
+
+		// the second pass fills in the values, each chunk knowing which row
+		// it starts at from the first pass.
+		List<Fill> fills = chunks(file, parser, cursor -> {
+			Integer base = bases.get(cursor.start());
+			if (base == null)
+				throw new IllegalStateException("Csv file changed while it was being loaded");
+			return fill(file, cursor, titles, columns, widths, base);
+		});
+
+		// give the dictionary columns one dictionary for the whole file, or
+		// turn them into plain strings if they have too many values.
+		for (int c = 0; c < width; c++) {
+			if (columns[c] instanceof DictionaryColumn)
+				columns[c] = mergeDictionaries((DictionaryColumn) columns[c], c, fills, total.rows);
+		}
+
+		// copy the empty values of each chunk into the columns, this is done
+		// afterwards since chunks can share words of the bitmaps.
+		for (Fill fill : fills) {
+			for (int c = 0; c < width; c++)
+				copyBits(fill.nulls[c], fill.rows, columns[c].nulls, fill.base);
+		}
+
+		return new CSVTable(total.titles, total.rows, columns, widths);
+	}
+
+	/**
+	 * runs the function over a single cursor for the whole file, or over
+	 * every chunk of the file if there is a parallel parser.
+	 */
+	private static <T> List<T> chunks(CSVFile file, ParallelCSVParser parser, Function<CSVCursor, T> function) {
+		if (parser == null)
+			return Collections.singletonList(function.apply(file.valueCursor(0, Integer.MAX_VALUE)));
+		return parser.parseChunks((start, stop) -> file.valueCursor(start, stop), function);
+	}
+
+	/**
+	 * moves the cursor to its next row of values, dropping trailing empty
+	 * values and trimming the rest the same way that the file's string methods
+	 * do.
+	 *
+	 * @return the number of values in the row, or -1 at the end of the cursor
+	 */
+	private static int nextValues(CSVFile file, CSVCursor cursor) {
+		if (!cursor.next())
+			return -1;
+		int width = CSVFile.valueCount(cursor);
+		if (file.trimsValues())
+			cursor.trim();
+		return width;
+	}
+
+	/**
+	 * works out the possible types of the columns in a chunk.
+	 */
+	private static Scan scan(CSVFile file, CSVCursor cursor, boolean titles, boolean profile) {
+		Scan scan = new Scan();
+		scan.start = cursor.start();
+		if (profile)
+			scan.profile = new CSVProfile();
+		boolean first = titles && cursor.start() == 0;
+		int width;
+		while ((width = nextValues(file, cursor)) != -1) {
+			if (first) {
+				scan.titles = Arrays.copyOf(cursor.toArray(), width);
+				first = false;
+				continue;
+			}
+			scan.add(cursor, width);
+			if (scan.profile != null)
+				scan.profile.add(cursor);
+		}
+		return scan;
+	}
+
+	/**
+	 * puts the values of a chunk into the columns.
+	 */
+	private static Fill fill(CSVFile file, CSVCursor cursor, boolean titles, Column[] columns, int[] widths,
+			int base) {
+		Fill fill = new Fill(base, columns.length);
+		for (int c = 0; c < columns.length; c++) {
+			if (columns[c] instanceof DictionaryColumn)
+				fill.dictionaries[c] = new Dictionary();
+		}
+		boolean first = titles && cursor.start() == 0;
+		int width;
+		while ((width = nextValues(file, cursor)) != -1) {
+			if (first) {
+				first = false;
+				continue;
+			}
+
+			int row = base + fill.rows;
+			if (widths != null)
+				widths[row] = width;
+			for (int c = 0; c < columns.length; c++) {
+				if (c < width && !cursor.isEmpty(c) && fill.dictionaries[c] != null)
+					fill.dictionaries[c].add((DictionaryColumn) columns[c], row, fill.rows, cursor, c);
+				else if (c < width && !cursor.isEmpty(c))
+					columns[c].set(row, cursor, c);
+				else
+					fill.setNull(c, fill.rows);
+			}
+			fill.rows++;
+		}
+		return fill;
+	}
+
+	/**
+	 * puts the values of the chunks' dictionaries into one dictionary in the
+	 * order they were first seen and changes the codes to point into it. If
+	 * there are too many values for a dictionary to save memory, or a chunk
+	 * gave up on its dictionary, the column is made into a plain string
+	 * column instead.
+	 */
+	private static Column mergeDictionaries(DictionaryColumn column, int c, List<Fill> fills, int rows) {
+		Map<String, Integer> codes = new HashMap<>();
+		List<String> values = new ArrayList<>();
+		boolean plain = false;
+		for (Fill fill : fills) {
+			Dictionary dictionary = fill.dictionaries[c];
+			plain |= dictionary.plain != null;
+			for (int i = 0; i < dictionary.size && !plain; i++) {
+				if (codes.putIfAbsent(dictionary.values[i], values.size()) == null)
+					values.add(dictionary.values[i]);
+			}
+			if (values.size() > Math.min(MAX_DICTIONARY, rows / 2))
+				plain = true;
+			if (plain)
+				break;
+		}
+
+		if (plain) {
+			StringColumn strings = new StringColumn(rows);
+			for (Fill fill : fills) {
+				Dictionary dictionary = fill.dictionaries[c];
+				long[] nulls = fill.nulls[c];
+				for (int i = 0; i < fill.rows; i++) {
+					int row = fill.base + i;
+					if (i >>> 6 < nulls.length && getBit(nulls, i))
+						continue;
+					if (i < dictionary.plainFrom)
+						strings.values[row] = dictionary.values[column.codes[row]];
+					else
+						strings.values[row] = dictionary.plain[i - dictionary.plainFrom];
+				}
+			}
+			return strings;
+		}
+
+		for (Fill fill : fills) {
+			Dictionary dictionary = fill.dictionaries[c];
+			int[] mapping = new int[dictionary.size];
+			for (int i = 0; i < mapping.length; i++)
+				mapping[i] = codes.get(dictionary.values[i]);
+			for (int row = fill.base; row < fill.base + fill.rows; row++) {
+				if (column.codes[row] < mapping.length)
+					column.codes[row] = mapping[column.codes[row]];
+			}
+		}
+		column.dictionary = values.toArray(new String[values.size()]);
+		return column;
+	}
+
+	/**
+	 * creates the column for the type that every value in it could be.
+	 */
+	private static Column createColumn(Scan scan, int column) {
+		int possible = scan.possible[column];
+		if (!scan.seen[column])
+			return new DictionaryColumn(scan.rows);
+		if ((possible & INT_BIT) != 0)
+			return new IntColumn(scan.rows);
+		if ((possible & LONG_BIT) != 0)
+			return new LongColumn(scan.rows);
+
+		// decimals have to either all have the same number of places or have
+		// no trailing zeros to be printed the same as they were read.
+		if ((possible & DOUBLE_BIT) != 0 && (scan.decimals[column] >= 0 || !scan.trailingZeros[column]))
+			return new DoubleColumn(scan.rows, Math.max(-1, scan.decimals[column]));
+		if ((possible & BOOLEAN_BIT) != 0)
+			return new BooleanColumn(scan.rows);
+		if ((possible & DATE_BIT) != 0)
+			return new DateColumn(scan.rows);
+		return new DictionaryColumn(scan.rows);
+	}
+
+	/**
+	 * works out what types a value could be stored as and still be printed
+	 * back exactly the same.
+	 *
+	 * @return bits of the possible types, along with the decimal places of a
+	 *         number
+	 */
+	static int classify(byte[] data, int start, int end) {
+		int length = end - start;
+		if (length == 4 && data[start] == 't' && data[start + 1] == 'r' && data[start + 2] == 'u'
+				&& data[start + 3] == 'e')
+			return BOOLEAN_BIT;
+		if (length == 5 && data[start] == 'f' && data[start + 1] == 'a' && data[start + 2] == 'l'
+				&& data[start + 3] == 's' && data[start + 4] == 'e')
+			return BOOLEAN_BIT;
+		if (length == 10 && isDate(data, start))
+			return DATE_BIT;
+
+		// the whole part of a number, with no plus sign and no leading zeros.
+		int i = start;
+		boolean negative = i < end && data[i] == '-';
+		if (negative)
+			i++;
+		int wholeStart = i;
+		while (i < end && isDigit(data[i]))
+			i++;
+		int whole = i - wholeStart;
+		if (whole == 0 || whole > 1 && data[wholeStart] == '0')
+			return 0;
+		boolean zero = whole == 1 && data[wholeStart] == '0';
+
+		if (i == end) {
+			if (negative && zero)
+				return 0;
+			int bits = 0;
+			if (whole < 10 || whole == 10 && fits(data, wholeStart, end, negative ? "2147483648" : "2147483647"))
+				bits |= INT_BIT;
+			if (whole < 19
+					|| whole == 19 && fits(data, wholeStart, end, negative ? "9223372036854775808" : "9223372036854775807"))
+				bits |= LONG_BIT;
+			if (whole <= DOUBLE_DIGITS)
+				bits |= DOUBLE_BIT;
+			return bits;
+		}
+
+		// the decimal places, there has to be at least one.
+		if (data[i] != '.')
+			return 0;
+		int fractionStart = ++i;
+		while (i < end && isDigit(data[i]))
+			i++;
+		int decimals = end - fractionStart;
+		if (i != end || decimals == 0)
+			return 0;
+
+		// count the significant digits.
+		int significant;
+		if (zero) {
+			int first = fractionStart;
+			while (first < end && data[first] == '0')
+				first++;
+			significant = end - first;
+		} else {
+			significant = whole + decimals;
+		}
+		if (significant > DOUBLE_DIGITS || negative && significant == 0)
+			return 0;
+
+		int bits = DOUBLE_BIT | decimals << DECIMALS_SHIFT;
+		if (data[end - 1] == '0')
+			bits |= TRAILING_ZERO_BIT;
+		return bits;
+	}
+
+	/**
+	 * checks if the digits are no bigger than the limit, both have the same
+	 * number of digits.
+	 */
+	private static boolean fits(byte[] data, int start, int end, String limit) {
+		for (int i = start; i < end; i++) {
+			int difference = data[i] - limit.charAt(i - start);
+			if (difference != 0)
+				return difference < 0;
+		}
+		return true;
+	}
+
+	/**
+	 * checks if the ten bytes are a valid date in the form yyyy-mm-dd.
+	 */
+	private static boolean isDate(byte[] data, int start) {
+		for (int i = 0; i < 10; i++) {
+			if (i == 4 || i == 7) {
+				if (data[start + i] != '-')
+					return false;
+			} else if (!isDigit(data[start + i])) {
+				return false;
+			}
+		}
+		int year = digits(data, start, 4);
+		int month = digits(data, start + 5, 2);
+		int day = digits(data, start + 8, 2);
+		return month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month);
+	}
+
+	private static int daysInMonth(int year, int month) {
+		if (month == 2)
+			return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+		return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+	}
+
+	/**
+	 * gets the number of days since 1970-01-01 of the date, see
+	 * {@link LocalDate#toEpochDay()}.
+	 */
+	private static int epochDay(int year, int month, int day) {
+		// count years from march so the leap day is the last day of the year.
+		int y = month <= 2 ? year - 1 : year;
+		int era = Math.floorDiv(y, 400);
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	private static int digits(byte[] data, int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++)
+			value = value * 10 + (data[i] - '0');
+		return value;
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	/**
+	 * sets the bits of the source bitmap in the destination, moved along by
+	 * the offset.
+	 */
+	private static void copyBits(long[] source, int count, long[] destination, int offset) {
+		for (int word = 0; word < source.length; word++) {
+			long bits = source[word];
+			while (bits != 0) {
+				int bit = word * 64 + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				if (bit < count)
+					setBit(destination, offset + bit);
+			}
+		}
+	}
+
+	private static void setBit(long[] bits, int index) {
+		bits[index >>> 6] |= 1L << index;
+	}
+
+	private static boolean getBit(long[] bits, int index) {
+		return (bits[index >>> 6] & 1L << index) != 0;
+	}
+
+	/**
+	 * gets the number of rows in the table, not counting the titles.
+	 *
+	 * @return number of rows
+	 */
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * gets the number of values on each row, or null if every row has a value
+	 * for every column.
+	 */
+	int[] widths() {
+		return widths;
+	}
+
+	/**
+	 * gets the number of values on the row.
+	 */
+	int width(int row) {
+		return widths == null ? columns.length : widths[row];
+	}
+
+	/**
+	 * gets the number of columns in the table, which is the most values on any
+	 * row or the number of titles if there are more of them.
+	 *
+	 * @return number of columns
+	 */
+	public int columns() {
+		return columns.length;
+	}
+
+	/**
+	 * gets the titles from the first line of the file.
+	 *
+	 * @return the titles, or null if the table wasn't loaded with titles or
+	 *         the file was empty
+	 */
+	public String[] getTitles() {
+		return titles;
+	}
+
+	/**
+	 * gets what type the values of the column are stored as, one of the type
+	 * constants such as {@link #TYPE_LONG}.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @return type of the column
+	 */
+	public int getColumnType(int column) {
+		return columns[column].type();
+	}
+
+	/**
+	 * checks if the column has a value on the row. Empty values and values
+	 * past the end of a short row are both null.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return true if there isn't a value
+	 */
+	public boolean isNull(int column, int row) {
+		if (widths != null && column >= widths[row])
+			return true;
+		return getBit(columns[column].nulls, row);
+	}
+
+	/**
+	 * gets the value as text, the same as the value that was read from the
+	 * file.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return the value, an empty string if the value is empty, or null if
+	 *         the row or column doesn't exist or the row is too short to have
+	 *         the column
+	 */
+	public String getString(int column, int row) {
+		if (row < 0 || row >= rows || column < 0 || column >= columns.length)
+			return null;
+		if (widths != null && column >= widths[row])
+			return null;
+		if (getBit(columns[column].nulls, row))
+			return "";
+		return columns[column].format(row);
+	}
+
+	/**
+	 * gets the value of an int column, null values are 0.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return the value
+	 * @throws IllegalStateException
+	 *             if the column isn't an int column
+	 */
+	public int getInt(int column, int row) {
+		return columns[column].getInt(row);
+	}
+
+	/**
+	 * gets the value of an int or long column, null values are 0.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return the value
+	 * @throws IllegalStateException
+	 *             if the column isn't an int or long column
+	 */
+	public long getLong(int column, int row) {
+		return columns[column].getLong(row);
+	}
+
+	/**
+	 * gets the value of any numeric column, null values are 0.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return the value
+	 * @throws IllegalStateException
+	 *             if the column isn't numeric
+	 */
+	public double getDouble(int column, int row) {
+		return columns[column].getDouble(row);
+	}
+
+	/**
+	 * gets the value of a boolean column, null values are false.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return the value
+	 * @throws IllegalStateException
+	 *             if the column isn't a boolean column
+	 */
+	public boolean getBoolean(int column, int row) {
+		return columns[column].getBoolean(row);
+	}
+
+	/**
+	 * gets the value of a date column.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return the value, or null if the value is null
+	 * @throws IllegalStateException
+	 *             if the column isn't a date column
+	 */
+	public LocalDate getDate(int column, int row) {
+		if (isNull(column, row))
+			return null;
+		return LocalDate.ofEpochDay(columns[column].getEpochDay(row));
+	}
+
+	/**
+	 * checks if a string column is stored as codes into a dictionary of its
+	 * different values. String columns are unless they have too many
+	 * different values for the dictionary to save memory.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @return true if the column has a dictionary
+	 */
+	public boolean isDictionary(int column) {
+		return columns[column] instanceof DictionaryColumn;
+	}
+
+	/**
+	 * gets the different values of a dictionary column in the order they
+	 * first appear, a value's code is its index.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @return the values
+	 * @throws IllegalStateException
+	 *             if the column doesn't have a dictionary
+	 */
+	public String[] getDictionary(int column) {
+		return dictionaryColumn(column).dictionary.clone();
+	}
+
+	/**
+	 * gets the code of a value of a dictionary column. Rows with the same
+	 * value have the same code so they can be grouped or compared without
+	 * comparing strings.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param row
+	 *            index of the row
+	 * @return the code, or -1 if the value is null
+	 * @throws IllegalStateException
+	 *             if the column doesn't have a dictionary
+	 */
+	public int getCode(int column, int row) {
+		DictionaryColumn values = dictionaryColumn(column);
+		return isNull(column, row) ? -1 : values.codes[row];
+	}
+
+	/**
+	 * gets the code that a value has in a dictionary column.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param value
+	 *            value to look up
+	 * @return the code, or -1 if no row has the value
+	 * @throws IllegalStateException
+	 *             if the column doesn't have a dictionary
+	 */
+	public int findCode(int column, String value) {
+		return dictionaryColumn(column).find(value);
+	}
+
+	private DictionaryColumn dictionaryColumn(int column) {
+		if (!(columns[column] instanceof DictionaryColumn))
+			throw new IllegalStateException("Column doesn't have a dictionary");
+		return (DictionaryColumn) columns[column];
+	}
+
+	/**
+	 * finds the rows whose value is equal to the given value, i.e. the rows
+	 * where {@link #getString(int, int) getString} would give the value. For
+	 * a dictionary column the value is looked up once and then only codes
+	 * are compared.
+	 *
+	 * @param column
+	 *            index of the column
+	 * @param value
+	 *            value to look for
+	 * @return the rows in order
+	 */
+	public int[] findRows(int column, String value) {
+		int[] found = new int[16];
+		int count = 0;
+		Column values = columns[column];
+		if (values instanceof DictionaryColumn && !value.isEmpty()) {
+			int code = ((DictionaryColumn) values).find(value);
+			if (code == -1)
+				return new int[0];
+			int[] codes = ((DictionaryColumn) values).codes;
+			for (int row = 0; row < rows; row++) {
+				if (codes[row] != code || getBit(values.nulls, row))
+					continue;
+				if (count == found.length)
+					found = Arrays.copyOf(found, count * 2);
+				found[count++] = row;
+			}
+		} else {
+			for (int row = 0; row < rows; row++) {
+				if (!value.equals(getString(column, row)))
+					continue;
+				if (count == found.length)
+					found = Arrays.copyOf(found, count * 2);
+				found[count++] = row;
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * what the first pass over a chunk found out about its columns.
+	 */
+	private static class Scan {
+		// where the chunk started.
+		private int start;
+
+		// number of rows and the titles if the chunk had them.
+		private int rows;
+		private String[] titles;
+
+		// fewest and most values on a row.
+		private int minWidth = Integer.MAX_VALUE;
+		private int maxWidth = 0;
+
+		// for each column the types it could be, whether it had any values,
+		// the decimal places its numbers all have (-2 before any are seen and
+		// -1 if they differ) and whether any of them had trailing zeros.
+		private int[] possible = new int[0];
+		private boolean[] seen = new boolean[0];
+		private int[] decimals = new int[0];
+		private boolean[] trailingZeros = new boolean[0];
+
+		// profile of the chunk's values if it is being profiled.
+		private CSVProfile profile;
+
+		private void grow(int width) {
+			int old = possible.length;
+			if (width <= old)
+				return;
+			possible = Arrays.copyOf(possible, width);
+			seen = Arrays.copyOf(seen, width);
+			decimals = Arrays.copyOf(decimals, width);
+			trailingZeros = Arrays.copyOf(trailingZeros, width);
+			Arrays.fill(possible, old, width, ALL_BITS);
+			Arrays.fill(decimals, old, width, -2);
+		}
+
+		private void add(TextRow row, int width) {
+			rows++;
+			minWidth = Math.min(minWidth, width);
+			maxWidth = Math.max(maxWidth, width);
+			grow(width);
+			for (int c = 0; c < width; c++) {
+				if (row.isEmpty(c))
+					continue;
+				int bits = classify(row.source(c), row.starts[c], row.ends[c]);
+				seen[c] = true;
+				possible[c] &= bits;
+				if ((bits & DOUBLE_BIT) != 0) {
+					decimals[c] = mergeDecimals(decimals[c], bits >>> DECIMALS_SHIFT);
+					trailingZeros[c] |= (bits & TRAILING_ZERO_BIT) != 0;
+				}
+			}
+		}
+
+		private void merge(Scan other) {
+			rows += other.rows;
+			if (other.titles != null)
+				titles = other.titles;
+			minWidth = Math.min(minWidth, other.minWidth);
+			maxWidth = Math.max(maxWidth, other.maxWidth);
+			grow(other.possible.length);
+			for (int c = 0; c < other.possible.length; c++) {
+				possible[c] &= other.possible[c];
+				seen[c] |= other.seen[c];
+				decimals[c] = other.decimals[c] == -2 ? decimals[c] : mergeDecimals(decimals[c], other.decimals[c]);
+				trailingZeros[c] |= other.trailingZeros[c];
+			}
+		}
+
+		private static int mergeDecimals(int current, int decimals) {
+			if (current == -2 || current == decimals)
+				return decimals;
+			return -1;
+		}
+	}
+
+	/**
+	 * the empty values that the second pass found in a chunk, numbered from
+	 * the start of the chunk.
+	 */
+	private static class Fill {
+		private final int base;
+		private int rows;
+		private long[][] nulls;
+
+		// values of the chunk's string columns.
+		private final Dictionary[] dictionaries;
+
+		private Fill(int base, int columns) {
+			this.base = base;
+			this.nulls = new long[columns][1];
+			this.dictionaries = new Dictionary[columns];
+		}
+
+		private void setNull(int column, int row) {
+			long[] bits = nulls[column];
+			if (row >>> 6 >= bits.length)
+				nulls[column] = bits = Arrays.copyOf(bits, Math.max(bits.length * 2, (row >>> 6) + 1));
+			setBit(bits, row);
+		}
+	}
+
+	/**
+	 * the values of one column. Setting the values of different rows from
+	 * different threads is safe, the null bitmap is filled in separately.
+	 */
+	abstract static class Column {
+		// bit for each row that is set if the value is empty.
+		final long[] nulls;
+
+		Column(int rows) {
+			nulls = new long[(rows + 63) >>> 6];
+		}
+
+		abstract int type();
+
+		/**
+		 * parses the field of the row into the value of the column.
+		 */
+		abstract void set(int row, TextRow values, int field);
+
+		/**
+		 * turns the value back into text, the value isn't null.
+		 */
+		abstract String format(int row);
+
+		/**
+		 * writes the value to the writer without turning it into a string,
+		 * the value isn't null.
+		 */
+		abstract void write(int row, CSVWriter writer) throws IOException;
+
+		int getInt(int row) {
+			throw wrongType("an int");
+		}
+
+		long getLong(int row) {
+			throw wrongType("an int or long");
+		}
+
+		double getDouble(int row) {
+			throw wrongType("a numeric");
+		}
+
+		boolean getBoolean(int row) {
+			throw wrongType("a boolean");
+		}
+
+		int getEpochDay(int row) {
+			throw wrongType("a date");
+		}
+
+		private IllegalStateException wrongType(String expected) {
+			return new IllegalStateException("Column isn't " + expected + " column");
+		}
+	}
+
+	static class IntColumn extends Column {
+		final int[] values;
+
+		IntColumn(int rows) {
+			super(rows);
+			values = new int[rows];
+		}
+
+		int type() {
+			return TYPE_INT;
+		}
+
+		void set(int row, TextRow values, int field) {
+			this.values[row] = values.parseInt(field);
+		}
+
+		String format(int row) {
+			return Integer.toString(values[row]);
+		}
+
+		void write(int row, CSVWriter writer) throws IOException {
+			writer.write(values[row]);
+		}
+
+		int getInt(int row) {
+			return values[row];
+		}
+
+		long getLong(int row) {
+			return values[row];
+		}
+
+		double getDouble(int row) {
+			return values[row];
+		}
+	}
+
+	static class LongColumn extends Column {
+		final long[] values;
+
+		LongColumn(int rows) {
+			super(rows);
+			values = new long[rows];
+		}
+
+		int type() {
+			return TYPE_LONG;
+		}
+
+		void set(int row, TextRow values, int field) {
+			this.values[row] = values.parseLong(field);
+		}
+
+		String format(int row) {
+			return Long.toString(values[row]);
+		}
+
+		void write(int row, CSVWriter writer) throws IOException {
+			writer.write(values[row]);
+		}
+
+		long getLong(int row) {
+			return values[row];
+		}
+
+		double getDouble(int row) {
+			return values[row];
+		}
+	}
+
+	static class DoubleColumn extends Column {
+		final double[] values;
+
+		// number of decimal places every value has, or -1 to print them
+		// without trailing zeros.
+		final int decimals;
+
+		DoubleColumn(int rows, int decimals) {
+			super(rows);
+			values = new double[rows];
+			this.decimals = decimals;
+		}
+
+		int type() {
+			return TYPE_DOUBLE;
+		}
+
+		void set(int row, TextRow values, int field) {
+			this.values[row] = values.parseDouble(field);
+		}
+
+		String format(int row) {
+			// the values have few enough digits that the shortest text for the
+			// double is the digits it was read from.
+			BigDecimal value = BigDecimal.valueOf(values[row]);
+			if (decimals >= 0)
+				return value.setScale(decimals, RoundingMode.HALF_EVEN).toPlainString();
+			return value.stripTrailingZeros().toPlainString();
+		}
+
+		void write(int row, CSVWriter writer) throws IOException {
+			if (decimals >= 0)
+				writer.write(values[row], decimals);
+			else
+				writer.write(values[row]);
+		}
+
+		double getDouble(int row) {
+			return values[row];
+		}
+	}
+
+	static class BooleanColumn extends Column {
+		final boolean[] values;
+
+		BooleanColumn(int rows) {
+			super(rows);
+			values = new boolean[rows];
+		}
+
+		int type() {
+			return TYPE_BOOLEAN;
+		}
+
+		void set(int row, TextRow values, int field) {
+			this.values[row] = values.fieldLength(field) == 4;
+		}
+
+		String format(int row) {
+			return values[row] ? "true" : "false";
+		}
+
+		void write(int row, CSVWriter writer) throws IOException {
+			writer.write(values[row]);
+		}
+
+		boolean getBoolean(int row) {
+			return values[row];
+		}
+	}
+
+	static class DateColumn extends Column {
+		// days since 1970-01-01.
+		final int[] values;
+
+		DateColumn(int rows) {
+			super(rows);
+			values = new int[rows];
+		}
+
+		int type() {
+			return TYPE_DATE;
+		}
+
+		void set(int row, TextRow values, int field) {
+			byte[] data = values.source(field);
+			int start = values.starts[field];
+			this.values[row] = epochDay(digits(data, start, 4), digits(data, start + 5, 2), digits(data, start + 8, 2));
+		}
+
+		String format(int row) {
+			return LocalDate.ofEpochDay(values[row]).toString();
+		}
+
+		void write(int row, CSVWriter writer) throws IOException {
+			writer.writeEpochDay(values[row]);
+		}
+
+		int getEpochDay(int row) {
+			return values[row];
+		}
+	}
+
+	static class StringColumn extends Column {
+		final String[] values;
+
+		StringColumn(int rows) {
+			super(rows);
+			values = new String[rows];
+		}
+
+		int type() {
+			return TYPE_STRING;
+		}
+
+		void set(int row, TextRow values, int field) {
+			this.values[row] = values.getString(field);
+		}
+
+		String format(int row) {
+			return values[row];
+		}
+
+		void write(int row, CSVWriter writer) throws IOException {
+			writer.write(values[row]);
+		}
+	}
+
+	/**
+	 * a string column stored as a code for each row into a dictionary of the
+	 * different values, so each value is only kept once.
+	 */
+	static class DictionaryColumn extends Column {
+		final int[] codes;
+
+		// the values by their code, filled in once the codes are.
+		String[] dictionary = new String[0];
+
+		// code of each value and how much of the dictionary it covers, made
+		// the first time a value is looked up.
+		private Map<String, Integer> index;
+		private int indexed = -1;
+
+		DictionaryColumn(int rows) {
+			super(rows);
+			codes = new int[rows];
+		}
+
+		int type() {
+			return TYPE_STRING;
+		}
+
+		/**
+		 * dictionary columns are filled by the {@link Dictionary} of each chunk
+		 * and the dictionaries are merged once every chunk is done, so values
+		 * are never set one at a time.
+		 */
+		void set(int row, TextRow values, int field) {
+			throw new IllegalStateException("Dictionary columns are filled through their chunk dictionaries");
+		}
+
+		String format(int row) {
+			return dictionary[codes[row]];
+		}
+
+		void write(int row, CSVWriter writer) throws IOException {
+			writer.write(dictionary[codes[row]]);
+		}
+
+		/**
+		 * gets the code of the value, or -1 if it isn't in the dictionary.
+		 */
+		synchronized int find(String value) {
+			if (indexed != dictionary.length) {
+				index = new HashMap<>();
+				for (int i = 0; i < dictionary.length; i++)
+					index.putIfAbsent(dictionary[i], i);
+				indexed = dictionary.length;
+			}
+			Integer code = index.get(value);
+			return code == null ? -1 : code;
+		}
+	}
+
+	/**
+	 * the different values of a string column in one chunk, looked up by
+	 * their bytes so that a string is only made the first time a value is
+	 * seen. If the chunk has too many values the dictionary gives up and
+	 * keeps the rest of the values as strings.
+	 */
+	private static class Dictionary {
+		// values by their code.
+		private String[] values = new String[16];
+		private int size = 0;
+
+		// bytes of every value one after another, with where each value
+		// starts and its hash.
+		private byte[] bytes = new byte[256];
+		private int used = 0;
+		private int[] starts = new int[17];
+		private int[] hashes = new int[16];
+
+		// hash table of code + 1 for each value, 0 for an empty slot.
+		private int[] table = new int[64];
+
+		// values of the rows from plainFrom on once there were too many
+		// values for the dictionary.
+		private String[] plain;
+		private int plainFrom = Integer.MAX_VALUE;
+
+		/**
+		 * sets the code of the row to the code of the field's value, adding
+		 * the value if it is new.
+		 */
+		private void add(DictionaryColumn column, int row, int chunkRow, TextRow values, int field) {
+			if (plain != null) {
+				// empty cells aren't added, so rows can be skipped.
+				int idx = chunkRow - plainFrom;
+				while (idx >= plain.length)
+					plain = Arrays.copyOf(plain, Math.max(plain.length * 2, idx + 1));
+				plain[idx] = values.getString(field);
+				return;
+			}
+
+			byte[] data = values.source(field);
+			int start = values.starts[field];
+			int end = values.ends[field];
+			int hash = 0;
+			for (int i = start; i < end; i++)
+				hash = 31 * hash + data[i];
+			hash ^= hash >>> 16;
+
+			int mask = table.length - 1;
+			int slot = hash & mask;
+			for (int entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask) {
+				int code = entry - 1;
+				if (hashes[code] == hash && equals(code, data, start, end)) {
+					column.codes[row] = code;
+					return;
+				}
+			}
+
+			if (size == MAX_DICTIONARY) {
+				plainFrom = chunkRow;
+				plain = new String[1024];
+				plain[0] = values.getString(field);
+				return;
+			}
+
+			// add the value, keeping the table at most half full.
+			int code = size++;
+			if (code == this.values.length) {
+				this.values = Arrays.copyOf(this.values, code * 2);
+				hashes = Arrays.copyOf(hashes, code * 2);
+				starts = Arrays.copyOf(starts, code * 2 + 1);
+			}
+			int length = end - start;
+			if (used + length > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + length));
+			System.arraycopy(data, start, bytes, used, length);
+			used += length;
+			starts[code + 1] = used;
+			hashes[code] = hash;
+			this.values[code] = values.getString(field);
+			column.codes[row] = code;
+
+			table[slot] = code + 1;
+			if (size * 2 > table.length)
+				rehash();
+		}
+
+		private boolean equals(int code, byte[] data, int start, int end) {
+			int from = starts[code];
+			if (starts[code + 1] - from != end - start)
+				return false;
+			for (int i = start; i < end; i++) {
+				if (bytes[from++] != data[i])
+					return false;
+			}
+			return true;
+		}
+
+		private void rehash() {
+			table = new int[table.length * 2];
+			int mask = table.length - 1;
+			for (int code = 0; code < size; code++) {
+				int slot = hashes[code] & mask;
+				while (table[slot] != 0)
+					slot = (slot + 1) & mask;
+				table[slot] = code + 1;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,743 @@
+package gfiles.text;
+
+import gfiles.file.VirtualFile;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * writes csv rows to a virtual file or an output stream. Values are encoded
+ * straight into a buffer that is copied out when it fills up, numbers are
+ * turned into digits without making strings, and values are only put in
+ * quotes when they contain the delimiter, a quote or a line break, or start
+ * or end with a space.
+ *
+ * To use, write the values of a row one at a time and then end the row, e.g.
+ *
+ * <pre>
+ * CSVWriter writer = new CSVWriter(file);
+ * writer.writeRow("name", "price");
+ * writer.write("apple").write(1.25).endRow();
+ * writer.flush();
+ * </pre>
+ *
+ * Nothing reaches the file or stream until the buffer fills or the writer is
+ * flushed or closed.
+ *
+ * @author Gavin
+ *
+ */
+public class CSVWriter implements Closeable, Flushable {
+
+	// size of the buffer the values are written into.
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// powers of ten that a double can hold exactly.
+	private static final double[] POWERS_OF_TEN = new double[16];
+
+	// doubles with this many significant digits or fewer are written from a
+	// long, more are written with Double.toString.
+	private static final double MAX_EXACT = 1e15;
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	// where the bytes go when the buffer is full.
+	private final OutputStream out;
+
+	// bytes that haven't been copied out yet.
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+
+	// digits of a number in reverse order.
+	private final byte[] digits = new byte[20];
+
+	// format of the values.
+	private String delimiter = ",";
+	private byte[] delimiterBytes = { ',' };
+	private String lineSeparator = "\n";
+	private boolean quoting = true;
+	private boolean utf8 = false;
+
+	// whether a value has been written on the current row.
+	private boolean rowStarted = false;
+
+	/**
+	 * creates a writer that adds rows to the end of the virtual file. If the
+	 * file is a text file its encoding is used, and if it is a csv file so are
+	 * its delimiter and quoting, see {@link #setQuoting(boolean)}.
+	 *
+	 * @param file
+	 *            file to write to
+	 */
+	public CSVWriter(VirtualFile file) {
+		this(file.getOutputStream());
+		if (file instanceof AsciiTextFile)
+			utf8 = ((AsciiTextFile) file).isUtf8();
+		if (file instanceof CSVFile) {
+			CSVFile csv = (CSVFile) file;
+			setDelimiter(csv.getDelimiter());
+			quoting = csv.isQuoting();
+		}
+	}
+
+	/**
+	 * creates a writer that writes rows to the output stream.
+	 *
+	 * @param out
+	 *            stream to write to
+	 */
+	public CSVWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * sets the text that goes between the values of a row.
+	 *
+	 * @param delimiter
+	 *            text between values
+	 * @return this writer
+	 */
+	public CSVWriter setDelimiter(String delimiter) {
+		if (delimiter.isEmpty())
+			throw new IllegalArgumentException("The delimiter can't be empty");
+		this.delimiter = delimiter;
+		delimiterBytes = encode(delimiter);
+		return this;
+	}
+
+	/**
+	 * sets the text that ends each row, \n by default.
+	 *
+	 * @param lineSeparator
+	 *            text at the end of each row
+	 * @return this writer
+	 */
+	public CSVWriter setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+		return this;
+	}
+
+	/**
+	 * sets whether values that contain the delimiter, quotes or line breaks,
+	 * or start or end with a space, are put in quotes. Without quoting the
+	 * values are written as they are, which is the format a csv file that
+	 * isn't quoting expects, and a value with the delimiter or a line break in
+	 * it can't be written since it wouldn't be read back as one value.
+	 *
+	 * @param quoting
+	 *            true to quote values when they need it
+	 * @return this writer
+	 */
+	public CSVWriter setQuoting(boolean quoting) {
+		this.quoting = quoting;
+		return this;
+	}
+
+	/**
+	 * sets whether text is encoded as utf-8 instead of one byte per
+	 * character. Without utf-8 characters past \u00ff are written as ?.
+	 *
+	 * @param utf8
+	 *            true to write utf-8
+	 * @return this writer
+	 */
+	public CSVWriter setUtf8(boolean utf8) {
+		this.utf8 = utf8;
+		delimiterBytes = encode(delimiter);
+		return this;
+	}
+
+	/**
+	 * writes a text value, null is written as an empty value.
+	 *
+	 * @param value
+	 *            value to write
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 * @throws IllegalArgumentException
+	 *             if the writer isn't quoting and the value has the delimiter
+	 *             or a line break in it
+	 */
+	public CSVWriter write(CharSequence value) throws IOException {
+		if (!quoting && splits(value))
+			throw new IllegalArgumentException("Can't write a value with the delimiter or a line break without quoting");
+		startValue();
+		if (value == null)
+			return this;
+
+		int length = value.length();
+		boolean quote = quoting && needsQuotes(value);
+		if (quote)
+			put('"');
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				if (c == '"' && quote)
+					put('"');
+				put(c);
+			} else if (!utf8) {
+				put(c < 0x100 ? c : '?');
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				putCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+			} else {
+				putCodePoint(Character.isSurrogate(c) ? 0xFFFD : c);
+			}
+		}
+		if (quote)
+			put('"');
+		return this;
+	}
+
+	/**
+	 * writes a whole number.
+	 *
+	 * @param value
+	 *            value to write
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter write(long value) throws IOException {
+		startValue();
+		putLong(value);
+		return this;
+	}
+
+	/**
+	 * writes a decimal number with as few decimal places as it takes to read
+	 * back the same double, and whole numbers without a decimal point.
+	 *
+	 * @param value
+	 *            value to write
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter write(double value) throws IOException {
+		startValue();
+		double magnitude = Math.abs(value);
+		if (value == Math.rint(value) && magnitude < MAX_EXACT) {
+			putLong((long) value);
+			return this;
+		}
+
+		// try more and more decimal places until the digits give the value
+		// back.
+		for (int decimals = 1; decimals < POWERS_OF_TEN.length; decimals++) {
+			double scaled = value * POWERS_OF_TEN[decimals];
+			if (Math.abs(scaled) >= MAX_EXACT)
+				break;
+			long mantissa = Math.round(scaled);
+			if (mantissa / POWERS_OF_TEN[decimals] == value) {
+				putFixed(mantissa, decimals);
+				return this;
+			}
+		}
+		putAscii(Double.toString(value));
+		return this;
+	}
+
+	/**
+	 * writes a decimal number with exactly the given number of decimal
+	 * places. The exact value of the double is rounded half to even, so 2.675
+	 * is written as 2.67 since the closest double is a little below it.
+	 *
+	 * @param value
+	 *            value to write
+	 * @param decimals
+	 *            number of decimal places
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter write(double value, int decimals) throws IOException {
+		if (decimals < 0)
+			throw new IllegalArgumentException("The number of decimals can't be negative");
+		startValue();
+		if (decimals < POWERS_OF_TEN.length) {
+			double scaled = value * POWERS_OF_TEN[decimals];
+
+			// the product can be off by half an ulp, which only changes the
+			// rounding when it is that close to halfway between two longs.
+			double fraction = scaled - Math.floor(scaled);
+			if (Math.abs(scaled) < MAX_EXACT && Math.abs(fraction - 0.5) > Math.ulp(scaled)) {
+				putFixed((long) Math.rint(scaled), decimals);
+				return this;
+			}
+		}
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			putAscii(Double.toString(value));
+		else
+			putAscii(new BigDecimal(value).setScale(decimals, RoundingMode.HALF_EVEN).toPlainString());
+		return this;
+	}
+
+	/**
+	 * writes true or false.
+	 *
+	 * @param value
+	 *            value to write
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter write(boolean value) throws IOException {
+		startValue();
+		putAscii(value ? "true" : "false");
+		return this;
+	}
+
+	/**
+	 * writes a date as yyyy-mm-dd, null is written as an empty value.
+	 *
+	 * @param value
+	 *            value to write
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter write(LocalDate value) throws IOException {
+		if (value == null)
+			return writeNull();
+		return writeEpochDay(value.toEpochDay());
+	}
+
+	/**
+	 * writes a date given as the number of days since 1970-01-01.
+	 *
+	 * @param epochDay
+	 *            days since 1970-01-01
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter writeEpochDay(long epochDay) throws IOException {
+		startValue();
+
+		// turns the days into a year, month and day with march as the first
+		// month so leap days are at the end of the year.
+		long days = epochDay + 719468;
+		long era = Math.floorDiv(days, 146097);
+		long dayOfEra = days - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long shiftedMonth = (5 * dayOfYear + 2) / 153;
+		int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+		int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		if (year < 0 || year > 9999) {
+			putAscii(LocalDate.ofEpochDay(epochDay).toString());
+			return this;
+		}
+		ensure(10);
+		int y = (int) year;
+		buffer[position++] = (byte) ('0' + y / 1000);
+		buffer[position++] = (byte) ('0' + y / 100 % 10);
+		buffer[position++] = (byte) ('0' + y / 10 % 10);
+		buffer[position++] = (byte) ('0' + y % 10);
+		buffer[position++] = '-';
+		buffer[position++] = (byte) ('0' + month / 10);
+		buffer[position++] = (byte) ('0' + month % 10);
+		buffer[position++] = '-';
+		buffer[position++] = (byte) ('0' + day / 10);
+		buffer[position++] = (byte) ('0' + day % 10);
+		return this;
+	}
+
+	/**
+	 * writes an empty value.
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter writeNull() throws IOException {
+		startValue();
+		return this;
+	}
+
+	/**
+	 * writes a field of a row that was read from a file. The bytes are copied
+	 * as they are, so the row should have the same encoding as the writer.
+	 *
+	 * @param row
+	 *            row to copy from
+	 * @param field
+	 *            index of the field
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 * @throws IllegalArgumentException
+	 *             if the writer isn't quoting and the field has the delimiter
+	 *             or a line break in it
+	 */
+	public CSVWriter write(TextRow row, int field) throws IOException {
+		byte[] data = row.source(field);
+		int start = row.starts[field];
+		int end = row.ends[field];
+		if (!quoting && splits(data, start, end))
+			throw new IllegalArgumentException("Can't write a value with the delimiter or a line break without quoting");
+		startValue();
+		if (!quoting || !needsQuotes(data, start, end)) {
+			put(data, start, end - start);
+			return this;
+		}
+
+		put('"');
+		int from = start;
+		for (int i = start; i < end; i++) {
+			if (data[i] == '"') {
+				put(data, from, i + 1 - from);
+				from = i;
+			}
+		}
+		put(data, from, end - from);
+		put('"');
+		return this;
+	}
+
+	/**
+	 * writes a value of any type and ends the row. Numbers, booleans and dates
+	 * are written the same way as the typed write methods, null is an empty
+	 * value and anything else is written with its toString.
+	 *
+	 * @param values
+	 *            values of the row
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter writeRow(Object... values) throws IOException {
+		for (Object value : values)
+			writeObject(value);
+		return endRow();
+	}
+
+	/**
+	 * copies every field of a row that was read from a file and ends the row.
+	 *
+	 * @param row
+	 *            row to copy
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter writeRow(TextRow row) throws IOException {
+		for (int i = 0; i < row.fieldCount(); i++)
+			write(row, i);
+		return endRow();
+	}
+
+	/**
+	 * writes the whole table, starting with its titles if it has them. Typed
+	 * columns are written straight from their arrays, and rows that were
+	 * shorter than the others in the file stay short.
+	 *
+	 * @param table
+	 *            table to write
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter writeTable(CSVTable table) throws IOException {
+		String[] titles = table.getTitles();
+		if (titles != null)
+			writeRow((Object[]) titles);
+		CSVTable.Column[] columns = table.columns;
+		for (int row = 0; row < table.rows(); row++) {
+			int width = table.width(row);
+			for (int c = 0; c < width; c++) {
+				if (table.isNull(c, row))
+					writeNull();
+				else
+					columns[c].write(row, this);
+			}
+			endRow();
+		}
+		return this;
+	}
+
+	/**
+	 * writes the titles and rows of a query result.
+	 *
+	 * @param result
+	 *            result to write
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter writeResult(CSVResult result) throws IOException {
+		writeRow((Object[]) result.getTitles());
+		for (int row = 0; row < result.rows(); row++) {
+			for (int c = 0; c < result.columns(); c++)
+				writeObject(result.getValue(c, row));
+			endRow();
+		}
+		return this;
+	}
+
+	/**
+	 * ends the current row.
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 *             if the stream couldn't be written to
+	 */
+	public CSVWriter endRow() throws IOException {
+		putAscii(lineSeparator);
+		rowStarted = false;
+		return this;
+	}
+
+	/**
+	 * copies everything that has been written to the file or stream.
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+
+	/**
+	 * flushes the writer and closes the stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			drain();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * writes a value by looking at its type.
+	 */
+	private void writeObject(Object value) throws IOException {
+		if (value == null)
+			writeNull();
+		else if (value instanceof CharSequence)
+			write((CharSequence) value);
+		else if (value instanceof Long || value instanceof Integer || value instanceof Short
+				|| value instanceof Byte)
+			write(((Number) value).longValue());
+		else if (value instanceof Double || value instanceof Float)
+			write(((Number) value).doubleValue());
+		else if (value instanceof Boolean)
+			write(((Boolean) value).booleanValue());
+		else if (value instanceof LocalDate)
+			write((LocalDate) value);
+		else
+			write(value.toString());
+	}
+
+	/**
+	 * puts the delimiter before every value but the first of the row.
+	 */
+	private void startValue() throws IOException {
+		if (rowStarted)
+			put(delimiterBytes, 0, delimiterBytes.length);
+		rowStarted = true;
+	}
+
+	/**
+	 * checks if text has to be in quotes to be read back as it is. Spaces at
+	 * either end are quoted so a reader that ignores spaces keeps them.
+	 */
+	private boolean needsQuotes(CharSequence value) {
+		int length = value.length();
+		if (length > 0 && (value.charAt(0) <= ' ' || value.charAt(length - 1) <= ' '))
+			return true;
+		for (int i = 0; i < length; i++) {
+			if (value.charAt(i) == '"')
+				return true;
+		}
+		return splits(value);
+	}
+
+	/**
+	 * checks if text has the delimiter or a line break in it, so it would be
+	 * read back as more than one value without quotes.
+	 */
+	private boolean splits(CharSequence value) {
+		if (value == null)
+			return false;
+		char first = delimiter.charAt(0);
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c == '\n' || c == '\r')
+				return true;
+			if (c == first && i + delimiter.length() <= length && startsWith(value, i))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean startsWith(CharSequence value, int index) {
+		for (int i = 1; i < delimiter.length(); i++) {
+			if (value.charAt(index + i) != delimiter.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * checks if bytes have to be in quotes to be read back as they are.
+	 */
+	private boolean needsQuotes(byte[] data, int start, int end) {
+		if (end > start && ((data[start] & 0xFF) <= ' ' || (data[end - 1] & 0xFF) <= ' '))
+			return true;
+		for (int i = start; i < end; i++) {
+			if (data[i] == '"')
+				return true;
+		}
+		return splits(data, start, end);
+	}
+
+	/**
+	 * checks if bytes have the delimiter or a line break in them.
+	 */
+	private boolean splits(byte[] data, int start, int end) {
+		byte first = delimiterBytes[0];
+		for (int i = start; i < end; i++) {
+			byte b = data[i];
+			if (b == '\n' || b == '\r')
+				return true;
+			if (b == first && startsWith(data, i, end))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean startsWith(byte[] data, int index, int end) {
+		if (index + delimiterBytes.length > end)
+			return false;
+		for (int i = 1; i < delimiterBytes.length; i++) {
+			if (data[index + i] != delimiterBytes[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * writes the digits of a whole number.
+	 */
+	private void putLong(long value) throws IOException {
+		ensure(20);
+		if (value < 0) {
+			buffer[position++] = '-';
+		} else {
+			value = -value;
+		}
+
+		// works with negative numbers so the smallest long doesn't overflow.
+		int count = 0;
+		do {
+			digits[count++] = (byte) ('0' - value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (count > 0)
+			buffer[position++] = digits[--count];
+	}
+
+	/**
+	 * writes a whole number of hundredths, thousandths etc. with the decimal
+	 * point in the right place.
+	 */
+	private void putFixed(long mantissa, int decimals) throws IOException {
+		ensure(22);
+		if (mantissa < 0) {
+			buffer[position++] = '-';
+			mantissa = -mantissa;
+		}
+		int count = 0;
+		do {
+			digits[count++] = (byte) ('0' + mantissa % 10);
+			mantissa /= 10;
+		} while (mantissa != 0 || count <= decimals);
+		while (count > 0) {
+			if (count == decimals)
+				buffer[position++] = '.';
+			buffer[position++] = digits[--count];
+		}
+	}
+
+	/**
+	 * writes text that is known to be ascii.
+	 */
+	private void putAscii(String text) throws IOException {
+		for (int i = 0; i < text.length(); i++)
+			put(text.charAt(i));
+	}
+
+	private void putCodePoint(int codePoint) throws IOException {
+		ensure(4);
+		if (codePoint < 0x800) {
+			buffer[position++] = (byte) (0xC0 | (codePoint >> 6));
+		} else if (codePoint < 0x10000) {
+			buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+			buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+		} else {
+			buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+			buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+			buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+		}
+		buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+	}
+
+	private void put(int b) throws IOException {
+		if (position == buffer.length)
+			drain();
+		buffer[position++] = (byte) b;
+	}
+
+	private void put(byte[] data, int offset, int length) throws IOException {
+		if (length > buffer.length - position) {
+			drain();
+			// big values go straight to the stream.
+			if (length > buffer.length) {
+				out.write(data, offset, length);
+				return;
+			}
+		}
+		System.arraycopy(data, offset, buffer, position, length);
+		position += length;
+	}
+
+	/**
+	 * makes sure there is room for the given number of bytes.
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (buffer.length - position < bytes)
+			drain();
+	}
+
+	/**
+	 * copies the buffer to the stream.
+	 */
+	private void drain() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	private byte[] encode(String text) {
+		return text.getBytes(utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+	}
+
+}
@@ -2,6 +2,9 @@ package gfiles.text;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -15,6 +18,12 @@ import gfiles.file.VirtualFile;
  */
 public class ConfigFile extends AsciiTextFile {
 
+	// pattern for checking config entries, shared by every config file.
+	private static final Pattern ENTRY_PATTERN = Pattern.compile("^\\s*(\\S+.*?\\S*)\\s*=\\s*(.+)$");
+
+	// pattern for lines that are all white-space.
+	private static final Pattern BLANK_PATTERN = Pattern.compile("^\\s*$");
+
 	// reader to read from the underlying ascii file
 	private final AsciiTextFileReader reader = new AsciiTextFileReader(this);
 
@@ -49,6 +58,17 @@ public class ConfigFile extends AsciiTextFile {
 		super(vf);
 	}
 
+	/**
+	 * replaces the contents of the config and goes back to the first line,
+	 * so one config file can load any number of configs without setting up a
+	 * new one each time, see {@link CSVFile#reset(byte[], int, int)}.
+	 */
+	@Override
+	public synchronized void reset(byte[] data, int offset, int length) {
+		super.reset(data, offset, length);
+		reader.resetRead();
+	}
+
 	/**
 	 * call this method to load the config into the given registry.
 	 * 
@@ -56,9 +76,40 @@ public class ConfigFile extends AsciiTextFile {
 	 *            registry to load config into.
 	 */
 	public void loadConfig(ConfigRegistry registry) {
-		// pattern for checking config entries
-		Pattern entryPattern = Pattern.compile("^\\s*(\\S+.*?\\S*)\\s*=\\s*(.+)$");
+		readEntries((variable, value) -> {
+			// call the config registry with the given variable and value and
+			// store the results into success.
+			boolean success = registry.applyConfigOption(variable, value);
+
+			// if success is false it means there wasn't a config option or the
+			// consumer wasn't set up properly, just send the failed message to
+			// the system.err print writer.
+			if (!success) {
+				System.err.println("Invalid config option: " + variable);
+				System.err.flush();
+			}
+		});
+	}
 
+	/**
+	 * reads the rest of the config into a map of each variable to its value,
+	 * in the order they are in the config. If a variable is in the config more
+	 * than once the last value is kept. Lines that aren't correct syntax are
+	 * reported the same way as {@link #loadConfig(ConfigRegistry)}.
+	 * 
+	 * @return variables and values of the config
+	 */
+	public Map<String, String> readEntries() {
+		Map<String, String> entries = new LinkedHashMap<>();
+		readEntries(entries::put);
+		return entries;
+	}
+
+	/**
+	 * reads each variable and value until the end of the config and passes
+	 * them to the given action.
+	 */
+	private void readEntries(BiConsumer<String, String> entry) {
 		// keep looping until there isn't another line to read.
 		String nextLine;
 		while ((nextLine = reader.readLine()) != null) {
@@ -69,12 +120,12 @@ public class ConfigFile extends AsciiTextFile {
 				nextLine = nextLine.substring(0, nextLine.indexOf("#")).trim();
 
 			// check if the line is all white-space
-			if (nextLine.matches("^\\s*$"))
+			if (BLANK_PATTERN.matcher(nextLine).matches())
 				continue;
 
 
 			// get the matcher for the pattern
-			Matcher m = entryPattern.matcher(nextLine);
+			Matcher m = ENTRY_PATTERN.matcher(nextLine);
 			
 			// if the line doesn't match the pattern print an error
 			if (!m.matches()) {
@@ -89,17 +140,7 @@ public class ConfigFile extends AsciiTextFile {
 			// set the value to everything after the equals except trailing white space
 			String value = m.group(2).trim();
 
-			// call the config registry with the given variable and value and
-			// store the results into success.
-			boolean success = registry.applyConfigOption(variable, value);
-
-			// if success is false it means there wasn't a config option or the
-			// consumer wasn't set up properly, just send the failed message to
-			// the system.err print writer.
-			if (!success) {
-				System.err.println("Invalid config option: " + variable);
-				System.err.flush();
-			}
+			entry.accept(variable, value);
 		}
 
 	}
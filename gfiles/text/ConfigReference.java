@@ -0,0 +1,111 @@
+package gfiles.text;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * holds the current config of an application as an immutable object that is
+ * replaced as a whole when the config is loaded, e.g.
+ *
+ * <pre>
+ * final class AppConfig {
+ * 	final int threads;
+ * 	final String host;
+ *
+ * 	AppConfig(ConfigSnapshot config) {
+ * 		threads = config.getInt("threads", 4);
+ * 		host = config.getString("host", "localhost");
+ * 	}
+ * }
+ *
+ * ConfigReference&lt;AppConfig&gt; config = new ConfigReference&lt;&gt;(AppConfig::new);
+ * new ConfigWatcher(path, config).start();
+ * ...
+ * AppConfig current = config.get();
+ * </pre>
+ *
+ * Loading builds the whole object before publishing it with one write to a
+ * volatile field, so {@link #get()} is a single read that never sees a config
+ * that is part way through loading, and reading the final fields of the
+ * object after that needs no locking. Code that reads more than one value
+ * should get the object once and read them all from it.
+ *
+ * @author Gavin
+ *
+ * @param <T>
+ *            type of the config object
+ */
+public class ConfigReference<T> {
+
+	// makes the config object from the values of a config.
+	private final Function<ConfigSnapshot, T> factory;
+
+	private final boolean caseSensitive;
+
+	// config that is currently published.
+	private volatile T current;
+
+	/**
+	 * creates a reference to a config where variables aren't case sensitive.
+	 * The factory is called with an empty snapshot straight away, so there is
+	 * a config of all default values until one is loaded.
+	 *
+	 * @param factory
+	 *            makes the config object from the values of a config
+	 */
+	public ConfigReference(Function<ConfigSnapshot, T> factory) {
+		this(factory, false);
+	}
+
+	/**
+	 * creates a reference to a config, see
+	 * {@link #ConfigReference(Function)}.
+	 *
+	 * @param factory
+	 *            makes the config object from the values of a config
+	 * @param caseSensitive
+	 *            if variables with different cases are different variables
+	 */
+	public ConfigReference(Function<ConfigSnapshot, T> factory, boolean caseSensitive) {
+		this.factory = factory;
+		this.caseSensitive = caseSensitive;
+		this.current = factory.apply(new ConfigSnapshot(Collections.<String, String> emptyMap(), caseSensitive));
+	}
+
+	/**
+	 * gets the config that is currently published.
+	 *
+	 * @return the config
+	 */
+	public T get() {
+		return current;
+	}
+
+	/**
+	 * reads the rest of the config file and publishes a config made from it.
+	 *
+	 * @param config
+	 *            config file to load
+	 * @return the published config
+	 */
+	public T load(ConfigFile config) {
+		return publish(config.readEntries());
+	}
+
+	/**
+	 * makes a config from the values and publishes it. If the factory throws
+	 * the current config is kept. Loads are made one at a time so a slow load
+	 * can't publish over a newer one.
+	 *
+	 * @param values
+	 *            values of each variable
+	 * @return the published config
+	 */
+	public synchronized T publish(Map<String, String> values) {
+		T config = factory.apply(new ConfigSnapshot(values, caseSensitive));
+		current = config;
+		return config;
+	}
+
+}
@@ -7,12 +7,19 @@ import java.util.function.Consumer;
  * class for handling config initialization, see the {@link #initConfigMap()
  * initConfigmap} method for more details on how to implement.
  * 
+ * The consumers are run on whatever thread loads the config, so values that
+ * are read on other threads while the config can be reloaded are better held
+ * in an immutable object published through a {@link ConfigReference}.
+ * 
  * @author Gavin
  *
  */
 public abstract class ConfigRegistry {
 	private final HashMap<String, Consumer<String>> configMap = new HashMap<>();
 
+	// actions to take when an option is taken out of the config.
+	private final HashMap<String, Runnable> removeMap = new HashMap<>();
+
 	/**
 	 * default constructor for the config registry, will initialize the config
 	 * map for using in the config.
@@ -52,13 +59,34 @@ public abstract class ConfigRegistry {
 	 *            action to take with the value.
 	 */
 	protected void addConfigElement(String variable, Consumer<String> action) {
-		// if not case sensitive put all the variables to lower case.
-		if (!caseSensitive()) {
-			variable = variable.toLowerCase();
-		}
-
 		// add the given values to the map.
-		configMap.put(variable, action);
+		configMap.put(key(variable), action);
+	}
+
+	/**
+	 * adds the variable and the action to the config map along with an action
+	 * to take when the variable is taken out of the config, see
+	 * {@link #removeConfigOption(String) removeConfigOption}. The removal
+	 * action would usually put the value back to its default.
+	 * 
+	 * @param variable
+	 *            variable in the config
+	 * @param action
+	 *            action to take with the value.
+	 * @param onRemove
+	 *            action to take when the variable is removed.
+	 */
+	protected void addConfigElement(String variable, Consumer<String> action, Runnable onRemove) {
+		addConfigElement(variable, action);
+		removeMap.put(key(variable), onRemove);
+	}
+
+	/**
+	 * gets the key the variable is stored under, which is the variable in
+	 * lower case if the config isn't case sensitive.
+	 */
+	String key(String variable) {
+		return caseSensitive() ? variable : variable.toLowerCase();
 	}
 
 	/**
@@ -72,11 +100,9 @@ public abstract class ConfigRegistry {
 	 * @return true if there was success, or false if something went wrong.
 	 */
 	public boolean applyConfigOption(String variable, String value) {
-		// if not case sensitive turn the variable to lower case
-		if (!caseSensitive()) {
-			variable = variable.toLowerCase();
-		}
-		
+		// get the key the variable is stored under
+		variable = key(variable);
+
 		// if the variable is in the config execute the command
 		if (configMap.containsKey(variable)) {
 
@@ -97,4 +123,22 @@ public abstract class ConfigRegistry {
 			return false;
 		}
 	}
+
+	/**
+	 * called when a variable that was in the config has been taken out of it,
+	 * e.g. when a config is reloaded by a {@link ConfigWatcher}.
+	 * 
+	 * @param variable
+	 *            variable that was removed.
+	 * @return true if the removal action was run, or false if the variable
+	 *         doesn't have one.
+	 */
+	public boolean removeConfigOption(String variable) {
+		Runnable action = removeMap.get(key(variable));
+		if (action == null)
+			return false;
+
+		action.run();
+		return true;
+	}
 }
@@ -0,0 +1,215 @@
+package gfiles.text;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * an immutable set of config values with typed getters, made from the
+ * variables and values of a config, see {@link ConfigFile#readEntries()}.
+ * Snapshots are usually turned into an application's own immutable config
+ * object and published through a {@link ConfigReference}.
+ *
+ * Like a {@link ConfigRegistry} variables aren't case sensitive unless the
+ * snapshot is made to be.
+ *
+ * @author Gavin
+ *
+ */
+public final class ConfigSnapshot {
+
+	/**
+	 * snapshot without any values.
+	 */
+	public static final ConfigSnapshot EMPTY = new ConfigSnapshot(Collections.emptyMap());
+
+	// values by the key of each variable.
+	private final Map<String, String> values;
+
+	private final boolean caseSensitive;
+
+	/**
+	 * creates a snapshot of the values where variables aren't case sensitive.
+	 *
+	 * @param values
+	 *            values of each variable
+	 */
+	public ConfigSnapshot(Map<String, String> values) {
+		this(values, false);
+	}
+
+	/**
+	 * creates a snapshot of the values.
+	 *
+	 * @param values
+	 *            values of each variable
+	 * @param caseSensitive
+	 *            if variables with different cases are different variables
+	 */
+	public ConfigSnapshot(Map<String, String> values, boolean caseSensitive) {
+		this.caseSensitive = caseSensitive;
+		Map<String, String> copy = new HashMap<>();
+		for (Map.Entry<String, String> entry : values.entrySet())
+			copy.put(key(entry.getKey()), entry.getValue());
+		this.values = Collections.unmodifiableMap(copy);
+	}
+
+	private String key(String variable) {
+		return caseSensitive ? variable : variable.toLowerCase();
+	}
+
+	/**
+	 * checks if the snapshot has a value for the variable.
+	 *
+	 * @param variable
+	 *            variable to look for
+	 * @return true if it has a value
+	 */
+	public boolean has(String variable) {
+		return values.containsKey(key(variable));
+	}
+
+	/**
+	 * gets the value of the variable.
+	 *
+	 * @param variable
+	 *            variable to get
+	 * @return the value, or null if there isn't one
+	 */
+	public String getString(String variable) {
+		return values.get(key(variable));
+	}
+
+	/**
+	 * gets the value of the variable or the default if it doesn't have one.
+	 *
+	 * @param variable
+	 *            variable to get
+	 * @param defaultValue
+	 *            value to use if the variable isn't set
+	 * @return the value
+	 */
+	public String getString(String variable, String defaultValue) {
+		String value = getString(variable);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * gets the value of the variable as an int.
+	 *
+	 * @param variable
+	 *            variable to get
+	 * @param defaultValue
+	 *            value to use if the variable isn't set
+	 * @return the value
+	 * @throws IllegalArgumentException
+	 *             if the value isn't an int
+	 */
+	public int getInt(String variable, int defaultValue) {
+		String value = getString(variable);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw invalid(variable, value, "an int");
+		}
+	}
+
+	/**
+	 * gets the value of the variable as a long.
+	 *
+	 * @param variable
+	 *            variable to get
+	 * @param defaultValue
+	 *            value to use if the variable isn't set
+	 * @return the value
+	 * @throws IllegalArgumentException
+	 *             if the value isn't a long
+	 */
+	public long getLong(String variable, long defaultValue) {
+		String value = getString(variable);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw invalid(variable, value, "a long");
+		}
+	}
+
+	/**
+	 * gets the value of the variable as a double.
+	 *
+	 * @param variable
+	 *            variable to get
+	 * @param defaultValue
+	 *            value to use if the variable isn't set
+	 * @return the value
+	 * @throws IllegalArgumentException
+	 *             if the value isn't a number
+	 */
+	public double getDouble(String variable, double defaultValue) {
+		String value = getString(variable);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw invalid(variable, value, "a number");
+		}
+	}
+
+	/**
+	 * gets the value of the variable as a boolean, which has to be true or
+	 * false in any case.
+	 *
+	 * @param variable
+	 *            variable to get
+	 * @param defaultValue
+	 *            value to use if the variable isn't set
+	 * @return the value
+	 * @throws IllegalArgumentException
+	 *             if the value isn't true or false
+	 */
+	public boolean getBoolean(String variable, boolean defaultValue) {
+		String value = getString(variable);
+		if (value == null)
+			return defaultValue;
+		if (value.equalsIgnoreCase("true"))
+			return true;
+		if (value.equalsIgnoreCase("false"))
+			return false;
+		throw invalid(variable, value, "true or false");
+	}
+
+	private static IllegalArgumentException invalid(String variable, String value, String type) {
+		return new IllegalArgumentException("Config option " + variable + " should be " + type + " but is \""
+				+ value + "\"");
+	}
+
+	/**
+	 * gets the variables that have values, in the case they are stored with.
+	 *
+	 * @return unmodifiable set of the variables
+	 */
+	public Set<String> variables() {
+		return values.keySet();
+	}
+
+	/**
+	 * gets the values of the snapshot.
+	 *
+	 * @return unmodifiable map of the values by variable
+	 */
+	public Map<String, String> toMap() {
+		return values;
+	}
+
+	@Override
+	public String toString() {
+		return values.toString();
+	}
+
+}
@@ -0,0 +1,264 @@
+package gfiles.text;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * reloads a config file into a registry whenever the file changes, so settings
+ * can be changed without restarting, e.g.
+ *
+ * <pre>
+ * ConfigWatcher watcher = new ConfigWatcher(path, registry);
+ * watcher.start();
+ * ...
+ * watcher.close();
+ * </pre>
+ *
+ * Each reload is compared against the values that were applied last time, so
+ * only variables that were added or changed are passed to
+ * {@link ConfigRegistry#applyConfigOption(String, String)} and variables that
+ * were taken out are passed to
+ * {@link ConfigRegistry#removeConfigOption(String)}. A watcher can instead
+ * publish the config to a {@link ConfigReference}, where a new config object
+ * is made and swapped in whenever anything changed.
+ *
+ * The directory of the file is watched with a {@link WatchService} and any
+ * change in it is treated as a possible change to the config. Editors often
+ * write a file in more than one step, so after a change the watcher waits
+ * until the directory has been quiet for a moment before reading it, and a
+ * file that has the same checksum as the last one read isn't parsed again.
+ * The registry's actions are run on the watcher's thread.
+ *
+ * @author Gavin
+ *
+ */
+public class ConfigWatcher implements Closeable {
+
+	// how long the directory has to be quiet before the file is read.
+	private static final long QUIET_MILLIS = 100;
+
+	// config file being watched.
+	private final Path path;
+
+	// registry the config is applied to, or null if it is published to a
+	// reference.
+	private final ConfigRegistry registry;
+
+	// reference the config is published to, or null if it is applied to a
+	// registry.
+	private final ConfigReference<?> reference;
+
+	// config file that is reset with the bytes of each reload.
+	private final ConfigFile config = new ConfigFile();
+
+	// values that have been applied, by the registry's key for each
+	// variable.
+	private Map<String, String> applied = new HashMap<>();
+
+	// checksum of the last bytes that were read, -1 before the first read.
+	private long checksum = -1;
+
+	private WatchService watcher;
+
+	private Thread thread;
+
+	private volatile boolean closed = false;
+
+	/**
+	 * creates a watcher for the config file, nothing is read until
+	 * {@link #start()} or {@link #reload()} is called.
+	 *
+	 * @param path
+	 *            config file to watch
+	 * @param registry
+	 *            registry to apply the config to
+	 */
+	public ConfigWatcher(Path path, ConfigRegistry registry) {
+		this.path = path.toAbsolutePath();
+		this.registry = registry;
+		this.reference = null;
+	}
+
+	/**
+	 * creates a watcher that publishes the config file to the reference,
+	 * nothing is read until {@link #start()} or {@link #reload()} is called.
+	 *
+	 * @param path
+	 *            config file to watch
+	 * @param reference
+	 *            reference to publish the config to
+	 */
+	public ConfigWatcher(Path path, ConfigReference<?> reference) {
+		this.path = path.toAbsolutePath();
+		this.registry = null;
+		this.reference = reference;
+	}
+
+	/**
+	 * loads the config and starts watching it for changes on a background
+	 * thread.
+	 *
+	 * @throws IOException
+	 *             if the config couldn't be read or watched
+	 * @throws IllegalStateException
+	 *             if the watcher has already been started or closed
+	 */
+	public synchronized void start() throws IOException {
+		if (thread != null || closed)
+			throw new IllegalStateException("The config watcher has already been started");
+
+		// register before reading so a change made in between isn't missed.
+		watcher = path.getFileSystem().newWatchService();
+		try {
+			path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			reload();
+		} catch (IOException | RuntimeException e) {
+			// don't leave the watch service open so start can be tried again.
+			watcher.close();
+			watcher = null;
+			throw e;
+		}
+
+		thread = new Thread(this::watch, "gfiles-config-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * waits for changes to the directory and reloads the config after each
+	 * one.
+	 */
+	private void watch() {
+		try {
+			while (!closed) {
+				WatchKey key = watcher.take();
+				boolean changed = changed(key);
+
+				// wait for the writes to settle down.
+				while ((key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null)
+					changed |= changed(key);
+
+				if (!changed || closed)
+					continue;
+
+				try {
+					reload();
+				} catch (NoSuchFileException e) {
+					// the file is being replaced, the new one will make another
+					// event.
+				} catch (IOException | RuntimeException e) {
+					System.err.println("Failed to reload config " + path + ": " + e);
+					System.err.flush();
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// closed.
+		}
+	}
+
+	/**
+	 * checks if the key has any events and resets it. Any change in the
+	 * directory could be a change to the config, e.g. config mounts that swap
+	 * a linked directory never change the file by its own name, and reading a
+	 * file that hasn't changed only costs a checksum.
+	 */
+	private boolean changed(WatchKey key) {
+		boolean changed = !key.pollEvents().isEmpty();
+		key.reset();
+		return changed;
+	}
+
+	/**
+	 * reads the config file and applies whatever changed since the last time
+	 * it was applied. Nothing is parsed if the file hasn't changed.
+	 *
+	 * @return number of variables that were added, changed or removed
+	 * @throws IOException
+	 *             if the file couldn't be read
+	 */
+	public synchronized int reload() throws IOException {
+		byte[] data = Files.readAllBytes(path);
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		if (crc.getValue() == checksum)
+			return 0;
+		checksum = crc.getValue();
+
+		config.reset(data);
+		Map<String, String> read = config.readEntries();
+		Map<String, String> entries = new HashMap<>();
+		int changes = 0;
+		for (Map.Entry<String, String> entry : read.entrySet()) {
+			String key = registry == null ? entry.getKey() : registry.key(entry.getKey());
+			String value = entry.getValue();
+			entries.put(key, value);
+			if (value.equals(applied.get(key)))
+				continue;
+
+			changes++;
+			if (registry != null && !registry.applyConfigOption(key, value)) {
+				System.err.println("Invalid config option: " + entry.getKey());
+				System.err.flush();
+			}
+		}
+
+		for (String key : applied.keySet()) {
+			if (entries.containsKey(key))
+				continue;
+
+			changes++;
+			if (registry != null && !registry.removeConfigOption(key)) {
+				System.err.println("Config option can't be removed: " + key);
+				System.err.flush();
+			}
+		}
+
+		// the values aren't counted as applied if the reference can't make a
+		// config from them.
+		if (reference != null && changes > 0)
+			reference.publish(read);
+
+		applied = entries;
+		return changes;
+	}
+
+	/**
+	 * gets the values that are currently applied, by the registry's key for
+	 * each variable or as they are in the file for a reference.
+	 *
+	 * @return copy of the applied values
+	 */
+	public synchronized Map<String, String> getApplied() {
+		return new HashMap<>(applied);
+	}
+
+	/**
+	 * stops watching the config, the values that have been applied stay as
+	 * they are.
+	 */
+	@Override
+	public void close() throws IOException {
+		WatchService watcher;
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			watcher = this.watcher;
+		}
+		if (watcher != null)
+			watcher.close();
+	}
+
+}
@@ -0,0 +1,136 @@
+package gfiles.text;
+
+import java.util.Arrays;
+
+/**
+ * test on a single field of a row that is run on the bytes of the field, so
+ * rows can be filtered while they are parsed without making strings out of
+ * them. Used by {@link CSVQuery#where(String, FieldPredicate)}.
+ *
+ * @author Gavin
+ *
+ */
+@FunctionalInterface
+public interface FieldPredicate {
+
+	/**
+	 * tests the field of the row.
+	 *
+	 * @param row
+	 *            row being tested, only valid during the call
+	 * @param field
+	 *            index of the field, which is always in the row
+	 * @return true if the row should be kept
+	 */
+	boolean test(TextRow row, int field);
+
+	/**
+	 * combines this test with another so both have to pass.
+	 *
+	 * @param other
+	 *            the other test
+	 * @return the combined test
+	 */
+	default FieldPredicate and(FieldPredicate other) {
+		return (row, field) -> test(row, field) && other.test(row, field);
+	}
+
+	/**
+	 * combines this test with another so either can pass.
+	 *
+	 * @param other
+	 *            the other test
+	 * @return the combined test
+	 */
+	default FieldPredicate or(FieldPredicate other) {
+		return (row, field) -> test(row, field) || other.test(row, field);
+	}
+
+	/**
+	 * gets the opposite of this test.
+	 *
+	 * @return the negated test
+	 */
+	default FieldPredicate negate() {
+		return (row, field) -> !test(row, field);
+	}
+
+	/**
+	 * makes a test for fields that are exactly the value.
+	 *
+	 * @param value
+	 *            value to compare to
+	 * @return the test
+	 */
+	static FieldPredicate equalTo(String value) {
+		return (row, field) -> row.fieldEquals(field, value);
+	}
+
+	/**
+	 * makes a test for fields that are any of the values.
+	 *
+	 * @param values
+	 *            values to compare to
+	 * @return the test
+	 */
+	static FieldPredicate oneOf(String... values) {
+		String[] copy = Arrays.copyOf(values, values.length);
+		return (row, field) -> {
+			for (String value : copy) {
+				if (row.fieldEquals(field, value))
+					return true;
+			}
+			return false;
+		};
+	}
+
+	/**
+	 * makes a test for fields with nothing in them.
+	 *
+	 * @return the test
+	 */
+	static FieldPredicate empty() {
+		return (row, field) -> row.isEmpty(field);
+	}
+
+	/**
+	 * makes a test for numbers below the value, empty fields never pass.
+	 *
+	 * @param value
+	 *            value the number has to be less than
+	 * @return the test
+	 */
+	static FieldPredicate lessThan(double value) {
+		return (row, field) -> !row.isEmpty(field) && row.parseDouble(field) < value;
+	}
+
+	/**
+	 * makes a test for numbers above the value, empty fields never pass.
+	 *
+	 * @param value
+	 *            value the number has to be greater than
+	 * @return the test
+	 */
+	static FieldPredicate greaterThan(double value) {
+		return (row, field) -> !row.isEmpty(field) && row.parseDouble(field) > value;
+	}
+
+	/**
+	 * makes a test for numbers in a range, empty fields never pass.
+	 *
+	 * @param min
+	 *            smallest number that passes
+	 * @param max
+	 *            largest number that passes
+	 * @return the test
+	 */
+	static FieldPredicate between(double min, double max) {
+		return (row, field) -> {
+			if (row.isEmpty(field))
+				return false;
+			double number = row.parseDouble(field);
+			return number >= min && number <= max;
+		};
+	}
+
+}
@@ -0,0 +1,338 @@
+package gfiles.text;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import gfiles.file.VirtualFile;
+
+/**
+ * a file of fixed width records, where record n starts at byte n times the
+ * record length. The fields of each record are described by a
+ * {@link FixedWidthLayout}, so any record can be found without reading the
+ * ones before it and its fields are parsed straight from the bytes of the
+ * file, e.g.
+ *
+ * <pre>
+ * FixedWidthFile file = FixedWidthFile.load(f, layout);
+ * FixedWidthRecord record = file.record(123456);
+ * long balance = record.parseLong("balance");
+ * record.set("balance", balance + 100);
+ * file.save(f);
+ * </pre>
+ *
+ * A record at the end of the file only needs the bytes of its fields, so the
+ * last line break can be left off. Like any virtual file the records have to
+ * fit in 2 GB.
+ *
+ * @author Gavin
+ *
+ */
+public class FixedWidthFile extends AsciiTextFile {
+
+	// chunks won't be made smaller than this many bytes when scanning in
+	// parallel.
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+	// how many chunks to make per thread so uneven chunks balance out.
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	// layout of the records.
+	private final FixedWidthLayout layout;
+
+	/**
+	 * creates an empty fixed width file.
+	 *
+	 * @param layout
+	 *            layout of the records
+	 */
+	public FixedWidthFile(FixedWidthLayout layout) {
+		this.layout = check(layout);
+	}
+
+	/**
+	 * creates a fixed width file from an input stream, reading until the
+	 * stream ends.
+	 *
+	 * @param in
+	 *            input stream to read from
+	 * @param layout
+	 *            layout of the records
+	 * @throws IOException
+	 */
+	public FixedWidthFile(InputStream in, FixedWidthLayout layout) throws IOException {
+		super(in);
+		this.layout = check(layout);
+	}
+
+	/**
+	 * creates a fixed width file holding a copy of the given bytes.
+	 *
+	 * @param data
+	 *            bytes of the records
+	 * @param layout
+	 *            layout of the records
+	 */
+	public FixedWidthFile(byte[] data, FixedWidthLayout layout) {
+		super(data);
+		this.layout = check(layout);
+	}
+
+	/**
+	 * creates a fixed width file from a virtual file.
+	 *
+	 * @param vf
+	 *            virtual file holding the records
+	 * @param layout
+	 *            layout of the records
+	 */
+	public FixedWidthFile(VirtualFile vf, FixedWidthLayout layout) {
+		super(vf);
+		this.layout = check(layout);
+	}
+
+	private static FixedWidthLayout check(FixedWidthLayout layout) {
+		if (layout.getRecordLength() == 0)
+			throw new IllegalArgumentException("The layout doesn't have any fields");
+		return layout;
+	}
+
+	/**
+	 * gets the layout of the records.
+	 *
+	 * @return layout of the records
+	 */
+	public FixedWidthLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * gets the number of records in the file.
+	 *
+	 * @return number of records
+	 */
+	public int recordCount() {
+		int length = layout.getRecordLength();
+		int bytes = getBytes();
+		int records = bytes / length;
+
+		// the last record doesn't need whatever comes after its fields.
+		if (bytes % length >= layout.getFieldsLength())
+			records++;
+		return records;
+	}
+
+	/**
+	 * gets a view of the given record. The view can be moved to other records
+	 * with {@link FixedWidthRecord#moveTo(int)} instead of getting a new one.
+	 *
+	 * @param record
+	 *            index of the record
+	 * @return view of the record
+	 * @throws IndexOutOfBoundsException
+	 *             if the file doesn't have the record
+	 */
+	public FixedWidthRecord record(int record) {
+		return new FixedWidthRecord(this, 0, Integer.MAX_VALUE).moveTo(record);
+	}
+
+	/**
+	 * gets a view for stepping through every record of the file.
+	 *
+	 * @return view positioned before the first record
+	 */
+	public FixedWidthRecord records() {
+		return records(0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * gets a view for stepping through a range of the records.
+	 *
+	 * @param start
+	 *            index of the first record
+	 * @param stop
+	 *            index after the last record
+	 * @return view positioned before the first record of the range
+	 */
+	public FixedWidthRecord records(int start, int stop) {
+		if (start < 0 || stop < start)
+			throw new IllegalArgumentException("Invalid range of records " + start + " to " + stop);
+		return new FixedWidthRecord(this, start, stop);
+	}
+
+	/**
+	 * changes a field of a record in place. The value is padded to the width
+	 * of the field, with spaces on the right for text fields and on the left
+	 * for numeric fields.
+	 *
+	 * @param record
+	 *            index of the record
+	 * @param field
+	 *            index of the field
+	 * @param value
+	 *            new value of the field
+	 * @throws IllegalArgumentException
+	 *             if the value is wider than the field
+	 */
+	public void setField(int record, int field, CharSequence value) {
+		byte[] encoded = encode(value);
+		int width = layout.getWidth(field);
+		if (encoded.length > width)
+			throw new IllegalArgumentException("\"" + value + "\" doesn't fit in the " + width + " bytes of field "
+					+ layout.getName(field));
+
+		int padding = width - encoded.length;
+		write(record, field, encoded, layout.isNumeric(field) ? padding : 0, (byte) ' ');
+	}
+
+	/**
+	 * changes a field of a record to a number in place. Numeric fields are
+	 * padded with zeros after the sign, text fields are written like any
+	 * other text.
+	 *
+	 * @param record
+	 *            index of the record
+	 * @param field
+	 *            index of the field
+	 * @param value
+	 *            new value of the field
+	 * @throws IllegalArgumentException
+	 *             if the number is wider than the field
+	 */
+	public void setField(int record, int field, long value) {
+		if (!layout.isNumeric(field)) {
+			setField(record, field, Long.toString(value));
+			return;
+		}
+
+		byte[] digits = Long.toString(value).getBytes(StandardCharsets.ISO_8859_1);
+		int width = layout.getWidth(field);
+		if (digits.length > width)
+			throw new IllegalArgumentException(value + " doesn't fit in the " + width + " bytes of field "
+					+ layout.getName(field));
+
+		// zeros go between the sign and the digits.
+		byte[] padded = new byte[width];
+		int sign = value < 0 ? 1 : 0;
+		padded[0] = (byte) '-';
+		int zeros = width - digits.length;
+		for (int i = sign; i < sign + zeros; i++)
+			padded[i] = '0';
+		System.arraycopy(digits, sign, padded, sign + zeros, digits.length - sign);
+		write(record, field, padded, 0, (byte) '0');
+	}
+
+	/**
+	 * writes the bytes of a field at the given position inside of it, filling
+	 * the rest of the field with the padding.
+	 */
+	private void write(int record, int field, byte[] value, int position, byte padding) {
+		checkRecord(record);
+		byte[] data = bytes();
+		int start = recordOffset(record) + layout.getOffset(field);
+		int width = layout.getWidth(field);
+		for (int i = 0; i < width; i++)
+			data[start + i] = padding;
+		System.arraycopy(value, 0, data, start + position, value.length);
+		bytesChanged();
+	}
+
+	/**
+	 * encodes a value the same way as the file.
+	 */
+	private byte[] encode(CharSequence value) {
+		return value.toString().getBytes(isUtf8() ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * parses the records in parallel on the common fork join pool, see
+	 * {@link #parseChunks(ForkJoinPool, Function)}.
+	 *
+	 * @param parser
+	 *            parses a range of the records
+	 * @return results of each range, in the order of the file
+	 */
+	public <T> List<T> parseChunks(Function<FixedWidthRecord, T> parser) {
+		return parseChunks(ForkJoinPool.commonPool(), parser);
+	}
+
+	/**
+	 * parses the records in parallel by splitting them into ranges and
+	 * parsing each range on the pool. Since every record is the same length
+	 * the ranges are found straight away without looking at the file. The
+	 * function is passed a view for stepping through the records of a range
+	 * and should return its result for the range.
+	 *
+	 * @param pool
+	 *            pool to parse the ranges on
+	 * @param parser
+	 *            parses a range of the records
+	 * @return results of each range, in the order of the file
+	 */
+	public <T> List<T> parseChunks(ForkJoinPool pool, Function<FixedWidthRecord, T> parser) {
+		int records = recordCount();
+		int bySize = Math.max(1, getBytes() / MIN_CHUNK_SIZE);
+		int chunks = Math.max(1, Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, Math.min(bySize, records)));
+
+		List<Callable<T>> tasks = new ArrayList<>(chunks);
+		for (int k = 0; k < chunks; k++) {
+			int start = (int) ((long) records * k / chunks);
+			int stop = (int) ((long) records * (k + 1) / chunks);
+			tasks.add(() -> parser.apply(records(start, stop)));
+		}
+
+		List<T> results = new ArrayList<>(chunks);
+		try {
+			for (Future<T> future : pool.invokeAll(tasks))
+				results.add(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while parsing fixed width file", e);
+		} catch (ExecutionException e) {
+			Throwable cause = ParallelCSVParser.cause(e);
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException("Failed to parse fixed width file", cause);
+		}
+		return results;
+	}
+
+	/**
+	 * gets the byte offset of the start of a record.
+	 */
+	int recordOffset(int record) {
+		return record * layout.getRecordLength();
+	}
+
+	/**
+	 * makes sure the file has the record.
+	 */
+	void checkRecord(int record) {
+		int records = recordCount();
+		if (record < 0 || record >= records)
+			throw new IndexOutOfBoundsException("Record " + record + " doesn't exist in a file of " + records
+					+ " records");
+	}
+
+	/**
+	 * loads a fixed width file, decompressing it if it is gzip or zlib.
+	 *
+	 * @param f
+	 *            file to load
+	 * @param layout
+	 *            layout of the records
+	 * @return the loaded file
+	 */
+	public static FixedWidthFile load(File f, FixedWidthLayout layout) throws IOException {
+		return new FixedWidthFile(VirtualFile.loadDecompressed(f), layout);
+	}
+
+}
@@ -0,0 +1,276 @@
+package gfiles.text;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * describes where the fields of a fixed width record are. Fields are added in
+ * order and each one starts where the last one ended unless it is given its
+ * own offset, e.g.
+ *
+ * <pre>
+ * FixedWidthLayout layout = new FixedWidthLayout()
+ * 		.field("account", 10)
+ * 		.field("name", 30)
+ * 		.skip(2)
+ * 		.numericField("balance", 12)
+ * 		.setRecordLength(55); // 54 bytes of fields and a line break
+ * </pre>
+ *
+ * Text fields are written left aligned and padded with spaces, numeric fields
+ * are written right aligned and padded with zeros. A layout shouldn't be
+ * changed once a file is using it.
+ *
+ * @author Gavin
+ *
+ */
+public class FixedWidthLayout {
+
+	// name, offset and width of each field and whether it holds a number.
+	private String[] names = new String[8];
+	private int[] offsets = new int[8];
+	private int[] widths = new int[8];
+	private boolean[] numeric = new boolean[8];
+	private int count = 0;
+
+	// index of each field by name.
+	private final HashMap<String, Integer> indices = new HashMap<>();
+
+	// offset the next field starts at if it isn't given one.
+	private int next = 0;
+
+	// end of the last byte of any field.
+	private int fieldsEnd = 0;
+
+	// bytes from the start of one record to the start of the next, 0 if it is
+	// the end of the fields.
+	private int recordLength = 0;
+
+	/**
+	 * adds a text field that starts where the last field ended.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @param width
+	 *            width of the field in bytes
+	 * @return this layout
+	 */
+	public FixedWidthLayout field(String name, int width) {
+		return field(name, next, width);
+	}
+
+	/**
+	 * adds a text field at the given offset in the record.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @param offset
+	 *            offset of the field from the start of the record
+	 * @param width
+	 *            width of the field in bytes
+	 * @return this layout
+	 */
+	public FixedWidthLayout field(String name, int offset, int width) {
+		return add(name, offset, width, false);
+	}
+
+	/**
+	 * adds a numeric field that starts where the last field ended.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @param width
+	 *            width of the field in bytes
+	 * @return this layout
+	 */
+	public FixedWidthLayout numericField(String name, int width) {
+		return numericField(name, next, width);
+	}
+
+	/**
+	 * adds a numeric field at the given offset in the record.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @param offset
+	 *            offset of the field from the start of the record
+	 * @param width
+	 *            width of the field in bytes
+	 * @return this layout
+	 */
+	public FixedWidthLayout numericField(String name, int offset, int width) {
+		return add(name, offset, width, true);
+	}
+
+	/**
+	 * skips over bytes that aren't part of any field, e.g. filler.
+	 *
+	 * @param width
+	 *            number of bytes to skip
+	 * @return this layout
+	 */
+	public FixedWidthLayout skip(int width) {
+		if (width < 0)
+			throw new IllegalArgumentException("Can't skip " + width + " bytes");
+		next += width;
+		fieldsEnd = Math.max(fieldsEnd, next);
+		return this;
+	}
+
+	/**
+	 * sets the number of bytes from the start of one record to the start of
+	 * the next, for records that have a line break or padding after their
+	 * fields. By default records are as long as their fields.
+	 *
+	 * @param recordLength
+	 *            length of each record in bytes
+	 * @return this layout
+	 */
+	public FixedWidthLayout setRecordLength(int recordLength) {
+		if (recordLength < fieldsEnd)
+			throw new IllegalArgumentException("Records of " + recordLength + " bytes are too short for fields ending at "
+					+ fieldsEnd);
+		this.recordLength = recordLength;
+		return this;
+	}
+
+	private FixedWidthLayout add(String name, int offset, int width, boolean isNumeric) {
+		if (offset < 0 || width < 1)
+			throw new IllegalArgumentException("Field " + name + " can't be at offset " + offset + " with width " + width);
+		if (indices.containsKey(name))
+			throw new IllegalArgumentException("There is already a field called " + name);
+		if (recordLength != 0 && offset + width > recordLength)
+			throw new IllegalArgumentException("Field " + name + " goes past the end of the record");
+
+		if (count == names.length) {
+			names = Arrays.copyOf(names, count * 2);
+			offsets = Arrays.copyOf(offsets, count * 2);
+			widths = Arrays.copyOf(widths, count * 2);
+			numeric = Arrays.copyOf(numeric, count * 2);
+		}
+		names[count] = name;
+		offsets[count] = offset;
+		widths[count] = width;
+		numeric[count] = isNumeric;
+		indices.put(name, count);
+		count++;
+
+		next = offset + width;
+		fieldsEnd = Math.max(fieldsEnd, next);
+		return this;
+	}
+
+	/**
+	 * gets the number of bytes from the start of one record to the start of
+	 * the next.
+	 *
+	 * @return length of each record in bytes
+	 */
+	public int getRecordLength() {
+		return recordLength == 0 ? fieldsEnd : recordLength;
+	}
+
+	/**
+	 * gets the end of the last field, a record at the end of a file only needs
+	 * this many bytes, e.g. if the file doesn't end with a line break.
+	 *
+	 * @return end of the fields in bytes
+	 */
+	public int getFieldsLength() {
+		return fieldsEnd;
+	}
+
+	/**
+	 * gets how many fields are in each record.
+	 *
+	 * @return number of fields
+	 */
+	public int fieldCount() {
+		return count;
+	}
+
+	/**
+	 * gets the index of the field with the given name.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @return index of the field, or -1 if there isn't one with the name
+	 */
+	public int indexOf(String name) {
+		Integer index = indices.get(name);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * gets the names of all of the fields in order.
+	 *
+	 * @return names of the fields
+	 */
+	public String[] getNames() {
+		return Arrays.copyOf(names, count);
+	}
+
+	/**
+	 * gets the name of a field.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return name of the field
+	 */
+	public String getName(int field) {
+		check(field);
+		return names[field];
+	}
+
+	/**
+	 * gets the offset of a field from the start of the record.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return offset of the field in bytes
+	 */
+	public int getOffset(int field) {
+		check(field);
+		return offsets[field];
+	}
+
+	/**
+	 * gets the width of a field.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return width of the field in bytes
+	 */
+	public int getWidth(int field) {
+		check(field);
+		return widths[field];
+	}
+
+	/**
+	 * tells whether a field holds a number.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return true if the field was added as a numeric field
+	 */
+	public boolean isNumeric(int field) {
+		check(field);
+		return numeric[field];
+	}
+
+	/**
+	 * gets the index of a field by name, throwing if there isn't one.
+	 */
+	int require(String name) {
+		int index = indexOf(name);
+		if (index == -1)
+			throw new IllegalArgumentException("There isn't a field called " + name);
+		return index;
+	}
+
+	private void check(int field) {
+		if (field < 0 || field >= count)
+			throw new IndexOutOfBoundsException("Field " + field + " doesn't exist in a layout of " + count + " fields");
+	}
+
+}
@@ -0,0 +1,238 @@
+package gfiles.text;
+
+/**
+ * a reusable view of one record of a {@link FixedWidthFile}. The record can
+ * be moved to any record of the file with {@link #moveTo(int) moveTo}, or
+ * stepped through a range of records with {@link #next()}. The fields are
+ * trimmed of the padding around them and can be read with the methods of
+ * {@link TextRow} by index or with the methods here by name, e.g.
+ *
+ * <pre>
+ * FixedWidthRecord record = file.records();
+ * while (record.next())
+ * 	total += record.parseLong("balance");
+ * </pre>
+ *
+ * Fields can also be changed in place with the set methods.
+ *
+ * @author Gavin
+ *
+ */
+public class FixedWidthRecord extends TextRow {
+
+	// file the record is in.
+	private final FixedWidthFile file;
+
+	// layout of the records.
+	private final FixedWidthLayout layout;
+
+	// range of records that next steps through.
+	private final int start;
+	private final int stop;
+
+	// index of the current record, or -1 before the first.
+	private int index = -1;
+
+	/**
+	 * creates a record positioned before the first record of the range.
+	 *
+	 * @param file
+	 *            file the records are in
+	 * @param start
+	 *            index of the first record to step through
+	 * @param stop
+	 *            index after the last record to step through
+	 */
+	FixedWidthRecord(FixedWidthFile file, int start, int stop) {
+		this.file = file;
+		this.layout = file.getLayout();
+		this.start = start;
+		this.stop = stop;
+		this.utf8 = file.isUtf8();
+	}
+
+	/**
+	 * moves to the next record of the range.
+	 *
+	 * @return true if there was another record, false at the end of the range
+	 */
+	public boolean next() {
+		int next = index < start ? start : index + 1;
+		if (next >= Math.min(stop, file.recordCount())) {
+			index = stop;
+			clear(file.bytes());
+			return false;
+		}
+		view(next);
+		return true;
+	}
+
+	/**
+	 * moves to the given record of the file, which doesn't have to be in the
+	 * range being stepped through. This takes the same time for any record.
+	 *
+	 * @param record
+	 *            index of the record
+	 * @return this record
+	 * @throws IndexOutOfBoundsException
+	 *             if the file doesn't have the record
+	 */
+	public FixedWidthRecord moveTo(int record) {
+		file.checkRecord(record);
+		view(record);
+		return this;
+	}
+
+	/**
+	 * moves back to before the first record of the range.
+	 */
+	public void reset() {
+		index = -1;
+		clear(file.bytes());
+	}
+
+	/**
+	 * points the fields at the record.
+	 */
+	private void view(int record) {
+		index = record;
+		byte[] data = file.bytes();
+		clear(data);
+		utf8 = file.isUtf8();
+
+		int base = file.recordOffset(record);
+		for (int field = 0; field < layout.fieldCount(); field++) {
+			int offset = base + layout.getOffset(field);
+			add(offset, offset + layout.getWidth(field));
+		}
+		trim();
+		rowStart = base;
+		rowEnd = base + layout.getFieldsLength();
+	}
+
+	/**
+	 * gets the index of the current record.
+	 *
+	 * @return index of the record, or -1 before the first
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * copies the named field out into a string.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @return the field as a string
+	 */
+	public String getString(String name) {
+		return getString(layout.require(name));
+	}
+
+	/**
+	 * parses the named field as an int straight from its bytes.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @return value of the field
+	 */
+	public int parseInt(String name) {
+		return parseInt(layout.require(name));
+	}
+
+	/**
+	 * parses the named field as a long straight from its bytes.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @return value of the field
+	 */
+	public long parseLong(String name) {
+		return parseLong(layout.require(name));
+	}
+
+	/**
+	 * parses the named field as a double straight from its bytes.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @return value of the field
+	 */
+	public double parseDouble(String name) {
+		return parseDouble(layout.require(name));
+	}
+
+	/**
+	 * compares the named field to the given characters without copying it.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @param value
+	 *            characters to compare to
+	 * @return true if the field is the same as the value
+	 */
+	public boolean fieldEquals(String name, CharSequence value) {
+		return fieldEquals(layout.require(name), value);
+	}
+
+	/**
+	 * changes a field of the current record in the file, see
+	 * {@link FixedWidthFile#setField(int, int, CharSequence)}.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @param value
+	 *            new value of the field
+	 */
+	public void set(int field, CharSequence value) {
+		checkPositioned();
+		file.setField(index, field, value);
+		view(index);
+	}
+
+	/**
+	 * changes the named field of the current record in the file.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @param value
+	 *            new value of the field
+	 */
+	public void set(String name, CharSequence value) {
+		set(layout.require(name), value);
+	}
+
+	/**
+	 * changes a field of the current record to a number, see
+	 * {@link FixedWidthFile#setField(int, int, long)}.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @param value
+	 *            new value of the field
+	 */
+	public void set(int field, long value) {
+		checkPositioned();
+		file.setField(index, field, value);
+		view(index);
+	}
+
+	/**
+	 * changes the named field of the current record to a number.
+	 *
+	 * @param name
+	 *            name of the field
+	 * @param value
+	 *            new value of the field
+	 */
+	public void set(String name, long value) {
+		set(layout.require(name), value);
+	}
+
+	private void checkPositioned() {
+		if (index < 0 || index >= file.recordCount())
+			throw new IllegalStateException("The record isn't on a record of the file");
+	}
+
+}
@@ -0,0 +1,512 @@
+package gfiles.text;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * reads through the lines of a {@link JsonLinesFile} without creating strings
+ * for their values. The cursor is made for a list of top level keys, and each
+ * line is a row with a field for each of those keys in the same order, so the
+ * rows can be read the same way as the rows of a csv file, e.g.
+ *
+ * <pre>
+ * JsonCursor cursor = file.cursor("user", "amount");
+ * while (cursor.next())
+ * 	if (cursor.fieldEquals(0, "gavin"))
+ * 		total += cursor.parseDouble(1);
+ * </pre>
+ *
+ * Only the values of the keys the cursor was made for are looked at, the rest
+ * are skipped over without being decoded. Strings are given without their
+ * quotes and are only copied if they have escapes in them, other values such
+ * as numbers, booleans, objects and arrays are given as their json text. A key
+ * that is missing from a line or is null is an empty field, which can be told
+ * apart from an empty string with {@link #has(int) has}.
+ *
+ * @author Gavin
+ *
+ */
+public class JsonCursor extends TextRow {
+
+	// states of a field.
+	private static final int MISSING = 0;
+	private static final int NULL = 1;
+	private static final int VALUE = 2;
+
+	// file being read.
+	private final JsonLinesFile file;
+
+	// keys of the fields and their utf-8 bytes.
+	private final String[] columns;
+	private final byte[][] keys;
+
+	// state of each field of the current line.
+	private final int[] states;
+
+	// keys of the current line when they are being collected, see
+	// JsonLinesFile.getKeys.
+	List<String> seenKeys;
+
+	// where the cursor starts, the offset of the next line to read, and the
+	// offset that lines have to start before to be read.
+	private final int start;
+	private int position;
+	private final int stop;
+
+	// whether the last string that was found had escapes in it.
+	private boolean escaped;
+
+	/**
+	 * creates a cursor over the lines of the file that start in the given
+	 * range, the cursor starts before the first of them.
+	 *
+	 * @param file
+	 *            file to read
+	 * @param columns
+	 *            keys to make fields for
+	 * @param start
+	 *            offset of the first line to read
+	 * @param stop
+	 *            offset that lines need to start before
+	 */
+	JsonCursor(JsonLinesFile file, String[] columns, int start, int stop) {
+		this.file = file;
+		this.columns = columns.clone();
+		this.keys = new byte[columns.length][];
+		for (int i = 0; i < columns.length; i++)
+			keys[i] = columns[i].getBytes(StandardCharsets.UTF_8);
+		this.states = new int[columns.length];
+		this.start = start;
+		this.position = start;
+		this.stop = stop;
+
+		// make room for every field up front so lines can fill them in any
+		// order.
+		for (int i = 0; i < columns.length; i++)
+			add(0, 0);
+		count = 0;
+	}
+
+	/**
+	 * moves the cursor back to before the first line.
+	 */
+	public void reset() {
+		position = start;
+		rowStart = 0;
+		rowEnd = 0;
+		clear(file.bytes());
+	}
+
+	/**
+	 * moves the cursor to the next line that isn't blank and finds the values
+	 * of its keys.
+	 *
+	 * @return true if there was another line, false if the end of the file
+	 *         has been reached
+	 * @throws JsonSyntaxException
+	 *             if the line isn't a json object
+	 */
+	public boolean next() {
+		byte[] data = file.bytes();
+		int end = file.getBytes();
+		utf8 = file.isUtf8();
+
+		while (position < end && position < stop) {
+			int lineStart = position;
+			int lineEnd = ByteSearch.lineEnd(data, lineStart, end);
+			position = ByteSearch.nextLine(data, lineEnd, end);
+
+			if (skipSpace(data, lineStart, lineEnd) == lineEnd)
+				continue;
+			rowStart = lineStart;
+			rowEnd = lineEnd;
+			parse(data, lineStart, lineEnd);
+			return true;
+		}
+
+		clear(data);
+		return false;
+	}
+
+	/**
+	 * gets the offset of the next line the cursor will read.
+	 *
+	 * @return offset of the next line
+	 */
+	public int position() {
+		return position;
+	}
+
+	/**
+	 * gets the offset that the cursor started at.
+	 *
+	 * @return offset of the first line of the cursor
+	 */
+	public int start() {
+		return start;
+	}
+
+	/**
+	 * gets the keys the fields are for.
+	 *
+	 * @return keys of the fields in order
+	 */
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * gets the field of a key.
+	 *
+	 * @param column
+	 *            key to look for
+	 * @return index of the field, or -1 if the cursor wasn't made for the key
+	 */
+	public int indexOf(String column) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equals(column))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * tells whether the current line has a value for the field that isn't
+	 * null.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return true if the line has a value
+	 */
+	public boolean has(int field) {
+		fieldLength(field);
+		return states[field] == VALUE;
+	}
+
+	/**
+	 * tells whether the field's key is null in the current line.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return true if the value is null
+	 */
+	public boolean isNull(int field) {
+		fieldLength(field);
+		return states[field] == NULL;
+	}
+
+	/**
+	 * copies the values out into an array of strings, with null for any that
+	 * are missing or null.
+	 *
+	 * @return values of the fields
+	 */
+	public String[] values() {
+		String[] values = new String[count];
+		for (int i = 0; i < count; i++)
+			values[i] = states[i] == VALUE ? getString(i) : null;
+		return values;
+	}
+
+	/**
+	 * splits the object on the line into the fields.
+	 */
+	private void parse(byte[] data, int i, int end) {
+		this.data = data;
+		scratchLength = 0;
+		count = keys.length;
+		for (int field = 0; field < count; field++) {
+			starts[field] = 0;
+			ends[field] = 0;
+			copied[field] = false;
+			states[field] = MISSING;
+		}
+
+		i = skipSpace(data, i, end);
+		if (data[i] != '{')
+			throw syntax(data, i, end, "expected an object");
+		i = skipSpace(data, i + 1, end);
+
+		if (i < end && data[i] == '}') {
+			i++;
+		} else {
+			while (true) {
+				if (i >= end || data[i] != '"')
+					throw syntax(data, i, end, "expected a key");
+				int keyStart = i + 1;
+				int keyEnd = stringEnd(data, keyStart, end);
+				int field = field(data, keyStart, keyEnd);
+
+				i = skipSpace(data, keyEnd + 1, end);
+				if (i >= end || data[i] != ':')
+					throw syntax(data, i, end, "expected a colon");
+				i = value(data, skipSpace(data, i + 1, end), end, field);
+
+				i = skipSpace(data, i, end);
+				if (i < end && data[i] == ',') {
+					i = skipSpace(data, i + 1, end);
+				} else if (i < end && data[i] == '}') {
+					i++;
+					break;
+				} else {
+					throw syntax(data, i, end, "expected a comma or the end of the object");
+				}
+			}
+		}
+
+		if (skipSpace(data, i, end) != end)
+			throw syntax(data, i, end, "expected the end of the line");
+	}
+
+	/**
+	 * finds the end of a value, filling in the field if it is one of the
+	 * cursor's keys.
+	 *
+	 * @return index after the value
+	 */
+	private int value(byte[] data, int i, int end, int field) {
+		if (i >= end)
+			throw syntax(data, i, end, "expected a value");
+
+		byte b = data[i];
+		int valueEnd;
+		if (b == '"') {
+			int stringEnd = stringEnd(data, i + 1, end);
+			if (field >= 0 && escaped) {
+				int scratchStart = scratchLength;
+				unescape(data, i + 1, stringEnd);
+				starts[field] = scratchStart;
+				ends[field] = scratchLength;
+				copied[field] = true;
+				states[field] = VALUE;
+			} else if (field >= 0) {
+				set(field, i + 1, stringEnd);
+			}
+			return stringEnd + 1;
+		} else if (b == '{' || b == '[') {
+			valueEnd = nestedEnd(data, i, end);
+		} else {
+			valueEnd = i;
+			while (valueEnd < end) {
+				byte c = data[valueEnd];
+				if (c == ',' || c == '}' || c == ']' || (c & 0xFF) <= ' ')
+					break;
+				valueEnd++;
+			}
+			if (valueEnd == i)
+				throw syntax(data, i, end, "expected a value");
+
+			if (valueEnd - i == 4 && b == 'n' && data[i + 1] == 'u' && data[i + 2] == 'l' && data[i + 3] == 'l') {
+				if (field >= 0)
+					states[field] = NULL;
+				return valueEnd;
+			}
+		}
+
+		if (field >= 0)
+			set(field, i, valueEnd);
+		return valueEnd;
+	}
+
+	private void set(int field, int start, int end) {
+		starts[field] = start;
+		ends[field] = end;
+		copied[field] = false;
+		states[field] = VALUE;
+	}
+
+	/**
+	 * finds the closing quote of the string starting at the index, setting
+	 * escaped if there were escapes in it.
+	 */
+	private int stringEnd(byte[] data, int i, int end) {
+		escaped = false;
+		while (true) {
+			i = ByteSearch.indexOfEither(data, i, end, (byte) '"', (byte) '\\');
+			if (i >= end)
+				throw syntax(data, i, end, "unterminated string");
+			if (data[i] == '"')
+				return i;
+			escaped = true;
+			i += 2;
+		}
+	}
+
+	/**
+	 * finds the end of the object or array starting at the index.
+	 */
+	private int nestedEnd(byte[] data, int i, int end) {
+		int depth = 0;
+		while (i < end) {
+			byte b = data[i];
+			if (b == '"') {
+				i = stringEnd(data, i + 1, end) + 1;
+				continue;
+			}
+			if (b == '{' || b == '[') {
+				depth++;
+			} else if (b == '}' || b == ']') {
+				if (--depth == 0)
+					return i + 1;
+			}
+			i++;
+		}
+		throw syntax(data, i, end, "unterminated object or array");
+	}
+
+	/**
+	 * finds the field for a key, -1 if it isn't one of the cursor's keys.
+	 */
+	private int field(byte[] data, int start, int end) {
+		if (escaped || seenKeys != null) {
+			String key = escaped ? decode(data, start, end) : new String(data, start, end - start,
+					utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+			if (seenKeys != null)
+				seenKeys.add(key);
+			return indexOf(key);
+		}
+
+		int length = end - start;
+		for (int field = 0; field < keys.length; field++) {
+			byte[] key = keys[field];
+			if (key.length != length)
+				continue;
+			int i = 0;
+			while (i < length && key[i] == data[start + i])
+				i++;
+			if (i == length)
+				return field;
+		}
+		return -1;
+	}
+
+	/**
+	 * decodes an escaped string onto the end of the scratch buffer.
+	 */
+	private void unescape(byte[] data, int from, int to) {
+		int i = from;
+		while (i < to) {
+			int slash = i;
+			while (slash < to && data[slash] != '\\')
+				slash++;
+			copy(data, i, slash);
+			if (slash >= to)
+				break;
+			if (slash + 1 >= to)
+				throw syntax(data, slash, to, "invalid escape");
+
+			byte b = data[slash + 1];
+			i = slash + 2;
+			switch (b) {
+			case '"':
+			case '\\':
+			case '/':
+				append(b);
+				break;
+			case 'b':
+				append('\b');
+				break;
+			case 'f':
+				append('\f');
+				break;
+			case 'n':
+				append('\n');
+				break;
+			case 'r':
+				append('\r');
+				break;
+			case 't':
+				append('\t');
+				break;
+			case 'u':
+				int c = hex(data, i, to);
+				i += 4;
+				// surrogate pairs are written as two escapes.
+				if (Character.isHighSurrogate((char) c) && i + 6 <= to && data[i] == '\\' && data[i + 1] == 'u') {
+					int low = hex(data, i + 2, to);
+					if (Character.isLowSurrogate((char) low)) {
+						c = Character.toCodePoint((char) c, (char) low);
+						i += 6;
+					}
+				}
+				appendCodePoint(c);
+				break;
+			default:
+				throw syntax(data, slash, to, "invalid escape");
+			}
+		}
+	}
+
+	/**
+	 * decodes an escaped string, used for keys.
+	 */
+	private String decode(byte[] data, int from, int to) {
+		int saved = scratchLength;
+		unescape(data, from, to);
+		String key = new String(scratch, saved, scratchLength - saved, utf8 ? StandardCharsets.UTF_8
+				: StandardCharsets.ISO_8859_1);
+		scratchLength = saved;
+		return key;
+	}
+
+	private int hex(byte[] data, int i, int end) {
+		if (i + 4 > end)
+			throw syntax(data, i, end, "invalid unicode escape");
+		int value = 0;
+		for (int j = i; j < i + 4; j++) {
+			int digit = Character.digit(data[j], 16);
+			if (digit < 0)
+				throw syntax(data, i, end, "invalid unicode escape");
+			value = value << 4 | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * writes a code point into the scratch buffer in the file's encoding.
+	 */
+	private void appendCodePoint(int c) {
+		if (c < 0x80) {
+			append(c);
+		} else if (!utf8) {
+			append(c <= 0xFF ? c : '?');
+		} else if (c < 0x800) {
+			append(0xC0 | (c >> 6));
+			append(0x80 | (c & 0x3F));
+		} else if (c < 0x10000) {
+			// a lone surrogate isn't a character.
+			if (Character.isSurrogate((char) c))
+				c = 0xFFFD;
+			append(0xE0 | (c >> 12));
+			append(0x80 | ((c >> 6) & 0x3F));
+			append(0x80 | (c & 0x3F));
+		} else {
+			append(0xF0 | (c >> 18));
+			append(0x80 | ((c >> 12) & 0x3F));
+			append(0x80 | ((c >> 6) & 0x3F));
+			append(0x80 | (c & 0x3F));
+		}
+	}
+
+	private void append(int b) {
+		if (scratchLength == scratch.length)
+			scratch = Arrays.copyOf(scratch, scratch.length * 2);
+		scratch[scratchLength++] = (byte) b;
+	}
+
+	private static int skipSpace(byte[] data, int i, int end) {
+		while (i < end && (data[i] == ' ' || data[i] == '\t'))
+			i++;
+		return i;
+	}
+
+	/**
+	 * makes the exception for a problem on the current line.
+	 */
+	private JsonSyntaxException syntax(byte[] data, int i, int end, String problem) {
+		String line = new String(data, rowStart, Math.min(rowEnd - rowStart, 200), StandardCharsets.UTF_8);
+		return new JsonSyntaxException("Invalid json at byte " + i + ", " + problem + ": " + line);
+	}
+
+}
@@ -0,0 +1,233 @@
+package gfiles.text;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import gfiles.file.VirtualFile;
+
+/**
+ * a json lines file, where every line is a json object. The lines are read
+ * with a {@link JsonCursor} for the top level keys that are needed, which
+ * turns each line into a {@link TextRow} with a field for each key, so they
+ * can be filtered with {@link FieldPredicate}s, queried with
+ * {@link #query(String...)} and bound to objects with a {@link CSVBinder} the
+ * same way as a csv file.
+ *
+ * Since a line break can't be inside of a json string every line can be
+ * parsed on its own, so the file is split into chunks at line breaks that are
+ * parsed on multiple threads, see {@link #parseChunks(Function, String...)}.
+ *
+ * The file is read as utf-8 by default.
+ *
+ * @author Gavin
+ *
+ */
+public class JsonLinesFile extends AsciiTextFile {
+
+	// chunks won't be made smaller than this, there's no point splitting up
+	// small files.
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+	// how many chunks to make per thread so uneven chunks balance out.
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/**
+	 * creates an empty json lines file.
+	 */
+	public JsonLinesFile() {
+		setUtf8(true);
+	}
+
+	/**
+	 * creates a json lines file from an input stream, reading until the stream
+	 * ends.
+	 *
+	 * @param in
+	 *            input stream to read from
+	 * @throws IOException
+	 */
+	public JsonLinesFile(InputStream in) throws IOException {
+		super(in);
+		setUtf8(true);
+	}
+
+	public JsonLinesFile(byte[] data) {
+		super(data);
+		setUtf8(true);
+	}
+
+	/**
+	 * creates a json lines file from a virtual file.
+	 *
+	 * @param vf
+	 *            virtual file holding the lines
+	 */
+	public JsonLinesFile(VirtualFile vf) {
+		super(vf);
+		setUtf8(true);
+	}
+
+	/**
+	 * gets a cursor for reading the values of the given keys from every line.
+	 *
+	 * @param columns
+	 *            top level keys to read
+	 * @return cursor positioned before the first line
+	 */
+	public JsonCursor cursor(String... columns) {
+		return new JsonCursor(this, columns, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * gets a cursor for the lines that start in the given range.
+	 */
+	JsonCursor cursor(String[] columns, int start, int stop) {
+		return new JsonCursor(this, columns, start, stop);
+	}
+
+	/**
+	 * gets the top level keys of the first line that isn't blank, in the
+	 * order they are in the line.
+	 *
+	 * @return keys of the first object
+	 */
+	public String[] getKeys() {
+		JsonCursor cursor = cursor();
+		List<String> keys = new ArrayList<>();
+		cursor.seenKeys = keys;
+		cursor.next();
+		return keys.toArray(new String[keys.size()]);
+	}
+
+	/**
+	 * gets the values of the keys from every line, with null for any that a
+	 * line is missing or has as null.
+	 *
+	 * @param columns
+	 *            top level keys to read
+	 * @return values of every line in order
+	 */
+	public String[][] parseRows(String... columns) {
+		List<List<String[]>> chunks = parseChunks(cursor -> {
+			List<String[]> rows = new ArrayList<>();
+			while (cursor.next())
+				rows.add(cursor.values());
+			return rows;
+		}, columns);
+
+		List<String[]> rows = new ArrayList<>();
+		for (List<String[]> chunk : chunks)
+			rows.addAll(chunk);
+		return rows.toArray(new String[rows.size()][]);
+	}
+
+	/**
+	 * makes a query over the values of the given keys, see {@link CSVQuery}.
+	 * The keys are the titles of the query's columns.
+	 *
+	 * @param columns
+	 *            top level keys to query
+	 * @return the query
+	 */
+	public CSVQuery query(String... columns) {
+		return new CSVQuery(this, columns);
+	}
+
+	/**
+	 * parses the lines in parallel on the common fork join pool, see
+	 * {@link #parseChunks(ForkJoinPool, Function, String...)}.
+	 *
+	 * @param parser
+	 *            parses a chunk of the file
+	 * @param columns
+	 *            top level keys to read
+	 * @return results of each chunk, in the order of the file
+	 */
+	public <T> List<T> parseChunks(Function<JsonCursor, T> parser, String... columns) {
+		return parseChunks(ForkJoinPool.commonPool(), parser, columns);
+	}
+
+	/**
+	 * parses each chunk of the file on the pool with the given function,
+	 * passing it a cursor over the lines of the chunk. The function should
+	 * read through the lines of the cursor and return its result for the
+	 * chunk.
+	 *
+	 * @param pool
+	 *            pool to parse the chunks on
+	 * @param parser
+	 *            parses a chunk of the file
+	 * @param columns
+	 *            top level keys to read
+	 * @return results of each chunk, in the order of the file
+	 */
+	public <T> List<T> parseChunks(ForkJoinPool pool, Function<JsonCursor, T> parser, String... columns) {
+		int bySize = Math.max(1, getBytes() / MIN_CHUNK_SIZE);
+		int[] boundaries = boundaries(Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, bySize));
+
+		List<Callable<T>> tasks = new ArrayList<>();
+		for (int k = 0; k < boundaries.length - 1; k++) {
+			int start = boundaries[k];
+			int stop = boundaries[k + 1];
+			tasks.add(() -> parser.apply(cursor(columns, start, stop)));
+		}
+
+		List<T> results = new ArrayList<>(tasks.size());
+		try {
+			for (Future<T> future : pool.invokeAll(tasks))
+				results.add(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while parsing json lines file", e);
+		} catch (ExecutionException e) {
+			Throwable cause = ParallelCSVParser.cause(e);
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException("Failed to parse json lines file", cause);
+		}
+		return results;
+	}
+
+	/**
+	 * splits the file into ranges that each start at the start of a line. The
+	 * returned array has the start of each range followed by the end of the
+	 * file, so range k is from boundaries[k] to boundaries[k + 1].
+	 *
+	 * @param chunks
+	 *            number of ranges to split the file into
+	 * @return boundaries of the ranges
+	 */
+	public int[] boundaries(int chunks) {
+		byte[] data = bytes();
+		int end = getBytes();
+		chunks = Math.max(1, chunks);
+
+		int[] boundaries = new int[chunks + 1];
+		for (int k = 1; k < chunks; k++) {
+			int from = (int) ((long) end * k / chunks);
+			boundaries[k] = Math.max(boundaries[k - 1], ByteSearch.lineStart(data, from, end));
+		}
+		boundaries[chunks] = end;
+		return boundaries;
+	}
+
+	/**
+	 * loads a json lines file, decompressing it if it is gzip or zlib.
+	 *
+	 * @param f
+	 *            file to load
+	 * @return the loaded file
+	 */
+	public static JsonLinesFile load(File f) throws IOException {
+		return new JsonLinesFile(VirtualFile.loadDecompressed(f));
+	}
+
+}
@@ -0,0 +1,24 @@
+package gfiles.text;
+
+/**
+ * thrown when a line of a json lines file isn't a valid json object.
+ * 
+ * @author Gavin
+ *
+ */
+public class JsonSyntaxException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public JsonSyntaxException() {
+		super("Invalid syntax in json document");
+	}
+
+	public JsonSyntaxException(String message) {
+		super(message);
+	}
+
+	public JsonSyntaxException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
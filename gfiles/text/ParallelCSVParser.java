@@ -0,0 +1,299 @@
+package gfiles.text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * parses a csv file in parallel by splitting its bytes into chunks that start
+ * on line boundaries and parsing each chunk on a fork join pool. Results come
+ * back in the same order as the lines of the file.
+ *
+ * When the file is quoting, a line break inside of a quoted value isn't a line
+ * boundary. The chunks find out whether they start inside of quotes by
+ * counting the quotes in every chunk before them, which is exact for files
+ * that follow rfc 4180. Each chunk is then parsed speculatively from its
+ * boundary, and if the chunk before it ends somewhere else (which can only
+ * happen with stray quotes) the chunk is parsed again from where the previous
+ * one really ended.
+ *
+ * @author Gavin
+ *
+ */
+public class ParallelCSVParser {
+
+	// chunks won't be made smaller than this, there's no point splitting up
+	// small files.
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+	// how many chunks to make per thread so uneven chunks balance out.
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	// file to parse.
+	private final CSVFile file;
+
+	// pool that the chunks are parsed on.
+	private final ForkJoinPool pool;
+
+	/**
+	 * creates a parallel parser that runs on the common fork join pool.
+	 *
+	 * @param file
+	 *            file to parse
+	 */
+	public ParallelCSVParser(CSVFile file) {
+		this(file, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * creates a parallel parser that runs on the given pool.
+	 *
+	 * @param file
+	 *            file to parse
+	 * @param pool
+	 *            pool to parse the chunks on
+	 */
+	public ParallelCSVParser(CSVFile file, ForkJoinPool pool) {
+		this.file = file;
+		this.pool = pool;
+	}
+
+	/**
+	 * gets how many chunks the file should be split into for the pool.
+	 *
+	 * @return number of chunks
+	 */
+	public int chunkCount() {
+		int bySize = Math.max(1, file.getBytes() / MIN_CHUNK_SIZE);
+		return Math.max(1, Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, bySize));
+	}
+
+	/**
+	 * splits the file into ranges that each start at the start of a line. The
+	 * returned array has the start of each range followed by the end of the
+	 * file, so range k is from boundaries[k] to boundaries[k + 1]. Ranges can
+	 * be empty if a line is longer than a chunk.
+	 *
+	 * @param chunks
+	 *            number of ranges to split the file into
+	 * @return boundaries of the ranges
+	 */
+	public int[] boundaries(int chunks) {
+		byte[] data = file.bytes();
+		int end = file.getBytes();
+		chunks = Math.max(1, chunks);
+
+		// evenly spaced starting points.
+		int[] starts = new int[chunks + 1];
+		for (int k = 0; k <= chunks; k++)
+			starts[k] = (int) ((long) end * k / chunks);
+
+		// find out if each chunk starts inside of quotes by counting the
+		// quotes in the chunks before it.
+		boolean[] inQuotes = new boolean[chunks];
+		if (file.isQuoting()) {
+			List<Callable<Integer>> counts = new ArrayList<>();
+			for (int k = 0; k < chunks; k++) {
+				int from = starts[k];
+				int to = starts[k + 1];
+				counts.add(() -> ByteSearch.count(data, from, to, (byte) '"'));
+			}
+			List<Integer> results = invokeAll(counts);
+			boolean quoted = false;
+			for (int k = 0; k < chunks; k++) {
+				inQuotes[k] = quoted;
+				if (results.get(k) % 2 == 1)
+					quoted = !quoted;
+			}
+		}
+
+		// move each starting point forward to the next line boundary.
+		List<Callable<Integer>> lines = new ArrayList<>();
+		for (int k = 1; k < chunks; k++) {
+			int from = starts[k];
+			boolean quoted = inQuotes[k];
+			lines.add(() -> nextBoundary(data, from, end, quoted));
+		}
+		List<Integer> found = invokeAll(lines);
+
+		int[] boundaries = new int[chunks + 1];
+		boundaries[0] = 0;
+		for (int k = 1; k < chunks; k++)
+			boundaries[k] = Math.max(boundaries[k - 1], found.get(k - 1));
+		boundaries[chunks] = end;
+		return boundaries;
+	}
+
+	/**
+	 * parses each chunk of the file with the given function, passing it a
+	 * cursor over the lines of the chunk. The function should read through
+	 * every line of the cursor and return its result for the chunk.
+	 *
+	 * @param parser
+	 *            parses a chunk of the file
+	 * @return results of each chunk, in the order of the file
+	 */
+	public <T> List<T> parseChunks(Function<CSVCursor, T> parser) {
+		return parseChunks((start, stop) -> file.cursor(start, stop), parser);
+	}
+
+	/**
+	 * parses every line of the file into values, the same values that calling
+	 * {@link CSVFile#nextLine()} on each line would give.
+	 *
+	 * @return values of every line in order
+	 */
+	public String[][] parseRows() {
+		List<List<String[]>> chunks = parseChunks((start, stop) -> file.valueCursor(start, stop),
+				(CSVCursor cursor) -> {
+					List<String[]> rows = new ArrayList<>();
+					while (cursor.next())
+						rows.add(file.values(cursor));
+					return rows;
+				});
+
+		// put the chunks together in order.
+		int total = 0;
+		for (List<String[]> chunk : chunks)
+			total += chunk.size();
+		String[][] rows = new String[total][];
+		int i = 0;
+		for (List<String[]> chunk : chunks) {
+			for (String[] row : chunk)
+				rows[i++] = row;
+		}
+		return rows;
+	}
+
+	/**
+	 * makes cursors over a range of the file.
+	 */
+	@FunctionalInterface
+	interface CursorFactory {
+		CSVCursor create(int start, int stop);
+	}
+
+	/**
+	 * splits the file, parses the chunks speculatively in parallel and then
+	 * fixes up any chunk that didn't start where the one before it ended.
+	 */
+	<T> List<T> parseChunks(CursorFactory cursors, Function<CSVCursor, T> parser) {
+		int[] boundaries = boundaries(chunkCount());
+		int chunks = boundaries.length - 1;
+
+		// parse every chunk in parallel, remembering where each one ended.
+		List<Callable<Chunk<T>>> tasks = new ArrayList<>();
+		for (int k = 0; k < chunks; k++) {
+			int start = boundaries[k];
+			int stop = boundaries[k + 1];
+			tasks.add(() -> parseChunk(cursors, parser, start, stop));
+		}
+		List<Chunk<T>> parsed = invokeAll(tasks);
+
+		// chain the chunks together, reparsing any that started in the wrong
+		// place.
+		List<T> results = new ArrayList<>(chunks);
+		int position = 0;
+		for (int k = 0; k < chunks; k++) {
+			Chunk<T> chunk = parsed.get(k);
+			if (boundaries[k] != position) {
+				// the last line of the previous chunk ran past where this
+				// chunk thought it started.
+				chunk = parseChunk(cursors, parser, position, Math.max(position, boundaries[k + 1]));
+			}
+			results.add(chunk.result);
+			position = chunk.end;
+		}
+		return results;
+	}
+
+	/**
+	 * parses one chunk of the file.
+	 */
+	private <T> Chunk<T> parseChunk(CursorFactory cursors, Function<CSVCursor, T> parser, int start, int stop) {
+		CSVCursor cursor = cursors.create(start, stop);
+		T result = parser.apply(cursor);
+
+		// read anything the parser left behind so the end is known.
+		while (cursor.next())
+			;
+		return new Chunk<>(result, Math.max(cursor.position(), start));
+	}
+
+	/**
+	 * finds the first line boundary at or after the given index, given whether
+	 * the index is inside of quotes.
+	 */
+	private static int nextBoundary(byte[] data, int from, int end, boolean quoted) {
+		int i = from;
+		while (i < end) {
+			i = ByteSearch.indexOfAny(data, i, end, (byte) '"', (byte) '\n', (byte) '\r');
+			if (i >= end)
+				return end;
+
+			byte b = data[i];
+			if (b == '"') {
+				quoted = !quoted;
+				i++;
+			} else if (quoted) {
+				i++;
+			} else if (b == '\r' && i + 1 < end && data[i + 1] == '\n') {
+				return i + 2;
+			} else {
+				return i + 1;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * runs the tasks on the pool and waits for all of their results.
+	 */
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<>(tasks.size());
+		try {
+			for (Future<T> future : pool.invokeAll(tasks))
+				results.add(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while parsing csv file", e);
+		} catch (ExecutionException e) {
+			Throwable cause = cause(e);
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException("Failed to parse csv file", cause);
+		}
+		return results;
+	}
+
+	/**
+	 * gets the exception that a task threw. A fork join pool rethrows an
+	 * exception from another thread as a new one of the same class with the
+	 * original as its cause, which loses the original's message, so the
+	 * original is given back instead.
+	 */
+	static Throwable cause(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause != null && cause.getCause() != null && cause.getCause().getClass() == cause.getClass())
+			return cause.getCause();
+		return cause;
+	}
+
+	/**
+	 * result of parsing a chunk and where the chunk really ended.
+	 */
+	private static class Chunk<T> {
+		private final T result;
+		private final int end;
+
+		private Chunk(T result, int end) {
+			this.result = result;
+			this.end = end;
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package gfiles.text;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * reads csv records one at a time from an input stream that may be too big to
+ * load into memory. Bytes are read into a buffer that only has to be big
+ * enough to hold the longest record, and records are parsed from the buffer
+ * with a {@link CSVParser}.
+ *
+ * @author Gavin
+ *
+ */
+class RecordStream implements Closeable {
+
+	// stream to read from.
+	private final InputStream in;
+
+	// parser that splits the records.
+	private final CSVParser parser;
+
+	// bytes that have been read, the unparsed ones are between the position
+	// and the limit.
+	private byte[] buffer;
+	private int position = 0;
+	private int limit = 0;
+
+	// whether the stream has run out.
+	private boolean endOfInput = false;
+
+	/**
+	 * creates a record stream over the input stream.
+	 *
+	 * @param in
+	 *            stream to read from
+	 * @param parser
+	 *            parser for the records
+	 * @param bufferSize
+	 *            starting size of the buffer, it grows for longer records
+	 */
+	RecordStream(InputStream in, CSVParser parser, int bufferSize) {
+		this.in = in;
+		this.parser = parser;
+		this.buffer = new byte[Math.max(16, bufferSize)];
+	}
+
+	/**
+	 * reads the next record into the row. The row's offsets point into the
+	 * stream's buffer so they are only valid until the next call.
+	 *
+	 * @param row
+	 *            row to put the fields in
+	 * @return false if there are no more records
+	 * @throws IOException
+	 *             if the stream couldn't be read
+	 */
+	boolean next(TextRow row) throws IOException {
+		while (true) {
+			int next = parser.parse(buffer, position, limit, endOfInput, row);
+			if (next != -1) {
+				position = next;
+				return true;
+			}
+			if (endOfInput)
+				return false;
+			fill();
+		}
+	}
+
+	/**
+	 * moves the unparsed bytes to the front of the buffer and reads more after
+	 * them, growing the buffer if a record fills it.
+	 */
+	private void fill() throws IOException {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length)
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+		int read = in.read(buffer, limit, buffer.length - limit);
+		if (read == -1)
+			endOfInput = true;
+		else
+			limit += read;
+	}
+
+	/**
+	 * gets the buffer the current record is in.
+	 *
+	 * @return the buffer
+	 */
+	byte[] buffer() {
+		return buffer;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
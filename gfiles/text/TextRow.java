@@ -0,0 +1,471 @@
+package gfiles.text;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * a reusable view of the fields of one row of a text file. The fields are
+ * kept as byte offsets into the file so nothing is copied or turned into a
+ * string unless it is asked for with {@link #getString(int) getString}, and
+ * numbers are parsed straight from the bytes.
+ *
+ * The view is only valid until the row is moved on to the next one, so any
+ * values that need to be kept should be copied out first.
+ *
+ * @author Gavin
+ *
+ */
+public class TextRow {
+
+	// bytes the fields are stored in.
+	byte[] data = new byte[0];
+
+	// start and end offset of each field in the data.
+	int[] starts = new int[16];
+	int[] ends = new int[16];
+
+	// number of fields in the row.
+	int count = 0;
+
+	// which fields had to be copied into the scratch buffer, e.g. quoted
+	// fields with escaped quotes in them.
+	boolean[] copied = new boolean[16];
+
+	// buffer holding the copied fields of the row.
+	byte[] scratch = new byte[64];
+	int scratchLength = 0;
+
+	// start and end of the whole row in the data, not including the line
+	// break.
+	int rowStart = 0;
+	int rowEnd = 0;
+
+	// true if the bytes are utf-8 instead of ascii.
+	boolean utf8 = false;
+
+	// reused to view fields as character sequences.
+	private final ByteSequence view = new ByteSequence();
+
+	/**
+	 * creates an empty row, fields are added to it by a parser such as
+	 * {@link CSVParser}.
+	 */
+	public TextRow() {}
+
+	/**
+	 * removes all of the fields from the row and sets the bytes that the next
+	 * fields will be in.
+	 *
+	 * @param data
+	 *            bytes holding the fields
+	 */
+	void clear(byte[] data) {
+		this.data = data;
+		count = 0;
+		scratchLength = 0;
+	}
+
+	/**
+	 * adds a field to the end of the row.
+	 *
+	 * @param start
+	 *            offset of the first byte of the field
+	 * @param end
+	 *            offset after the last byte of the field
+	 */
+	void add(int start, int end) {
+		add(start, end, false);
+	}
+
+	/**
+	 * adds a field that has been copied into the scratch buffer to the end of
+	 * the row, see {@link #copy(byte[], int, int) copy}.
+	 *
+	 * @param start
+	 *            offset of the first byte of the field in the scratch buffer
+	 * @param end
+	 *            offset after the last byte of the field in the scratch buffer
+	 */
+	void addCopied(int start, int end) {
+		add(start, end, true);
+	}
+
+	private void add(int start, int end, boolean inScratch) {
+		if (count == starts.length) {
+			starts = Arrays.copyOf(starts, count * 2);
+			ends = Arrays.copyOf(ends, count * 2);
+			copied = Arrays.copyOf(copied, count * 2);
+		}
+		starts[count] = start;
+		ends[count] = end;
+		copied[count] = inScratch;
+		count++;
+	}
+
+	/**
+	 * copies bytes onto the end of the scratch buffer.
+	 *
+	 * @param source
+	 *            bytes to copy from
+	 * @param from
+	 *            first byte to copy
+	 * @param to
+	 *            index after the last byte to copy
+	 */
+	void copy(byte[] source, int from, int to) {
+		int length = to - from;
+		if (scratchLength + length > scratch.length)
+			scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchLength + length));
+		System.arraycopy(source, from, scratch, scratchLength, length);
+		scratchLength += length;
+	}
+
+	/**
+	 * trims the white space from around every field, the same way string's
+	 * trim method does.
+	 */
+	void trim() {
+		for (int field = 0; field < count; field++) {
+			byte[] data = source(field);
+			int start = starts[field];
+			int end = ends[field];
+			while (start < end && (data[start] & 0xFF) <= ' ')
+				start++;
+			while (end > start && (data[end - 1] & 0xFF) <= ' ')
+				end--;
+			starts[field] = start;
+			ends[field] = end;
+		}
+	}
+
+	/**
+	 * gets the bytes that the field is stored in.
+	 */
+	byte[] source(int field) {
+		return copied[field] ? scratch : data;
+	}
+
+	/**
+	 * gets how many fields are in the row.
+	 *
+	 * @return number of fields
+	 */
+	public int fieldCount() {
+		return count;
+	}
+
+	/**
+	 * gets the offset of the first byte of the field in the file. Fields that
+	 * had to be copied to be unescaped are offsets into the row's own buffer
+	 * instead, see {@link #isCopied(int) isCopied}.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return offset of the start of the field
+	 */
+	public int fieldStart(int field) {
+		check(field);
+		return starts[field];
+	}
+
+	/**
+	 * gets the offset after the last byte of the field in the file.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return offset of the end of the field
+	 */
+	public int fieldEnd(int field) {
+		check(field);
+		return ends[field];
+	}
+
+	/**
+	 * tells whether the field had to be copied out of the file, which happens
+	 * when a quoted field has escaped quotes in it. The offsets of a copied
+	 * field don't point into the file.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return true if the field was copied
+	 */
+	public boolean isCopied(int field) {
+		check(field);
+		return copied[field];
+	}
+
+	/**
+	 * gets how many bytes long the field is.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return length of the field in bytes
+	 */
+	public int fieldLength(int field) {
+		check(field);
+		return ends[field] - starts[field];
+	}
+
+	/**
+	 * checks if the field has nothing in it.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return true if the field is empty
+	 */
+	public boolean isEmpty(int field) {
+		return fieldLength(field) == 0;
+	}
+
+	/**
+	 * views the field as a character sequence. For ascii rows the returned
+	 * sequence is reused by every call so it is only valid until the next call,
+	 * utf-8 fields holding anything other than ascii are decoded into a new
+	 * string.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return the field's characters
+	 */
+	public CharSequence field(int field) {
+		check(field);
+		byte[] data = source(field);
+		int start = starts[field];
+		int end = ends[field];
+		if (utf8 && ByteSearch.firstNonAscii(data, start, end) != end)
+			return getString(field);
+		return view.set(data, start, end);
+	}
+
+	/**
+	 * copies the field out into a string.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return the field as a string
+	 */
+	public String getString(int field) {
+		check(field);
+		byte[] data = source(field);
+		return new String(data, starts[field], ends[field] - starts[field],
+				utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * copies all of the fields out into an array of strings.
+	 *
+	 * @return the fields of the row
+	 */
+	public String[] toArray() {
+		String[] values = new String[count];
+		for (int i = 0; i < count; i++)
+			values[i] = getString(i);
+		return values;
+	}
+
+	/**
+	 * compares the field to the given characters without copying it.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @param value
+	 *            characters to compare to
+	 * @return true if the field is the same as the value
+	 */
+	public boolean fieldEquals(int field, CharSequence value) {
+		check(field);
+		byte[] data = source(field);
+		int start = starts[field];
+		int length = ends[field] - start;
+
+		// utf-8 fields with multi-byte characters can't be compared byte for
+		// character.
+		if (utf8 && ByteSearch.firstNonAscii(data, start, start + length) != start + length)
+			return getString(field).contentEquals(value);
+
+		if (length != value.length())
+			return false;
+		for (int i = 0; i < length; i++) {
+			if ((data[start + i] & 0xFF) != value.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * parses the field as an int straight from its bytes.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return value of the field
+	 * @throws NumberFormatException
+	 *             if the field isn't an int
+	 */
+	public int parseInt(int field) {
+		long value = parseLong(field);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			throw numberFormat(field);
+		return (int) value;
+	}
+
+	/**
+	 * parses the field as a long straight from its bytes.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return value of the field
+	 * @throws NumberFormatException
+	 *             if the field isn't a long
+	 */
+	public long parseLong(int field) {
+		check(field);
+		byte[] data = source(field);
+		int i = starts[field];
+		int end = ends[field];
+		if (i == end)
+			throw numberFormat(field);
+
+		// read the sign.
+		boolean negative = false;
+		if (data[i] == '-' || data[i] == '+') {
+			negative = data[i] == '-';
+			if (++i == end)
+				throw numberFormat(field);
+		}
+
+		// accumulate as a negative number so the minimum value fits.
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = data[i] - '0';
+			if (digit < 0 || digit > 9)
+				throw numberFormat(field);
+			if (value < (limit + digit) / 10)
+				throw numberFormat(field);
+			value = value * 10 - digit;
+		}
+		return negative ? value : -value;
+	}
+
+	// powers of ten that can be represented exactly as doubles.
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * parses the field as a double straight from its bytes. Plain decimal
+	 * numbers with up to 18 significant digits are parsed without creating a
+	 * string, anything else falls back to {@link Double#parseDouble(String)}.
+	 *
+	 * @param field
+	 *            index of the field
+	 * @return value of the field
+	 * @throws NumberFormatException
+	 *             if the field isn't a double
+	 */
+	public double parseDouble(int field) {
+		check(field);
+		byte[] data = source(field);
+		int i = starts[field];
+		int end = ends[field];
+
+		boolean negative = false;
+		if (i < end && (data[i] == '-' || data[i] == '+')) {
+			negative = data[i] == '-';
+			i++;
+		}
+
+		// collect the digits into a whole number and track where the decimal
+		// point goes.
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean point = false;
+		boolean any = false;
+		for (; i < end; i++) {
+			byte b = data[i];
+			if (b >= '0' && b <= '9') {
+				any = true;
+				if (mantissa == 0 && b == '0') {
+					// leading zeros don't count as significant digits.
+					if (point)
+						exponent--;
+					continue;
+				}
+				if (++digits > 18)
+					return slowParseDouble(field);
+				mantissa = mantissa * 10 + (b - '0');
+				if (point)
+					exponent--;
+			} else if (b == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (!any)
+			return slowParseDouble(field);
+
+		// read the exponent if there is one.
+		if (i < end && (data[i] == 'e' || data[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (data[i] == '-' || data[i] == '+')) {
+				negativeExponent = data[i] == '-';
+				i++;
+			}
+			int start = i;
+			int value = 0;
+			for (; i < end && data[i] >= '0' && data[i] <= '9' && value < 10000; i++)
+				value = value * 10 + (data[i] - '0');
+			if (i == start)
+				return slowParseDouble(field);
+			exponent += negativeExponent ? -value : value;
+		}
+
+		// anything left over isn't a plain number.
+		if (i != end)
+			return slowParseDouble(field);
+
+		// when both the mantissa and the power of ten are exact doubles a
+		// single multiplication or division gives the correctly rounded
+		// result.
+		double result;
+		if (mantissa == 0)
+			result = 0;
+		else if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22)
+			result = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		else
+			return slowParseDouble(field);
+
+		return negative ? -result : result;
+	}
+
+	/**
+	 * parses the field using the java parser for anything the fast path
+	 * doesn't handle.
+	 */
+	private double slowParseDouble(int field) {
+		return Double.parseDouble(getString(field));
+	}
+
+	/**
+	 * makes the exception for a field that isn't a number.
+	 */
+	private NumberFormatException numberFormat(int field) {
+		return new NumberFormatException("For input string: \"" + getString(field) + "\"");
+	}
+
+	/**
+	 * makes sure the field is in the row.
+	 */
+	private void check(int field) {
+		if (field < 0 || field >= count)
+			throw new IndexOutOfBoundsException("Field " + field + " doesn't exist in a row of " + count + " fields");
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+}
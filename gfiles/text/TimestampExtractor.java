@@ -0,0 +1,65 @@
+package gfiles.text;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * pulls the timestamp out of a line of a log file so the file can be searched
+ * by time, see {@link AsciiTextFile#findLineAtTime(long, TimestampExtractor)
+ * findLineAtTime}. Timestamps can be in any unit as long as the lines of the
+ * file are sorted by them.
+ *
+ * @author Gavin
+ *
+ */
+@FunctionalInterface
+public interface TimestampExtractor {
+
+	/**
+	 * value to return for lines that don't have a timestamp, like the
+	 * continuation lines of a stack trace.
+	 */
+	public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+	/**
+	 * gets the timestamp of the line.
+	 *
+	 * @param line
+	 *            line of the file without its line break
+	 * @return timestamp of the line or {@link #NO_TIMESTAMP} if it doesn't have
+	 *         one
+	 */
+	public long extract(CharSequence line);
+
+	/**
+	 * creates an extractor for lines that start with a date and time in the
+	 * given {@link DateTimeFormatter} pattern, e.g. "yyyy-MM-dd HH:mm:ss". The
+	 * timestamps are given in milliseconds since the epoch treating the time as
+	 * utc.
+	 *
+	 * @param pattern
+	 *            pattern of the date and time at the start of each line
+	 * @return extractor for the pattern
+	 */
+	public static TimestampExtractor prefix(String pattern) {
+		DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
+
+		// the formatted timestamps are the same length as the pattern as long
+		// as the pattern only uses fixed width fields.
+		int length = pattern.replace("'", "").length();
+
+		return (CharSequence line) -> {
+			if (line.length() < length)
+				return NO_TIMESTAMP;
+			try {
+				return LocalDateTime.parse(line.subSequence(0, length), formatter).toInstant(ZoneOffset.UTC)
+						.toEpochMilli();
+			} catch (DateTimeParseException e) {
+				return NO_TIMESTAMP;
+			}
+		};
+	}
+
+}
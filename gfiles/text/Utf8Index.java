@@ -0,0 +1,426 @@
+package gfiles.text;
+
+import java.util.Arrays;
+
+/**
+ * decodes the utf-8 bytes of a text file lazily by character index. Every
+ * {@link #CHECKPOINT_INTERVAL} characters the byte offset of that character is
+ * remembered so a lookup only has to decode forward from the closest
+ * checkpoint, and runs of ascii are skipped a word at a time. Characters are
+ * counted the same way as a java string so code points outside of the basic
+ * plane take up two characters.
+ *
+ * @author Gavin
+ *
+ */
+final class Utf8Index {
+
+	// how many characters apart the checkpoints are.
+	static final int CHECKPOINT_INTERVAL = 1024;
+
+	// character returned when reading past the end of the file, matches the
+	// value returned by the ascii text file.
+	private static final char END_OF_FILE = (char) 65535;
+
+	// character used for bytes that aren't valid utf-8.
+	private static final int REPLACEMENT = 0xFFFD;
+
+	// file that is being decoded.
+	private final AsciiTextFile file;
+
+	// what has been decoded so far. A state is never changed once it is
+	// published, apart from the position of the last lookup, so characters
+	// are read without locking and the lock is only taken to decode further
+	// or to catch up with a write.
+	private volatile State state;
+
+	/**
+	 * creates an index for the given file, nothing is decoded until it is
+	 * needed.
+	 *
+	 * @param file
+	 *            file to decode
+	 */
+	Utf8Index(AsciiTextFile file) {
+		this.file = file;
+		reset();
+	}
+
+	/**
+	 * throws away everything that has been decoded so far.
+	 */
+	synchronized void reset() {
+		state = new State(file.bytes(), file.getBytes());
+	}
+
+	/**
+	 * reads the character at the given character index.
+	 *
+	 * @param index
+	 *            index of the character
+	 * @return the character or (char) 65535 if past the end of the file
+	 */
+	char charAt(int index) {
+		if (index < 0)
+			return END_OF_FILE;
+
+		State s = current();
+		byte[] data = s.data;
+		int end = s.end;
+
+		// leading ascii can be read straight out of the file.
+		if (index < s.asciiPrefix)
+			return (char) data[index];
+
+		// find the code point boundary to start decoding from.
+		int c;
+		int b;
+		long last = s.last;
+		int lastChar = (int) (last >>> 32);
+		if (index >= lastChar && index - lastChar < CHECKPOINT_INTERVAL) {
+			c = lastChar;
+			b = (int) last;
+		} else {
+			s = covering(s, index);
+			data = s.data;
+			end = s.end;
+			int k = s.checkpointFor(index);
+			c = s.checkpointChars[k];
+			b = s.checkpointBytes[k];
+		}
+
+		// decode forward until the character is reached.
+		while (b < end) {
+			// ascii bytes are a character each so any run of them before the
+			// character can be skipped without decoding.
+			int skip = ByteSearch.firstNonAscii(data, b, b + Math.min(index - c, end - b));
+			c += skip - b;
+			b = skip;
+			if (b == end)
+				break;
+
+			int decoded = decode(data, b, end);
+			int codePoint = codePoint(decoded);
+			int chars = Character.charCount(codePoint);
+
+			if (index < c + chars) {
+				// remember where we are for the next sequential read.
+				s.last = (long) c << 32 | b;
+
+				if (chars == 1)
+					return (char) codePoint;
+				return index == c ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint);
+			}
+
+			c += chars;
+			b += byteLength(decoded);
+		}
+
+		return END_OF_FILE;
+	}
+
+	/**
+	 * gets the byte offset of the code point holding the given character, if
+	 * the index is past the end of the file the size of the file is returned.
+	 *
+	 * @param index
+	 *            index of the character
+	 * @return byte offset of the character
+	 */
+	int byteOffset(int index) {
+		State s = current();
+		if (index <= s.asciiPrefix)
+			return Math.max(index, 0);
+
+		s = covering(s, index);
+		byte[] data = s.data;
+		int end = s.end;
+		int k = s.checkpointFor(index);
+		int c = s.checkpointChars[k];
+		int b = s.checkpointBytes[k];
+		while (b < end) {
+			int decoded = decode(data, b, end);
+			int chars = Character.charCount(codePoint(decoded));
+			if (index < c + chars)
+				return b;
+			c += chars;
+			b += byteLength(decoded);
+		}
+		return end;
+	}
+
+	/**
+	 * gets how many characters are in the file, this has to decode the entire
+	 * file the first time it is called.
+	 *
+	 * @return number of characters in the file
+	 */
+	int length() {
+		State s = current();
+		if (s.length == -1)
+			s = covering(s, Integer.MAX_VALUE);
+		return s.length;
+	}
+
+	/**
+	 * gets the state, first catching up with the file if it has been written
+	 * to since the state was made.
+	 */
+	private State current() {
+		State s = state;
+		if (s.data != file.bytes() || s.end != file.getBytes())
+			return sync();
+		return s;
+	}
+
+	/**
+	 * makes sure the index still matches the file, throwing away anything
+	 * that could have been changed by a write.
+	 *
+	 * @return the state for the current data of the file
+	 */
+	private synchronized State sync() {
+		State s = state;
+		byte[] data = file.bytes();
+		int bytes = file.getBytes();
+		if (s.data == data && s.end == bytes)
+			return s;
+
+		// the file has only been appended to if it grew, but a multi-byte
+		// sequence that was cut off at the old end may now decode differently
+		// so drop anything near the old end.
+		int keep = s.end - 3;
+		if (bytes <= s.end || keep <= 0)
+			s = new State(data, bytes);
+		else
+			s = s.truncate(data, bytes, keep);
+		state = s;
+		return s;
+	}
+
+	/**
+	 * gets a state whose checkpoints reach the given character, decoding more
+	 * of the file if they don't yet.
+	 */
+	private State covering(State s, int index) {
+		if (s.covers(index))
+			return s;
+		synchronized (this) {
+			State latest = state;
+			if (latest.data == s.data && latest.end == s.end) {
+				if (!latest.covers(index))
+					state = latest.extend(index);
+				return state;
+			}
+		}
+
+		// the file was written to in the meantime.
+		return covering(sync(), index);
+	}
+
+	/**
+	 * how far the file has been decoded. The checkpoint arrays are only ever
+	 * added to past the checkpoints of the states that share them, so every
+	 * state sees the same values for its own checkpoints.
+	 */
+	private static final class State {
+		// data of the file and its size when the state was made.
+		private final byte[] data;
+		private final int end;
+
+		// character index and byte offset of each checkpoint, checkpoint k is
+		// at the first code point boundary at or after character k *
+		// CHECKPOINT_INTERVAL.
+		private final int[] checkpointChars;
+		private final int[] checkpointBytes;
+		private final int checkpoints;
+
+		// how far the checkpoints have been built, both in characters and
+		// bytes.
+		private final int scannedChars;
+		private final int scannedBytes;
+
+		// number of leading bytes in the file that are all ascii, these can
+		// be read directly.
+		private final int asciiPrefix;
+
+		// number of characters in the file, -1 if not decoded that far yet.
+		private final int length;
+
+		// character index in the high half and byte offset in the low half
+		// of the last lookup, so sequential reads don't need to go back to a
+		// checkpoint. Both are written in one go so a read never sees half of
+		// one lookup and half of another.
+		private volatile long last;
+
+		private State(byte[] data, int end) {
+			this(data, end, new int[16], new int[16], 1, 0, 0, 0, end == 0 ? 0 : -1);
+		}
+
+		private State(byte[] data, int end, int[] checkpointChars, int[] checkpointBytes, int checkpoints,
+				int scannedChars, int scannedBytes, int asciiPrefix, int length) {
+			this.data = data;
+			this.end = end;
+			this.checkpointChars = checkpointChars;
+			this.checkpointBytes = checkpointBytes;
+			this.checkpoints = checkpoints;
+			this.scannedChars = scannedChars;
+			this.scannedBytes = scannedBytes;
+			this.asciiPrefix = asciiPrefix;
+			this.length = length;
+		}
+
+		/**
+		 * checks if the checkpoints reach the character or the end of the
+		 * file.
+		 */
+		private boolean covers(int index) {
+			return checkpoints > index / CHECKPOINT_INTERVAL || scannedBytes >= end;
+		}
+
+		/**
+		 * finds the last checkpoint at or before the given character, which
+		 * the checkpoints have to cover.
+		 *
+		 * @param index
+		 *            character to find a checkpoint for
+		 * @return index into the checkpoint arrays
+		 */
+		private int checkpointFor(int index) {
+			int k = Math.min(index / CHECKPOINT_INTERVAL, checkpoints - 1);
+			if (checkpointChars[k] > index)
+				k--;
+			return k;
+		}
+
+		/**
+		 * makes a state for the appended data that keeps the checkpoints
+		 * before the given byte. The arrays are copied since the checkpoints
+		 * after it will be replaced.
+		 */
+		private State truncate(byte[] data, int end, int keep) {
+			int kept = checkpoints;
+			while (kept > 1 && checkpointBytes[kept - 1] >= keep)
+				kept--;
+			int[] chars = Arrays.copyOf(checkpointChars, checkpointChars.length);
+			int[] bytes = Arrays.copyOf(checkpointBytes, checkpointBytes.length);
+			return new State(data, end, chars, bytes, kept, chars[kept - 1], bytes[kept - 1],
+					Math.min(asciiPrefix, bytes[kept - 1]), -1);
+		}
+
+		/**
+		 * decodes forward from the last checkpoint recording new checkpoints
+		 * until the given character is covered or the end of the file is
+		 * reached.
+		 *
+		 * @param index
+		 *            character that needs to be covered
+		 * @return the state with the new checkpoints
+		 */
+		private State extend(int index) {
+			int[] chars = checkpointChars;
+			int[] bytes = checkpointBytes;
+			int count = checkpoints;
+			int c = scannedChars;
+			int b = scannedBytes;
+			int prefix = asciiPrefix;
+			int next = count * CHECKPOINT_INTERVAL;
+
+			// while there hasn't been anything but ascii the prefix grows with
+			// the scan.
+			boolean ascii = prefix == b;
+
+			while (b < end && count <= index / CHECKPOINT_INTERVAL) {
+				// skip runs of ascii without passing the next checkpoint.
+				int skip = ByteSearch.firstNonAscii(data, b, b + Math.min(next - c, end - b));
+				c += skip - b;
+				b = skip;
+
+				if (c >= next) {
+					if (count == chars.length) {
+						chars = Arrays.copyOf(chars, count * 2);
+						bytes = Arrays.copyOf(bytes, count * 2);
+					}
+					chars[count] = c;
+					bytes[count] = b;
+					count++;
+					next += CHECKPOINT_INTERVAL;
+				}
+
+				if (b >= end)
+					break;
+
+				int decoded = decode(data, b, end);
+				if (ascii && data[b] < 0) {
+					prefix = b;
+					ascii = false;
+				}
+
+				c += Character.charCount(codePoint(decoded));
+				b += byteLength(decoded);
+			}
+
+			if (ascii)
+				prefix = b;
+
+			State extended = new State(data, end, chars, bytes, count, c, b, prefix, b >= end ? c : length);
+			extended.last = last;
+			return extended;
+		}
+	}
+
+	/**
+	 * decodes the code point starting at the given byte. Invalid or cut off
+	 * sequences decode to the replacement character and only use up one byte.
+	 *
+	 * @return the code point in the low 21 bits and the number of bytes it
+	 *         used above that, see {@link #codePoint(int)} and
+	 *         {@link #byteLength(int)}
+	 */
+	static int decode(byte[] data, int b, int end) {
+		int lead = data[b] & 0xFF;
+
+		if (lead < 0x80)
+			return pack(lead, 1);
+
+		if (lead >= 0xC2 && lead <= 0xDF) {
+			if (b + 1 < end && isContinuation(data[b + 1]))
+				return pack(((lead & 0x1F) << 6) | (data[b + 1] & 0x3F), 2);
+		} else if (lead >= 0xE0 && lead <= 0xEF) {
+			if (b + 2 < end && isContinuation(data[b + 1]) && isContinuation(data[b + 2])) {
+				int cp = ((lead & 0x0F) << 12) | ((data[b + 1] & 0x3F) << 6) | (data[b + 2] & 0x3F);
+
+				// reject overlong encodings and surrogates.
+				if (cp >= 0x800 && (cp < 0xD800 || cp > 0xDFFF))
+					return pack(cp, 3);
+			}
+		} else if (lead >= 0xF0 && lead <= 0xF4) {
+			if (b + 3 < end && isContinuation(data[b + 1]) && isContinuation(data[b + 2])
+					&& isContinuation(data[b + 3])) {
+				int cp = ((lead & 0x07) << 18) | ((data[b + 1] & 0x3F) << 12) | ((data[b + 2] & 0x3F) << 6)
+						| (data[b + 3] & 0x3F);
+				if (cp >= 0x10000 && cp <= 0x10FFFF)
+					return pack(cp, 4);
+			}
+		}
+
+		return pack(REPLACEMENT, 1);
+	}
+
+	static int codePoint(int decoded) {
+		return decoded & 0x1FFFFF;
+	}
+
+	static int byteLength(int decoded) {
+		return decoded >>> 24;
+	}
+
+	private static int pack(int codePoint, int bytes) {
+		return (bytes << 24) | codePoint;
+	}
+
+	private static boolean isContinuation(byte b) {
+		return (b & 0xC0) == 0x80;
+	}
+
+}
@@ -0,0 +1,89 @@
+package gfiles.text;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import gfiles.file.VirtualFile;
+
+/**
+ * text file that decodes its bytes as utf-8. The bytes are kept as they are
+ * and only decoded when a character is read, with runs of ascii being skipped
+ * a word at a time and a sparse table of character to byte offsets keeping
+ * random reads close to constant time. Characters are indexed the same as a
+ * java string, so characters outside of the basic plane take up two indices.
+ *
+ * A csv, config or xml file can be read as utf-8 by constructing it from a
+ * utf-8 text file or by calling {@link #setUtf8(boolean) setUtf8(true)} on it.
+ *
+ * @author Gavin
+ *
+ */
+public class Utf8TextFile extends AsciiTextFile {
+
+	/**
+	 * default constructor just makes a new blank text file with nothing in it.
+	 */
+	public Utf8TextFile() {
+		setUtf8(true);
+	}
+
+	/**
+	 * specifies how many bytes the text file will have, used if the size of
+	 * the file is known before it is read.
+	 *
+	 * @param size
+	 *            initial size in bytes
+	 */
+	public Utf8TextFile(int size) {
+		super(size);
+		setUtf8(true);
+	}
+
+	/**
+	 * creates a utf-8 text file holding the given encoded bytes.
+	 *
+	 * @param data
+	 *            utf-8 bytes of the file
+	 */
+	public Utf8TextFile(byte[] data) {
+		super(data);
+		setUtf8(true);
+	}
+
+	/**
+	 * creates a utf-8 text file from a pre-loaded virtual file.
+	 *
+	 * @param vf
+	 *            virtual file to read from.
+	 */
+	public Utf8TextFile(VirtualFile vf) {
+		super(vf);
+		setUtf8(true);
+	}
+
+	/**
+	 * creates a utf-8 text file from an input stream.
+	 *
+	 * @param in
+	 *            input stream to read from until finish.
+	 * @throws IOException
+	 */
+	public Utf8TextFile(InputStream in) throws IOException {
+		super(in);
+		setUtf8(true);
+	}
+
+	/**
+	 * loads a text file using the utf-8 encoding and returns a new utf-8 text
+	 * file containing its contents, decompressing it if it is gzip or zlib.
+	 *
+	 * @param f
+	 *            file to read
+	 * @return file loaded into a utf-8 text file
+	 */
+	public static Utf8TextFile load(File f) throws IOException {
+		VirtualFile vf = VirtualFile.loadDecompressed(f);
+		return new Utf8TextFile(vf);
+	}
+}
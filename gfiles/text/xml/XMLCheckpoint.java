@@ -0,0 +1,102 @@
+package gfiles.text.xml;
+
+import java.io.Serializable;
+
+/**
+ * the place an {@link XMLFile} had read up to, which can be saved and used to
+ * carry on reading the same file from that place later with
+ * {@link XMLFile#resume(XMLCheckpoint)} instead of reading it again from the
+ * start. It holds the position of the file's reader, where the line the
+ * parser was part way through starts and how far through it the parser was,
+ * the names of the tags that were open and a checksum of the characters
+ * before the position to make sure it is used with the same file. The rest of
+ * the line is read from the file again when resuming, so the checkpoint stays
+ * small even when the whole file is one line.
+ *
+ * @author Gavin
+ *
+ */
+public class XMLCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	// character the reader reads next.
+	private final int pointer;
+
+	// start of the line the parser was part way through, and the number of
+	// characters of it that had been parsed.
+	private final int lineStart;
+	private final int column;
+
+	// names of the open tags, outermost first.
+	private final String[] openTags;
+
+	// true if the end of the file had been reached.
+	private final boolean endOfFile;
+
+	// number of tags read before the checkpoint.
+	private final long tags;
+
+	// checksum of the characters before the pointer.
+	private final long checksum;
+
+	XMLCheckpoint(int pointer, int lineStart, int column, boolean endOfFile, String[] openTags, long tags,
+			long checksum) {
+		this.pointer = pointer;
+		this.lineStart = lineStart;
+		this.column = column;
+		this.endOfFile = endOfFile;
+		this.openTags = openTags;
+		this.tags = tags;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * gets the position of the file's reader when the checkpoint was taken.
+	 *
+	 * @return index of the next character to read
+	 */
+	public int getPointer() {
+		return pointer;
+	}
+
+	/**
+	 * gets the number of tags that had been read.
+	 *
+	 * @return number of tags read
+	 */
+	public long getTags() {
+		return tags;
+	}
+
+	/**
+	 * gets the names of the tags that were open, outermost first.
+	 *
+	 * @return names of the open tags
+	 */
+	public String[] getOpenTags() {
+		return openTags.clone();
+	}
+
+	int lineStart() {
+		return lineStart;
+	}
+
+	int column() {
+		return column;
+	}
+
+	boolean endOfFile() {
+		return endOfFile;
+	}
+
+	long checksum() {
+		return checksum;
+	}
+
+	@Override
+	public String toString() {
+		return "XMLCheckpoint[tag " + tags + ", pointer " + pointer + ", depth " + openTags.length + "]";
+	}
+
+}
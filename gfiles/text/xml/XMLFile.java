@@ -3,6 +3,8 @@ package gfiles.text.xml;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 import gcore.tuples.Pair;
 import gfiles.file.VirtualFile;
@@ -30,6 +32,11 @@ public class XMLFile extends AsciiTextFile {
 	// a new line is read.
 	private String currentLine = "";
 
+	// where the line that the current line is the rest of starts, and its
+	// length, so a checkpoint can read it again instead of keeping it.
+	private int lineStart = 0;
+	private int lineLength = 0;
+
 	// stores the current tag that the parser is on
 	private String currentTag = "";
 
@@ -48,6 +55,21 @@ public class XMLFile extends AsciiTextFile {
 	// reader to read from the underlying ascii file
 	private final AsciiTextFileReader reader = new AsciiTextFileReader(this);
 
+	// names of the tags that are open, outermost first, and the number of
+	// tags that have been read.
+	private final ArrayList<String> openTags = new ArrayList<>();
+	private long tagsRead = 0;
+
+	// told where reading is up to every so many tags, and the tag that was
+	// last told.
+	private Consumer<XMLCheckpoint> checkpointListener;
+	private int checkpointInterval;
+	private long lastCheckpoint = 0;
+
+	// number of characters before a checkpoint that are checked when
+	// resuming.
+	private static final int CHECKSUM_CHARS = 1024;
+
 	/**
 	 * creates an empty xml file.
 	 */
@@ -89,6 +111,13 @@ public class XMLFile extends AsciiTextFile {
 		if (endOfFile)
 			return;
 
+		// every tag before this one has been dealt with, so this is where
+		// reading would carry on from.
+		if (checkpointListener != null && tagsRead != lastCheckpoint && tagsRead % checkpointInterval == 0) {
+			lastCheckpoint = tagsRead;
+			checkpointListener.accept(checkpoint());
+		}
+
 		// check for end of file
 		if (currentLine == null) {
 			currentLine = "";
@@ -102,7 +131,7 @@ public class XMLFile extends AsciiTextFile {
 
 		// advance the line until a tag is found
 		while (!currentLine.contains("<")) {
-			currentLine = reader.readLine();
+			currentLine = readLine();
 
 			if (currentLine == null) {
 				currentLine = "";
@@ -125,7 +154,7 @@ public class XMLFile extends AsciiTextFile {
 
 			// loop through until the end index is found
 			while (currentLine.indexOf("--") == -1) {
-				currentLine = reader.readLine();
+				currentLine = readLine();
 
 				// check for end of file
 				if (currentLine == null)
@@ -159,6 +188,12 @@ public class XMLFile extends AsciiTextFile {
 
 		// parse the current tag into the corresponding variables
 		parseTag(currentTag);
+		tagsRead++;
+		if (tagType == TYPE_OPENING_TAG)
+			openTags.add(tagName);
+		else if (tagType == TYPE_CLOSING_TAG && !openTags.isEmpty()
+				&& openTags.get(openTags.size() - 1).equals(tagName))
+			openTags.remove(openTags.size() - 1);
 
 		// remove the tag from the currentLine and only view the text after the
 		// tag
@@ -169,7 +204,7 @@ public class XMLFile extends AsciiTextFile {
 			if (!currentLine.equals("")) {
 				immediateText += currentLine.trim() + "\n";
 			}
-			currentLine = reader.readLine();
+			currentLine = readLine();
 
 			// check for end of file
 			if (currentLine == null && !immediateText.trim().equals(""))
@@ -490,6 +525,142 @@ public class XMLFile extends AsciiTextFile {
 		return endOfFile;
 	}
 
+	/**
+	 * replaces the contents of the file and goes back to before the first
+	 * tag. The file's array and reader are reused, so one xml file per thread
+	 * can parse any number of inputs, see
+	 * {@link gfiles.text.CSVFile#reset(byte[], int, int)}.
+	 */
+	@Override
+	public synchronized void reset(byte[] data, int offset, int length) {
+		super.reset(data, offset, length);
+		reader.resetRead();
+		currentLine = "";
+		lineStart = 0;
+		lineLength = 0;
+		endOfFile = false;
+		clearTag();
+		openTags.clear();
+		tagsRead = 0;
+		lastCheckpoint = 0;
+	}
+
+	/**
+	 * forgets the tag that was last read.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void clearTag() {
+		currentTag = "";
+		tagType = -1;
+		tagName = "";
+		immediateText = "";
+		attributes = new Pair[0];
+	}
+
+	/**
+	 * gets the names of the tags that have been opened and not closed yet,
+	 * outermost first.
+	 * 
+	 * @return names of the open tags
+	 */
+	public String[] getOpenTags() {
+		return openTags.toArray(new String[openTags.size()]);
+	}
+
+	/**
+	 * gets the place that reading is up to, which can be saved and passed to
+	 * {@link #resume(XMLCheckpoint)} to carry on from the next tag later,
+	 * e.g. after the program is restarted.
+	 * 
+	 * @return checkpoint of the current place in the file
+	 */
+	public XMLCheckpoint checkpoint() {
+		// reading past the end moves the pointer beyond the last character
+		int pointer = Math.min(reader.getPointer(), length());
+		int column = lineLength - (currentLine == null ? 0 : currentLine.length());
+		return new XMLCheckpoint(pointer, Math.min(lineStart, pointer), column, endOfFile, getOpenTags(), tagsRead,
+				checksum(pointer));
+	}
+
+	/**
+	 * carries on reading from a checkpoint taken from this file, or a copy
+	 * of it, without reading the tags before it again. The next call to
+	 * {@link #nextTag()} reads the tag after the checkpoint.
+	 * 
+	 * @param checkpoint
+	 *            place to carry on reading from
+	 * @throws IllegalArgumentException
+	 *             if the checkpoint doesn't match the characters of this file
+	 */
+	public void resume(XMLCheckpoint checkpoint) {
+		int pointer = checkpoint.getPointer();
+		if (pointer > length() || checksum(pointer) != checkpoint.checksum())
+			throw new IllegalArgumentException("The checkpoint wasn't taken from this file");
+
+		// read the line the checkpoint was part way through again, unless
+		// nothing of it had been read.
+		currentLine = "";
+		lineLength = 0;
+		lineStart = checkpoint.lineStart();
+		reader.setPointer(lineStart);
+		if (lineStart < pointer)
+			currentLine = readLine();
+		if (currentLine == null || checkpoint.column() > currentLine.length()
+				|| Math.min(reader.getPointer(), length()) != pointer)
+			throw new IllegalArgumentException("The checkpoint wasn't taken from this file");
+		currentLine = currentLine.substring(checkpoint.column());
+		endOfFile = checkpoint.endOfFile();
+		clearTag();
+		openTags.clear();
+		for (String tag : checkpoint.getOpenTags())
+			openTags.add(tag);
+		tagsRead = checkpoint.getTags();
+		lastCheckpoint = tagsRead;
+	}
+
+	/**
+	 * sets a listener that is given a checkpoint every time another interval
+	 * of tags has been read with {@link #nextTag()}. The checkpoint is taken
+	 * when the next tag is asked for, so every tag before it has been dealt
+	 * with and resuming from it won't skip any.
+	 * 
+	 * @param interval
+	 *            number of tags between checkpoints
+	 * @param listener
+	 *            listener to give the checkpoints to, or null to stop
+	 */
+	public void setCheckpointListener(int interval, Consumer<XMLCheckpoint> listener) {
+		if (interval < 1 && listener != null)
+			throw new IllegalArgumentException("The checkpoint interval has to be at least one tag");
+		checkpointInterval = interval;
+		checkpointListener = listener;
+		lastCheckpoint = tagsRead;
+	}
+
+	/**
+	 * reads the next line from the reader and remembers where it started.
+	 */
+	private String readLine() {
+		lineStart = reader.getPointer();
+		String line = reader.readLine();
+		lineLength = line == null ? 0 : line.length();
+		return line;
+	}
+
+	/**
+	 * checksums the characters just before the pointer, so a checkpoint
+	 * can't be used with a different file without reading the whole file.
+	 */
+	private long checksum(int pointer) {
+		CRC32 crc = new CRC32();
+		for (int i = Math.max(0, pointer - CHECKSUM_CHARS); i < pointer; i++) {
+			char c = readCharAt(i);
+			crc.update(c >>> 8);
+			crc.update(c);
+		}
+		return crc.getValue();
+	}
+
 	/**
 	 * saves the given root tag into an xml virtual file
 	 * 